@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.importers.swagger.MultiOpenApiParser;
+import com.google.api.tools.framework.importers.swagger.MultiOpenApiParser.OpenApiFile;
+import com.google.api.tools.framework.importers.swagger.OpenApiConversionException;
+import com.google.api.tools.framework.importers.swagger.OpenApiToService;
+import com.google.api.tools.framework.importers.swagger.ServiceNormalizer;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.SimpleDiagCollector;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.tools.FileWrapper;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.api.tools.framework.tools.configgen.ConfigGeneratorDriver;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmarks of config generation, from files on disk to all three output formats, and
+ * of parsing and normalizing OpenAPI inputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigGeneratorBenchmark {
+
+  /** Descriptor set and service config for the synthetic API, written to a temporary directory. */
+  @State(Scope.Benchmark)
+  public static class DescriptorInputs {
+
+    @Param({"10", "1000", "50000"})
+    public int messages;
+
+    Path dir;
+    ToolOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      dir = Files.createTempDirectory("configgen-bench");
+      Path descriptor = dir.resolve("bench.descriptor");
+      Files.write(descriptor, SyntheticApi.descriptor(messages).toByteArray());
+      Path yaml = dir.resolve("bench.yaml");
+      Files.write(yaml, SyntheticApi.serviceConfig(messages).getBytes(StandardCharsets.UTF_8));
+
+      options = ToolOptions.create();
+      options.set(ToolOptions.DESCRIPTOR_SET, descriptor.toString());
+      options.set(ToolOptions.CONFIG_FILES, ImmutableList.of(yaml.toString()));
+      options.set(ConfigGeneratorDriver.BIN_OUT, dir.resolve("out.pb").toString());
+      options.set(ConfigGeneratorDriver.TXT_OUT, dir.resolve("out.txt").toString());
+      options.set(ConfigGeneratorDriver.JSON_OUT, dir.resolve("out.json").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+
+  /** An OpenAPI spec for the synthetic API. */
+  @State(Scope.Benchmark)
+  public static class OpenApiInputs {
+
+    @Param({"10", "1000"})
+    public int paths;
+
+    List<FileWrapper> files;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      files = ImmutableList.of(FileWrapper.create("bench.json", SyntheticApi.openApiSpec(paths)));
+    }
+  }
+
+  /** Several OpenAPI specs of the synthetic API, converted together into one service. */
+  @State(Scope.Benchmark)
+  public static class MultipleOpenApiInputs {
+
+    @Param({"1", "4"})
+    public int files;
+
+    /** Zero converts the files serially. */
+    @Param({"0", "4"})
+    public int parallelism;
+
+    List<FileWrapper> openApiFiles;
+    StageScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      ImmutableList.Builder<FileWrapper> builder = ImmutableList.builder();
+      for (int i = 1; i <= files; i++) {
+        builder.add(
+            FileWrapper.create("bench" + i + ".json", SyntheticApi.openApiSpec(1000, i)));
+      }
+      openApiFiles = builder.build();
+      scheduler =
+          parallelism > 0 ? StageScheduler.parallel(parallelism) : StageScheduler.serial();
+    }
+  }
+
+  /** The service config converted from a large OpenAPI spec, before normalization. */
+  @State(Scope.Benchmark)
+  public static class ConvertedOpenApi {
+
+    @Param({"1000", "5000"})
+    public int paths;
+
+    Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OpenApiConversionException {
+      List<FileWrapper> files =
+          ImmutableList.of(FileWrapper.create("bench.json", SyntheticApi.openApiSpec(paths)));
+      service =
+          new OpenApiToService(files, "", "", ImmutableList.<FileWrapper>of())
+              .createServiceConfig();
+    }
+  }
+
+  @Benchmark
+  public Service configGeneratorDriverProcess(DescriptorInputs inputs) throws IOException {
+    ConfigGeneratorDriver driver = new ConfigGeneratorDriver(inputs.options);
+    driver.process();
+    if (driver.hasErrors()) {
+      throw new IllegalStateException("Config generation failed: " + driver.getDiags());
+    }
+    return driver.getServiceConfig();
+  }
+
+  @Benchmark
+  public List<OpenApiFile> multiOpenApiParserConvert(OpenApiInputs inputs)
+      throws OpenApiConversionException {
+    return MultiOpenApiParser.convert(inputs.files, "");
+  }
+
+  @Benchmark
+  public Service openApiToServiceCreateServiceConfig(MultipleOpenApiInputs inputs)
+      throws OpenApiConversionException {
+    OpenApiToService converter =
+        new OpenApiToService(
+            inputs.openApiFiles, "", "", ImmutableList.<FileWrapper>of(), inputs.scheduler);
+    Service service = converter.createServiceConfig();
+    if (service == null) {
+      throw new IllegalStateException(
+          "Conversion failed: " + converter.getDiagCollector().getDiags());
+    }
+    return service;
+  }
+
+  @Benchmark
+  public Service serviceNormalizerNormalizeService(ConvertedOpenApi inputs) {
+    SimpleDiagCollector diags = new SimpleDiagCollector();
+    Service normalized =
+        ServiceNormalizer.normalizeService(
+            inputs.service, diags, ImmutableList.<FileWrapper>of());
+    if (normalized == null) {
+      throw new IllegalStateException("Normalization failed: " + diags.getDiags());
+    }
+    return normalized;
+  }
+
+  /** The descriptor round-trip of normalization alone, without processors and config aspects. */
+  @Benchmark
+  public Model modelCreateFromService(ConvertedOpenApi inputs) {
+    return Model.create(inputs.service);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.model.ConfigSource;
+import com.google.api.tools.framework.model.ConfigSource.LocationStorage;
+import com.google.api.tools.framework.model.SimpleDiagCollector;
+import com.google.api.tools.framework.yaml.YamlReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a yaml service config with source location tracking, for each {@link
+ * LocationStorage}. Run with {@code -prof gc} to compare the allocation per read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigSourceBenchmark {
+
+  @Param({"MAP", "COMPACT"})
+  public LocationStorage storage;
+
+  /** The number of messages of the synthetic API, which has an HTTP rule per ten messages. */
+  @Param({"1000", "50000"})
+  public int messages;
+
+  private String yaml;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    yaml = SyntheticApi.serviceConfig(messages);
+  }
+
+  @Benchmark
+  public ConfigSource readYamlConfig() {
+    SimpleDiagCollector diag = new SimpleDiagCollector();
+    ConfigSource config = YamlReader.readConfig(diag, "bench.yaml", yaml, storage);
+    if (config == null) {
+      throw new IllegalStateException("Reading config failed: " + diag.getDiags());
+    }
+    return config;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.aspects.documentation.CommentReferenceResolver;
+import com.google.api.tools.framework.aspects.documentation.DocumentationProcessorSet;
+import com.google.api.tools.framework.model.DiagReporter.ResolvedLocation;
+import com.google.api.tools.framework.model.MessageType;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.Visitor;
+import com.google.api.tools.framework.model.stages.Merged;
+import com.google.api.tools.framework.util.VisitsBefore;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures running the standard {@link DocumentationProcessorSet} over the comments of the
+ * synthetic API of {@link SyntheticApi}, together with a corpus of comments shaped like those of
+ * the published Google APIs, which every message documents once more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentationBenchmark {
+
+  /** Comments in the style of the published Google APIs. */
+  private static final ImmutableList<String> CORPUS =
+      ImmutableList.of(
+          "Required. The resource name of the item to retrieve.\n"
+              + "Format: `projects/{project}/items/{item}`",
+          "The maximum number of items to return. The service may return fewer than this value.\n"
+              + "If unspecified, at most 50 items will be returned.",
+          "A page token, received from a previous [ListItems][BenchService.ListItems] call.\n"
+              + "Provide this to retrieve the subsequent page.",
+          "The item to update.\n\n"
+              + "The item's `name` field is used to identify the item to update.\n"
+              + "Format: projects/{project}/items/{item}\n\n"
+              + "    item {\n"
+              + "      name: \"projects/p/items/1\"\n"
+              + "    }\n",
+          "Output only. The time when the item was created.\n"
+              + "(-- api-linter: core::0142::time-field-names=disabled --)",
+          "The set of fields to update. See [Message0][Message0] for the fields of an item:\n\n"
+              + "- `name`\n"
+              + "- `color`\n",
+          "Whether to allow the request to succeed if the item is not found.");
+
+  @Param({"1000", "50000"})
+  public int messages;
+
+  private Model model;
+  private final List<String> comments = Lists.newArrayList();
+  private final List<ProtoElement> elements = Lists.newArrayList();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    StageBenchmark.Inputs inputs = new StageBenchmark.Inputs();
+    inputs.messages = messages;
+    inputs.setUp();
+    model = inputs.buildModel();
+    if (!model.establishStage(Merged.KEY)) {
+      throw new IllegalStateException(
+          "Synthetic model failed to merge: "
+              + model.getDiagReporter().getDiagCollector().getDiags());
+    }
+    new Visitor(model.getScoper()) {
+      @VisitsBefore
+      void collect(ProtoElement element) {
+        String comment = element.getFile().getDocumentation(element);
+        if (!Strings.isNullOrEmpty(comment)) {
+          comments.add(comment);
+          elements.add(element);
+        }
+        if (element instanceof MessageType) {
+          comments.add(CORPUS.get(elements.size() % CORPUS.size()));
+          elements.add(element);
+        }
+      }
+    }.visit(model);
+  }
+
+  /** Processes all collected comments with a fresh processor set, as the documentation aspect. */
+  @Benchmark
+  public int processComments() {
+    DocumentationProcessorSet processorSet = DocumentationProcessorSet.standardSetup(model);
+    int length = 0;
+    for (int i = 0; i < comments.size(); i++) {
+      ProtoElement element = elements.get(i);
+      length +=
+          processorSet
+              .process(comments.get(i), ResolvedLocation.create(element.getLocation()), element)
+              .length();
+    }
+    return length;
+  }
+
+  /** Resolves the references in all collected comments with a fresh resolver. */
+  @Benchmark
+  public int resolveReferences() {
+    CommentReferenceResolver resolver = new CommentReferenceResolver(model);
+    int length = 0;
+    for (int i = 0; i < comments.size(); i++) {
+      ProtoElement element = elements.get(i);
+      length +=
+          resolver
+              .process(comments.get(i), ResolvedLocation.create(element.getLocation()), element)
+              .length();
+    }
+    return length;
+  }
+}
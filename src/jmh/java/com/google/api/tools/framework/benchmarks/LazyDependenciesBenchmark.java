@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.model.ExperimentsImpl;
+import com.google.api.tools.framework.model.ExtensionPool;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.stages.Resolved;
+import com.google.api.tools.framework.processors.resolver.Resolver;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building and resolving a model whose descriptor set is dominated by dependency files
+ * the sources do not reference, with and without {@link Model#LAZY_DEPENDENCIES_EXPERIMENT}. Run
+ * with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LazyDependenciesBenchmark {
+
+  private static final int MESSAGES = 100;
+  private static final int MESSAGES_PER_DEPENDENCY = 50;
+
+  @Param({"100", "1000"})
+  public int dependencies;
+
+  @Param({"false", "true"})
+  public boolean lazy;
+
+  private FileDescriptorSet descriptor;
+  private ExperimentsImpl experiments;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    descriptor =
+        SyntheticApi.descriptorWithDependencies(MESSAGES, dependencies, MESSAGES_PER_DEPENDENCY);
+    experiments =
+        lazy ? new ExperimentsImpl(Model.LAZY_DEPENDENCIES_EXPERIMENT) : ExperimentsImpl.none();
+  }
+
+  @Benchmark
+  public Model createAndResolve() {
+    Model model =
+        Model.create(
+            descriptor, ImmutableList.of(SyntheticApi.FILE_NAME), experiments, ExtensionPool.EMPTY);
+    model.registerProcessor(new Resolver());
+    if (!model.establishStage(Resolved.KEY)) {
+      throw new IllegalStateException(
+          "Synthetic model failed to resolve: "
+              + model.getDiagReporter().getDiagCollector().getDiags());
+    }
+    return model;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.model.stages.Resolved;
+import com.google.api.tools.framework.processors.resolver.Resolver;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link Resolver} on a descriptor set of many source files, serially and with
+ * per-file work spread over a parallel {@link StageScheduler} of the given parallelism. Zero
+ * parallelism is the serial scheduler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolverBenchmark {
+
+  private static final int MESSAGES = 1000;
+  private static final int FILES = 400;
+  private static final int MESSAGES_PER_FILE = 50;
+
+  /** The descriptor set, generated once per trial. */
+  @State(Scope.Benchmark)
+  public static class Inputs {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    FileDescriptorSet descriptor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      descriptor = SyntheticApi.descriptorWithDependencies(MESSAGES, FILES, MESSAGES_PER_FILE);
+    }
+  }
+
+  /** A fresh, unresolved model in which all files are sources. */
+  @State(Scope.Thread)
+  public static class Unresolved {
+
+    Model model;
+
+    @Setup(Level.Invocation)
+    public void setUp(Inputs inputs) {
+      model = Model.create(inputs.descriptor);
+      if (inputs.parallelism > 0) {
+        model.setStageScheduler(StageScheduler.parallel(inputs.parallelism));
+      }
+      model.registerProcessor(new Resolver());
+    }
+  }
+
+  @Benchmark
+  public boolean resolve(Unresolved state) {
+    return state.model.establishStage(Resolved.KEY);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.aspects.visibility.model.ScoperImpl;
+import com.google.api.tools.framework.model.Field;
+import com.google.api.tools.framework.model.MessageType;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoFile;
+import com.google.api.tools.framework.model.Scoper;
+import com.google.api.tools.framework.model.stages.Merged;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures computing the reachable elements of a merged model with {@link ScoperImpl}, and
+ * traversing the model through the resulting scoper, on the synthetic API of {@link SyntheticApi}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoperBenchmark {
+
+  @Param({"1000", "50000"})
+  public int messages;
+
+  private Model model;
+  private Scoper scoper;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    StageBenchmark.Inputs inputs = new StageBenchmark.Inputs();
+    inputs.messages = messages;
+    inputs.setUp();
+    model = inputs.buildModel();
+    if (!model.establishStage(Merged.KEY)) {
+      throw new IllegalStateException(
+          "Synthetic model failed to merge: "
+              + model.getDiagReporter().getDiagCollector().getDiags());
+    }
+    scoper = ScoperImpl.create(model.getRoots());
+  }
+
+  @Benchmark
+  public Scoper createScoper() {
+    return ScoperImpl.create(model.getRoots());
+  }
+
+  /** Visits the reachable messages and fields of all files, as the processing stages do. */
+  @Benchmark
+  public int traverseReachable() {
+    int count = 0;
+    for (ProtoFile file : model.getFiles()) {
+      for (MessageType message : scoper.filter(file.getMessages())) {
+        for (Field field : scoper.filter(message.getFields())) {
+          if (scoper.isReachable(field.getType().isMessage() ? field.getType().getMessageType()
+              : field)) {
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.stages.Linted;
+import com.google.api.tools.framework.model.stages.Merged;
+import com.google.api.tools.framework.model.stages.Normalized;
+import com.google.api.tools.framework.model.stages.Resolved;
+import com.google.api.tools.framework.setup.StandardSetup;
+import com.google.api.tools.framework.tools.ModelBuildOverrides;
+import com.google.api.tools.framework.tools.ModelBuilder;
+import com.google.api.tools.framework.tools.ModelBuilder.ModelBuildResult;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.api.tools.framework.tools.ToolProtoUtil;
+import com.google.inject.Key;
+import com.google.protobuf.ExtensionRegistry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for model setup and each of the standard processing stages, on the synthetic API of
+ * {@link SyntheticApi}.
+ *
+ * <p>Stage benchmarks build a fresh model with all earlier stages established before each
+ * invocation, so only the processor for the measured stage runs inside the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+  /** Model build overrides using the standard setup, as the tool drivers do. */
+  static final ModelBuildOverrides STANDARD_SETUP =
+      new ModelBuildOverrides() {
+        @Override
+        public void registerProcessors(Model model) {
+          StandardSetup.registerStandardProcessors(model);
+        }
+
+        @Override
+        public void registerAspects(Model model) {
+          StandardSetup.registerStandardConfigAspects(model);
+        }
+
+        @Override
+        public boolean includeDiscovery() {
+          return false;
+        }
+
+        @Override
+        public ExtensionRegistry getPlatformExtensions() {
+          return ToolProtoUtil.getStandardPlatformExtensions();
+        }
+      };
+
+  /** The synthetic inputs, generated once per trial. */
+  @State(Scope.Benchmark)
+  public static class Inputs {
+
+    @Param({"10", "1000", "50000"})
+    public int messages;
+
+    ToolOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      options = SyntheticApi.toolOptions(messages);
+    }
+
+    Model buildModel() {
+      ModelBuildResult result = new ModelBuilder().setup(options, STANDARD_SETUP, "");
+      if (result.getModel() == null) {
+        throw new IllegalStateException(
+            "Synthetic model failed to build: " + result.getDiagCollector().getDiags());
+      }
+      return result.getModel();
+    }
+  }
+
+  /** A model with the stages preceding the measured stage established. */
+  @State(Scope.Thread)
+  public abstract static class StagedModel {
+
+    Model model;
+
+    @Setup(Level.Invocation)
+    public void setUp(Inputs inputs) {
+      model = inputs.buildModel();
+      Key<?> previous = previousStage();
+      if (previous != null && !model.establishStage(previous)) {
+        throw new IllegalStateException(
+            "Synthetic model failed to establish " + previous + ": "
+                + model.getDiagReporter().getDiagCollector().getDiags());
+      }
+    }
+
+    abstract Key<?> previousStage();
+  }
+
+  /** A model ready for resolution. */
+  public static class Unresolved extends StagedModel {
+    @Override
+    Key<?> previousStage() {
+      return null;
+    }
+  }
+
+  /** A model ready for merging. */
+  public static class ResolvedModel extends StagedModel {
+    @Override
+    Key<?> previousStage() {
+      return Resolved.KEY;
+    }
+  }
+
+  /** A model ready for linting. */
+  public static class MergedModel extends StagedModel {
+    @Override
+    Key<?> previousStage() {
+      return Merged.KEY;
+    }
+  }
+
+  /** A model ready for normalization. */
+  public static class LintedModel extends StagedModel {
+    @Override
+    Key<?> previousStage() {
+      return Linted.KEY;
+    }
+  }
+
+  @Benchmark
+  public Model modelBuilderSetup(Inputs inputs) {
+    return inputs.buildModel();
+  }
+
+  @Benchmark
+  public boolean resolve(Unresolved state) {
+    return state.model.establishStage(Resolved.KEY);
+  }
+
+  @Benchmark
+  public boolean merge(ResolvedModel state) {
+    return state.model.establishStage(Merged.KEY);
+  }
+
+  @Benchmark
+  public boolean lint(MergedModel state) {
+    return state.model.establishStage(Linted.KEY);
+  }
+
+  @Benchmark
+  public boolean normalize(LintedModel state) {
+    return state.model.establishStage(Normalized.KEY);
+  }
+}
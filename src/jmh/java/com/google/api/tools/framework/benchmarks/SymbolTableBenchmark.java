@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.SymbolTable;
+import com.google.api.tools.framework.model.TypeRef;
+import com.google.api.tools.framework.model.stages.Resolved;
+import com.google.api.tools.framework.processors.resolver.Resolver;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures partial-name resolution and wildcard type matching on the {@link SymbolTable} of the
+ * synthetic API, as issued repeatedly by the resolver, merger and documentation processing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymbolTableBenchmark {
+
+  /** The nested context names are resolved in, so each resolution tries several candidates. */
+  private static final String CONTEXT = SyntheticApi.PACKAGE + ".Message0.Nested";
+
+  @Param({"1000", "50000"})
+  public int messages;
+
+  private SymbolTable symbolTable;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Model model = Model.create(SyntheticApi.descriptor(messages));
+    model.registerProcessor(new Resolver());
+    if (!model.establishStage(Resolved.KEY)) {
+      throw new IllegalStateException(
+          "Synthetic model failed to resolve: "
+              + model.getDiagReporter().getDiagCollector().getDiags());
+    }
+    symbolTable = model.getSymbolTable();
+  }
+
+  /** Resolves the simple names of a thousand messages. */
+  @Benchmark
+  public int resolveType() {
+    int resolved = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (symbolTable.resolveType(CONTEXT, "Message" + (i % messages)) != null) {
+        resolved++;
+      }
+    }
+    return resolved;
+  }
+
+  @Benchmark
+  public List<TypeRef> lookupMatchingTypes() {
+    return symbolTable.lookupMatchingTypes(SyntheticApi.PACKAGE + ".Message1.*", Type.TYPE_MESSAGE);
+  }
+}
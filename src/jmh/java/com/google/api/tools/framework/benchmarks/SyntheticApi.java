@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.benchmarks;
+
+import com.google.api.tools.framework.tools.FileWrapper;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.MethodDescriptorProto;
+import com.google.protobuf.DescriptorProtos.ServiceDescriptorProto;
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo;
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo.Location;
+
+/**
+ * Generates synthetic, self-contained API inputs of a given size for benchmarks.
+ *
+ * <p>Messages form a binary tree through their {@code left} and {@code right} fields, so that every
+ * message is reachable from the first one while the reference depth stays logarithmic. There is
+ * one method per ten messages, each with an HTTP binding in the service config.
+ */
+public class SyntheticApi {
+
+  public static final String FILE_NAME = "bench/v1/bench.proto";
+  public static final String PACKAGE = "bench.v1";
+  public static final String SERVICE = "BenchService";
+  public static final String SERVICE_NAME = "bench.googleapis.com";
+
+  private static final int MESSAGES_PER_METHOD = 10;
+
+  private SyntheticApi() {}
+
+  /** Returns the number of methods generated for the given number of messages. */
+  public static int methodCount(int messageCount) {
+    return Math.max(1, messageCount / MESSAGES_PER_METHOD);
+  }
+
+  /** Returns a descriptor set with a single file declaring {@code messageCount} messages. */
+  public static FileDescriptorSet descriptor(int messageCount) {
+    FileDescriptorProto.Builder file =
+        FileDescriptorProto.newBuilder()
+            .setName(FILE_NAME)
+            .setPackage(PACKAGE)
+            .setSyntax("proto3");
+    SourceCodeInfo.Builder sourceInfo = SourceCodeInfo.newBuilder();
+
+    file.addEnumType(
+        EnumDescriptorProto.newBuilder()
+            .setName("Color")
+            .addValue(EnumValueDescriptorProto.newBuilder().setName("COLOR_UNSPECIFIED"))
+            .addValue(EnumValueDescriptorProto.newBuilder().setName("RED").setNumber(1))
+            .addValue(EnumValueDescriptorProto.newBuilder().setName("BLUE").setNumber(2)));
+
+    for (int i = 0; i < messageCount; i++) {
+      DescriptorProto.Builder message =
+          DescriptorProto.newBuilder()
+              .setName(messageName(i))
+              .addField(field("name", 1, Type.TYPE_STRING, null))
+              .addField(field("id", 2, Type.TYPE_INT64, null))
+              .addField(field("color", 3, Type.TYPE_ENUM, "." + PACKAGE + ".Color"));
+      if (2 * i + 1 < messageCount) {
+        message.addField(field("left", 4, Type.TYPE_MESSAGE, typeName(2 * i + 1)));
+      }
+      if (2 * i + 2 < messageCount) {
+        message.addField(field("right", 5, Type.TYPE_MESSAGE, typeName(2 * i + 2)));
+      }
+      file.addMessageType(message);
+      sourceInfo.addLocation(
+          comment(
+              String.format(" A synthetic message, number %d of the [benchmark API][%s].%n",
+                  i, PACKAGE + "." + SERVICE),
+              i,
+              4,
+              i));
+      sourceInfo.addLocation(
+          comment(" The name of the resource, e.g. `items/1`.\n", i, 4, i, 2, 0));
+    }
+
+    ServiceDescriptorProto.Builder service = ServiceDescriptorProto.newBuilder().setName(SERVICE);
+    for (int j = 0; j < methodCount(messageCount); j++) {
+      service.addMethod(
+          MethodDescriptorProto.newBuilder()
+              .setName(methodName(j))
+              .setInputType(typeName(j * MESSAGES_PER_METHOD % messageCount))
+              .setOutputType(typeName(j * MESSAGES_PER_METHOD % messageCount)));
+      sourceInfo.addLocation(comment(" Gets a synthetic message.\n", j, 6, 0, 2, j));
+    }
+    file.addService(service);
+    sourceInfo.addLocation(comment(" The synthetic benchmark service.\n", 0, 6, 0));
+    file.setSourceCodeInfo(sourceInfo);
+    return FileDescriptorSet.newBuilder().addFile(file).build();
+  }
+
+  /**
+   * Returns the descriptor of {@link #descriptor(int)} together with {@code dependencyCount}
+   * dependency files of {@code messagesPerDependency} messages each, the way a descriptor set of
+   * a large API collection contains the whole dependency closure. Only the first dependency is
+   * referenced, by a field of the first message.
+   */
+  public static FileDescriptorSet descriptorWithDependencies(
+      int messageCount, int dependencyCount, int messagesPerDependency) {
+    FileDescriptorSet.Builder descriptor = descriptor(messageCount).toBuilder();
+    for (int d = 0; d < dependencyCount; d++) {
+      descriptor.addFile(dependency(d, messagesPerDependency));
+    }
+    if (dependencyCount > 0) {
+      descriptor
+          .getFileBuilder(0)
+          .addDependency(dependencyFileName(0))
+          .getMessageTypeBuilder(0)
+          .addField(field("dependency", 6, Type.TYPE_MESSAGE,
+              "." + dependencyPackage(0) + "." + messageName(0)));
+    }
+    return descriptor.build();
+  }
+
+  /** Returns a yaml service config for the api generated by {@link #descriptor(int)}. */
+  public static String serviceConfig(int messageCount) {
+    StringBuilder yaml = new StringBuilder();
+    yaml.append("type: google.api.Service\n")
+        .append("config_version: 3\n")
+        .append("name: ").append(SERVICE_NAME).append("\n")
+        .append("title: Synthetic Benchmark API\n")
+        .append("apis:\n")
+        .append("- name: ").append(PACKAGE).append('.').append(SERVICE).append("\n")
+        .append("documentation:\n")
+        .append("  summary: A synthetic API used by benchmarks.\n")
+        .append("  rules:\n")
+        .append("  - selector: ").append(PACKAGE).append(".*\n")
+        .append("    description: Applies to every element.\n")
+        .append("usage:\n")
+        .append("  rules:\n")
+        .append("  - selector: \"*\"\n")
+        .append("    allow_unregistered_calls: true\n")
+        .append("http:\n")
+        .append("  rules:\n");
+    for (int j = 0; j < methodCount(messageCount); j++) {
+      yaml.append("  - selector: ")
+          .append(PACKAGE).append('.').append(SERVICE).append('.').append(methodName(j))
+          .append("\n")
+          .append("    get: /v1/collection").append(j).append("/{name}\n");
+    }
+    return yaml.toString();
+  }
+
+  /**
+   * Returns tool options which pass the descriptor and service config for {@code messageCount}
+   * messages in memory.
+   */
+  public static ToolOptions toolOptions(int messageCount) {
+    ToolOptions options = ToolOptions.create();
+    options.set(
+        ToolOptions.DESCRIPTOR_SET_CONTENTS,
+        FileWrapper.create("bench.descriptor", descriptor(messageCount).toByteString()));
+    options.set(
+        ToolOptions.CONFIG_FILE_CONTENTS,
+        ImmutableList.of(FileWrapper.create("bench.yaml", serviceConfig(messageCount))));
+    return options;
+  }
+
+  /**
+   * Returns an OpenAPI 2.0 spec in json with {@code pathCount} paths, each returning its own
+   * definition. Definitions reference each other in a binary tree.
+   */
+  public static String openApiSpec(int pathCount) {
+    return openApiSpec(pathCount, 1);
+  }
+
+  /**
+   * Returns an OpenAPI 2.0 spec like {@link #openApiSpec(int)} for the given major version of the
+   * API. Specs of different versions can be converted together.
+   */
+  public static String openApiSpec(int pathCount, int version) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"swagger\": \"2.0\",\n")
+        .append(
+            String.format(
+                " \"info\": {\"title\": \"Synthetic Benchmark API\", \"version\": \"%d.0.0\"},%n",
+                version))
+        .append(" \"host\": \"bench.appspot.com\",\n")
+        .append(" \"schemes\": [\"https\"],\n")
+        .append(" \"produces\": [\"application/json\"],\n")
+        .append(" \"paths\": {\n");
+    for (int j = 0; j < pathCount; j++) {
+      json.append(String.format(
+          "  \"/v%d/collection%d/{id}\": {\"get\": {\"operationId\": \"get%d\",%n"
+              + "   \"parameters\": [{\"name\": \"id\", \"in\": \"path\", \"required\": true,"
+              + " \"type\": \"string\"}],%n"
+              + "   \"responses\": {\"200\": {\"description\": \"OK\","
+              + " \"schema\": {\"$ref\": \"#/definitions/Item%d\"}}}}}%s%n",
+          version, j, j, j, j + 1 < pathCount ? "," : ""));
+    }
+    json.append(" },\n")
+        .append(" \"definitions\": {\n");
+    for (int j = 0; j < pathCount; j++) {
+      json.append(String.format(
+          "  \"Item%d\": {\"type\": \"object\", \"properties\": {%n"
+              + "   \"id\": {\"type\": \"string\"},%n"
+              + "   \"count\": {\"type\": \"integer\", \"format\": \"int64\"}",
+          j));
+      if (2 * j + 1 < pathCount) {
+        json.append(
+            String.format(",%n   \"left\": {\"$ref\": \"#/definitions/Item%d\"}", 2 * j + 1));
+      }
+      if (2 * j + 2 < pathCount) {
+        json.append(
+            String.format(",%n   \"right\": {\"$ref\": \"#/definitions/Item%d\"}", 2 * j + 2));
+      }
+      json.append(String.format("}}%s%n", j + 1 < pathCount ? "," : ""));
+    }
+    json.append(" }\n}\n");
+    return json.toString();
+  }
+
+  private static FileDescriptorProto dependency(int d, int messageCount) {
+    FileDescriptorProto.Builder file =
+        FileDescriptorProto.newBuilder()
+            .setName(dependencyFileName(d))
+            .setPackage(dependencyPackage(d))
+            .setSyntax("proto3");
+    SourceCodeInfo.Builder sourceInfo = SourceCodeInfo.newBuilder();
+    for (int i = 0; i < messageCount; i++) {
+      String next = "." + dependencyPackage(d) + "." + messageName((i + 1) % messageCount);
+      file.addMessageType(
+          DescriptorProto.newBuilder()
+              .setName(messageName(i))
+              .addField(field("name", 1, Type.TYPE_STRING, null))
+              .addField(field("next", 2, Type.TYPE_MESSAGE, next)));
+      sourceInfo.addLocation(comment(" A message of a dependency.\n", i, 4, i));
+      sourceInfo.addLocation(comment(" The name.\n", i, 4, i, 2, 0));
+    }
+    return file.setSourceCodeInfo(sourceInfo).build();
+  }
+
+  private static String dependencyFileName(int d) {
+    return "bench/deps/dep" + d + ".proto";
+  }
+
+  private static String dependencyPackage(int d) {
+    return "bench.deps.d" + d;
+  }
+
+  private static String messageName(int i) {
+    return "Message" + i;
+  }
+
+  private static String typeName(int i) {
+    return "." + PACKAGE + "." + messageName(i);
+  }
+
+  private static String methodName(int j) {
+    return "GetMessage" + j;
+  }
+
+  private static FieldDescriptorProto field(String name, int number, Type type, String typeName) {
+    FieldDescriptorProto.Builder field =
+        FieldDescriptorProto.newBuilder()
+            .setName(name)
+            .setJsonName(name)
+            .setNumber(number)
+            .setLabel(Label.LABEL_OPTIONAL)
+            .setType(type);
+    if (typeName != null) {
+      field.setTypeName(typeName);
+    }
+    return field.build();
+  }
+
+  private static Location comment(String text, int line, int... path) {
+    Location.Builder location = Location.newBuilder().setLeadingComments(text);
+    for (int segment : path) {
+      location.addPath(segment);
+    }
+    return location.addSpan(line).addSpan(0).addSpan(1).build();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo;
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo.Location;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link SourceLocationIndex} with the string-keyed multimap it replaced, on the source
+ * code info of a file with commented messages and fields. Each benchmark builds the index and
+ * looks up the path of every message and field, which is what documenting a file does. Run with
+ * {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceLocationIndexBenchmark {
+
+  private static final Joiner DOT_JOINER = Joiner.on('.');
+  private static final int FIELDS_PER_MESSAGE = 10;
+
+  @Param({"100", "5000"})
+  public int messages;
+
+  private SourceCodeInfo sourceCodeInfo;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SourceCodeInfo.Builder info = SourceCodeInfo.newBuilder();
+    for (int i = 0; i < messages; i++) {
+      info.addLocation(location(" A message.\n", 4, i));
+      for (int j = 0; j < FIELDS_PER_MESSAGE; j++) {
+        info.addLocation(location(" A field.\n", 4, i, 2, j));
+      }
+    }
+    sourceCodeInfo = info.build();
+  }
+
+  @Benchmark
+  public int stringMultimap() {
+    ImmutableListMultimap.Builder<String, Location> builder = ImmutableListMultimap.builder();
+    for (Location location : sourceCodeInfo.getLocationList()) {
+      builder.put(DOT_JOINER.join(location.getPathList()), location);
+    }
+    ImmutableListMultimap<String, Location> index = builder.build();
+    int found = 0;
+    for (int i = 0; i < messages; i++) {
+      String messagePath = String.format("%d.%d", 4, i);
+      found += index.get(messagePath).size();
+      for (int j = 0; j < FIELDS_PER_MESSAGE; j++) {
+        found += index.get(String.format("%s.%d.%d", messagePath, 2, j)).size();
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public int intPathIndex() {
+    SourceLocationIndex index = new SourceLocationIndex(sourceCodeInfo);
+    int found = 0;
+    for (int i = 0; i < messages; i++) {
+      int[] messagePath = ProtoElement.buildPath(null, 4, i);
+      found += index.get(messagePath) != null ? 1 : 0;
+      for (int j = 0; j < FIELDS_PER_MESSAGE; j++) {
+        found += index.get(ProtoElement.buildPath(messagePath, 2, j)) != null ? 1 : 0;
+      }
+    }
+    return found;
+  }
+
+  private static Location location(String comment, int... path) {
+    Location.Builder location = Location.newBuilder().setLeadingComments(comment);
+    for (int segment : path) {
+      location.addPath(segment);
+    }
+    return location.build();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-node cost of {@link GenericVisitor} dispatch.
+ *
+ * <p>Each node is dispatched through a @VisitsBefore, an @Accepts and a @VisitsAfter method, which
+ * is the shape of the pre-order visitors running over every element of a model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatcherBenchmark {
+
+  private static final int NODES = 10000;
+
+  private Node[] nodes;
+  private CountingVisitor visitor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    nodes = new Node[NODES];
+    for (int i = 0; i < NODES; i++) {
+      // Mix types so call sites see several receivers, as with real model elements.
+      switch (i % 3) {
+        case 0:
+          nodes[i] = new Leaf();
+          break;
+        case 1:
+          nodes[i] = new Branch();
+          break;
+        default:
+          nodes[i] = new SubBranch();
+          break;
+      }
+    }
+    visitor = new CountingVisitor();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NODES)
+  public int dispatchPerNode() {
+    visitor.count = 0;
+    for (Node node : nodes) {
+      visitor.visit(node);
+    }
+    return visitor.count;
+  }
+
+  abstract static class Node {}
+
+  static class Leaf extends Node {}
+
+  static class Branch extends Node {}
+
+  static class SubBranch extends Branch {}
+
+  static class CountingVisitor extends GenericVisitor<Node> {
+
+    int count;
+
+    CountingVisitor() {
+      super(Node.class);
+    }
+
+    @VisitsBefore
+    boolean before(Node node) {
+      count++;
+      return true;
+    }
+
+    @Accepts
+    void accept(Branch branch) {
+      count++;
+    }
+
+    @VisitsAfter
+    void after(Node node) {
+      count++;
+    }
+  }
+}
@@ -30,12 +30,15 @@ import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.ProtoElement;
 import com.google.api.tools.framework.model.stages.Resolved;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Base class for implementing config aspects.
@@ -63,6 +66,11 @@ public abstract class ConfigAspectBase implements ConfigAspect {
   private final Multimap<Class<? extends Element>, LintRule<? extends Element>> lintRules =
       LinkedHashMultimap.create();
 
+  // The rules applying to each element class, in the order they run. Derived from lintRules on
+  // first use for a class, and invalidated when rules are registered.
+  private final ConcurrentMap<Class<?>, ImmutableList<LintRule<Element>>> lintRulesByClass =
+      new ConcurrentHashMap<>();
+
   // The set of lint rule names used by this aspect.
   private final Set<String> lintRuleNames = Sets.newLinkedHashSet();
 
@@ -100,6 +108,7 @@ public abstract class ConfigAspectBase implements ConfigAspect {
    */
   public <E extends Element> void registerLintRule(LintRule<E> rule) {
     lintRules.put(rule.getElementClass(), rule);
+    lintRulesByClass.clear();
     registerLintRuleName(rule.getName());
   }
 
@@ -161,17 +170,37 @@ public abstract class ConfigAspectBase implements ConfigAspect {
   }
 
   /** Runs all rules for the given element. */
-  @SuppressWarnings("unchecked")
   private void runRules(Element elem) {
-    Class<?> type = elem.getClass();
+    for (LintRule<Element> rule : getLintRules(elem.getClass())) {
+      rule.run(elem);
+    }
+  }
+
+  /**
+   * Returns the registered rules which apply to elements of the given class, in the order {@link
+   * #lint(ProtoElement)} runs them: rules for the class itself first, then rules for each of its
+   * super classes. The list is computed once per class.
+   */
+  public ImmutableList<LintRule<Element>> getLintRules(Class<? extends Element> elemClass) {
+    ImmutableList<LintRule<Element>> rules = lintRulesByClass.get(elemClass);
+    if (rules == null) {
+      rules = collectLintRules(elemClass);
+      lintRulesByClass.put(elemClass, rules);
+    }
+    return rules;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ImmutableList<LintRule<Element>> collectLintRules(Class<?> elemClass) {
+    ImmutableList.Builder<LintRule<Element>> rules = ImmutableList.builder();
+    Class<?> type = elemClass;
     while (Element.class.isAssignableFrom(type)) {
       for (LintRule<? extends Element> rule : lintRules.get((Class<? extends Element>) type)) {
-        @SuppressWarnings("unchecked")
-        LintRule<Element> castedRule = (LintRule<Element>) rule;
-        castedRule.run(elem);
+        rules.add((LintRule<Element>) rule);
       }
       type = type.getSuperclass();
     }
+    return rules.build();
   }
 
   /** Default implementation of starting normalization; does nothing. */
@@ -25,12 +25,16 @@ import com.google.api.tools.framework.model.ProtoElement;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +73,7 @@ public class ConfigRuleSet<RuleType extends Message> {
       Pattern.compile("^(\\w+(\\.\\w+)*((\\.\\*)|(\\.\\(\\w+(\\.\\w+)*\\)))?)|\\*$");
 
   private final List<RuleWrapper<RuleType>> rules;
+  private final SelectorIndex selectorIndex;
   private final FieldDescriptor selectorFieldDesc;
   private final Map<ProtoElement, RuleType> ruleMap = Maps.newHashMap();
   private final DiagReporter diagReporter;
@@ -100,6 +105,7 @@ public class ConfigRuleSet<RuleType extends Message> {
         "Config rule selector field not present or has unexpected name, type, or cardinality.");
 
     this.rules = minimize(buildRules(rules));
+    this.selectorIndex = new SelectorIndex(this.rules);
 
     for (RuleWrapper<RuleType> ruleWrapper : this.rules) {
       unmatchedRules.put(ruleWrapper, Sets.newHashSet(ruleWrapper.selectors));
@@ -150,9 +156,13 @@ public class ConfigRuleSet<RuleType extends Message> {
    */
   private List<RuleWrapper<RuleType>> minimize(List<RuleWrapper<RuleType>> rules) {
     ImmutableList.Builder<RuleWrapper<RuleType>> minimized = ImmutableList.builder();
+    // The index is built before any selector is removed; this is sound because a rule is only
+    // ever checked against subsequent rules, which are still unminimized at that point.
+    SubsumptionIndex subsumptionIndex =
+        maintainSelectorMinimizationBugExperimentEnabled() ? null : new SubsumptionIndex(rules);
     for (int i = 0; i < rules.size(); i++) {
       RuleWrapper<RuleType> ruleWrapper = rules.get(i);
-      ruleWrapper.minimizeSelectors(rules, i + 1);
+      ruleWrapper.minimizeSelectors(rules, i + 1, subsumptionIndex);
       if (!ruleWrapper.selectors.isEmpty()) {
         minimized.add(ruleWrapper);
       }
@@ -168,22 +178,22 @@ public class ConfigRuleSet<RuleType extends Message> {
       return result;
     }
 
-    for (int i = rules.size() - 1; i >= 0; i--) {
-      RuleWrapper<RuleType> ruleWrapper = rules.get(i);
-      String matchedSelector = ruleWrapper.getMatchedSelector(elem);
-      if (matchedSelector != null) {
-        ruleMap.put(elem, ruleWrapper.rule);
-        if (unmatchedRules.containsKey(ruleWrapper)) {
-          Set<String> unmatchedSelectors = unmatchedRules.get(ruleWrapper);
-          unmatchedSelectors.remove(matchedSelector);
-          if (unmatchedSelectors.isEmpty()) {
-            unmatchedRules.remove(ruleWrapper);
-          }
-        }
-        return ruleWrapper.rule;
+    // The last rule with a matching selector wins.
+    int index = selectorIndex.lastMatchingRule(elem.getFullName());
+    if (index < 0) {
+      return null;
+    }
+    RuleWrapper<RuleType> ruleWrapper = rules.get(index);
+    String matchedSelector = ruleWrapper.getMatchedSelector(elem);
+    ruleMap.put(elem, ruleWrapper.rule);
+    if (unmatchedRules.containsKey(ruleWrapper)) {
+      Set<String> unmatchedSelectors = unmatchedRules.get(ruleWrapper);
+      unmatchedSelectors.remove(matchedSelector);
+      if (unmatchedSelectors.isEmpty()) {
+        unmatchedRules.remove(ruleWrapper);
       }
     }
-    return null;
+    return ruleWrapper.rule;
   }
 
   /** Reports any unmatched rules. */
@@ -204,6 +214,141 @@ public class ConfigRuleSet<RuleType extends Message> {
     }
   }
 
+  /**
+   * Returns true if protoElementNameOrSelector is a system proto element or system element
+   * selector.
+   */
+  private static boolean isSystemElementOrSelector(String protoElementNameOrSelector) {
+    for (String systemProtoPrefix : SYSTEM_PROTO_PREFIXES) {
+      if (protoElementNameOrSelector.startsWith(systemProtoPrefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Index from selectors to the position of the last rule containing them, answering which rule
+   * matches a name without scanning all rules.
+   *
+   * <p>Exact selectors are looked up by the full name. Wildcard selectors 'a.b.*' match names
+   * starting with 'a.b.', so they are looked up by each prefix of the name ending in a dot. The
+   * cost of a lookup is proportional to the number of segments of the name.
+   */
+  private class SelectorIndex {
+    private final Map<String, Integer> exactSelectors = Maps.newHashMap();
+    private final Map<String, Integer> wildcardPrefixes = Maps.newHashMap();
+    private int lastStarRule = -1;
+
+    private SelectorIndex(List<RuleWrapper<RuleType>> rules) {
+      for (int i = 0; i < rules.size(); i++) {
+        for (String selector : rules.get(i).selectors) {
+          if (selector.equals("*")) {
+            lastStarRule = i;
+          } else if (selector.endsWith(".*")) {
+            wildcardPrefixes.put(selector.substring(0, selector.length() - 1), i);
+          } else {
+            exactSelectors.put(selector, i);
+          }
+        }
+      }
+    }
+
+    /** Returns the position of the last rule matching the name, or -1 if there is none. */
+    private int lastMatchingRule(String name) {
+      boolean systemName = isSystemElementOrSelector(name);
+      int result = -1;
+      Integer exact = exactSelectors.get(name);
+      if (exact != null) {
+        result = exact;
+      }
+      if (!wildcardPrefixes.isEmpty()) {
+        for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+          String prefix = name.substring(0, dot + 1);
+          Integer wildcard = wildcardPrefixes.get(prefix);
+          // A system name only matches system selectors.
+          if (wildcard != null
+              && wildcard > result
+              && (!systemName || isSystemElementOrSelector(prefix + "*"))) {
+            result = wildcard;
+          }
+        }
+      }
+      if (!systemName && lastStarRule > result) {
+        result = lastStarRule;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Index from selectors to the positions of the rules containing them, answering which subsequent
+   * rule first subsumes a selector without scanning all subsequent rules. Mirrors {@link
+   * RuleWrapper#subsumes} with the selector minimization bug experiment disabled.
+   *
+   * <p>A selector is subsumed by an equal selector, by '*' unless it is a system selector, and by
+   * a wildcard 'a.b.*' if it starts with 'a.b.' (a trailing '*' of a wildcard selector is ignored),
+   * so candidates are looked up by each prefix of the selector ending in a dot.
+   */
+  private class SubsumptionIndex {
+    private final ListMultimap<String, Integer> exactSelectors = ArrayListMultimap.create();
+    private final ListMultimap<String, Integer> wildcardPrefixes = ArrayListMultimap.create();
+    private final List<Integer> starRules = Lists.newArrayList();
+
+    private SubsumptionIndex(List<RuleWrapper<RuleType>> rules) {
+      for (int i = 0; i < rules.size(); i++) {
+        for (String selector : rules.get(i).selectors) {
+          if (selector.equals("*")) {
+            starRules.add(i);
+          } else if (selector.endsWith(".*")) {
+            wildcardPrefixes.put(selector.substring(0, selector.length() - 1), i);
+          } else {
+            exactSelectors.put(selector, i);
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the position of the first rule at or after startIndex with a selector subsuming the
+     * given one, or -1 if there is none.
+     */
+    private int firstSubsumingRule(String selector, int startIndex) {
+      boolean systemSelector = isSystemElementOrSelector(selector);
+      int result = systemSelector ? -1 : firstAtOrAfter(starRules, startIndex);
+      if (selector.equals("*")) {
+        return result;
+      }
+      result = earliest(result, firstAtOrAfter(exactSelectors.get(selector), startIndex));
+      if (!wildcardPrefixes.isEmpty()) {
+        String name =
+            selector.endsWith(".*") ? selector.substring(0, selector.length() - 1) : selector;
+        for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+          String prefix = name.substring(0, dot + 1);
+          // A system selector is only subsumed by system selectors.
+          if (!systemSelector || isSystemElementOrSelector(prefix + "*")) {
+            result =
+                earliest(result, firstAtOrAfter(wildcardPrefixes.get(prefix), startIndex));
+          }
+        }
+      }
+      return result;
+    }
+
+    /** Returns the first of the ascending positions at or after startIndex, or -1. */
+    private int firstAtOrAfter(List<Integer> positions, int startIndex) {
+      int index = Collections.binarySearch(positions, startIndex);
+      if (index < 0) {
+        index = -index - 1;
+      }
+      return index < positions.size() ? positions.get(index) : -1;
+    }
+
+    private int earliest(int position, int other) {
+      return position < 0 || (other >= 0 && other < position) ? other : position;
+    }
+  }
+
   /**
    * Represent Rule which keeps RuleType with comma delimited selectors Flattened into {@link
    * Iterable} of selectors.
@@ -263,45 +408,54 @@ public class ConfigRuleSet<RuleType extends Message> {
     }
 
     /**
-     * Returns true if protoElementNameOrSelector is a system proto element or system element
-     * selector.
+     * Remove selectors if they are subsumed by any selectors of given rule list. Uses the given
+     * index to find the subsuming rule if it is not null.
      */
-    private boolean isSystemElementOrSelector(String protoElementNameOrSelector) {
-      for (String systemProtoPrefix : SYSTEM_PROTO_PREFIXES) {
-        if (protoElementNameOrSelector.startsWith(systemProtoPrefix)) {
-          return true;
-        }
-      }
-      return false;
-    }
-
-    /** Remove selectors if they are subsumed by any selectors of given rule list. */
-    private void minimizeSelectors(List<RuleWrapper<WrappedRuleType>> rules, int startIndex) {
+    private void minimizeSelectors(
+        List<RuleWrapper<WrappedRuleType>> rules,
+        int startIndex,
+        @Nullable SubsumptionIndex subsumptionIndex) {
       Location toBeMatchedRuleLocation =
           configLocationResolver.getLocationInConfig(rule, SELECTOR_FIELD_NAME);
       for (Iterator<String> iter = selectors.iterator(); iter.hasNext(); ) {
         String selector = iter.next();
-        for (int i = startIndex; i < rules.size(); i++) {
-          RuleWrapper<WrappedRuleType> ruleWrapper = rules.get(i);
-          if (isSubsumed(selector, ruleWrapper.selectors)) {
-            Location matchingRuleLocation =
-                configLocationResolver.getLocationInConfig(ruleWrapper.rule, SELECTOR_FIELD_NAME);
-            if (!maintainSelectorMinimizationBugExperimentEnabled()
-                && isSameYamlFile(matchingRuleLocation, toBeMatchedRuleLocation)) {
-              diagReporter.reportError(
-                  MessageLocationContext.create(ruleWrapper.rule, SELECTOR_FIELD_NAME),
-                  "Selector '%s' at location %s subsumes selector '%s' at location %s. "
-                      + "Subsuming selectors in the same file is not supported.",
-                  ruleWrapper.getUnflattenedSelector(),
-                  matchingRuleLocation.getDisplayString(),
-                  selector,
-                  toBeMatchedRuleLocation.getDisplayString());
-            }
-            iter.remove();
-            break;
-          }
+        int subsuming =
+            subsumptionIndex != null
+                ? subsumptionIndex.firstSubsumingRule(selector, startIndex)
+                : firstSubsumingRule(selector, rules, startIndex);
+        if (subsuming < 0) {
+          continue;
+        }
+        RuleWrapper<WrappedRuleType> ruleWrapper = rules.get(subsuming);
+        Location matchingRuleLocation =
+            configLocationResolver.getLocationInConfig(ruleWrapper.rule, SELECTOR_FIELD_NAME);
+        if (!maintainSelectorMinimizationBugExperimentEnabled()
+            && isSameYamlFile(matchingRuleLocation, toBeMatchedRuleLocation)) {
+          diagReporter.reportError(
+              MessageLocationContext.create(ruleWrapper.rule, SELECTOR_FIELD_NAME),
+              "Selector '%s' at location %s subsumes selector '%s' at location %s. "
+                  + "Subsuming selectors in the same file is not supported.",
+              ruleWrapper.getUnflattenedSelector(),
+              matchingRuleLocation.getDisplayString(),
+              selector,
+              toBeMatchedRuleLocation.getDisplayString());
+        }
+        iter.remove();
+      }
+    }
+
+    /**
+     * Returns the position of the first rule at or after startIndex with a selector subsuming the
+     * given one, or -1 if there is none.
+     */
+    private int firstSubsumingRule(
+        String selector, List<RuleWrapper<WrappedRuleType>> rules, int startIndex) {
+      for (int i = startIndex; i < rules.size(); i++) {
+        if (isSubsumed(selector, rules.get(i).selectors)) {
+          return i;
         }
       }
+      return -1;
     }
 
     private boolean isSameYamlFile(Location location1, Location location2) {
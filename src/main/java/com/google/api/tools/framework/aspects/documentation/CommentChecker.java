@@ -44,4 +44,10 @@ final class CommentChecker implements DocumentationProcessor {
     DocumentationUtil.filter(diagReporter, null, location, source);
     return source;
   }
+
+  /** The comment filter only reports errors for unbalanced internal comment tags. */
+  @Override
+  public boolean appliesTo(CommentMarkers markers) {
+    return markers.hasInternalCommentTags();
+  }
 }
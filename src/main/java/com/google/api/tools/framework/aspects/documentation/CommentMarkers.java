@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.aspects.documentation;
+
+/**
+ * The markers of documentation syntax found in a comment by a single scan over its characters.
+ * Processors use them to tell whether a comment contains anything they act on, without matching
+ * the comment against their patterns.
+ *
+ * <p>Markers are conservative: a marker may be set for a comment the corresponding pattern does
+ * not match, but is never missing for one it does.
+ */
+final class CommentMarkers {
+
+  private final boolean hasLinks;
+  private final boolean hasInstructions;
+  private final boolean hasInternalCommentTags;
+  private final boolean hasHeadingsOrHtml;
+
+  private CommentMarkers(
+      boolean hasLinks,
+      boolean hasInstructions,
+      boolean hasInternalCommentTags,
+      boolean hasHeadingsOrHtml) {
+    this.hasLinks = hasLinks;
+    this.hasInstructions = hasInstructions;
+    this.hasInternalCommentTags = hasInternalCommentTags;
+    this.hasHeadingsOrHtml = hasHeadingsOrHtml;
+  }
+
+  /** Scans the given comment for markers. */
+  static CommentMarkers scan(String source) {
+    boolean links = false;
+    boolean instructions = false;
+    boolean internalCommentTags = false;
+    boolean headingsOrHtml = false;
+    boolean lineStart = false;
+    for (int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      switch (c) {
+        case '[':
+          links = true;
+          break;
+        case '#':
+        case '<':
+          headingsOrHtml = true;
+          break;
+        case '(':
+          // Begin tags "(==" and "(--".
+          instructions |= source.startsWith("==", i + 1);
+          internalCommentTags |= source.startsWith("--", i + 1);
+          break;
+        case '=':
+        case '-':
+          // End tags "==)" and "--)", and setext heading underlines.
+          if (i + 2 < source.length()
+              && source.charAt(i + 1) == c
+              && source.charAt(i + 2) == ')') {
+            if (c == '=') {
+              instructions = true;
+            } else {
+              internalCommentTags = true;
+            }
+          }
+          headingsOrHtml |= lineStart && isUnderline(source, i);
+          break;
+        default:
+          break;
+      }
+      lineStart = c == '\n';
+    }
+    return new CommentMarkers(links, instructions, internalCommentTags, headingsOrHtml);
+  }
+
+  /**
+   * Returns whether the line starting at the given index consists of a run of its first character,
+   * followed by optional spaces and tabs.
+   */
+  private static boolean isUnderline(String source, int start) {
+    char c = source.charAt(start);
+    int i = start;
+    while (i < source.length() && source.charAt(i) == c) {
+      i++;
+    }
+    while (i < source.length() && (source.charAt(i) == ' ' || source.charAt(i) == '\t')) {
+      i++;
+    }
+    return i == source.length() || source.charAt(i) == '\n';
+  }
+
+  /** Returns whether the comment may contain markdown links "[text][id]". */
+  boolean hasLinks() {
+    return hasLinks;
+  }
+
+  /**
+   * Returns whether the comment may contain instructions "(== code arg ==)", including file
+   * inclusions, or their escaped tags.
+   */
+  boolean hasInstructions() {
+    return hasInstructions;
+  }
+
+  /** Returns whether the comment may contain internal comment tags "(--" or "--)". */
+  boolean hasInternalCommentTags() {
+    return hasInternalCommentTags;
+  }
+
+  /** Returns whether the comment may contain section headings or HTML code blocks. */
+  boolean hasHeadingsOrHtml() {
+    return hasHeadingsOrHtml;
+  }
+}
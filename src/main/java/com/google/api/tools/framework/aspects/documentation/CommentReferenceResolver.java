@@ -23,10 +23,12 @@ import com.google.api.tools.framework.model.ProtoElement;
 import com.google.api.tools.framework.model.SymbolTable;
 import com.google.api.tools.framework.model.Visitor;
 import com.google.api.tools.framework.util.VisitsBefore;
-import java.util.HashSet;
-import java.util.Set;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * This class is responsible for resolving the relative name references in comments.
@@ -54,6 +56,11 @@ import java.util.regex.Pattern;
  * other processors. It will replace all the relative names with their respective resolved full name
  * in the comment. In case where it cannot make a resolution, it will not change or replace the
  * text.
+ *
+ * <p>The full names of the proto elements in scope are indexed as a tree of their dot-separated
+ * segments, so a reference is resolved by walking up from the node of the element's own name
+ * instead of looking up every candidate name. Resolutions are cached by element name and
+ * reference, and shared by all comments processed with the same resolver.
  */
 public class CommentReferenceResolver implements DocumentationProcessor {
   public static final Pattern MARKDOWN_LINK_REGEX =
@@ -61,15 +68,34 @@ public class CommentReferenceResolver implements DocumentationProcessor {
   private static final int TEXT_GROUP_NUMBER = 1;
   private static final int ID_GROUP_NUMBER = 2;
 
-  private Set<String> protoElemFullNames;
+  private final NameNode protoElemNames = new NameNode(null);
+  private final Map<Map.Entry<String, String>, Optional<String>> resolvedLinks =
+      Maps.newHashMap();
 
   public CommentReferenceResolver(Model model) {
-    protoElemFullNames = new HashSet<>();
-    // Build the set of fully qualified names in this model.
+    // Build the index of fully qualified names in this model. Elements are visited after their
+    // parents, so the node of an element extends the node its parent's children are named under.
+    final Map<ProtoElement, NameNode> childScopes = Maps.newIdentityHashMap();
     new Visitor(model.getScoper()) {
       @VisitsBefore
       public void accept(ProtoElement element) {
-        protoElemFullNames.add(element.getFullName());
+        NameNode parentScope =
+            element.getParent() == null ? null : childScopes.get(element.getParent());
+        NameNode node;
+        NameNode childScope;
+        if (parentScope != null) {
+          node = parentScope.child(element.getSimpleName());
+          childScope = node;
+        } else {
+          String fullName = element.getFullName();
+          node = protoElemNames.add(fullName);
+          // The names of elements in a file without package are not qualified.
+          childScope = fullName.isEmpty() ? protoElemNames : node;
+        }
+        if (node.element == null) {
+          node.element = element;
+        }
+        childScopes.put(element, childScope);
       }
     }.accept(model);
   }
@@ -93,15 +119,7 @@ public class CommentReferenceResolver implements DocumentationProcessor {
       if (id.isEmpty()) {
         id = text;
       }
-      Iterable<String> candidateNames;
-      String resolution = null;
-      candidateNames = SymbolTable.nameCandidates(element.getFullName(), id);
-      for (String candidateName : candidateNames) {
-        if (protoElemFullNames.contains(candidateName)) {
-          resolution = candidateName;
-          break;
-        }
-      }
+      String resolution = resolveLink(element.getFullName(), id);
 
       sb.append(comment.substring(lastMatchedEnd, linkMatcher.start(TEXT_GROUP_NUMBER)));
       sb.append(text);
@@ -118,4 +136,119 @@ public class CommentReferenceResolver implements DocumentationProcessor {
     sb.append(comment.substring(lastMatchedEnd));
     return sb.toString();
   }
+
+  /**
+   * Resolves the id of a link in the comment of the element with the given full name. Candidate
+   * names are tried in the order of {@link SymbolTable#nameCandidates}. Returns the full name of
+   * the referenced proto element, or null if the id does not refer to one.
+   */
+  @Nullable
+  public String resolveLink(String scope, String id) {
+    Map.Entry<String, String> key = Maps.immutableEntry(scope, id);
+    Optional<String> resolution = resolvedLinks.get(key);
+    if (resolution == null) {
+      resolution = Optional.fromNullable(resolveInIndex(scope, id));
+      resolvedLinks.put(key, resolution);
+    }
+    return resolution.orNull();
+  }
+
+  @Nullable
+  private String resolveInIndex(String scope, String id) {
+    if (id.startsWith(".")) {
+      return elementName(protoElemNames.find(id.substring(1)));
+    }
+    // Start at the innermost enclosing scope in the index. Candidates in scopes nested deeper can
+    // not be names of elements, as the index contains all prefixes of these names.
+    NameNode scopeNode = scope.isEmpty() ? protoElemNames : protoElemNames.findInnermost(scope);
+    for (NameNode node = scopeNode; node != null; node = node.parent) {
+      String resolution = elementName(node.find(id));
+      if (resolution != null) {
+        return resolution;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String elementName(@Nullable NameNode node) {
+    return node == null || node.element == null ? null : node.element.getFullName();
+  }
+
+  @Override
+  public boolean appliesTo(CommentMarkers markers) {
+    return markers.hasLinks();
+  }
+
+  /**
+   * A node of the index of element full names. The root stands for the empty scope, and each
+   * other node for the name of its parent extended by one segment.
+   */
+  private static class NameNode {
+    @Nullable private final NameNode parent;
+    private final Map<String, NameNode> children = Maps.newHashMap();
+    // The element with the full name of this node, if there is one.
+    @Nullable private ProtoElement element;
+
+    private NameNode(@Nullable NameNode parent) {
+      this.parent = parent;
+    }
+
+    /** Returns the child node for the given segment, adding it if needed. */
+    private NameNode child(String segment) {
+      NameNode child = children.get(segment);
+      if (child == null) {
+        child = new NameNode(this);
+        children.put(segment, child);
+      }
+      return child;
+    }
+
+    /** Returns the node for the given name relative to this node, adding nodes if needed. */
+    private NameNode add(String name) {
+      NameNode node = this;
+      int start = 0;
+      int end;
+      while ((end = name.indexOf('.', start)) >= 0) {
+        node = node.child(name.substring(start, end));
+        start = end + 1;
+      }
+      return node.child(name.substring(start));
+    }
+
+    /** Returns the node for the given name relative to this node, or null if there is none. */
+    @Nullable
+    private NameNode find(String name) {
+      NameNode node = this;
+      int start = 0;
+      int end;
+      while ((end = name.indexOf('.', start)) >= 0) {
+        node = node.children.get(name.substring(start, end));
+        if (node == null) {
+          return null;
+        }
+        start = end + 1;
+      }
+      return node.children.get(name.substring(start));
+    }
+
+    /** Returns the node of the longest prefix of the given name which is in the index. */
+    private NameNode findInnermost(String name) {
+      NameNode node = this;
+      int start = 0;
+      while (true) {
+        int end = name.indexOf('.', start);
+        NameNode child =
+            node.children.get(end < 0 ? name.substring(start) : name.substring(start, end));
+        if (child == null) {
+          return node;
+        }
+        if (end < 0) {
+          return child;
+        }
+        node = child;
+        start = end + 1;
+      }
+    }
+  }
 }
@@ -33,4 +33,10 @@ interface DocumentationProcessor {
    * @param element the element for which the documentation source is being processed
    */
   String process(String source, LocationContext sourceLocation, Element element);
+
+  /**
+   * Returns whether the processor may change, or report diagnostics for, a source with the given
+   * markers. {@link DocumentationProcessorSet} skips processors which do not apply to a source.
+   */
+  boolean appliesTo(CommentMarkers markers);
 }
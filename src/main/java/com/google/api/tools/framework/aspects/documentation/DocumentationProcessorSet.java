@@ -22,16 +22,26 @@ import com.google.api.tools.framework.model.Model;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Processor set that contains a set of registered {@link DocumentationProcessor}s to process
  * given documentation in a chained way.
+ *
+ * <p>Each source is scanned once for {@link CommentMarkers}, and processors which do not apply to
+ * it are skipped. The standard set also caches the processed sources which neither contain
+ * instructions, which have effects on the element, nor internal comment tags, which may be
+ * reported as errors at the location of the source. The cache is keyed by the source and, if it
+ * contains links, the full name of the element the links are resolved relative to.
  */
 public class DocumentationProcessorSet {
 
   private final List<DocumentationProcessor> processors;
+  @Nullable private final Map<Map.Entry<String, String>, String> processedSources;
 
   /**
    * Returns {@link DocumentationProcessorSet} with standard processors registered.
@@ -40,13 +50,20 @@ public class DocumentationProcessorSet {
     return new DocumentationProcessorSet(
         Lists.newArrayList(
             new CommentReferenceResolver(model),
-            new SourceNormalizer(model.getDiagReporter(), model.getDataPath()),
-            new CommentChecker(model.getDiagReporter())));
+            new SourceNormalizer(model),
+            new CommentChecker(model.getDiagReporter())),
+        true);
   }
 
   public DocumentationProcessorSet(Collection<DocumentationProcessor> processors) {
+    this(processors, false);
+  }
+
+  private DocumentationProcessorSet(
+      Collection<DocumentationProcessor> processors, boolean cacheProcessedSources) {
     Preconditions.checkNotNull(processors, "processors should not be null");
     this.processors = Lists.newArrayList(processors);
+    this.processedSources = cacheProcessedSources ? Maps.newHashMap() : null;
   }
 
   /**
@@ -58,9 +75,36 @@ public class DocumentationProcessorSet {
       return source;
     }
 
+    CommentMarkers markers = CommentMarkers.scan(source);
+    if (processedSources == null
+        || markers.hasInstructions()
+        || markers.hasInternalCommentTags()) {
+      return runProcessors(source, markers, location, element);
+    }
+    Map.Entry<String, String> key =
+        Maps.immutableEntry(
+            source, markers.hasLinks() && element != null ? element.getFullName() : "");
+    String result = processedSources.get(key);
+    if (result == null) {
+      result = runProcessors(source, markers, location, element);
+      processedSources.put(key, result);
+    }
+    return result;
+  }
+
+  private String runProcessors(
+      String source, CommentMarkers markers, LocationContext location, Element element) {
     String result = source;
     for (DocumentationProcessor processor : processors) {
-      result = processor.process(result, location, element);
+      if (!processor.appliesTo(markers)) {
+        continue;
+      }
+      String processed = processor.process(result, location, element);
+      if (!processed.equals(result)) {
+        // The processor may have introduced new markers, for example with included content.
+        markers = CommentMarkers.scan(processed);
+      }
+      result = processed;
     }
     return result;
   }
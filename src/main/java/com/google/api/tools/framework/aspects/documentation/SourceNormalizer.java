@@ -28,6 +28,7 @@ import com.google.api.tools.framework.model.DiagReporter;
 import com.google.api.tools.framework.model.DiagReporter.LocationContext;
 import com.google.api.tools.framework.model.DiagReporter.ResolvedLocation;
 import com.google.api.tools.framework.model.Element;
+import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.SimpleLocation;
 import com.google.api.tools.framework.util.VisitsAfter;
 import com.google.api.tools.framework.util.VisitsBefore;
@@ -39,6 +40,7 @@ import com.google.common.collect.Sets;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * Normalizes documentation source by substituting file inclusion instructions with external
@@ -50,11 +52,25 @@ class SourceNormalizer implements DocumentationProcessor {
 
   private final DiagReporter diagResolver;
   private final String docPath;
+  @Nullable private final Model model;
 
   public SourceNormalizer(DiagReporter diagReporter, String docPath) {
+    this(diagReporter, docPath, null);
+  }
+
+  /**
+   * Creates a normalizer which records the files it includes on the given model, see {@link
+   * Model#recordIncludedDataFile(String, String)}.
+   */
+  public SourceNormalizer(Model model) {
+    this(model.getDiagReporter(), model.getDataPath(), model);
+  }
+
+  private SourceNormalizer(DiagReporter diagReporter, String docPath, @Nullable Model model) {
     Preconditions.checkNotNull(diagReporter, "diagCollector should not be null.");
     this.diagResolver = diagReporter;
     this.docPath = docPath;
+    this.model = model;
   }
 
   /**
@@ -87,6 +103,15 @@ class SourceNormalizer implements DocumentationProcessor {
     return result;
   }
 
+  /**
+   * Sources without instructions, section headings and HTML code blocks normalize to themselves:
+   * text and other code blocks are copied unchanged.
+   */
+  @Override
+  public boolean appliesTo(CommentMarkers markers) {
+    return markers.hasInstructions() || markers.hasHeadingsOrHtml();
+  }
+
   /** Helper class to do actual normalization. */
   private class Normalizer extends SourceVisitor {
 
@@ -154,6 +179,9 @@ class SourceNormalizer implements DocumentationProcessor {
         return false;
       }
       String content = inclusion.getContent();
+      if (model != null && content != null) {
+        model.recordIncludedDataFile(filePath, content);
+      }
       if (Strings.isNullOrEmpty(content)) {
         return false;
       }
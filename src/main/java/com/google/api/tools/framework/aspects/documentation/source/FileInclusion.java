@@ -106,7 +106,12 @@ public class FileInclusion extends ContentElement {
     }
   }
 
-  private static String resolveFilePath(String docPath, String relativeFilePath) {
+  /**
+   * Returns the path of the first readable file with the given relative path in the directories of
+   * docPath, or null if there is none.
+   */
+  @Nullable
+  public static String resolveFilePath(String docPath, String relativeFilePath) {
     for (String base : Splitter.on(File.pathSeparator).split(docPath)) {
       File file = new File(base, relativeFilePath);
       if (file.canRead()) {
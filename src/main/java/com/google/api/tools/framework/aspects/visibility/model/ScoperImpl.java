@@ -34,11 +34,11 @@ import com.google.api.tools.framework.model.Visitor;
 import com.google.api.tools.framework.util.Visits;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +48,9 @@ import java.util.Set;
  * reachable elements from a given set of roots and uses it to implement the {@link Scoper}
  * interface. During construction of a scoper, errors may be produced if scoping rules are violated.
  * See the documentation of API visibility for the rules.
+ *
+ * <p>Reachability is recorded in bit sets indexed by {@linkplain ProtoElement#getElementId()
+ * element ids}, so checking it is an array probe.
  */
 public abstract class ScoperImpl implements Scoper {
 
@@ -62,14 +65,20 @@ public abstract class ScoperImpl implements Scoper {
   }
 
   private final Iterable<? extends ProtoElement> roots;
-  private final Set<ProtoElement> reachable = Sets.newHashSet();
-  private final Set<ProtoElement> hasUnreachableDescendants = Sets.newHashSet();
+  private final BitSet reachable = new BitSet();
+  private final BitSet hasUnreachableDescendants = new BitSet();
 
   protected final Map<ProtoElement, String> reasonForUnreachable = Maps.newLinkedHashMap();
   private final String errorContext;
 
   /** A predicate characterizing reachability. */
-  private final Predicate<ProtoElement> reachablePredicate = Predicates.in(reachable);
+  private final Predicate<ProtoElement> reachablePredicate =
+      new Predicate<ProtoElement>() {
+        @Override
+        public boolean apply(ProtoElement elem) {
+          return reachable.get(elem.getElementId());
+        }
+      };
 
   /**
    * Determines whether the given proto element is in scope. This method must be implemented by
@@ -92,12 +101,12 @@ public abstract class ScoperImpl implements Scoper {
 
   @Override
   public boolean isReachable(ProtoElement elem) {
-    return reachable.contains(elem);
+    return reachable.get(elem.getElementId());
   }
 
   @Override
   public boolean hasUnreachableDescendants(ProtoElement elem) {
-    return hasUnreachableDescendants.contains(elem);
+    return hasUnreachableDescendants.get(elem.getElementId());
   }
 
   @Override
@@ -164,8 +173,12 @@ public abstract class ScoperImpl implements Scoper {
    */
   private class Reacher extends Visitor {
 
-    // The set of elements visited so far. Used to shortcut visitation.
-    private final Set<ProtoElement> visited = Sets.newHashSet();
+    // The ids of the elements visited so far. Used to shortcut visitation.
+    private final BitSet visited = new BitSet();
+
+    private Reacher() {
+      super(Scoper.UNRESTRICTED, false);
+    }
 
     // Reach an interface. All methods will be reached which are in scope.
     @Visits
@@ -217,7 +230,7 @@ public abstract class ScoperImpl implements Scoper {
       // descendants.
       for (Field field : message.getFields()) {
         if (!isReachable(field)) {
-          hasUnreachableDescendants.add(message);
+          hasUnreachableDescendants.set(message.getElementId());
           if (field.isRequired()) {
             error(field, "A required field cannot be hidden. %s.", reasonForUnreachable(field));
           }
@@ -225,7 +238,7 @@ public abstract class ScoperImpl implements Scoper {
           TypeRef type = field.getType();
           if (type.isMessage() && hasUnreachableDescendants(type.getMessageType())
               || type.isEnum() && hasUnreachableDescendants(type.getEnumType())) {
-            hasUnreachableDescendants.add(message);
+            hasUnreachableDescendants.set(message.getElementId());
           }
         }
       }
@@ -268,7 +281,7 @@ public abstract class ScoperImpl implements Scoper {
               reasonForUnreachable(value));
         }
         if (!isReachable(value)) {
-          hasUnreachableDescendants.add(enumType);
+          hasUnreachableDescendants.set(enumType.getElementId());
         }
       }
     }
@@ -302,10 +315,11 @@ public abstract class ScoperImpl implements Scoper {
 
     // Visits the element if it is in scope.
     private void visitInScope(ProtoElement elem) {
-      if (!visited.add(elem)) {
+      if (visited.get(elem.getElementId())) {
         // Already visited, don't do it again.
         return;
       }
+      visited.set(elem.getElementId());
       if (!inScope(elem)) {
         // Not in scope, don't visit.
         return;
@@ -323,10 +337,11 @@ public abstract class ScoperImpl implements Scoper {
 
     // Marks an element as reachable. This also marks all parents as reachable.
     private void markAsReachable(ProtoElement elem) {
-      reachable.add(elem);
+      reachable.set(elem.getElementId());
       ProtoElement parent = elem.getParent();
       while (parent != null) {
-        if (reachable.add(parent)) {
+        if (!reachable.get(parent.getElementId())) {
+          reachable.set(parent.getElementId());
           // Parent was not reachable, check whether it is inScope and produce an error if not.
           if (!inScope(parent)) {
             errorSince(
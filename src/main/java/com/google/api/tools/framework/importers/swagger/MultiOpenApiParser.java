@@ -24,16 +24,25 @@ import com.github.fge.jsonschema.report.ProcessingReport;
 import com.github.fge.jsonschema.report.ProcessingMessage;
 import com.google.api.Service;
 import com.google.api.tools.framework.importers.swagger.aspects.utils.ExtensionNames;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.tools.FileWrapper;
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import io.swagger.models.Swagger;
 import io.swagger.parser.SwaggerParser;
+import io.swagger.parser.SwaggerResolver;
+import io.swagger.parser.util.SwaggerDeserializer;
 import io.swagger.util.Json;
 import io.swagger.util.Yaml;
 import java.io.File;
@@ -43,11 +52,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
 
 /**
  * Converts Multiple swagger files from in memory {@link FileWrapper}s to {@link OpenApiFile}
- * objects.
+ * objects. Files are parsed from memory, and only saved to disk if they reference other files.
  */
 public class MultiOpenApiParser {
 
@@ -56,6 +66,25 @@ public class MultiOpenApiParser {
       ImmutableMap.of("yaml", Yaml.mapper(), "yml", Yaml.mapper(), "json", Json.mapper());
   private static final String SWAGGER_VERSION_PROPERTY = "swagger";
   private static final String CURRENT_SWAGGER_VERSION = "2.0";
+  private static final String REF_PROPERTY = "$ref";
+
+  /** The OpenAPI schema, which is compiled once and shared by all conversions in the process. */
+  private static final Supplier<JsonSchema> SWAGGER_SCHEMA =
+      Suppliers.memoize(
+          new Supplier<JsonSchema>() {
+            @Override
+            public JsonSchema get() {
+              try {
+                URL url = Resources.getResource(SCHEMA_RESOURCE_PATH);
+                String swaggerSchema = Resources.toString(url, StandardCharsets.UTF_8);
+                JsonNode schemaNode = Yaml.mapper().readTree(swaggerSchema);
+                return JsonSchemaFactory.byDefault().getJsonSchema(schemaNode);
+              } catch (Exception ex) {
+                throw new IllegalStateException(
+                    "Cannot load the OpenAPI schema. " + ex.getMessage(), ex);
+              }
+            }
+          });
 
   /** Build resources for a single Swagger file. */
   @AutoValue
@@ -93,84 +122,182 @@ public class MultiOpenApiParser {
 
   public static List<OpenApiFile> convert(List<FileWrapper> openApiFiles, String typeNamespace)
       throws OpenApiConversionException {
-    Map<String, FileWrapper> savedFilePaths = OpenApiFileWriter.saveFilesOnDisk(openApiFiles);
-    Map<String, File> openApiFilesMap = validateInputFiles(savedFilePaths);
-    Service.Builder serviceBuilder = Service.newBuilder();
-    ImmutableList.Builder<OpenApiFile> openApiObjects = ImmutableList.builder();
-    for (Entry<String, File> openApiFile : openApiFilesMap.entrySet()) {
-      openApiObjects.add(
-          buildOpenApiFile(
-              serviceBuilder, openApiFile.getKey(), openApiFile.getValue(), typeNamespace));
+    return convert(openApiFiles, typeNamespace, StageScheduler.serial());
+  }
+
+  /**
+   * Converts the given files, using the scheduler to parse and convert them concurrently if it is
+   * parallel. Each file is parsed once from its contents, and the top level OpenAPI files are
+   * validated against the OpenAPI schema, which is compiled once per process. The files are only
+   * saved to disk if a top level file references other files, which the swagger parser resolves
+   * from disk. Errors are reported for the first failing file in the order of the input.
+   */
+  public static List<OpenApiFile> convert(
+      final List<FileWrapper> openApiFiles,
+      final String typeNamespace,
+      StageScheduler scheduler)
+      throws OpenApiConversionException {
+    final JsonNode[] trees = new JsonNode[openApiFiles.size()];
+    forEachInOrder(
+        scheduler,
+        openApiFiles.size(),
+        new IndexedTask() {
+          @Override
+          public void run(int index) throws OpenApiConversionException {
+            trees[index] = parseInputFile(openApiFiles.get(index));
+          }
+        });
+
+    final List<String> topLevelFilenames = Lists.newArrayList();
+    final List<JsonNode> topLevelTrees = Lists.newArrayList();
+    boolean hasExternalReferences = false;
+    for (int i = 0; i < trees.length; i++) {
+      if (trees[i] != null) {
+        topLevelFilenames.add(openApiFiles.get(i).getFilename());
+        topLevelTrees.add(trees[i]);
+        hasExternalReferences |= hasExternalReferences(trees[i]);
+      }
     }
+    if (topLevelTrees.isEmpty()) {
+      throw new OpenApiConversionException(
+          String.format(
+              "Cannot find a valid OpenAPI %s spec in the input files", CURRENT_SWAGGER_VERSION));
+    }
+
+    final Map<String, FileWrapper> savedFilePaths =
+        hasExternalReferences
+            ? OpenApiFileWriter.saveFilesOnDisk(openApiFiles)
+            : ImmutableMap.<String, FileWrapper>of();
+    final Service.Builder serviceBuilder = Service.newBuilder();
+    final OpenApiFile[] openApiObjects = new OpenApiFile[topLevelTrees.size()];
+    forEachInOrder(
+        scheduler,
+        topLevelTrees.size(),
+        new IndexedTask() {
+          @Override
+          public void run(int index) throws OpenApiConversionException {
+            String filename = topLevelFilenames.get(index);
+            FileWrapper savedFile = savedFilePaths.get(filename);
+            Swagger swagger =
+                savedFile != null
+                    ? tryGetOpenApi(new File(savedFile.getFilename()), filename)
+                    : tryGetOpenApi(topLevelTrees.get(index), filename);
+            openApiObjects[index] =
+                OpenApiFile.create(serviceBuilder, swagger, filename, typeNamespace);
+          }
+        });
+    return ImmutableList.copyOf(openApiObjects);
+  }
 
-    return openApiObjects.build();
+  /** A task run for each index by {@link #forEachInOrder}. */
+  private interface IndexedTask {
+    void run(int index) throws OpenApiConversionException;
   }
 
-  private static OpenApiFile buildOpenApiFile(
-      Service.Builder serviceToBuild, String userDefinedFilename, File file, String typeNamespace)
+  /**
+   * Runs the task for the indexes from zero to count, and throws the exception of the lowest
+   * failing index, if any.
+   */
+  private static void forEachInOrder(StageScheduler scheduler, int count, final IndexedTask task)
       throws OpenApiConversionException {
-    Swagger swagger = tryGetOpenApi(file, userDefinedFilename);
-    return OpenApiFile.create(serviceToBuild, swagger, userDefinedFilename, typeNamespace);
+    final OpenApiConversionException[] failures = new OpenApiConversionException[count];
+    scheduler.forEach(
+        ContiguousSet.create(Range.closedOpen(0, count), DiscreteDomain.integers()),
+        new Consumer<Integer>() {
+          @Override
+          public void accept(Integer index) {
+            try {
+              task.run(index);
+            } catch (OpenApiConversionException ex) {
+              failures[index] = ex;
+            }
+          }
+        });
+    for (OpenApiConversionException failure : failures) {
+      if (failure != null) {
+        throw failure;
+      }
+    }
   }
 
   private static Swagger tryGetOpenApi(File file, String userDefinedFilename)
       throws OpenApiConversionException {
     try {
-      Swagger swagger = new SwaggerParser().read(file.getAbsolutePath());
-      if (swagger == null) {
-        throw new OpenApiConversionException(
-            String.format(
-                "OpenAPI spec in file {%s} is ill formed and cannot be parsed",
-                userDefinedFilename));
-      } else {
-        return swagger;
+      return checkParsed(new SwaggerParser().read(file.getAbsolutePath()), userDefinedFilename);
+    } catch (RuntimeException ex) {
+      throw illFormed(userDefinedFilename, ex);
+    }
+  }
+
+  private static Swagger tryGetOpenApi(JsonNode data, String userDefinedFilename)
+      throws OpenApiConversionException {
+    try {
+      // Deserializes and resolves the spec as SwaggerParser.read does for a file.
+      Swagger swagger = new SwaggerDeserializer().deserialize(data).getSwagger();
+      if (swagger != null) {
+        swagger = new SwaggerResolver(swagger, null, null).resolve();
       }
+      return checkParsed(swagger, userDefinedFilename);
     } catch (RuntimeException ex) {
+      throw illFormed(userDefinedFilename, ex);
+    }
+  }
+
+  private static Swagger checkParsed(Swagger swagger, String userDefinedFilename)
+      throws OpenApiConversionException {
+    if (swagger == null) {
       throw new OpenApiConversionException(
           String.format(
-              "OpenAPI spec in file {%s} is ill formed and cannot be parsed: %s",
-              userDefinedFilename, ex.getMessage()));
+              "OpenAPI spec in file {%s} is ill formed and cannot be parsed",
+              userDefinedFilename));
     }
+    return swagger;
+  }
+
+  private static OpenApiConversionException illFormed(
+      String userDefinedFilename, RuntimeException ex) {
+    return new OpenApiConversionException(
+        String.format(
+            "OpenAPI spec in file {%s} is ill formed and cannot be parsed: %s",
+            userDefinedFilename, ex.getMessage()));
   }
 
   /**
-   * Ensures that all files are valid json/yaml and does schema validation on swagger spec. Returns
-   *
-   * <p>the valid swagger file.
+   * Ensures that the file is valid json/yaml, and does schema validation if it is a top level
+   * swagger spec. Returns the parsed spec if it is a top level file, and null otherwise.
    *
    * @throws OpenApiConversionException
    */
-  private static Map<String, File> validateInputFiles(Map<String, FileWrapper> savedFilePaths)
+  @Nullable
+  private static JsonNode parseInputFile(FileWrapper inputFile)
       throws OpenApiConversionException {
-    Map<String, File> topLevelOpenApiFiles = getTopLevelOpenApiFiles(savedFilePaths);
-    if (topLevelOpenApiFiles.isEmpty()) {
-      throw new OpenApiConversionException(
-          String.format(
-              "Cannot find a valid OpenAPI %s spec in the input files", CURRENT_SWAGGER_VERSION));
+    try {
+      ObjectMapper objMapper = createObjectMapperForExtension(new File(inputFile.getFilename()));
+      JsonNode data = objMapper.readTree(inputFile.getFileContents().toStringUtf8());
+      if (isTopLevelOpenApiFile(data)) {
+        validateSwaggerSpec(data);
+        return data;
+      }
+      return null;
+    } catch (IOException ex) {
+      throw new OpenApiConversionException("Unable to parse the content. " + ex.getMessage(), ex);
     }
-    return topLevelOpenApiFiles;
   }
 
-  private static Map<String, File> getTopLevelOpenApiFiles(Map<String, FileWrapper> savedFiles)
-      throws OpenApiConversionException {
-    ImmutableMap.Builder<String, File> topLevelFiles = ImmutableMap.builder();
-    for (Entry<String, FileWrapper> savedFile : savedFiles.entrySet()) {
-
-      try {
-        String inputFileContent = savedFile.getValue().getFileContents().toStringUtf8();
-        File inputFile = new File(savedFile.getValue().getFilename());
-        ObjectMapper objMapper = createObjectMapperForExtension(inputFile);
-        JsonNode data = objMapper.readTree(inputFileContent);
-
-        if (isTopLevelOpenApiFile(data)) {
-          validateSwaggerSpec(data);
-          topLevelFiles.put(savedFile.getKey(), inputFile);
-        }
-      } catch (IOException ex) {
-        throw new OpenApiConversionException("Unable to parse the content. " + ex.getMessage(), ex);
+  /** Returns true if the spec has a reference into another file. */
+  private static boolean hasExternalReferences(JsonNode node) {
+    if (node.isObject()) {
+      JsonNode ref = node.get(REF_PROPERTY);
+      if (ref != null && ref.isTextual() && !ref.textValue().startsWith("#")) {
+        return true;
+      }
+    }
+    for (JsonNode child : node) {
+      if (hasExternalReferences(child)) {
+        return true;
       }
     }
-    return topLevelFiles.build();
+    return false;
   }
 
   private static boolean isTopLevelOpenApiFile(JsonNode data) {
@@ -200,11 +327,7 @@ public class MultiOpenApiParser {
       throws OpenApiConversionException {
     ProcessingReport report = null;
     try {
-      URL url = Resources.getResource(SCHEMA_RESOURCE_PATH);
-      String swaggerSchema = Resources.toString(url, StandardCharsets.UTF_8);
-      JsonNode schemaNode = Yaml.mapper().readTree(swaggerSchema);
-      JsonSchema schema = JsonSchemaFactory.byDefault().getJsonSchema(schemaNode);
-      report = schema.validate(swaggerJsonNode);
+      report = SWAGGER_SCHEMA.get().validate(swaggerJsonNode);
     } catch (Exception ex) {
       throw new OpenApiConversionException("Unable to parse the content. " + ex.getMessage(), ex);
     }
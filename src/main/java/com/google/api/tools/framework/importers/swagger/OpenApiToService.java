@@ -19,15 +19,25 @@ package com.google.api.tools.framework.importers.swagger;
 import com.google.api.Service;
 import com.google.api.tools.framework.importers.swagger.MultiOpenApiParser.OpenApiFile;
 import com.google.api.tools.framework.importers.swagger.aspects.AspectBuilder;
+import com.google.api.tools.framework.importers.swagger.aspects.quota.MetricRuleGenerator;
+import com.google.api.tools.framework.importers.swagger.aspects.utils.ExtensionNames;
 import com.google.api.tools.framework.importers.swagger.merger.ServiceMerger;
 import com.google.api.tools.framework.model.BoundedDiagCollector;
 import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.DiagCollector;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.tools.FileWrapper;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import io.swagger.models.Operation;
+import io.swagger.models.Path;
 import io.swagger.models.Swagger;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /** Class to create a {@link Service} instance from a group of {@link Swagger} objects. */
 public class OpenApiToService {
@@ -37,8 +47,16 @@ public class OpenApiToService {
   private final String serviceName;
 
   private final List<FileWrapper> additionalConfigs;
+  private final StageScheduler scheduler;
   private final DiagCollector diagCollector = new BoundedDiagCollector();
 
+  /**
+   * The number of diagnostics of each file to aggregate, or null to aggregate all of them. Set if
+   * files were converted concurrently and one of them failed, to drop the diagnostics of the later
+   * files which a serial conversion would not have produced.
+   */
+  private int[] aggregatedDiagCounts;
+
   /**
    * Initializes OpenAPI to Service config converter.
    *
@@ -54,6 +72,21 @@ public class OpenApiToService {
       String typeNamespace,
       List<FileWrapper> additionalConfigs)
       throws OpenApiConversionException {
+    this(openApiFiles, serviceName, typeNamespace, additionalConfigs, StageScheduler.serial());
+  }
+
+  /**
+   * Initializes OpenAPI to Service config converter, which uses the given scheduler to parse and
+   * convert the OpenAPI files concurrently if it is parallel. See {@link #createServiceConfig} for
+   * when files are converted concurrently.
+   */
+  public OpenApiToService(
+      List<FileWrapper> openApiFiles,
+      String serviceName,
+      String typeNamespace,
+      List<FileWrapper> additionalConfigs,
+      StageScheduler scheduler)
+      throws OpenApiConversionException {
     Preconditions.checkState(
         openApiFiles != null && !openApiFiles.isEmpty(), "openApiFiles cannot be null or empty");
 
@@ -62,17 +95,27 @@ public class OpenApiToService {
       actualTypeNamespace = actualTypeNamespace.substring(0, typeNamespace.length() - 1);
     }
 
-    this.openApis = MultiOpenApiParser.convert(openApiFiles, actualTypeNamespace);
+    this.openApis = MultiOpenApiParser.convert(openApiFiles, actualTypeNamespace, scheduler);
     this.serviceName = serviceName == null ? "" : serviceName.trim();
     this.additionalConfigs = additionalConfigs;
+    this.scheduler = scheduler;
   }
 
-  /** Creates {@link com.google.api.Service} from Swagger Objects, and returns it. */
+  /**
+   * Creates {@link com.google.api.Service} from Swagger Objects, and returns it.
+   *
+   * <p>If the scheduler is parallel, each file is converted by its own task into its own {@link
+   * Service.Builder}, and the builders are merged in file order. This is only done if no two files
+   * use the same extension among the endpoints, authorization and quota extensions, since the
+   * aspect builders of these read what earlier files added to the shared builder. The result and
+   * the diagnostics are the same as for a serial conversion.
+   */
   public Service createServiceConfig() throws OpenApiConversionException {
     new TopLevelBuilder()
         .setTopLevelFields(openApis.get(0).serviceBuilder(), openApis, serviceName);
+    List<Service.Builder> serviceBuilders;
     try {
-      buildService(openApis);
+      serviceBuilders = buildService(openApis);
     } catch (Exception ex) {
       aggregateAllDiagnostics(openApis);
       // If the openApi files have known errors, regardless of any exceptions that have been
@@ -90,29 +133,121 @@ public class OpenApiToService {
       return null;
     }
 
-    List<Service.Builder> serviceBuilders = Lists.newArrayList();
-    for (OpenApiFile openApiFile : openApis) {
-      serviceBuilders.add(openApiFile.serviceBuilder());
-    }
     return ServiceNormalizer.normalizeService(
         new ServiceMerger().merge(serviceBuilders), diagCollector, additionalConfigs);
   }
 
-  private void buildService(List<OpenApiFile> openApiFiles) {
+  /** Builds the service from the files and returns the builders to merge, in file order. */
+  private List<Service.Builder> buildService(final List<OpenApiFile> openApiFiles) {
+    final List<Service.Builder> serviceBuilders = Lists.newArrayList();
+    if (!scheduler.isParallel()
+        || openApiFiles.size() < 2
+        || !convertsIndependently(openApiFiles)) {
+      for (OpenApiFile openApiFile : openApiFiles) {
+        buildFile(openApiFile, openApiFile.serviceBuilder());
+        serviceBuilders.add(openApiFile.serviceBuilder());
+      }
+      return serviceBuilders;
+    }
+
+    // The first file builds into the shared builder, which has the top level fields.
+    for (int i = 0; i < openApiFiles.size(); i++) {
+      serviceBuilders.add(i == 0 ? openApiFiles.get(0).serviceBuilder() : Service.newBuilder());
+    }
+    final int[] diagCounts = new int[openApiFiles.size()];
+    for (int i = 0; i < openApiFiles.size(); i++) {
+      diagCounts[i] = openApiFiles.get(i).conversionResources().diagCollector().getDiags().size();
+    }
+    final RuntimeException[] failures = new RuntimeException[openApiFiles.size()];
+    scheduler.forEach(
+        ContiguousSet.create(Range.closedOpen(0, openApiFiles.size()), DiscreteDomain.integers()),
+        new Consumer<Integer>() {
+          @Override
+          public void accept(Integer index) {
+            try {
+              buildFile(openApiFiles.get(index), serviceBuilders.get(index));
+            } catch (RuntimeException ex) {
+              failures[index] = ex;
+            }
+          }
+        });
+    for (int i = 0; i < failures.length; i++) {
+      if (failures[i] != null) {
+        // A serial conversion stops at the first failing file.
+        for (int j = 0; j <= i; j++) {
+          diagCounts[j] = Integer.MAX_VALUE;
+        }
+        aggregatedDiagCounts = diagCounts;
+        throw failures[i];
+      }
+    }
+    return serviceBuilders;
+  }
+
+  private static void buildFile(OpenApiFile openApiFile, Service.Builder serviceBuilder) {
+    for (AspectBuilder aspectBuilder : openApiFile.conversionResources().aspectBuilders()) {
+      aspectBuilder.addFromSwagger(serviceBuilder, openApiFile.swagger());
+    }
+    openApiFile
+        .conversionResources()
+        .apiFromSwagger()
+        .addFromSwagger(serviceBuilder, openApiFile.swagger());
+  }
+
+  /**
+   * Returns true if the files can be converted into separate builders, that is, if no two files
+   * use the same extension among those whose aspect builders read the shared builder.
+   */
+  private static boolean convertsIndependently(List<OpenApiFile> openApiFiles) {
+    int endpointsFiles = 0;
+    int authorizationFiles = 0;
+    int quotaFiles = 0;
     for (OpenApiFile openApiFile : openApiFiles) {
-      for (AspectBuilder aspectBuilder : openApiFile.conversionResources().aspectBuilders()) {
-        aspectBuilder.addFromSwagger(openApiFile.serviceBuilder(), openApiFile.swagger());
+      Swagger swagger = openApiFile.swagger();
+      if (hasExtension(swagger.getVendorExtensions(), ExtensionNames.ENDPOINTS_EXTENSION_NAME)) {
+        endpointsFiles++;
       }
-      openApiFile
-          .conversionResources()
-          .apiFromSwagger()
-          .addFromSwagger(openApiFile.serviceBuilder(), openApiFile.swagger());
+      if (hasExtension(
+          swagger.getVendorExtensions(), ExtensionNames.AUTHORIZATION_EXTENSION_NAME)) {
+        authorizationFiles++;
+      }
+      if (usesQuota(swagger)) {
+        quotaFiles++;
+      }
+    }
+    return endpointsFiles <= 1 && authorizationFiles <= 1 && quotaFiles <= 1;
+  }
+
+  /** Returns true if the spec defines metrics or quota, or an operation has metric costs. */
+  private static boolean usesQuota(Swagger swagger) {
+    if (hasExtension(swagger.getVendorExtensions(), ExtensionNames.MANAGEMENT_SWAGGER_EXTENSION)) {
+      return true;
     }
+    if (swagger.getPaths() != null) {
+      for (Path path : swagger.getPaths().values()) {
+        for (Operation operation : path.getOperations()) {
+          if (hasExtension(
+              operation.getVendorExtensions(), MetricRuleGenerator.QUOTA_SWAGGER_EXTENSION)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasExtension(Map<String, Object> extensions, String name) {
+    return extensions != null && extensions.containsKey(name);
   }
 
   private void aggregateAllDiagnostics(List<OpenApiFile> openApiFiles) {
-    for (OpenApiFile openApiFile : openApiFiles) {
-      for (Diag diag : openApiFile.conversionResources().diagCollector().getDiags()) {
+    for (int i = 0; i < openApiFiles.size(); i++) {
+      List<Diag> diags = openApiFiles.get(i).conversionResources().diagCollector().getDiags();
+      int count =
+          aggregatedDiagCounts == null
+              ? diags.size()
+              : Math.min(diags.size(), aggregatedDiagCounts[i]);
+      for (Diag diag : diags.subList(0, count)) {
         diagCollector.addDiag(diag);
       }
     }
@@ -67,7 +67,12 @@ public class TypeBuilder implements AspectBuilder {
 
   private final Set<String> createdTypesFullName = Sets.newHashSet();
   private final Map<String, TypeInfo> processedTypeNameToTypeInfo = Maps.newHashMap();
-  private final Set<String> visitedTypes = Sets.newHashSet();
+  // Models whose type is being created, on the current path of the depth-first traversal.
+  private final Set<String> typesInProgress = Sets.newHashSet();
+  // The types of indexedServiceBuilder, so that duplicate types are found without scanning them.
+  private final Set<Type> indexedTypes = Sets.newHashSet();
+  private Service.Builder indexedServiceBuilder;
+  private int indexedTypeCount;
   private final Swagger swagger;
   private final String namespace;
   private final String namespacePrefix; // Pre-computed namespace with a trailing dot.
@@ -88,8 +93,6 @@ public class TypeBuilder implements AspectBuilder {
     }
     TreeSet<String> swaggerModelNames = Sets.newTreeSet(swagger.getDefinitions().keySet());
     for (String swaggerModelName : swaggerModelNames) {
-
-      visitedTypes.clear();
       addTypeFromModel(
           serviceBuilder, swaggerModelName, swagger.getDefinitions().get(swaggerModelName));
     }
@@ -111,13 +114,13 @@ public class TypeBuilder implements AspectBuilder {
 
     if (processedTypeNameToTypeInfo.containsKey(modelRefId)) {
       return processedTypeNameToTypeInfo.get(modelRefId);
-    } else if (visitedTypes.contains(modelRefId)) {
+    } else if (typesInProgress.contains(modelRefId)) {
       // For nodes that have already been visited but were eventually successfully resolved by our
       // depth-first traversal, processedTypeNameToTypeInfo will contain the resolution and we will
       // not hit this conditional. This allows for valid references to other nodes in the type
       // dependency tree that can be resolved. If, however, our traversal of the tree encounters a
-      // node we have seen before in that same traversal and have NOT yet resolved, then we know we
-      // have an unresolvable circular dependence.
+      // node on the current path which has NOT yet been resolved, then we know we have an
+      // unresolvable circular dependence.
       //
       // Note that we have a special case for 'object' types - for those, we are able to store the
       // generic 'message' type in the processedTypeNameToTypeInfo map before proceeding with the
@@ -130,7 +133,7 @@ public class TypeBuilder implements AspectBuilder {
               typeName));
       return null;
     }
-    visitedTypes.add(modelRefId);
+    typesInProgress.add(modelRefId);
 
     if (model != null) {
       if (model instanceof ComposedModel) {
@@ -189,6 +192,7 @@ public class TypeBuilder implements AspectBuilder {
     }
 
     processedTypeNameToTypeInfo.put(modelRefId, resultTypeInfo);
+    typesInProgress.remove(modelRefId);
     return processedTypeNameToTypeInfo.get(modelRefId);
   }
 
@@ -551,10 +555,28 @@ public class TypeBuilder implements AspectBuilder {
     }
     createdTypesFullName.add(coreTypeBuilder.getName());
     Type coreType = coreTypeBuilder.build();
-    if (!serviceBuilder.getTypesList().contains(coreType)) {
+    if (!containsType(serviceBuilder, coreType)) {
+      serviceBuilder.addTypes(coreType);
+      indexedTypes.add(coreType);
+      indexedTypeCount++;
+    }
+  }
 
-      serviceBuilder.addTypes(coreTypeBuilder.build());
+  /**
+   * Returns true if the service builder has the type. Types added to the builder by others, like
+   * the type builders of other OpenAPI files, are indexed when they are first seen.
+   */
+  private boolean containsType(Service.Builder serviceBuilder, Type type) {
+    if (serviceBuilder != indexedServiceBuilder
+        || serviceBuilder.getTypesCount() < indexedTypeCount) {
+      indexedServiceBuilder = serviceBuilder;
+      indexedTypes.clear();
+      indexedTypeCount = 0;
+    }
+    for (; indexedTypeCount < serviceBuilder.getTypesCount(); indexedTypeCount++) {
+      indexedTypes.add(serviceBuilder.getTypes(indexedTypeCount));
     }
+    return indexedTypes.contains(type);
   }
 
   /** Creates and returns a {@link com.google.protobuf.Field.Builder}. */
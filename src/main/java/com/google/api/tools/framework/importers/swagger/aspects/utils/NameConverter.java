@@ -17,11 +17,19 @@
 package com.google.api.tools.framework.importers.swagger.aspects.utils;
 
 import com.google.common.base.CaseFormat;
+import com.google.common.base.CharMatcher;
 
 /**
  * Helper class to provide appropriate names when representing elements from swagger into proto.
  */
 public class NameConverter {
+  private static final CharMatcher VALID_NAME_CHARACTERS =
+      CharMatcher.inRange('a', 'z')
+          .or(CharMatcher.inRange('A', 'Z'))
+          .or(CharMatcher.inRange('0', '9'))
+          .or(CharMatcher.is('_'))
+          .precomputed();
+
   public  static String operationIdToMethodName(String operationId) {
     return CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, sanitizeStringValue(operationId));
   }
@@ -48,6 +56,6 @@ public class NameConverter {
   }
 
   private static String sanitizeStringValue(String operationId) {
-    return operationId.replaceAll("[^a-zA-Z0-9_]", "");
+    return VALID_NAME_CHARACTERS.retainFrom(operationId);
   }
 }
@@ -18,18 +18,40 @@ package com.google.api.tools.framework.importers.swagger.merger;
 
 import com.google.api.Service;
 import com.google.api.tools.framework.importers.swagger.MultiOpenApiParser.OpenApiFile;
+import com.google.common.collect.Sets;
+import com.google.protobuf.Type;
 import java.util.List;
+import java.util.Set;
 
 /** Merger for converted Swagger to {@link Service} objects. */
 public class ServiceMerger {
 
-  /** Merges multiple built {@link OpenApiFile}s into a single {@link Service} */
+  /**
+   * Merges multiple built {@link OpenApiFile}s into a single {@link Service}. Files which were
+   * built into the same builder are merged once. The builders of other files are merged into the
+   * first one in order, appending their repeated fields as if the files were built into the first
+   * builder one after another.
+   */
   public Service merge(List<Service.Builder> serviceBuliders) {
     Service.Builder serviceBuilder = serviceBuliders.get(0);
+    Set<Type> types = null;
+    for (Service.Builder other : serviceBuliders) {
+      if (other == serviceBuilder) {
+        continue;
+      }
+      if (types == null) {
+        types = Sets.newHashSet(serviceBuilder.getTypesList());
+      }
+      // Like the type builder, skip types which an earlier file already added.
+      for (Type type : other.getTypesList()) {
+        if (types.add(type)) {
+          serviceBuilder.addTypes(type);
+        }
+      }
+      serviceBuilder.mergeFrom(other.clone().clearTypes().build());
+    }
     serviceBuilder.addAllTypes(TypesBuilderFromDescriptor.createAdditionalServiceTypes());
     serviceBuilder.addAllEnums(TypesBuilderFromDescriptor.createAdditionalServiceEnums());
-    // Currently all SwaggerFiles use the same Service.proto to build, so we just pull the first one
-    // TODO (adwright): Separate this to build multiple service.proto and have a merging phase.
     return serviceBuilder.build();
   }
 }
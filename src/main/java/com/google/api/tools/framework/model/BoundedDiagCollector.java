@@ -39,7 +39,7 @@ public class BoundedDiagCollector implements DiagCollector {
 
   public static final Integer DEFAULT_MAX_ERRORS = 500;
   public static final Integer DEFAULT_MAX_WARNINGS = 5000;
-  private static final ImmutableMap<Kind, Integer> DEFAULT_CAPACITY =
+  static final ImmutableMap<Kind, Integer> DEFAULT_CAPACITY =
       ImmutableMap.<Kind, Integer>builder()
           .put(Kind.ERROR, DEFAULT_MAX_ERRORS)
           .put(Kind.WARNING, DEFAULT_MAX_WARNINGS)
@@ -118,7 +118,7 @@ public class BoundedDiagCollector implements DiagCollector {
   /**
   *  Thrown if more that the max {@link Diag} of type {@link Kind#ERROR} are added to the collector.
   */
-  public class TooManyDiagsException extends RuntimeException {
+  public static class TooManyDiagsException extends RuntimeException {
     public TooManyDiagsException(String msg) {
       super(msg);
     }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LocationStore} which keeps all locations in flat arrays.
+ *
+ * <p>Each message with locations is assigned an integer id by identity. Locations are entries in
+ * parallel arrays, found through an open addressing hash table over message id, field number and
+ * element key, and chained per message id in insertion order. A builder takes over the id of the
+ * message it rebuilds and hands it on to the new message, so locations are neither copied on build
+ * nor removed, and a built config shares the store of its builder.
+ */
+final class CompactLocationStore extends LocationStore {
+
+  private static final int NONE = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Message ids by message identity.
+  private final IdentityHashMap<Message, Integer> messageIds;
+
+  // First and last entry of each message id.
+  private int messageCount;
+  private int[] firstEntry;
+  private int[] lastEntry;
+
+  // The entries. An entry has either a list index, or an object key which is null for plain
+  // fields.
+  private int entryCount;
+  private int[] entryMessage;
+  private FieldDescriptor[] entryField;
+  private int[] entryIndex;
+  private Object[] entryKey;
+  private Location[] entryLocation;
+  private int[] nextEntry;
+
+  // Hash table of entry numbers plus one, zero denoting an empty slot. The size is a power of two
+  // and the table is at most half full.
+  private int[] table;
+
+  CompactLocationStore() {
+    messageIds = new IdentityHashMap<>();
+    firstEntry = new int[INITIAL_CAPACITY];
+    lastEntry = new int[INITIAL_CAPACITY];
+    entryMessage = new int[INITIAL_CAPACITY];
+    entryField = new FieldDescriptor[INITIAL_CAPACITY];
+    entryIndex = new int[INITIAL_CAPACITY];
+    entryKey = new Object[INITIAL_CAPACITY];
+    entryLocation = new Location[INITIAL_CAPACITY];
+    nextEntry = new int[INITIAL_CAPACITY];
+    table = new int[2 * INITIAL_CAPACITY];
+  }
+
+  private CompactLocationStore(CompactLocationStore other) {
+    messageIds = new IdentityHashMap<>(other.messageIds);
+    messageCount = other.messageCount;
+    firstEntry = other.firstEntry.clone();
+    lastEntry = other.lastEntry.clone();
+    entryCount = other.entryCount;
+    entryMessage = other.entryMessage.clone();
+    entryField = other.entryField.clone();
+    entryIndex = other.entryIndex.clone();
+    entryKey = other.entryKey.clone();
+    entryLocation = other.entryLocation.clone();
+    nextEntry = other.nextEntry.clone();
+    table = other.table.clone();
+  }
+
+  @Override
+  @Nullable
+  Location get(Message message, FieldDescriptor field, @Nullable Object elementKey) {
+    Integer id = messageIds.get(message);
+    if (id == null) {
+      return null;
+    }
+    int entry = find(id, field, index(field, elementKey), key(field, elementKey));
+    return entry != NONE ? entryLocation[entry] : null;
+  }
+
+  @Override
+  void forEach(Message message, LocationConsumer consumer) {
+    Integer id = messageIds.get(message);
+    if (id == null) {
+      return;
+    }
+    for (int entry = firstEntry[id]; entry != NONE; entry = nextEntry[entry]) {
+      Object elementKey = entryIndex[entry] != NONE ? entryIndex[entry] : entryKey[entry];
+      consumer.accept(entryField[entry], elementKey, entryLocation[entry]);
+    }
+  }
+
+  @Override
+  Pending open(Message message) {
+    Integer claimed = messageIds.remove(message);
+    final int initialId = claimed != null ? claimed : NONE;
+    return new Pending() {
+      // Assigned on the first location, unless the original message had locations.
+      private int id = initialId;
+
+      @Override
+      public void put(FieldDescriptor field, @Nullable Object elementKey, Location location) {
+        if (id == NONE) {
+          id = newMessageId();
+        }
+        CompactLocationStore.this.put(id, field, elementKey, location);
+      }
+
+      @Override
+      public void close(Message newMessage) {
+        if (id != NONE) {
+          messageIds.put(newMessage, id);
+        }
+      }
+    };
+  }
+
+  @Override
+  LocationStore snapshot() {
+    return this;
+  }
+
+  @Override
+  LocationStore copy() {
+    return new CompactLocationStore(this);
+  }
+
+  private int newMessageId() {
+    if (messageCount == firstEntry.length) {
+      firstEntry = Arrays.copyOf(firstEntry, 2 * messageCount);
+      lastEntry = Arrays.copyOf(lastEntry, 2 * messageCount);
+    }
+    firstEntry[messageCount] = NONE;
+    lastEntry[messageCount] = NONE;
+    return messageCount++;
+  }
+
+  private void put(int id, FieldDescriptor field, @Nullable Object elementKey, Location location) {
+    int index = index(field, elementKey);
+    Object key = key(field, elementKey);
+    int entry = find(id, field, index, key);
+    if (entry != NONE) {
+      entryLocation[entry] = location;
+      return;
+    }
+    if (entryCount == entryMessage.length) {
+      growEntries();
+    }
+    entry = entryCount++;
+    entryMessage[entry] = id;
+    entryField[entry] = field;
+    entryIndex[entry] = index;
+    entryKey[entry] = key;
+    entryLocation[entry] = location;
+    nextEntry[entry] = NONE;
+    if (lastEntry[id] == NONE) {
+      firstEntry[id] = entry;
+    } else {
+      nextEntry[lastEntry[id]] = entry;
+    }
+    lastEntry[id] = entry;
+    insert(entry);
+  }
+
+  private int find(int id, FieldDescriptor field, int index, @Nullable Object key) {
+    int mask = table.length - 1;
+    int slot = hash(id, field, index, key) & mask;
+    for (; table[slot] != 0; slot = (slot + 1) & mask) {
+      int entry = table[slot] - 1;
+      if (entryMessage[entry] == id
+          && entryField[entry] == field
+          && entryIndex[entry] == index
+          && Objects.equals(entryKey[entry], key)) {
+        return entry;
+      }
+    }
+    return NONE;
+  }
+
+  private void insert(int entry) {
+    int mask = table.length - 1;
+    int slot =
+        hash(entryMessage[entry], entryField[entry], entryIndex[entry], entryKey[entry]) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = entry + 1;
+  }
+
+  private void growEntries() {
+    int capacity = 2 * entryMessage.length;
+    entryMessage = Arrays.copyOf(entryMessage, capacity);
+    entryField = Arrays.copyOf(entryField, capacity);
+    entryIndex = Arrays.copyOf(entryIndex, capacity);
+    entryKey = Arrays.copyOf(entryKey, capacity);
+    entryLocation = Arrays.copyOf(entryLocation, capacity);
+    nextEntry = Arrays.copyOf(nextEntry, capacity);
+    table = new int[2 * capacity];
+    for (int entry = 0; entry < entryCount; entry++) {
+      insert(entry);
+    }
+  }
+
+  private static int hash(int id, FieldDescriptor field, int index, @Nullable Object key) {
+    int hash = (id * 31 + field.getNumber()) * 31 + (index != NONE ? index : Objects.hashCode(key));
+    return hash ^ (hash >>> 16);
+  }
+
+  /** Returns the list index the element key denotes for the field, or NONE. */
+  private static int index(FieldDescriptor field, @Nullable Object elementKey) {
+    return elementKey instanceof Integer && !field.isMapField() ? (Integer) elementKey : NONE;
+  }
+
+  /** Returns the object key the element key denotes for the field, or null. */
+  @Nullable
+  private static Object key(FieldDescriptor field, @Nullable Object elementKey) {
+    return index(field, elementKey) == NONE ? elementKey : null;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.api.tools.framework.model.BoundedDiagCollector.TooManyDiagsException;
+import com.google.api.tools.framework.model.Diag.Kind;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Implementation of {@link DiagCollector} which can be used from several threads at once, as by
+ * processors run by a parallel {@link StageScheduler}, with the same capacity limits as {@link
+ * BoundedDiagCollector}.
+ *
+ * <p>Diags are collected in tasks. {@link Model#establishStage} runs each stage as a task, and a
+ * parallel {@link StageScheduler} runs each processor and each item of {@link
+ * StageScheduler#forEach} as a subtask of the task which started it. A task keeps its diags and its
+ * subtasks in one list, in the order they were added and forked. When the outermost task is done,
+ * its list is flattened depth first into the list returned by {@link #getDiags()}. As subtasks are
+ * forked in the order the serial scheduler would run them, this is the order of a serial run,
+ * regardless of how threads interleave.
+ *
+ * <p>Adding a diag to a task does not take locks, as only the thread running a task appends to it.
+ * Counts are kept in atomic counters, so {@link #getErrorCount()} is always up to date, while
+ * {@link #getDiags()} only returns the diags of finished tasks. Diags added outside of any task of
+ * this collector are added to the result directly.
+ */
+public class ConcurrentDiagCollector implements DiagCollector {
+
+  // The task the current thread runs, if any.
+  private static final ThreadLocal<Task> currentTask = new ThreadLocal<>();
+
+  private final Map<Kind, Integer> capacityByKind;
+  private final Map<Kind, AtomicInteger> countByKind = Maps.newEnumMap(Kind.class);
+
+  // The diags of finished tasks and those added outside of tasks, guarded by this.
+  private final List<Diag> diags = Lists.newArrayList();
+
+  public ConcurrentDiagCollector(Map<Kind, Integer> capacityByKind) {
+    this.capacityByKind = Maps.newEnumMap(capacityByKind);
+    for (Kind kind : Kind.values()) {
+      countByKind.put(kind, new AtomicInteger());
+    }
+  }
+
+  public ConcurrentDiagCollector() {
+    this(BoundedDiagCollector.DEFAULT_CAPACITY);
+  }
+
+  @Override
+  public void addDiag(Diag diag) {
+    Integer capacity = capacityByKind.get(diag.getKind());
+    int limit = capacity != null ? capacity : 0;
+    int count = countByKind.get(diag.getKind()).incrementAndGet();
+    if (count <= limit) {
+      add(diag);
+    } else if (count == limit + 1) {
+      String msg =
+          String.format(
+              "Hit max count(%d) of allowed %s. No more diags of this kind will be logged.",
+              limit,
+              StringUtils.lowerCase(diag.getKind().toString()));
+      add(Diag.create(SimpleLocation.TOPLEVEL, "%s", diag.getKind(), msg));
+
+      // Try to short circuit proceeding in a known bad state, as BoundedDiagCollector does.
+      if (diag.getKind() == Kind.ERROR) {
+        throw new TooManyDiagsException(msg);
+      }
+    }
+  }
+
+  /**
+   * Runs the action as a task of this collector and returns its result. The diags added by the
+   * task and its subtasks are added to the list returned by {@link #getDiags()} when it is done,
+   * in task order. If the current thread already runs a task of this collector, the action runs as
+   * part of that task.
+   */
+  public <T> T collectInOrder(Supplier<T> action) {
+    Task task = currentTask.get();
+    if (task != null && task.owner == this) {
+      return action.get();
+    }
+    Task root = new Task(this);
+    try {
+      return runInTask(root, action);
+    } finally {
+      List<Diag> ordered = Lists.newArrayList();
+      root.flattenTo(ordered);
+      synchronized (this) {
+        diags.addAll(ordered);
+      }
+    }
+  }
+
+  /** Returns an immutable copy of the diags of finished tasks and those added outside of tasks. */
+  @Override
+  public synchronized List<Diag> getDiags() {
+    return ImmutableList.copyOf(diags);
+  }
+
+  @Override
+  public int getErrorCount() {
+    return stored(Kind.ERROR);
+  }
+
+  @Override
+  public boolean hasErrors() {
+    return getErrorCount() > 0;
+  }
+
+  @Override
+  public String toString() {
+    return Joiner.on("\n").join(getDiags());
+  }
+
+  /**
+   * Forks the given number of subtasks of the task the current thread runs, in order. The diags of
+   * the subtasks are placed after the diags the task added so far. The returned array holds nulls
+   * if the current thread runs no task.
+   */
+  static Task[] forkSubtasks(int count) {
+    Task parent = currentTask.get();
+    Task[] subtasks = new Task[count];
+    if (parent != null) {
+      for (int i = 0; i < count; i++) {
+        subtasks[i] = new Task(parent.owner);
+        parent.items.add(subtasks[i]);
+      }
+    }
+    return subtasks;
+  }
+
+  /**
+   * Runs the action on the current thread as the given task, or outside of any task if it is
+   * null, and returns its result. A task must not run on several threads at once.
+   */
+  static <T> T runInTask(@Nullable Task task, Supplier<T> action) {
+    Task previous = currentTask.get();
+    currentTask.set(task);
+    try {
+      return action.get();
+    } finally {
+      if (previous != null) {
+        currentTask.set(previous);
+      } else {
+        currentTask.remove();
+      }
+    }
+  }
+
+  private void add(Diag diag) {
+    Task task = currentTask.get();
+    if (task != null && task.owner == this) {
+      task.items.add(diag);
+    } else {
+      synchronized (this) {
+        diags.add(diag);
+      }
+    }
+  }
+
+  // Returns the number of diags of the kind which have been stored, including the diag reporting
+  // that the capacity has been hit.
+  private int stored(Kind kind) {
+    Integer capacity = capacityByKind.get(kind);
+    return Math.min(countByKind.get(kind).get(), (capacity != null ? capacity : 0) + 1);
+  }
+
+  /**
+   * A unit of work collecting diags. Only the thread running the task appends to it, and it is
+   * only read after the outermost task has finished, which happens after all its subtasks.
+   */
+  static final class Task {
+    private final ConcurrentDiagCollector owner;
+
+    // The diags and subtasks of the task, in the order they were added.
+    private final List<Object> items = Lists.newArrayList();
+
+    private Task(ConcurrentDiagCollector owner) {
+      this.owner = owner;
+    }
+
+    private void flattenTo(List<Diag> target) {
+      for (Object item : items) {
+        if (item instanceof Diag) {
+          target.add((Diag) item);
+        } else {
+          ((Task) item).flattenTo(target);
+        }
+      }
+    }
+  }
+}
@@ -78,6 +78,10 @@ public interface ConfigAspect {
    * the model during the merging phase, breadth first. The config aspect decides whether it is
    * applicable for the element, performs merging, potentially reporting diagnostics on the model,
    * and attaching attributes via {@link Model#putAttribute(com.google.inject.Key, Object)}.
+   *
+   * <p>Aspects without merge dependencies on each other may be merged concurrently. The error
+   * count seen during merging excludes errors of those aspects, so it must only be compared
+   * before and after the aspect's own work.
    */
   void merge(ProtoElement element);
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.model;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Key;
+import java.util.Map;
+
+/**
+ * Meters the {@link ConfigAspect}s applied by a processor, and reports their usage to the
+ * {@link InstrumentationListener}s of the model. All methods do nothing if the model has no
+ * listeners. Not thread safe.
+ *
+ * <p>Usage from a processor:
+ *
+ * <pre>
+ *   ConfigAspectMeters meters = ConfigAspectMeters.create(model, Merged.KEY);
+ *   ...
+ *   meters.countElement();
+ *   for (ConfigAspect aspect : aspects) {
+ *     meters.start(aspect);
+ *     aspect.merge(element);
+ *     meters.stop(aspect, 1);
+ *   }
+ *   ...
+ *   meters.report();
+ * </pre>
+ */
+public final class ConfigAspectMeters {
+
+  /** Returns meters for the processor establishing the given stage on the model. */
+  public static ConfigAspectMeters create(Model model, Key<?> stage) {
+    return new ConfigAspectMeters(model, stage, model.isInstrumented());
+  }
+
+  private final Model model;
+  private final Key<?> stage;
+  private final boolean enabled;
+  private final Map<ConfigAspect, ResourceMeter> meters = Maps.newLinkedHashMap();
+  private long elementCount;
+
+  private ConfigAspectMeters(Model model, Key<?> stage, boolean enabled) {
+    this.model = model;
+    this.stage = stage;
+    this.enabled = enabled;
+  }
+
+  /** Returns true if usage is metered. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts metering work of the given aspect. */
+  public void start(ConfigAspect aspect) {
+    if (enabled) {
+      getMeter(aspect).start();
+    }
+  }
+
+  /** Stops metering work of the given aspect, which has processed the given number of elements. */
+  public void stop(ConfigAspect aspect, long elements) {
+    if (enabled) {
+      meters.get(aspect).stop(elements);
+    }
+  }
+
+  /**
+   * Adds usage of the given aspect which was metered separately, for example on the threads of a
+   * parallel processor.
+   */
+  public void add(ConfigAspect aspect, ResourceUsage usage) {
+    if (enabled) {
+      getMeter(aspect).add(usage);
+    }
+  }
+
+  /** Counts an element visited by the processor. */
+  public void countElement() {
+    elementCount++;
+  }
+
+  /** Reports the usage of all metered aspects, and the count of visited elements, to the model. */
+  public void report() {
+    if (!enabled) {
+      return;
+    }
+    for (Map.Entry<ConfigAspect, ResourceMeter> entry : meters.entrySet()) {
+      for (InstrumentationListener listener : model.getInstrumentationListeners()) {
+        listener.configAspectFinished(stage, entry.getKey(), entry.getValue().getUsage());
+      }
+    }
+    model.addVisitedElements(stage, elementCount);
+    meters.clear();
+    elementCount = 0;
+  }
+
+  private ResourceMeter getMeter(ConfigAspect aspect) {
+    ResourceMeter meter = meters.get(aspect);
+    if (meter == null) {
+      meter = new ResourceMeter();
+      meters.put(aspect, meter);
+    }
+    return meter;
+  }
+}
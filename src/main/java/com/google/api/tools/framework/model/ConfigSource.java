@@ -23,10 +23,8 @@ import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.MapEntry;
 import com.google.protobuf.Message;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import javax.annotation.Nullable;
 
 /**
@@ -40,25 +38,34 @@ public class ConfigSource implements ConfigLocationResolver {
   // Contains the config message.
   private final Message configMessage;
 
-  // Contains a map from message keys into a map of location keys with associated location.
+  // Contains the source locations of the fields of the tree of messages represented by
+  // configMessage, attached to messages by object identity.
   //
-  // A message key is a wrapper around a message which uses the messages's object identity
-  // for equality. This way, we can work around that by default, messages have value equality,
-  // and effectively can attach attributes to the tree of messages represented by configMessage.
-  // The attribute in this case is the map from location key into source location, for a given
-  // message. A location key consists of a field descriptor, and an optional key for a map or
-  // index into a list.
-  //
-  // The location map is leveraged for merging. Presence of a location key indicates that an update
+  // The locations are leveraged for merging. Presence of a location indicates that an update
   // has been performed. This is used to support proto2 semantics for merging.
-  private final ImmutableMap<MessageKey, ImmutableMap<LocationKey, Location>> locations;
+  private final LocationStore locations;
 
-  private ConfigSource(
-      Message value, ImmutableMap<MessageKey, ImmutableMap<LocationKey, Location>> locations) {
+  private ConfigSource(Message value, LocationStore locations) {
     this.configMessage = value;
     this.locations = locations;
   }
 
+  /** The ways the source locations of a config can be stored. */
+  public enum LocationStorage {
+    /** Locations are kept in maps per message, which are copied on each build. */
+    MAP,
+
+    /**
+     * Locations are kept in flat arrays shared between a builder and the configs it builds. This
+     * takes considerably less memory and allocation for large configs.
+     */
+    COMPACT;
+
+    private LocationStore newStore() {
+      return this == COMPACT ? new CompactLocationStore() : new MapLocationStore();
+    }
+  }
+
   /** Returns the config message. */
   public Message getConfig() {
     return configMessage;
@@ -92,15 +99,11 @@ public class ConfigSource implements ConfigLocationResolver {
    * Returns {@link SimpleLocation#UNKNOWN} if the location is not known.
    */
   public Location getLocation(Message message, String fieldName, @Nullable Object elementKey) {
-    MessageKey messageKey = new MessageKey(message);
-    Map<LocationKey, Location> map = locations.get(messageKey);
-    if (map != null) {
-      FieldDescriptor field = message.getDescriptorForType().findFieldByName(fieldName);
-      if (field != null) {
-        Location result = map.get(new LocationKey(field, elementKey));
-        if (result != null) {
-          return result;
-        }
+    FieldDescriptor field = message.getDescriptorForType().findFieldByName(fieldName);
+    if (field != null) {
+      Location result = locations.get(message, field, elementKey);
+      if (result != null) {
+        return result;
       }
     }
     return SimpleLocation.UNKNOWN;
@@ -108,7 +111,7 @@ public class ConfigSource implements ConfigLocationResolver {
 
   /** Constructs a builder from this configuration message. */
   public Builder toBuilder() {
-    return new Builder(configMessage, configMessage.toBuilder(), new LinkedHashMap<>(locations));
+    return new Builder(configMessage, configMessage.toBuilder(), locations.copy());
   }
 
   /**
@@ -119,10 +122,15 @@ public class ConfigSource implements ConfigLocationResolver {
    * for it.
    */
   public static Builder newBuilder(Message defaultInstance) {
-    return new Builder(
-        defaultInstance,
-        defaultInstance.toBuilder(),
-        new LinkedHashMap<MessageKey, ImmutableMap<LocationKey, Location>>());
+    return newBuilder(defaultInstance, LocationStorage.MAP);
+  }
+
+  /**
+   * Constructs a new empty builder like {@link #newBuilder(Message)}, storing source locations as
+   * given.
+   */
+  public static Builder newBuilder(Message defaultInstance, LocationStorage storage) {
+    return new Builder(defaultInstance, defaultInstance.toBuilder(), storage.newStore());
   }
 
   /**
@@ -142,12 +150,12 @@ public class ConfigSource implements ConfigLocationResolver {
     // The builder for the message.
     private final Message.Builder configBuilder;
 
-    // The locations map for the entire built tree. This is shared with parents, and updates
+    // The locations for the entire built tree. This is shared with parents, and updates
     // to here are global.
-    private final Map<MessageKey, ImmutableMap<LocationKey, Location>> locations;
+    private final LocationStore locations;
 
     // New locations added to this builder.
-    private final Map<LocationKey, Location> newLocations = new LinkedHashMap<>();
+    private final LocationStore.Pending newLocations;
 
     // Whether build() was called.
     private boolean built;
@@ -155,10 +163,11 @@ public class ConfigSource implements ConfigLocationResolver {
     private Builder(
         Message message,
         Message.Builder messageBuilder,
-        Map<MessageKey, ImmutableMap<LocationKey, Location>> locations) {
+        LocationStore locations) {
       this.configMessage = message;
       this.configBuilder = messageBuilder;
       this.locations = locations;
+      this.newLocations = locations.open(message);
     }
 
     /** Return the descriptor for the message being built. */
@@ -173,21 +182,10 @@ public class ConfigSource implements ConfigLocationResolver {
       // Build value.
       Message newMessage = configBuilder.build();
 
-      // Propagate locations from the old version of the message in the new one which is built.
-      Map<LocationKey, Location> oldLocations = locations.remove(new MessageKey(configMessage));
-      if (oldLocations != null) {
-        for (LocationKey key : oldLocations.keySet()) {
-          if (!newLocations.containsKey(key)) {
-            newLocations.put(key, oldLocations.get(key));
-          }
-        }
-      }
-
-      // Update locations for new message.
-      if (!newLocations.isEmpty()) {
-        locations.put(new MessageKey(newMessage), ImmutableMap.copyOf(newLocations));
-      }
-      return new ConfigSource(newMessage, ImmutableMap.copyOf(locations));
+      // Attach the new locations, and those of the old version of the message which have not been
+      // updated, to the new message.
+      newLocations.close(newMessage);
+      return new ConfigSource(newMessage, locations.snapshot());
     }
 
     /**
@@ -206,14 +204,14 @@ public class ConfigSource implements ConfigLocationResolver {
     }
 
     public void addLocation(FieldDescriptor field, Object key, Location location) {
-      newLocations.put(new LocationKey(field, key), nonNull(location));
+      newLocations.put(field, key, nonNull(location));
     }
 
     /** Adds the scalar value to the field which must be repeated. */
     public Builder addValue(FieldDescriptor field, Object value, @Nullable Location location) {
       int index = configBuilder.getRepeatedFieldCount(field);
       configBuilder.addRepeatedField(field, value);
-      newLocations.put(new LocationKey(field, index), nonNull(location));
+      newLocations.put(field, index, nonNull(location));
       return this;
     }
 
@@ -353,36 +351,37 @@ public class ConfigSource implements ConfigLocationResolver {
 
     @SuppressWarnings("unchecked")
     private void mergeLocations(
-        Message messageToMergeForm, final ConfigSource configToMergeForm, boolean proto3) {
+        final Message messageToMergeForm,
+        final ConfigSource configToMergeForm,
+        final boolean proto3) {
 
       // Propagate locations.This also takes care of primitive fields with default value.
-      Map<LocationKey, Location> locationMapToMerge =
-          configToMergeForm.locations.get(new MessageKey(messageToMergeForm));
-      if (locationMapToMerge != null) {
-        for (Map.Entry<LocationKey, Location> entryToMerge : locationMapToMerge.entrySet()) {
-          // Copy over location. For repeated fields, adjust index as they have been appended
-          // at the end.
-          LocationKey keyToMerge = entryToMerge.getKey();
-          FieldDescriptor fieldInLocationsToMerge = keyToMerge.field;
-          if (fieldInLocationsToMerge.isRepeated() && !fieldInLocationsToMerge.isMapField()) {
-            if (keyToMerge.elementKey != null) {
-              int sizeBeforeMerge =
-                  configBuilder.getRepeatedFieldCount(fieldInLocationsToMerge)
-                      - messageToMergeForm.getRepeatedFieldCount(fieldInLocationsToMerge);
-              keyToMerge =
-                  new LocationKey(keyToMerge.field, sizeBeforeMerge + (int) keyToMerge.elementKey);
-            }
-          }
-          newLocations.put(keyToMerge, entryToMerge.getValue());
+      configToMergeForm.locations.forEach(
+          messageToMergeForm,
+          new LocationStore.LocationConsumer() {
+            @Override
+            public void accept(
+                FieldDescriptor fieldInLocationsToMerge, Object keyToMerge, Location location) {
+              // Copy over location. For repeated fields, adjust index as they have been appended
+              // at the end.
+              if (fieldInLocationsToMerge.isRepeated() && !fieldInLocationsToMerge.isMapField()) {
+                if (keyToMerge != null) {
+                  int sizeBeforeMerge =
+                      configBuilder.getRepeatedFieldCount(fieldInLocationsToMerge)
+                          - messageToMergeForm.getRepeatedFieldCount(fieldInLocationsToMerge);
+                  keyToMerge = sizeBeforeMerge + (int) keyToMerge;
+                }
+              }
+              newLocations.put(fieldInLocationsToMerge, keyToMerge, location);
 
-          // Override with default if applicable.
-          if (!fieldInLocationsToMerge.isRepeated() && !isMessage(fieldInLocationsToMerge)) {
-            if (!proto3 && !messageToMergeForm.hasField(fieldInLocationsToMerge)) {
-              configBuilder.clearField(fieldInLocationsToMerge);
+              // Override with default if applicable.
+              if (!fieldInLocationsToMerge.isRepeated() && !isMessage(fieldInLocationsToMerge)) {
+                if (!proto3 && !messageToMergeForm.hasField(fieldInLocationsToMerge)) {
+                  configBuilder.clearField(fieldInLocationsToMerge);
+                }
+              }
             }
-          }
-        }
-      }
+          });
 
       // Next recursively merge locations of sub-messages. As getAllFields only
       // delivers fields with set values, we only recurse into sub-messages which are actually set.
@@ -448,73 +447,6 @@ public class ConfigSource implements ConfigLocationResolver {
     }
   }
 
-  /**
-   * A helper class to represent a location key, a pair of a field descriptor and an optional
-   * element key.
-   */
-  private static class LocationKey {
-
-    private final FieldDescriptor field;
-    private final Object elementKey;
-
-    private LocationKey(FieldDescriptor field, @Nullable Object elementKey) {
-      this.field = field;
-      this.elementKey = elementKey;
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(field, elementKey);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (!(obj instanceof LocationKey)) {
-        return false;
-      }
-      LocationKey other = (LocationKey) obj;
-      return Objects.equals(field, other.field) && Objects.equals(elementKey, other.elementKey);
-    }
-
-    @Override
-    public String toString() {
-      if (elementKey == null) {
-        return field.getFullName();
-      }
-      return String.format("%s[%s]", field.getFullName(), elementKey);
-    }
-  }
-
-  /**
-   * Wrapper around a message which uses identity for equality, hashCode, and toString.
-   *
-   * <p>Instead of this class, we could have used IdentityHashMap, however, the debugging experience
-   * is bad because that class unfortunately doesn't print identities on toString.
-   */
-  private static class MessageKey {
-
-    private final Message message;
-
-    private MessageKey(Message message) {
-      this.message = message;
-    }
-
-    @Override
-    public String toString() {
-      return String.format("MessageKey#%s", System.identityHashCode(message));
-    }
-
-    @Override
-    public int hashCode() {
-      return System.identityHashCode(message);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      return obj instanceof MessageKey && ((MessageKey) obj).message == message;
-    }
-  }
-
   /** Ensures location is either non-null or UNKNOWN. */
   private static Location nonNull(@Nullable Location location) {
     if (location == null) {
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.MethodDescriptorProto;
+import com.google.protobuf.DescriptorProtos.ServiceDescriptorProto;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * An index of the names declared by proto files which have not been materialized, built from
+ * their descriptors alone. Lets a model with lazily materialized dependencies find the file which
+ * must be materialized to answer a symbol table lookup. The index is populated while the model is
+ * constructed and only read afterwards.
+ */
+class DeclarationIndex {
+
+  private final Map<String, ProtoFile> fileBySymbol = Maps.newHashMap();
+  private final Set<String> packageNames = Sets.newHashSet();
+  private final Set<String> fieldNames = Sets.newHashSet();
+
+  /** Adds the types, interfaces, packages and field names declared by the given file. */
+  void add(ProtoFile file) {
+    FileDescriptorProto proto = file.getProto();
+    String pkg = proto.getPackage();
+    if (proto.getMessageTypeCount() > 0) {
+      addPackage(pkg);
+    }
+    for (DescriptorProto message : proto.getMessageTypeList()) {
+      addMessage(file, pkg, message);
+    }
+    for (EnumDescriptorProto enumType : proto.getEnumTypeList()) {
+      addSymbol(file, pkg, enumType.getName());
+    }
+    for (ServiceDescriptorProto service : proto.getServiceList()) {
+      addSymbol(file, pkg, service.getName());
+    }
+  }
+
+  /**
+   * Returns the file declaring the type or interface of the given full name, or null if none of
+   * the indexed files does.
+   */
+  @Nullable
+  ProtoFile lookup(String fullName) {
+    return fileBySymbol.get(fullName);
+  }
+
+  /** Returns the files declaring a type or interface whose full name starts with the prefix. */
+  List<ProtoFile> lookupPrefix(String prefix) {
+    Set<ProtoFile> files = Sets.newLinkedHashSet();
+    for (Map.Entry<String, ProtoFile> entry : fileBySymbol.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        files.add(entry.getValue());
+      }
+    }
+    return ImmutableList.copyOf(files);
+  }
+
+  /**
+   * Adds the indexed files declaring the types used by the fields, methods and extensions of the
+   * given file descriptor to the collection. Only fully qualified type names are followed.
+   */
+  void addReferencedFiles(FileDescriptorProto proto, Collection<ProtoFile> files) {
+    for (DescriptorProto message : proto.getMessageTypeList()) {
+      addReferencedFiles(message, files);
+    }
+    for (FieldDescriptorProto extension : proto.getExtensionList()) {
+      addReferencedFiles(extension, files);
+    }
+    for (ServiceDescriptorProto service : proto.getServiceList()) {
+      for (MethodDescriptorProto method : service.getMethodList()) {
+        addReferencedFile(method.getInputType(), files);
+        addReferencedFile(method.getOutputType(), files);
+      }
+    }
+  }
+
+  /** Returns true if an indexed file with messages is in the given package or a subpackage. */
+  boolean containsPackage(String name) {
+    return packageNames.contains(name);
+  }
+
+  /** Returns true if a message of an indexed file has a field of the given simple name. */
+  boolean containsFieldName(String name) {
+    return fieldNames.contains(name);
+  }
+
+  private void addMessage(ProtoFile file, String scope, DescriptorProto message) {
+    String fullName = addSymbol(file, scope, message.getName());
+    for (FieldDescriptorProto field : message.getFieldList()) {
+      fieldNames.add(field.getName());
+    }
+    for (DescriptorProto nested : message.getNestedTypeList()) {
+      addMessage(file, fullName, nested);
+    }
+    for (EnumDescriptorProto enumType : message.getEnumTypeList()) {
+      addSymbol(file, fullName, enumType.getName());
+    }
+  }
+
+  private void addReferencedFiles(DescriptorProto message, Collection<ProtoFile> files) {
+    for (FieldDescriptorProto field : message.getFieldList()) {
+      addReferencedFiles(field, files);
+    }
+    for (FieldDescriptorProto extension : message.getExtensionList()) {
+      addReferencedFiles(extension, files);
+    }
+    for (DescriptorProto nested : message.getNestedTypeList()) {
+      addReferencedFiles(nested, files);
+    }
+  }
+
+  private void addReferencedFiles(FieldDescriptorProto field, Collection<ProtoFile> files) {
+    addReferencedFile(field.getTypeName(), files);
+    addReferencedFile(field.getExtendee(), files);
+  }
+
+  private void addReferencedFile(String typeName, Collection<ProtoFile> files) {
+    if (typeName.startsWith(".")) {
+      ProtoFile file = fileBySymbol.get(typeName.substring(1));
+      if (file != null) {
+        files.add(file);
+      }
+    }
+  }
+
+  private String addSymbol(ProtoFile file, String scope, String name) {
+    String fullName = scope.isEmpty() ? name : scope + "." + name;
+    // Keep the first declaration of a duplicated name.
+    if (!fileBySymbol.containsKey(fullName)) {
+      fileBySymbol.put(fullName, file);
+    }
+    return fullName;
+  }
+
+  private void addPackage(String pkg) {
+    packageNames.add(pkg);
+    int lastDot = pkg.lastIndexOf('.');
+    if (lastDot > 0) {
+      addPackage(pkg.substring(0, lastDot));
+    }
+  }
+}
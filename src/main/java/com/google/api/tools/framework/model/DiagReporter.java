@@ -30,6 +30,8 @@ public class DiagReporter {
   private final DiagCollector diagCollector;
   private final DiagSuppressor diagSuppressor;
   private final ConfigLocationResolver locationResolver;
+  // Collectors replacing the reporter's collector on threads running collectOnCurrentThread.
+  private final ThreadLocal<DiagCollector> threadCollector = new ThreadLocal<>();
 
   public DiagReporter(
       DiagCollector diagCollector,
@@ -43,7 +45,28 @@ public class DiagReporter {
   // TODO(user): This should be hidden / private. Having it public allows people to bypass
   // the reporter suppression.
   public DiagCollector getDiagCollector() {
-    return diagCollector;
+    DiagCollector collector = threadCollector.get();
+    return collector != null ? collector : diagCollector;
+  }
+
+  /**
+   * Runs the action with the diags reported on the current thread passed to the given collector
+   * instead of the reporter's collector, after suppression. {@link #getDiagCollector()} returns the
+   * given collector on the thread meanwhile. This allows a processor which runs work in parallel
+   * to add the diags to the reporter's collector in a deterministic order afterwards.
+   */
+  public void collectOnCurrentThread(DiagCollector collector, Runnable action) {
+    DiagCollector previous = threadCollector.get();
+    threadCollector.set(Preconditions.checkNotNull(collector, "collector"));
+    try {
+      action.run();
+    } finally {
+      if (previous != null) {
+        threadCollector.set(previous);
+      } else {
+        threadCollector.remove();
+      }
+    }
   }
 
   // TODO(user): Abstraction leak! Ideally suppressor should be immutable, need to modify
@@ -57,7 +80,7 @@ public class DiagReporter {
         && diagSuppressor.isDiagSuppressed(diag, diag.getLocation())) {
       return;
     }
-    diagCollector.addDiag(diag);
+    getDiagCollector().addDiag(diag);
   }
 
   public void reportWarning(LocationContext locationContext, String formatString, Object... args) {
@@ -75,7 +98,7 @@ public class DiagReporter {
     if (diag.getKind() == Kind.WARNING && diagSuppressor.isDiagSuppressed(diag, location)) {
       return;
     }
-    diagCollector.addDiag(diag);
+    getDiagCollector().addDiag(diag);
   }
 
   /**
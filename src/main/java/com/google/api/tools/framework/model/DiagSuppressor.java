@@ -18,15 +18,24 @@ package com.google.api.tools.framework.model;
 
 import com.google.api.tools.framework.model.Diag.Kind;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
-/** Manages the set of rules for suppressing {@link Kind#WARNING} Diags. */
+/**
+ * Manages the set of rules for suppressing {@link Kind#WARNING} Diags.
+ *
+ * <p>Suppression directives and suppressions of all warnings are kept in an index from lint rule
+ * to the elements they apply to. Checking a warning looks up the rule of its message once and
+ * then walks up the element's parents. Regexp patterns are only used for patterns added via
+ * {@link #addPattern(Element, String)}. The suppressor can be used from several threads at once.
+ */
 public class DiagSuppressor {
 
   // Regexp to match a suppression directive argument.
@@ -35,13 +44,26 @@ public class DiagSuppressor {
   private static final Pattern SUPPRESSION_DIRECTIVE_PATTERN =
       Pattern.compile(String.format("\\s*(?<aspect>[^-]+)-(?<rule>\\*|%s)", VALID_RULE_REGEX));
 
+  // The prefix of lint warnings, see LintRule#DIAG_PREFIX.
+  private static final String LINT_PREFIX = "(lint)";
+
+  // Index key for the suppression of all warnings. Other keys have the form 'aspect-rule' or
+  // 'aspect-*'.
+  private static final String ALL_WARNINGS = "*";
+
+  // A map from index keys to the elements under which the respective warnings are suppressed.
+  private final ConcurrentMap<String, Set<Element>> scopesByRule = new ConcurrentHashMap<>();
+
+  // The index keys which are suppressed on the model, and therefore for all locations.
+  private final Set<String> globalRules = ConcurrentHashMap.newKeySet();
+
   // A map of per-element regexp patterns which characterize suppressed warnings.
-  private final Map<Element, String> suppressions = Maps.newHashMap();
+  private final ConcurrentMap<Element, Pattern> suppressions = new ConcurrentHashMap<>();
 
   // Global suppression pattern that is not tied to any Element.
   // This is useful to check if a warning is suppressed when the caller
   // does not have an instance of the model and only has instance of Diag and the Location.
-  private Pattern compilerGlobalSuppressionPattern = Pattern.compile("");
+  private volatile Pattern compilerGlobalSuppressionPattern = Pattern.compile("");
 
   private final DiagCollector diagCollector;
 
@@ -54,7 +76,7 @@ public class DiagSuppressor {
   }
 
   public void suppressAllWarningsUnder(Element element) {
-    addPattern(element, ".*");
+    addScope(ALL_WARNINGS, element);
   }
 
   public void addSuppressionDirective(
@@ -100,8 +122,23 @@ public class DiagSuppressor {
       return;
     }
 
-    // Add the suppression pattern.
-    addPattern(elem, suppressionPattern(aspectName, ruleName));
+    // Add the suppression to the index.
+    addScope(aspectName + "-" + ruleName, elem);
+  }
+
+  private void addScope(String rule, Element elem) {
+    Set<Element> scopes = scopesByRule.get(rule);
+    if (scopes == null) {
+      scopes = ConcurrentHashMap.newKeySet();
+      Set<Element> existing = scopesByRule.putIfAbsent(rule, scopes);
+      if (existing != null) {
+        scopes = existing;
+      }
+    }
+    scopes.add(elem);
+    if (elem instanceof Model) {
+      globalRules.add(rule);
+    }
   }
 
   private boolean hasMatchingLinterRule(String ruleName, List<ConfigAspect> aspects) {
@@ -113,20 +150,23 @@ public class DiagSuppressor {
     return false;
   }
 
-  // Adds a pattern for given element.
-  public void addPattern(Element elem, String pattern) {
-    String elemPattern = suppressions.get(elem);
-    if (elemPattern == null) {
-      elemPattern = pattern;
-    } else {
-      elemPattern = elemPattern + "|(" + pattern + ")";
-    }
-    suppressions.put(elem, elemPattern);
+  // Adds a regexp pattern for given element. Prefer suppression directives, which are indexed.
+  public void addPattern(Element elem, final String pattern) {
+    suppressions.compute(
+        elem,
+        new BiFunction<Element, Pattern, Pattern>() {
+          @Override
+          public Pattern apply(Element elem, @Nullable Pattern current) {
+            String source = current == null ? pattern : current.pattern() + "|(" + pattern + ")";
+            Pattern elemPattern = Pattern.compile(source, Pattern.DOTALL);
 
-    // Check if suppression is on global model element.
-    if (elem instanceof Model && elemPattern != null) {
-      compilerGlobalSuppressionPattern = Pattern.compile(elemPattern, Pattern.DOTALL);
-    }
+            // Check if suppression is on global model element.
+            if (elem instanceof Model) {
+              compilerGlobalSuppressionPattern = elemPattern;
+            }
+            return elemPattern;
+          }
+        });
   }
 
   /**
@@ -141,6 +181,8 @@ public class DiagSuppressor {
       if (isSuppressedWarning(diag, ((ProtoLocation) location).getElement())) {
         return true;
       }
+    } else if (!globalRules.isEmpty() && isGloballySuppressed(diag.getMessage())) {
+      return true;
     } else if (compilerGlobalSuppressionPattern.matcher(diag.getMessage()).matches()) {
       return true;
     }
@@ -157,12 +199,36 @@ public class DiagSuppressor {
     if (diag.getKind() != Diag.Kind.WARNING) {
       return false;
     }
+    if (scopesByRule.isEmpty() && suppressions.isEmpty()) {
+      return false;
+    }
+
+    // Look up the elements under which the warning is suppressed.
+    Set<Element> allScopes = scopesByRule.get(ALL_WARNINGS);
+    Set<Element> ruleScopes = null;
+    Set<Element> aspectScopes = null;
+    String rule = lintRule(diag.getMessage());
+    if (rule != null) {
+      ruleScopes = scopesByRule.get(rule);
+      String aspectWildcard = aspectWildcard(rule);
+      if (aspectWildcard != null) {
+        aspectScopes = scopesByRule.get(aspectWildcard);
+      }
+    }
+
     Element current = elem;
     while (current != null) {
-      Pattern pattern = getPattern(current);
-      if (pattern != null && pattern.matcher(diag.getMessage()).matches()) {
+      if (contains(allScopes, current)
+          || contains(ruleScopes, current)
+          || contains(aspectScopes, current)) {
         return true;
       }
+      if (!suppressions.isEmpty()) {
+        Pattern pattern = getPattern(current);
+        if (pattern != null && pattern.matcher(diag.getMessage()).matches()) {
+          return true;
+        }
+      }
       if (current instanceof Model) {
         // Top-most parent tried.
         break;
@@ -180,21 +246,64 @@ public class DiagSuppressor {
     return false;
   }
 
-  // Gets a pattern for given element. This compiles the pattern on demand.
+  // Gets the regexp pattern for given element, or null if there is none.
   @Nullable
   public Pattern getPattern(Element elem) {
-    String source = suppressions.get(elem);
-    if (source == null) {
+    return suppressions.get(elem);
+  }
+
+  private boolean isGloballySuppressed(String message) {
+    if (globalRules.contains(ALL_WARNINGS)) {
+      return true;
+    }
+    String rule = lintRule(message);
+    if (rule == null) {
+      return false;
+    }
+    String aspectWildcard = aspectWildcard(rule);
+    return globalRules.contains(rule)
+        || (aspectWildcard != null && globalRules.contains(aspectWildcard));
+  }
+
+  private static boolean contains(@Nullable Set<Element> scopes, Element elem) {
+    return scopes != null && scopes.contains(elem);
+  }
+
+  /**
+   * Returns the 'aspect-rule' of a lint warning message as formatted by {@link
+   * com.google.api.tools.framework.aspects.LintRule}, or null if the message is not a lint
+   * warning.
+   */
+  @Nullable
+  private static String lintRule(String message) {
+    if (!message.startsWith(LINT_PREFIX)) {
+      return null;
+    }
+    int start = LINT_PREFIX.length();
+    while (start < message.length() && Character.isWhitespace(message.charAt(start))) {
+      start++;
+    }
+    int end = message.indexOf(':', start);
+    int dash = message.indexOf('-', start);
+    if (end < 0 || dash <= start || dash >= end - 1) {
       return null;
     }
-    return Pattern.compile(source, Pattern.DOTALL);
+    return message.substring(start, end);
   }
 
-  // Returns a pattern string to match a style warning with given aspect and rule name.
-  private static String suppressionPattern(String aspectName, String ruleName) {
-    return String.format(
-        "\\(lint\\)\\s*%s-%s:.*",
-        Pattern.quote(aspectName),
-        "*".equals(ruleName) ? VALID_RULE_REGEX : Pattern.quote(ruleName));
+  /**
+   * Returns the 'aspect-*' key which matches the given 'aspect-rule', or null if the rule name is
+   * not one which wildcard directives apply to.
+   */
+  @Nullable
+  private static String aspectWildcard(String rule) {
+    int dash = rule.indexOf('-');
+    for (int i = dash + 1; i < rule.length(); i++) {
+      char ch = rule.charAt(i);
+      if (!(ch >= 'a' && ch <= 'z' || ch >= '0' && ch <= '9' || ch == '-' || ch == '_')) {
+        return null;
+      }
+    }
+    return rule.substring(0, dash) + "-*";
   }
 }
@@ -36,10 +36,13 @@ import javax.annotation.Nullable;
  * globally relevant for many processor or only used locally by a tool. For example, derived type
  * information is considered to be globally relevant and hard-wired into the object model, so it is
  * easy discoverable.
+ *
+ * <p>Attributes with distinct keys can be put and read concurrently, for example by config aspects
+ * merging the model in parallel.
  */
 public abstract class Element {
 
-  private final Map<Key<?>, Object> attributes = Maps.newHashMap();
+  private final Map<Key<?>, Object> attributes = Maps.newConcurrentMap();
 
   /**
    * Returns the model associated with this element.
@@ -75,11 +78,7 @@ public abstract class Element {
    */
   @SuppressWarnings("unchecked")
   public <T> void addAttribute(Key<List<T>> key, T value) {
-    List<T> list = getAttribute(key);
-    if (list == null) {
-      list = Lists.newArrayList();
-      putAttribute(key, list);
-    }
+    List<T> list = (List<T>) attributes.computeIfAbsent(key, k -> Lists.newArrayList());
     list.add(value);
   }
 
@@ -38,14 +38,14 @@ public class EnumType extends ProtoElement {
    * Creates an enum backed up by the given proto.
    */
   public static EnumType create(ProtoContainerElement parent, EnumDescriptorProto proto,
-      String path) {
+      int[] path) {
     return new EnumType(parent, proto, path);
   }
 
   private final EnumDescriptorProto proto;
   private final ImmutableList<EnumValue> values;
 
-  private EnumType(ProtoContainerElement parent, EnumDescriptorProto proto, String path) {
+  private EnumType(ProtoContainerElement parent, EnumDescriptorProto proto, int[] path) {
     super(parent, proto.getName(), path);
     this.proto = proto;
 
@@ -54,7 +54,7 @@ public class EnumType extends ProtoElement {
     List<EnumValueDescriptorProto> valueProtos = proto.getValueList();
     for (int i = 0; i < valueProtos.size(); i++) {
       EnumValueDescriptorProto value = valueProtos.get(i);
-      String childPath = buildPath(path, EnumDescriptorProto.VALUE_FIELD_NUMBER, i);
+      int[] childPath = buildPath(path, EnumDescriptorProto.VALUE_FIELD_NUMBER, i);
       valuesBuilder.add(EnumValue.create(this, value, childPath));
     }
     values = valuesBuilder.build();
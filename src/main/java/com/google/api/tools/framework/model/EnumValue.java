@@ -31,13 +31,13 @@ public class EnumValue extends ProtoElement {
   /**
    * Creates an enum value backed up by the given proto.
    */
-  public static EnumValue create(EnumType parent, EnumValueDescriptorProto proto, String path) {
+  public static EnumValue create(EnumType parent, EnumValueDescriptorProto proto, int[] path) {
     return new EnumValue(parent, proto, path);
   }
 
   private final EnumValueDescriptorProto proto;
 
-  private EnumValue(EnumType parent, EnumValueDescriptorProto proto, String path) {
+  private EnumValue(EnumType parent, EnumValueDescriptorProto proto, int[] path) {
     super(parent, proto.getName(), path);
     this.proto = proto;
   }
@@ -44,25 +44,27 @@ public class Field extends ProtoElement {
   /**
    * Creates a field backed up by the given proto.
    */
-  public static Field create(MessageType parent, FieldDescriptorProto proto, String path,
+  public static Field create(MessageType parent, FieldDescriptorProto proto, int[] path,
       @Nullable Oneof oneof) {
     return new Field(parent, proto, path, oneof, proto.getName());
   }
 
   /**
-   * Creates a field that represents an extension.
+   * Creates a field that represents an extension. The extension is declared in another file, so
+   * the field has no location path in the file of its message.
    */
-  public static Field createAsExtension(MessageType parent, Extension extension, String path,
-      String name) {
-    Field field = new Field(parent, extension.getProto(), path, null, name);
+  public static Field createAsExtension(MessageType parent, Extension extension, String name) {
+    Field field = new Field(parent, extension.getProto(), EXTENSION_PATH, null, name);
     field.getFile().addExtension(extension, field);
     return field;
   }
 
+  private static final int[] EXTENSION_PATH = new int[0];
+
   private final FieldDescriptorProto proto;
   private Oneof oneof;
 
-  private Field(MessageType parent, FieldDescriptorProto proto, String path, Oneof oneof,
+  private Field(MessageType parent, FieldDescriptorProto proto, int[] path, Oneof oneof,
       String name) {
     super(parent, name, path);
     this.proto = proto;
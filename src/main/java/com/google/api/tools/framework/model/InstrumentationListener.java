@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.model;
+
+import com.google.inject.Key;
+
+/**
+ * A listener which receives the {@link ResourceUsage} of processing a {@link Model}. Registered
+ * with {@link Model#addInstrumentationListener(InstrumentationListener)}.
+ *
+ * <p>Listeners may be called concurrently if the model uses a parallel {@link StageScheduler}.
+ */
+public interface InstrumentationListener {
+
+  /**
+   * Called after the processor establishing the given stage has run. The element count is the
+   * number of elements visited by the processor, if it reports them through
+   * {@link ConfigAspectMeters}.
+   */
+  void processorFinished(Key<?> stage, ResourceUsage usage);
+
+  /**
+   * Called after the processor establishing the given stage has applied a config aspect to the
+   * model. The usage includes the start and end phases of the aspect, and the element count is the
+   * number of elements the aspect was applied to.
+   */
+  void configAspectFinished(Key<?> stage, ConfigAspect aspect, ResourceUsage usage);
+
+  /**
+   * Called after the linter has run the lint rule with the given name of a config aspect on the
+   * elements of the model. The element count is the number of elements the rule was applied to.
+   * Only rules applying to proto elements are reported.
+   */
+  void lintRuleFinished(ConfigAspect aspect, String ruleName, ResourceUsage usage);
+}
@@ -39,14 +39,14 @@ public class Interface extends ProtoElement {
   /**
    * Creates a interface backed up by the given proto.
    */
-  public static Interface create(ProtoFile parent, ServiceDescriptorProto proto, String path) {
+  public static Interface create(ProtoFile parent, ServiceDescriptorProto proto, int[] path) {
     return new Interface(parent, proto, path);
   }
 
   private final ServiceDescriptorProto proto;
   private final ImmutableList<Method> methods;
 
-  private Interface(ProtoFile parent, ServiceDescriptorProto proto, String path) {
+  private Interface(ProtoFile parent, ServiceDescriptorProto proto, int[] path) {
     super(parent, proto.getName(), path);
     this.proto = proto;
 
@@ -54,7 +54,7 @@ public class Interface extends ProtoElement {
     ImmutableList.Builder<Method> methodsBuilder = ImmutableList.builder();
     List<MethodDescriptorProto> methodProtos = proto.getMethodList();
     for (int i = 0; i < methodProtos.size(); i++) {
-      String childPath = buildPath(path, ServiceDescriptorProto.METHOD_FIELD_NUMBER, i);
+      int[] childPath = buildPath(path, ServiceDescriptorProto.METHOD_FIELD_NUMBER, i);
       methodsBuilder.add(Method.create(this, methodProtos.get(i), childPath));
     }
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import javax.annotation.Nullable;
+
+/**
+ * Storage for the source locations of the fields of a tree of config messages, as maintained by
+ * {@link ConfigSource} and its builders.
+ *
+ * <p>Locations are attached to messages by object identity. A location is keyed by a field and an
+ * optional element key, which is the key of a map entry or the index into a repeated field.
+ */
+abstract class LocationStore {
+
+  /** A consumer of the locations recorded for a message. */
+  interface LocationConsumer {
+    void accept(FieldDescriptor field, @Nullable Object elementKey, Location location);
+  }
+
+  /**
+   * Locations recorded while a builder rebuilds a message. Once the new message is built, {@link
+   * #close(Message)} attaches them, together with the locations of the original message which have
+   * not been overridden, to the new message.
+   */
+  interface Pending {
+    void put(FieldDescriptor field, @Nullable Object elementKey, Location location);
+
+    void close(Message newMessage);
+  }
+
+  /** Returns the location recorded for the field of the message, or null if there is none. */
+  @Nullable
+  abstract Location get(Message message, FieldDescriptor field, @Nullable Object elementKey);
+
+  /** Passes each location recorded for the message to the consumer. */
+  abstract void forEach(Message message, LocationConsumer consumer);
+
+  /** Starts recording the locations of a message which replaces the given one. */
+  abstract Pending open(Message message);
+
+  /**
+   * Returns the store to be held by a built {@link ConfigSource}. Builders only attach locations to
+   * newly built messages, so a store may return itself here as long as the messages of the built
+   * config are not rebuilt by other builders sharing the store.
+   */
+  abstract LocationStore snapshot();
+
+  /** Returns an independent, mutable copy of this store. */
+  abstract LocationStore copy();
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LocationStore} based on a map from message keys into maps of location keys with
+ * associated location.
+ *
+ * <p>A message key is a wrapper around a message which uses the messages's object identity for
+ * equality. This way, we can work around that by default, messages have value equality, and
+ * effectively can attach attributes to the tree of messages represented by a config message. The
+ * attribute in this case is the map from location key into source location, for a given message. A
+ * location key consists of a field descriptor, and an optional key for a map or index into a list.
+ *
+ * <p>Each snapshot is an immutable copy of the entire map.
+ */
+class MapLocationStore extends LocationStore {
+
+  private final Map<MessageKey, ImmutableMap<LocationKey, Location>> locations;
+
+  MapLocationStore() {
+    this(new LinkedHashMap<MessageKey, ImmutableMap<LocationKey, Location>>());
+  }
+
+  private MapLocationStore(Map<MessageKey, ImmutableMap<LocationKey, Location>> locations) {
+    this.locations = locations;
+  }
+
+  @Override
+  @Nullable
+  Location get(Message message, FieldDescriptor field, @Nullable Object elementKey) {
+    Map<LocationKey, Location> map = locations.get(new MessageKey(message));
+    return map != null ? map.get(new LocationKey(field, elementKey)) : null;
+  }
+
+  @Override
+  void forEach(Message message, LocationConsumer consumer) {
+    Map<LocationKey, Location> map = locations.get(new MessageKey(message));
+    if (map != null) {
+      for (Map.Entry<LocationKey, Location> entry : map.entrySet()) {
+        consumer.accept(entry.getKey().field, entry.getKey().elementKey, entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  Pending open(final Message message) {
+    return new Pending() {
+      // New locations added by the builder.
+      private final Map<LocationKey, Location> newLocations = new LinkedHashMap<>();
+
+      @Override
+      public void put(FieldDescriptor field, @Nullable Object elementKey, Location location) {
+        newLocations.put(new LocationKey(field, elementKey), location);
+      }
+
+      @Override
+      public void close(Message newMessage) {
+        // Propagate locations from the old version of the message in the new one which is built.
+        Map<LocationKey, Location> oldLocations = locations.remove(new MessageKey(message));
+        if (oldLocations != null) {
+          for (LocationKey key : oldLocations.keySet()) {
+            if (!newLocations.containsKey(key)) {
+              newLocations.put(key, oldLocations.get(key));
+            }
+          }
+        }
+
+        // Update locations for new message.
+        if (!newLocations.isEmpty()) {
+          locations.put(new MessageKey(newMessage), ImmutableMap.copyOf(newLocations));
+        }
+      }
+    };
+  }
+
+  @Override
+  LocationStore snapshot() {
+    return new MapLocationStore(ImmutableMap.copyOf(locations));
+  }
+
+  @Override
+  LocationStore copy() {
+    return new MapLocationStore(new LinkedHashMap<>(locations));
+  }
+
+  /**
+   * A helper class to represent a location key, a pair of a field descriptor and an optional
+   * element key.
+   */
+  private static class LocationKey {
+
+    private final FieldDescriptor field;
+    private final Object elementKey;
+
+    private LocationKey(FieldDescriptor field, @Nullable Object elementKey) {
+      this.field = field;
+      this.elementKey = elementKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(field, elementKey);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof LocationKey)) {
+        return false;
+      }
+      LocationKey other = (LocationKey) obj;
+      return Objects.equals(field, other.field) && Objects.equals(elementKey, other.elementKey);
+    }
+
+    @Override
+    public String toString() {
+      if (elementKey == null) {
+        return field.getFullName();
+      }
+      return String.format("%s[%s]", field.getFullName(), elementKey);
+    }
+  }
+
+  /**
+   * Wrapper around a message which uses identity for equality, hashCode, and toString.
+   *
+   * <p>Instead of this class, we could have used IdentityHashMap, however, the debugging experience
+   * is bad because that class unfortunately doesn't print identities on toString.
+   */
+  private static class MessageKey {
+
+    private final Message message;
+
+    private MessageKey(Message message) {
+      this.message = message;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("MessageKey#%s", System.identityHashCode(message));
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(message);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof MessageKey && ((MessageKey) obj).message == message;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+/**
+ * A listener which is notified when a proto file of a model with lazily materialized dependencies
+ * builds its elements. Registered with
+ * {@link Model#addMaterializationListener(MaterializationListener)}.
+ *
+ * <p>Listeners are called while the model holds its materialization lock, so a listener may itself
+ * cause further files to be materialized, but must not wait for other threads doing so. Until all
+ * listeners have returned, the file is only visited by visitors on the calling thread.
+ */
+public interface MaterializationListener {
+
+  /** Called after the messages, enums and interfaces of the given file have been built. */
+  void fileMaterialized(ProtoFile file);
+}
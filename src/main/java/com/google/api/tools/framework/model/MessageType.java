@@ -44,7 +44,7 @@ public class MessageType extends ProtoContainerElement {
    * Creates a message backed up by the given proto.
    */
   public static MessageType create(ProtoContainerElement parent, DescriptorProto proto,
-      String path, ExtensionPool extensionPool) {
+      int[] path, ExtensionPool extensionPool) {
     return new MessageType(parent, proto, path, extensionPool);
   }
 
@@ -52,7 +52,7 @@ public class MessageType extends ProtoContainerElement {
   private final ImmutableList<Field> fields;
   private ImmutableList<Oneof> oneofs;
 
-  private MessageType(ProtoContainerElement parent, DescriptorProto proto, String path,
+  private MessageType(ProtoContainerElement parent, DescriptorProto proto, int[] path,
       ExtensionPool extensionPool) {
     super(parent, proto.getName(), path);
     this.proto = proto;
@@ -67,7 +67,7 @@ public class MessageType extends ProtoContainerElement {
     ImmutableList.Builder<Oneof> oneofsBuilder = ImmutableList.builder();
     for (int i = 0; i < proto.getOneofDeclCount(); i++) {
       OneofDescriptorProto oneofProto = proto.getOneofDecl(i);
-      String childPath = buildPath(path, DescriptorProto.ONEOF_DECL_FIELD_NUMBER, i);
+      int[] childPath = buildPath(path, DescriptorProto.ONEOF_DECL_FIELD_NUMBER, i);
       oneofsBuilder.add(Oneof.create(parent, oneofProto, childPath));
     }
     this.oneofs = oneofsBuilder.build();
@@ -85,7 +85,7 @@ public class MessageType extends ProtoContainerElement {
           associatedOneof = oneofs.get(j);
         }
       }
-      String childPath = buildPath(path, DescriptorProto.FIELD_FIELD_NUMBER, i);
+      int[] childPath = buildPath(path, DescriptorProto.FIELD_FIELD_NUMBER, i);
       Field field = Field.create(this, fieldProtos.get(i), childPath, associatedOneof);
       fieldsBuilder.add(field);
       if (associatedOneof != null) {
@@ -94,8 +94,7 @@ public class MessageType extends ProtoContainerElement {
     }
     for (Map.Entry<String, Extension> entry :
         extensionPool.getSortedExtensionsByTypeName(getFullName())) {
-      fieldsBuilder.add(Field.createAsExtension(
-          this, entry.getValue(), entry.getValue().getPath(), entry.getKey()));
+      fieldsBuilder.add(Field.createAsExtension(this, entry.getValue(), entry.getKey()));
     }
     this.fields = fieldsBuilder.build();
   }
@@ -35,7 +35,7 @@ public class Method extends ProtoElement {
   /**
    * Creates a method with {@link MethodDescriptorProto}.
    */
-  public static Method create(Interface parent, MethodDescriptorProto proto, String path) {
+  public static Method create(Interface parent, MethodDescriptorProto proto, int[] path) {
     return new Method(parent, proto, path);
   }
 
@@ -44,7 +44,7 @@ public class Method extends ProtoElement {
   private final boolean requestStreaming;
   private final boolean responseStreaming;
 
-  private Method(Interface parent, MethodDescriptorProto proto, String path) {
+  private Method(Interface parent, MethodDescriptorProto proto, int[] path) {
     super(parent, proto.getName(), path);
     this.isDeprecated = proto.getOptions().getDeprecated();
     this.descriptor = new MethodDescriptor(proto);
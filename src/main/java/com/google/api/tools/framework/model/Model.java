@@ -17,7 +17,6 @@
 package com.google.api.tools.framework.model;
 
 import com.google.api.Service;
-import com.google.api.tools.framework.model.BoundedDiagCollector.TooManyDiagsException;
 import com.google.api.tools.framework.model.stages.Merged;
 import com.google.api.tools.framework.model.stages.Normalized;
 import com.google.api.tools.framework.model.stages.Requires;
@@ -25,10 +24,11 @@ import com.google.api.tools.framework.model.stages.Resolved;
 import com.google.api.tools.framework.processors.normalizer.DescriptorGenerator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
-import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -40,15 +40,22 @@ import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Message;
+import com.google.protobuf.Mixin;
 import com.google.protobuf.UInt32Value;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /** Model of an API service. Also manages processing pipelines and accumulation of diagnostics. */
@@ -79,6 +86,16 @@ public class Model extends Element implements ConfigLocationResolver {
   // This is for cases the new merging causes compatibility problems.
   private static final String PROTO3_CONFIG_MERGING_EXPERIMENT = "proto3_config_merging";
 
+  /**
+   * An experiment which defers building the elements of dependency (non-source) files until they
+   * are looked up in the symbol table or explicitly materialized. Visitors skip the contents of
+   * dependency files which are never materialized, which saves time and heap on large descriptor
+   * sets where most dependencies are unreferenced. The resolver materializes the dependencies
+   * which the sources and the service config can reach before any stage runs on them, see
+   * {@link #materializeReachable()}.
+   */
+  public static final String LAZY_DEPENDENCIES_EXPERIMENT = "lazy_dependencies";
+
   /**
    * Creates a new model based on the given file descriptor, list of source file names and list of
    * experiments to be enabled for the model.
@@ -202,6 +219,19 @@ public class Model extends Element implements ConfigLocationResolver {
   private Set<Set<String>> declaredVisibilityCombinations = Sets.newLinkedHashSet();
   private Scoper scoper = Scoper.UNRESTRICTED;
   private final List<ProtoElement> roots = Lists.newArrayList();
+  private StageScheduler stageScheduler = StageScheduler.serial();
+  private final List<InstrumentationListener> instrumentationListeners =
+      new CopyOnWriteArrayList<>();
+  private final Map<Key<?>, AtomicLong> visitedElements = Maps.newConcurrentMap();
+
+  // Only present if dependency files are materialized lazily.
+  @Nullable private final DeclarationIndex declarationIndex;
+  private final Object materializationLock = new Object();
+  private final List<MaterializationListener> materializationListeners =
+      new CopyOnWriteArrayList<>();
+
+  // The next dense id to hand out to a proto element of this model.
+  private final AtomicInteger nextElementId = new AtomicInteger();
 
   /** List of validators registered with this model. */
   private final List<ConfigValidator<? extends Element>> validators = Lists.newArrayList();
@@ -214,37 +244,39 @@ public class Model extends Element implements ConfigLocationResolver {
       DiagCollector diagCollector,
       DiagSuppressor diagSuppressor) {
     Set<String> sourcesSet = sources == null ? null : Sets.newHashSet(sources);
+    boolean lazyDependencies =
+        sourcesSet != null && experiments.isExperimentEnabled(LAZY_DEPENDENCIES_EXPERIMENT);
     ImmutableList.Builder<ProtoFile> builder = ImmutableList.builder();
     // To de-dup FileDescriptorProto in the descriptor set generated by protoc.
     Set<String> includedFiles = Sets.newHashSet();
-    for (FileDescriptorProto file : proto.getFileList()) {
+    List<FileDescriptorProto> fileProtos = Lists.newArrayList(proto.getFileList());
+    if (extensionPool.getDescriptor() != null) {
+      fileProtos.addAll(extensionPool.getDescriptor().getFileList());
+    }
+    for (FileDescriptorProto file : fileProtos) {
       if (BLACK_LISTED_FILES.contains(file.getName()) || includedFiles.contains(file.getName())) {
         continue;
       }
       includedFiles.add(file.getName());
+      boolean isSource = sourcesSet == null || sourcesSet.contains(file.getName());
       builder.add(
-          ProtoFile.create(
-              this,
-              file,
-              sourcesSet == null || sourcesSet.contains(file.getName()),
-              extensionPool));
+          lazyDependencies && !isSource
+              ? ProtoFile.createUnmaterialized(this, file, isSource, extensionPool)
+              : ProtoFile.create(this, file, isSource, extensionPool));
     }
-    if (extensionPool.getDescriptor() != null) {
-      for (FileDescriptorProto file : extensionPool.getDescriptor().getFileList()) {
-        if (BLACK_LISTED_FILES.contains(file.getName()) || includedFiles.contains(file.getName())) {
-          continue;
+    files = builder.build();
+    this.experiments = experiments;
+
+    if (lazyDependencies) {
+      declarationIndex = new DeclarationIndex();
+      for (ProtoFile file : files) {
+        if (!file.isMaterialized()) {
+          declarationIndex.add(file);
         }
-        includedFiles.add(file.getName());
-        builder.add(
-            ProtoFile.create(
-                this,
-                file,
-                sourcesSet == null || sourcesSet.contains(file.getName()),
-                extensionPool));
       }
+    } else {
+      declarationIndex = null;
     }
-    files = builder.build();
-    this.experiments = experiments;
 
     this.diagResolver = new DiagReporter(diagCollector, diagSuppressor, this);
   }
@@ -354,6 +386,20 @@ public class Model extends Element implements ConfigLocationResolver {
     return apiV1VersionSuffix;
   }
 
+  /** Returns a new id for a proto element of this model. */
+  int newElementId() {
+    return nextElementId.getAndIncrement();
+  }
+
+  /**
+   * Returns the number of proto element ids handed out so far. All {@link
+   * ProtoElement#getElementId() element ids} of this model are below this bound, which grows only
+   * when dependency files are materialized.
+   */
+  public int getElementIdBound() {
+    return nextElementId.get();
+  }
+
   //-------------------------------------------------------------------------
   // Attributes belonging to resolved stage
 
@@ -573,50 +619,241 @@ public class Model extends Element implements ConfigLocationResolver {
     return processors.put(processor.establishes(), processor);
   }
 
+  /** Returns the processor registered to establish the given stage, or null if there is none. */
+  @Nullable
+  Processor getProcessor(Key<?> stage) {
+    return processors.get(stage);
+  }
+
+  /**
+   * Sets the scheduler used to run processors when establishing stages. Returns the previous
+   * scheduler. Models use {@link StageScheduler#serial()} by default.
+   */
+  public StageScheduler setStageScheduler(StageScheduler stageScheduler) {
+    StageScheduler result = this.stageScheduler;
+    this.stageScheduler = Preconditions.checkNotNull(stageScheduler);
+    return result;
+  }
+
+  /** Returns the scheduler used to run processors when establishing stages. */
+  public StageScheduler getStageScheduler() {
+    return stageScheduler;
+  }
+
   /**
    * Establishes a processing stage. Runs the chain of all processors required to guarantee the
    * given key is attached at the model. Returns true on success.
    */
   public boolean establishStage(Key<?> key) {
-    Deque<Key<?>> computing = Queues.newArrayDeque();
-    return establishStage(computing, key);
+    DiagCollector diagCollector = getDiagReporter().getDiagCollector();
+    if (diagCollector instanceof ConcurrentDiagCollector) {
+      // Collect diags reported concurrently in the order of a serial run.
+      return ((ConcurrentDiagCollector) diagCollector)
+          .collectInOrder(() -> stageScheduler.establishStage(this, key));
+    }
+    return stageScheduler.establishStage(this, key);
+  }
+
+  /**
+   * Adds a listener which receives the resource usage of each processor and config aspect run on
+   * this model from now on. Metering adds overhead to processing, so listeners should only be
+   * registered when the usage is wanted.
+   */
+  public void addInstrumentationListener(InstrumentationListener listener) {
+    instrumentationListeners.add(Preconditions.checkNotNull(listener));
+  }
+
+  /** Returns true if resource usage of processing this model is metered. */
+  public boolean isInstrumented() {
+    return !instrumentationListeners.isEmpty();
+  }
+
+  /** Returns the instrumentation listeners registered with this model. */
+  public List<InstrumentationListener> getInstrumentationListeners() {
+    return instrumentationListeners;
+  }
+
+  /**
+   * Returns true if this model was created with {@link #LAZY_DEPENDENCIES_EXPERIMENT}, so that
+   * some of its files may not have been {@linkplain ProtoFile#isMaterialized() materialized}.
+   */
+  public boolean hasLazyDependencies() {
+    return declarationIndex != null;
+  }
+
+  /**
+   * Adds a listener which is notified of each file materialized from now on. Files materialized
+   * earlier are not reported.
+   */
+  public void addMaterializationListener(MaterializationListener listener) {
+    materializationListeners.add(Preconditions.checkNotNull(listener));
+  }
+
+  /** Materializes all files of this model. */
+  public void materializeAll() {
+    for (ProtoFile file : files) {
+      file.materialize();
+    }
+  }
+
+  /**
+   * Materializes the file declaring the type or interface of the given full name, if it is one
+   * of the files materialized lazily. Returns true in this case, once the file and its listeners
+   * are done, even if another thread materialized it.
+   */
+  boolean materializeDeclaring(String fullName) {
+    if (declarationIndex == null) {
+      return false;
+    }
+    ProtoFile file = declarationIndex.lookup(fullName);
+    if (file == null) {
+      return false;
+    }
+    materialize(file);
+    return true;
   }
 
-  private boolean establishStage(Deque<Key<?>> computing, Key<?> stage) {
-    if (hasAttribute(stage)) {
-      return true;
+  /** Materializes the files declaring a type or interface whose full name has the prefix. */
+  void materializeDeclaringPrefix(String prefix) {
+    if (declarationIndex != null) {
+      for (ProtoFile file : declarationIndex.lookupPrefix(prefix)) {
+        file.materialize();
+      }
     }
-    if (computing.contains(stage)) {
-      throw new IllegalStateException(
-          String.format(
-              "Cyclic dependency of stages: %s => %s", Joiner.on(" => ").join(computing), stage));
+  }
+
+  /** Returns the index of names declared by files which are materialized lazily, if any. */
+  @Nullable
+  DeclarationIndex getDeclarationIndex() {
+    return declarationIndex;
+  }
+
+  /**
+   * Builds the elements of the file and notifies the listeners, exactly once. The file only
+   * becomes {@linkplain ProtoFile#isMaterialized() materialized} for other threads once the
+   * listeners are done, so a concurrent visitor never sees elements which are not resolved yet.
+   * Other threads materializing the file wait for this. A single lock for the model is used rather
+   * than one per file, since listeners materialize further files, and per-file locks taken in
+   * different orders by different threads could deadlock.
+   */
+  void materialize(ProtoFile file) {
+    synchronized (materializationLock) {
+      if (file.isVisitable()) {
+        // Done, or a listener of this thread looks up a name declared by the file again.
+        return;
+      }
+      file.startMaterializing();
+      try {
+        file.buildElements();
+        for (MaterializationListener listener : materializationListeners) {
+          listener.fileMaterialized(file);
+        }
+      } finally {
+        file.finishMaterializing();
+      }
+    }
+  }
+
+  /**
+   * Materializes the lazily materialized files which the source files and the service config can
+   * reach, starting from the sources and the files declaring the apis, mixins, types and enums
+   * named in the service config, and following the type names used by the fields, methods and
+   * extensions of each reached file. Called by the resolver before it builds the symbol table, so
+   * that all elements reachable from the roots of the model are resolved, merged, normalized and
+   * linted like those of eagerly built files.
+   *
+   * <p>Files outside of this set are only materialized by lookups of names which the roots cannot
+   * reach, e.g. in documentation references or rule selectors. Such files are added to the symbol
+   * table and resolved when materialized, but they are out of scope for the stages which follow
+   * and are not merged, normalized or linted.
+   */
+  public void materializeReachable() {
+    if (declarationIndex == null) {
+      return;
     }
-    computing.addLast(stage);
-    Processor processor = processors.get(stage);
-    if (processor == null) {
-      throw new IllegalArgumentException(
-          String.format("No processor registered to establish stage '%s'", stage));
+    Deque<ProtoFile> pending = Queues.newArrayDeque();
+    for (ProtoFile file : files) {
+      if (file.isSource()) {
+        pending.add(file);
+      }
     }
-    for (Key<?> subStage : processor.requires()) {
-      if (!establishStage(computing, subStage)) {
-        return false;
+    if (serviceConfig != null) {
+      Service config = getServiceConfig();
+      for (Api api : config.getApisList()) {
+        addDeclaringFiles(api.getName(), pending);
+        for (Mixin mixin : api.getMixinsList()) {
+          addDeclaringFiles(mixin.getName(), pending);
+        }
+      }
+      for (com.google.protobuf.Type type : config.getTypesList()) {
+        addDeclaringFiles(type.getName(), pending);
+      }
+      for (com.google.protobuf.Enum enumType : config.getEnumsList()) {
+        addDeclaringFiles(enumType.getName(), pending);
       }
     }
-    computing.removeLast();
-    try {
-      if (!processor.run(this)) {
-        return false;
+    Set<ProtoFile> reached = Sets.newHashSet();
+    while (!pending.isEmpty()) {
+      ProtoFile file = pending.poll();
+      if (reached.add(file)) {
+        file.materialize();
+        declarationIndex.addReferencedFiles(file.getProto(), pending);
       }
-    } catch (TooManyDiagsException ex) {
-      // Process generated too many errors and wants to abort.
-      return false;
     }
+  }
 
-    if (!hasAttribute(stage)) {
-      throw new IllegalStateException(
-          String.format("Processor '%s' failed to establish stage '%s'", processor, stage));
+  private void addDeclaringFiles(String name, Collection<ProtoFile> result) {
+    if (name.endsWith(".*")) {
+      result.addAll(declarationIndex.lookupPrefix(name.substring(0, name.length() - 1)));
+    } else {
+      ProtoFile file = declarationIndex.lookup(name);
+      if (file != null) {
+        result.add(file);
+      }
     }
-    return true;
+  }
+
+  /** Adds to the count of elements visited by the processor of the given stage. */
+  void addVisitedElements(Key<?> stage, long count) {
+    visitedElements.computeIfAbsent(stage, k -> new AtomicLong()).addAndGet(count);
+  }
+
+  /** Returns and resets the count of elements visited by the processor of the given stage. */
+  long takeVisitedElements(Key<?> stage) {
+    AtomicLong counter = visitedElements.remove(stage);
+    return counter == null ? 0 : counter.get();
+  }
+
+  // Stage processors run by a parallel scheduler may attach attributes to the model concurrently.
+
+  @Override
+  public synchronized <T> T putAttribute(Key<T> key, T value) {
+    return super.putAttribute(key, value);
+  }
+
+  @Override
+  public synchronized <T> void addAttribute(Key<List<T>> key, T value) {
+    super.addAttribute(key, value);
+  }
+
+  @Override
+  public synchronized <T> T removeAttribute(Key<T> key) {
+    return super.removeAttribute(key);
+  }
+
+  @Override
+  public synchronized <T> T getAttribute(Key<T> key) {
+    return super.getAttribute(key);
+  }
+
+  @Override
+  public synchronized <T> T getAttributeOrDefault(Key<T> key, T defaultValue) {
+    return super.getAttributeOrDefault(key, defaultValue);
+  }
+
+  @Override
+  public synchronized boolean hasAttribute(Key<?> key) {
+    return super.hasAttribute(key);
   }
 
   // -------------------------------------------------------------------------
@@ -637,6 +874,25 @@ public class Model extends Element implements ConfigLocationResolver {
     this.dataPath = dataPath;
   }
 
+  private final ConcurrentMap<String, String> includedDataFiles = new ConcurrentHashMap<>();
+
+  /**
+   * Records that the content of a data file, given by its path relative to the data path, was
+   * included into the model. Tools which cache compilation results use the recorded files to
+   * detect changes of inputs besides the descriptors and config files.
+   */
+  public void recordIncludedDataFile(String relativePath, String content) {
+    includedDataFiles.put(relativePath, content);
+  }
+
+  /**
+   * Returns the data files included into the model so far, mapping their paths relative to the
+   * data path to their content.
+   */
+  public ImmutableMap<String, String> getIncludedDataFiles() {
+    return ImmutableMap.copyOf(includedDataFiles);
+  }
+
   /**
    * Finds a file on the data path. Returns null if not found. DEPRECATED: Use
    * ToolUtil.findDataFile()
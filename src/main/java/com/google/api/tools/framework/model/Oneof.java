@@ -35,11 +35,11 @@ public class Oneof extends ProtoElement {
   private final OneofDescriptorProto proto;
 
   public static Oneof create(ProtoContainerElement parent, OneofDescriptorProto proto,
-      String path) {
+      int[] path) {
     return new Oneof(parent, proto, path);
   }
 
-  private Oneof(ProtoContainerElement parent, OneofDescriptorProto proto, String path) {
+  private Oneof(ProtoContainerElement parent, OneofDescriptorProto proto, int[] path) {
     super(parent, proto.getName(), path);
     this.proto = proto;
   }
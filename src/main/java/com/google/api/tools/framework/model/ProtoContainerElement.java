@@ -22,8 +22,6 @@ import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
 
 import java.util.List;
 
-import javax.annotation.Nullable;
-
 /**
  * Base class of protocol elements which are containers for messages and enums (proto files and
  * messages).
@@ -39,10 +37,15 @@ public abstract class ProtoContainerElement extends ProtoElement {
    * child elements. The initialization is done in the child so methods like {@link #getFullName}
    * work during initialization.
    */
-  protected ProtoContainerElement(@Nullable ProtoElement parent, String name, String path) {
+  protected ProtoContainerElement(ProtoElement parent, String name, int[] path) {
     super(parent, name, path);
   }
 
+  /** Creates a root container of the given model. */
+  ProtoContainerElement(Model model, String name, int[] path) {
+    super(model, name, path);
+  }
+
   /**
    * Returns the messages.
    */
@@ -59,14 +62,14 @@ public abstract class ProtoContainerElement extends ProtoElement {
 
   protected void buildChildren(List<DescriptorProto> messageList,
       List<EnumDescriptorProto> enumList,
-      String path,
+      int[] path,
       int messageTypeNumber,
       int enumTypeNumber,
       ExtensionPool extensionPool) {
     // Build messages.
     ImmutableList.Builder<MessageType> messagesBuilder = ImmutableList.builder();
     for (int i = 0; i < messageList.size(); i++) {
-      String childPath = buildPath(path, messageTypeNumber, i);
+      int[] childPath = buildPath(path, messageTypeNumber, i);
       messagesBuilder.add(MessageType.create(this, messageList.get(i), childPath, extensionPool));
     }
     messages = messagesBuilder.build();
@@ -74,7 +77,7 @@ public abstract class ProtoContainerElement extends ProtoElement {
     // Build enums.
     ImmutableList.Builder<EnumType> enumsBuilder = ImmutableList.builder();
     for (int i = 0; i < enumList.size(); i++) {
-      String childPath = buildPath(path, enumTypeNumber, i);
+      int[] childPath = buildPath(path, enumTypeNumber, i);
       enumsBuilder.add(EnumType.create(this, enumList.get(i), childPath));
     }
     enums = enumsBuilder.build();
@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Syntax;
+import java.util.Arrays;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -28,13 +29,27 @@ public abstract class ProtoElement extends Element {
 
   private final ProtoElement parent;
   private final String name;
-  private final String path;
+  private final int[] path;
+  private final int elementId;
 
-  /** Creates the element, given its parent and (simple) name. */
-  protected ProtoElement(@Nullable ProtoElement parent, String name, String path) {
+  /**
+   * Creates the element, given its parent, (simple) name and its location path in the proto file,
+   * as in {@code SourceCodeInfo.Location.path}.
+   */
+  protected ProtoElement(ProtoElement parent, String name, int[] path) {
+    this(parent, parent.getModel(), name, path);
+  }
+
+  /** Creates a root element of the given model. */
+  ProtoElement(Model model, String name, int[] path) {
+    this(null, model, name, path);
+  }
+
+  private ProtoElement(@Nullable ProtoElement parent, Model model, String name, int[] path) {
     this.parent = parent;
     this.name = Preconditions.checkNotNull(name);
     this.path = path;
+    this.elementId = model.newElementId();
   }
 
   // -------------------------------------------------------------------------
@@ -90,18 +105,26 @@ public abstract class ProtoElement extends Element {
     return getFile().getLocation(this);
   }
 
-  /** Returns the location path of this element in the proto file. */
-  String getPath() {
+  /**
+   * Returns the id of this element, which is unique within the model. Ids are dense, so they can
+   * index bit sets and arrays sized by {@link Model#getElementIdBound()}.
+   */
+  public int getElementId() {
+    return elementId;
+  }
+
+  /** Returns the location path of this element in the proto file. Must not be modified. */
+  int[] getPath() {
     return path;
   }
 
   /** Helper function to build location path. */
-  static String buildPath(String parentPath, int fieldNumber, int fieldIndex) {
-    if (Strings.isNullOrEmpty(parentPath)) {
-      return String.format("%d.%d", fieldNumber, fieldIndex);
-    } else {
-      return String.format("%s.%d.%d", parentPath, fieldNumber, fieldIndex);
-    }
+  static int[] buildPath(@Nullable int[] parentPath, int fieldNumber, int fieldIndex) {
+    int length = parentPath == null ? 0 : parentPath.length;
+    int[] path = parentPath == null ? new int[2] : Arrays.copyOf(parentPath, length + 2);
+    path[length] = fieldNumber;
+    path[length + 1] = fieldIndex;
+    return path;
   }
 
   // -------------------------------------------------------------------------
@@ -17,10 +17,8 @@
 package com.google.api.tools.framework.model;
 
 import com.google.api.tools.framework.model.ExtensionPool.Extension;
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Maps;
 import com.google.protobuf.DescriptorProtos;
 import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
@@ -29,17 +27,16 @@ import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Syntax;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import javax.annotation.Nullable;
 
 /**
  * Represents a protocol buffer file.
  */
 public class ProtoFile extends ProtoContainerElement {
 
-  private static final Joiner DOT_JOINER = Joiner.on('.');
   // Locations for documentation in proto files.
-  private static final ImmutableList<String> FILE_DOC_LOCATIONS = ImmutableList.of(
-      "12", // syntax statement
+  private static final ImmutableList<int[]> FILE_DOC_LOCATIONS = ImmutableList.of(
+      new int[] {12}, // syntax statement
 
       // TODO(user) Decide if we want to add this back in. In its current form, it doesn't work
       // because the comments are attached to specific "option" statements, so the path is something
@@ -50,7 +47,7 @@ public class ProtoFile extends ProtoContainerElement {
       // this support on "option" statements.
       // "8",  // option statement
 
-      "2"   // package statement
+      new int[] {2}   // package statement
       );
 
   /**
@@ -58,26 +55,55 @@ public class ProtoFile extends ProtoContainerElement {
    */
   public static ProtoFile create(Model model, FileDescriptorProto proto, boolean isSource,
       ExtensionPool extensionPool) {
-    return new ProtoFile(model, proto, isSource, extensionPool);
+    return new ProtoFile(model, proto, isSource, extensionPool, true);
+  }
+
+  /**
+   * Creates a new protocol file whose messages, enums and interfaces are not built until they are
+   * first requested, or the file is explicitly {@linkplain #materialize() materialized}.
+   */
+  static ProtoFile createUnmaterialized(Model model, FileDescriptorProto proto, boolean isSource,
+      ExtensionPool extensionPool) {
+    return new ProtoFile(model, proto, isSource, extensionPool, false);
   }
 
   // The location path is empty for ProtoFile element.
-  private static final String PATH = "";
+  private static final int[] PATH = new int[0];
   private final Model model;
   private final FileDescriptorProto proto;
   private final boolean isSource;
-  private final ImmutableList<Interface> interfaces;
-  private final ImmutableListMultimap<String, DescriptorProtos.SourceCodeInfo.Location> locationMap;
-  private final Map<ProtoElement, Location> protoToLocation = Maps.newHashMap();
-  private final Map<Extension, Field> extensions = Maps.newHashMap();
+  private final ExtensionPool extensionPool;
+  private volatile boolean materialized;
+  // The thread building the elements and notifying the listeners of this file, while it does so.
+  @Nullable private volatile Thread materializingThread;
+  private ImmutableList<Interface> interfaces;
+  private volatile SourceLocationIndex locationIndex;
+  private final Map<ProtoElement, Location> protoToLocation = Maps.newConcurrentMap();
+  private final Map<Field, Extension> extensions = Maps.newConcurrentMap();
   private final Syntax syntax;
 
   private ProtoFile(Model model, FileDescriptorProto proto, boolean isSource,
-      ExtensionPool extensionPool) {
-    super(null, proto.getName(), PATH);
+      ExtensionPool extensionPool, boolean materialize) {
+    super(model, proto.getName(), PATH);
     this.model = model;
     this.isSource = isSource;
     this.proto = proto;
+    this.extensionPool = extensionPool;
+    if (materialize) {
+      buildElements();
+      materialized = true;
+    }
+
+    // Initialize ProtoFile location.
+    syntax = getProtoSyntax(proto);
+    protoToLocation.put(this, new ProtoLocation(this));
+  }
+
+  /**
+   * Builds the messages, enums and interfaces of this file. Must be called at most once, either
+   * from the constructor or by {@link Model#materialize(ProtoFile)}.
+   */
+  void buildElements() {
     buildChildren(proto.getMessageTypeList(),
         proto.getEnumTypeList(),
         PATH,
@@ -89,30 +115,54 @@ public class ProtoFile extends ProtoContainerElement {
     ImmutableList.Builder<Interface> interfacesBuilder = ImmutableList.builder();
     List<ServiceDescriptorProto> serviceProtos = proto.getServiceList();
     for (int i = 0; i < serviceProtos.size(); i++) {
-      String childPath = buildPath(null, FileDescriptorProto.SERVICE_FIELD_NUMBER, i);
+      int[] childPath = buildPath(null, FileDescriptorProto.SERVICE_FIELD_NUMBER, i);
       interfacesBuilder.add(Interface.create(this, serviceProtos.get(i), childPath));
     }
 
     interfaces = interfacesBuilder.build();
+  }
 
-    // Build location map
-    ImmutableListMultimap.Builder<String, DescriptorProtos.SourceCodeInfo.Location> builder =
-        ImmutableListMultimap.builder();
-    for (DescriptorProtos.SourceCodeInfo.Location location :
-        proto.getSourceCodeInfo().getLocationList()) {
-      builder.put(DOT_JOINER.join(location.getPathList()), location);
-    }
+  /**
+   * Returns true if the messages, enums and interfaces of this file have been built. This is
+   * always the case unless the model was created with lazily materialized dependencies.
+   */
+  public boolean isMaterialized() {
+    return materialized;
+  }
 
-    // Add all extension locations
-    for (Entry<Extension, Field> entry : extensions.entrySet()) {
-      builder.put(entry.getKey().getPath(), entry.getKey().getLocation());
-      protoToLocation.put(entry.getValue(), entry.getKey().getFileLocation());
+  /**
+   * Builds the messages, enums and interfaces of this file if this has not happened yet. Listeners
+   * registered with {@link Model#addMaterializationListener} are notified of the new elements.
+   */
+  public void materialize() {
+    if (!materialized) {
+      model.materialize(this);
     }
-    locationMap = builder.build();
+  }
 
-    // Initialize ProtoFile location.
-    syntax = getProtoSyntax(proto);
-    protoToLocation.put(this, new ProtoLocation(this));
+  /**
+   * Returns true if visitors on the current thread may traverse the elements of this file: once it
+   * is materialized, or while the current thread notifies the listeners of its materialization.
+   */
+  boolean isVisitable() {
+    return materialized || materializingThread == Thread.currentThread();
+  }
+
+  /**
+   * Marks the start of materialization on the current thread, after which the elements are built
+   * and visible to this thread only. Called under the materialization lock of the model.
+   */
+  void startMaterializing() {
+    materializingThread = Thread.currentThread();
+  }
+
+  /**
+   * Publishes the elements of this file to all threads, once the listeners have been notified.
+   * Called under the materialization lock of the model.
+   */
+  void finishMaterializing() {
+    materialized = true;
+    materializingThread = null;
   }
 
   @Override public String toString() {
@@ -181,6 +231,7 @@ public class ProtoFile extends ProtoContainerElement {
    * Returns the interfaces in this file.
    */
   public ImmutableList<Interface> getInterfaces() {
+    materialize();
     return interfaces;
   }
 
@@ -188,20 +239,21 @@ public class ProtoFile extends ProtoContainerElement {
    * Returns the interfaces reachable with active scoper.
    */
   public Iterable<Interface> getReachableInterfaces() {
-    return getModel().reachable(interfaces);
+    return getModel().reachable(getInterfaces());
   }
 
   /**
    * Package private helper to get the location backed up by this proto file for the given element.
    */
   Location getLocation(ProtoElement element) {
-    if (protoToLocation.containsKey(element)) {
-      return protoToLocation.get(element);
+    Location location = protoToLocation.get(element);
+    if (location == null) {
+      location = ProtoLocation.convertFrom(getSourceCodeLocation(element), element);
+      Location existing = protoToLocation.putIfAbsent(element, location);
+      if (existing != null) {
+        location = existing;
+      }
     }
-
-    Location location =
-        ProtoLocation.convertFrom(getSourceCodeLocation(element.getPath()), element);
-    protoToLocation.put(element, location);
     return location;
   }
 
@@ -213,8 +265,8 @@ public class ProtoFile extends ProtoContainerElement {
     if (element instanceof ProtoFile) {
       // For files themselves, comments from multiple locations are composed.
       StringBuilder result = new StringBuilder();
-      for (String path : FILE_DOC_LOCATIONS) {
-        String comment = getDocumentation(path);
+      for (int[] path : FILE_DOC_LOCATIONS) {
+        String comment = getDocumentation(getLocationIndex().get(path));
         if (Strings.isNullOrEmpty(comment)) {
           continue;
         }
@@ -225,18 +277,36 @@ public class ProtoFile extends ProtoContainerElement {
       }
       return result.toString();
     } else {
-      return getDocumentation(element.getPath());
+      return getDocumentation(getSourceCodeLocation(element));
     }
   }
 
+  /**
+   * Returns the messages of this file, building them first if the file is not materialized yet.
+   */
+  @Override
+  public ImmutableList<MessageType> getMessages() {
+    materialize();
+    return super.getMessages();
+  }
+
+  /**
+   * Returns the enums of this file, building them first if the file is not materialized yet.
+   */
+  @Override
+  public ImmutableList<EnumType> getEnums() {
+    materialize();
+    return super.getEnums();
+  }
+
   @Override
   public Syntax getSyntax() {
     return syntax;
   }
 
-  private String getDocumentation(String path) {
+  private static String getDocumentation(
+      @Nullable DescriptorProtos.SourceCodeInfo.Location location) {
     String comment = "";
-    DescriptorProtos.SourceCodeInfo.Location location = getSourceCodeLocation(path);
     if (location != null) {
       if (!Strings.isNullOrEmpty(location.getLeadingComments())) {
         comment = location.getLeadingComments();
@@ -248,13 +318,33 @@ public class ProtoFile extends ProtoContainerElement {
     return comment;
   }
 
-  private DescriptorProtos.SourceCodeInfo.Location getSourceCodeLocation(String path) {
-    if (locationMap.containsKey(path)) {
-      // We get the first location.
-      return locationMap.get(path).get(0);
-    } else {
-      return null;
+  @Nullable
+  private DescriptorProtos.SourceCodeInfo.Location getSourceCodeLocation(ProtoElement element) {
+    if (element instanceof Field) {
+      // Extensions are located in the file declaring them.
+      Extension extension = extensions.get(element);
+      if (extension != null) {
+        return extension.getLocation();
+      }
+    }
+    return getLocationIndex().get(element.getPath());
+  }
+
+  /**
+   * Returns the index of source code locations of this file by path, building it on first use.
+   * Most files of large descriptor sets are dependencies whose locations are never asked for.
+   */
+  private SourceLocationIndex getLocationIndex() {
+    SourceLocationIndex result = locationIndex;
+    if (result == null) {
+      synchronized (this) {
+        result = locationIndex;
+        if (result == null) {
+          locationIndex = result = new SourceLocationIndex(proto.getSourceCodeInfo());
+        }
+      }
     }
+    return result;
   }
 
   private static Syntax getProtoSyntax(FileDescriptorProto proto) {
@@ -275,6 +365,7 @@ public class ProtoFile extends ProtoContainerElement {
   }
 
   void addExtension(Extension extension, Field field) {
-    extensions.put(extension, field);
+    extensions.put(field, extension);
+    protoToLocation.put(field, extension.getFileLocation());
   }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.model;
+
+import com.google.common.base.Preconditions;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Accumulates the {@link ResourceUsage} of a sequence of intervals, each delimited by
+ * {@link #start()} and {@link #stop(long)}. An interval must start and stop on the same thread.
+ * Not thread safe.
+ */
+public class ResourceMeter {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+  private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationsBean();
+
+  private long wallNanos;
+  private long cpuNanos;
+  private long allocatedBytes;
+  private long elementCount;
+
+  private boolean running;
+  private long startWall;
+  private long startCpu;
+  private long startAllocated;
+
+  /** Starts an interval. */
+  public void start() {
+    Preconditions.checkState(!running, "Meter is already running.");
+    running = true;
+    startAllocated = allocatedBytes();
+    startCpu = cpuNanos();
+    startWall = System.nanoTime();
+  }
+
+  /** Stops the current interval, during which the given number of elements were processed. */
+  public void stop(long elements) {
+    long endWall = System.nanoTime();
+    long endCpu = cpuNanos();
+    long endAllocated = allocatedBytes();
+    Preconditions.checkState(running, "Meter is not running.");
+    running = false;
+    wallNanos += endWall - startWall;
+    cpuNanos += endCpu - startCpu;
+    allocatedBytes += endAllocated - startAllocated;
+    elementCount += elements;
+  }
+
+  /** Adds usage metered elsewhere, for example on other threads, to this meter. */
+  public void add(ResourceUsage usage) {
+    wallNanos += usage.getWallNanos();
+    cpuNanos += usage.getCpuNanos();
+    allocatedBytes += usage.getAllocatedBytes();
+    elementCount += usage.getElementCount();
+  }
+
+  /** Returns the usage accumulated over all intervals so far. */
+  public ResourceUsage getUsage() {
+    return ResourceUsage.create(wallNanos, cpuNanos, allocatedBytes, elementCount);
+  }
+
+  private static long cpuNanos() {
+    return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATIONS != null
+        ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+  }
+
+  private static com.sun.management.ThreadMXBean allocationsBean() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+      if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+        return bean;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.model;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Resources used while processing a model: wall time, CPU time and bytes allocated by the
+ * processing thread, and the number of elements processed.
+ */
+@AutoValue
+public abstract class ResourceUsage {
+
+  /** Usage of no resources at all. */
+  public static final ResourceUsage NONE = create(0, 0, 0, 0);
+
+  public static ResourceUsage create(
+      long wallNanos, long cpuNanos, long allocatedBytes, long elementCount) {
+    return new AutoValue_ResourceUsage(wallNanos, cpuNanos, allocatedBytes, elementCount);
+  }
+
+  /** Returns the elapsed wall time in nanoseconds. */
+  public abstract long getWallNanos();
+
+  /**
+   * Returns the CPU time of the processing thread in nanoseconds, or zero if the JVM does not
+   * support measuring it.
+   */
+  public abstract long getCpuNanos();
+
+  /**
+   * Returns the number of bytes allocated by the processing thread, or zero if the JVM does not
+   * support measuring it.
+   */
+  public abstract long getAllocatedBytes();
+
+  /** Returns the number of elements processed. */
+  public abstract long getElementCount();
+
+  /** Returns the sum of this and the given usage. */
+  public ResourceUsage plus(ResourceUsage other) {
+    return create(
+        getWallNanos() + other.getWallNanos(),
+        getCpuNanos() + other.getCpuNanos(),
+        getAllocatedBytes() + other.getAllocatedBytes(),
+        getElementCount() + other.getElementCount());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * An index of the {@link SourceCodeInfo.Location}s of a proto file by their path. Paths are
+ * looked up as int arrays in an open-addressing hash table which compares them against the path
+ * segments of the locations themselves, so neither building the index nor looking up a path
+ * allocates a key. As with protoc, the first location of a path is the one found.
+ */
+final class SourceLocationIndex {
+
+  // Keep the table at most half full.
+  private static final int LOAD_FACTOR_INVERSE = 2;
+
+  private final List<SourceCodeInfo.Location> locations;
+  // Slots hold one plus the index of a location in the list, zero marks an empty slot.
+  private final int[] slots;
+  private final int mask;
+
+  SourceLocationIndex(SourceCodeInfo sourceCodeInfo) {
+    this.locations = sourceCodeInfo.getLocationList();
+    int capacity = Integer.highestOneBit(Math.max(1, locations.size() * LOAD_FACTOR_INVERSE)) << 1;
+    this.slots = new int[capacity];
+    this.mask = capacity - 1;
+    for (int i = 0; i < locations.size(); i++) {
+      SourceCodeInfo.Location location = locations.get(i);
+      int slot = hash(location) & mask;
+      while (slots[slot] != 0 && !samePath(locations.get(slots[slot] - 1), location)) {
+        slot = (slot + 1) & mask;
+      }
+      if (slots[slot] == 0) {
+        slots[slot] = i + 1;
+      }
+    }
+  }
+
+  /** Returns the first location of the given path, or null if there is none. */
+  @Nullable
+  SourceCodeInfo.Location get(int[] path) {
+    int slot = hash(path) & mask;
+    while (slots[slot] != 0) {
+      SourceCodeInfo.Location location = locations.get(slots[slot] - 1);
+      if (hasPath(location, path)) {
+        return location;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return null;
+  }
+
+  private static int hash(int[] path) {
+    int hash = 1;
+    for (int segment : path) {
+      hash = 31 * hash + segment;
+    }
+    return spread(hash);
+  }
+
+  private static int hash(SourceCodeInfo.Location location) {
+    int hash = 1;
+    int count = location.getPathCount();
+    for (int i = 0; i < count; i++) {
+      hash = 31 * hash + location.getPath(i);
+    }
+    return spread(hash);
+  }
+
+  // Paths share long prefixes and differ in small trailing numbers; spread those over the table.
+  private static int spread(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean hasPath(SourceCodeInfo.Location location, int[] path) {
+    if (location.getPathCount() != path.length) {
+      return false;
+    }
+    for (int i = 0; i < path.length; i++) {
+      if (location.getPath(i) != path[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean samePath(SourceCodeInfo.Location a, SourceCodeInfo.Location b) {
+    int count = a.getPathCount();
+    if (b.getPathCount() != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (a.getPath(i) != b.getPath(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
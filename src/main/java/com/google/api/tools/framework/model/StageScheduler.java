@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.model;
+
+import com.google.api.tools.framework.model.BoundedDiagCollector.TooManyDiagsException;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.inject.Key;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Strategy for running the {@link Processor}s needed to establish a stage on a {@link Model}.
+ *
+ * <p>The {@link #serial()} scheduler runs the chain of required processors one after the other on
+ * the calling thread, in the order of {@link Processor#requires()}. This is the deterministic
+ * default of every model.
+ *
+ * <p>The {@link #parallel(ForkJoinPool)} scheduler builds the dependency graph of all processors
+ * needed for a stage up front, and runs processors whose requirements have been established
+ * concurrently on the given pool. Processors which may run concurrently must not write the same
+ * model state. Processors can also use {@link #forEach(Iterable, Consumer)} to fan out independent
+ * work, like per-file or per-interface passes, to the same pool.
+ *
+ * <p>Diags reported to a {@link ConcurrentDiagCollector} by processors and tasks run by the
+ * parallel scheduler are ordered as if they had been run by the serial scheduler.
+ *
+ * <p>Both schedulers record the wall time of each processor they run, and the critical path
+ * through the processors run by the last call to {@link Model#establishStage(Key)}.
+ */
+public abstract class StageScheduler {
+
+  private static final ConcurrentMap<Integer, ForkJoinPool> SHARED_POOLS =
+      new ConcurrentHashMap<>();
+
+  /** Returns a new scheduler which runs all processors on the calling thread. */
+  public static StageScheduler serial() {
+    return new SerialStageScheduler();
+  }
+
+  /** Returns a new scheduler which runs independent processors concurrently on the given pool. */
+  public static StageScheduler parallel(ForkJoinPool pool) {
+    return new ParallelStageScheduler(pool);
+  }
+
+  /**
+   * Returns a new scheduler which runs independent processors concurrently on a pool with the
+   * given parallelism. The pool is shared by all schedulers created with the same parallelism.
+   */
+  public static StageScheduler parallel(int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+    return parallel(SHARED_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new));
+  }
+
+  private final Map<Key<?>, Long> elapsedNanos =
+      Collections.synchronizedMap(Maps.<Key<?>, Long>newLinkedHashMap());
+  private ImmutableList<Key<?>> criticalPath = ImmutableList.of();
+  private long criticalPathNanos;
+
+  /**
+   * Establishes the given stage on the model, running all processors which are required and not
+   * yet established. Returns true on success.
+   */
+  abstract boolean establishStage(Model model, Key<?> stage);
+
+  /**
+   * Runs the given task for each of the items and returns when all of them are done. The tasks
+   * must be independent of each other. Tasks may run concurrently and in any order unless this is
+   * a serial scheduler, which runs them in iteration order on the calling thread.
+   */
+  public abstract <T> void forEach(Iterable<? extends T> items, Consumer<? super T> task);
+
+  /** Returns true if this scheduler may run processors or tasks concurrently. */
+  public abstract boolean isParallel();
+
+  /** Returns the wall time, in nanoseconds, of each processor run by this scheduler so far. */
+  public ImmutableMap<Key<?>, Long> getElapsedNanos() {
+    synchronized (elapsedNanos) {
+      return ImmutableMap.copyOf(elapsedNanos);
+    }
+  }
+
+  /**
+   * Returns the stages whose processors formed the longest dependency chain, by wall time, of the
+   * last call to {@link Model#establishStage(Key)}. The list starts with the first stage which was
+   * run and ends with the requested stage. Empty if the stage was already established.
+   */
+  public ImmutableList<Key<?>> getCriticalPath() {
+    return criticalPath;
+  }
+
+  /** Returns the summed wall time, in nanoseconds, of the processors on the critical path. */
+  public long getCriticalPathNanos() {
+    return criticalPathNanos;
+  }
+
+  /** Returns a human readable description of the critical path. */
+  public String describeCriticalPath() {
+    List<String> parts = Lists.newArrayList();
+    for (Key<?> stage : criticalPath) {
+      Long nanos = elapsedNanos.get(stage);
+      parts.add(
+          String.format("%s (%d ms)", stageName(stage), nanos == null ? 0 : nanos / 1000000));
+    }
+    return String.format(
+        "%s: %d ms", Joiner.on(" => ").join(parts), criticalPathNanos / 1000000);
+  }
+
+  /**
+   * Runs a single processor, recording its wall time and reporting its resource usage to the
+   * instrumentation listeners of the model, if any. Returns false if the processor failed or
+   * reported too many diagnostics.
+   */
+  boolean runProcessor(Model model, Key<?> stage, Processor processor) {
+    ResourceMeter meter = model.isInstrumented() ? new ResourceMeter() : null;
+    if (meter != null) {
+      meter.start();
+    }
+    long start = System.nanoTime();
+    try {
+      if (!processor.run(model)) {
+        return false;
+      }
+    } catch (TooManyDiagsException ex) {
+      // Process generated too many errors and wants to abort.
+      return false;
+    } finally {
+      elapsedNanos.put(stage, System.nanoTime() - start);
+      if (meter != null) {
+        meter.stop(model.takeVisitedElements(stage));
+        for (InstrumentationListener listener : model.getInstrumentationListeners()) {
+          listener.processorFinished(stage, meter.getUsage());
+        }
+      }
+    }
+    if (!model.hasAttribute(stage)) {
+      throw new IllegalStateException(
+          String.format("Processor '%s' failed to establish stage '%s'", processor, stage));
+    }
+    return true;
+  }
+
+  /**
+   * Computes and records the critical path ending in {@code target}, given the dependency graph of
+   * the processors which have been run.
+   */
+  void recordCriticalPath(Key<?> target, Map<Key<?>, ? extends Iterable<Key<?>>> dependencies) {
+    Map<Key<?>, Long> finish = Maps.newHashMap();
+    Map<Key<?>, Key<?>> predecessor = Maps.newHashMap();
+    long total = finishTime(target, dependencies, finish, predecessor);
+    Deque<Key<?>> path = Queues.newArrayDeque();
+    for (Key<?> stage = target; stage != null; stage = predecessor.get(stage)) {
+      path.addFirst(stage);
+    }
+    criticalPath = ImmutableList.copyOf(path);
+    criticalPathNanos = total;
+  }
+
+  /** Clears the critical path, for a stage which was already established. */
+  void clearCriticalPath() {
+    criticalPath = ImmutableList.of();
+    criticalPathNanos = 0;
+  }
+
+  private long finishTime(
+      Key<?> stage,
+      Map<Key<?>, ? extends Iterable<Key<?>>> dependencies,
+      Map<Key<?>, Long> finish,
+      Map<Key<?>, Key<?>> predecessor) {
+    Long known = finish.get(stage);
+    if (known != null) {
+      return known;
+    }
+    long latest = 0;
+    Iterable<Key<?>> deps = dependencies.get(stage);
+    if (deps != null) {
+      for (Key<?> dep : deps) {
+        long depFinish = finishTime(dep, dependencies, finish, predecessor);
+        if (depFinish > latest || !predecessor.containsKey(stage)) {
+          latest = Math.max(latest, depFinish);
+          predecessor.put(stage, dep);
+        }
+      }
+    }
+    Long own = elapsedNanos.get(stage);
+    long result = latest + (own == null ? 0 : own);
+    finish.put(stage, result);
+    return result;
+  }
+
+  /**
+   * Collects the processors which need to run to establish {@code stage} into {@code order}, in
+   * an order where each processor comes after all processors it requires. Records the unestablished
+   * requirements of each of them in {@code dependencies}.
+   */
+  static void collectUnestablished(
+      Model model,
+      Deque<Key<?>> computing,
+      Key<?> stage,
+      Map<Key<?>, List<Key<?>>> dependencies,
+      List<Key<?>> order) {
+    if (model.hasAttribute(stage) || dependencies.containsKey(stage)) {
+      return;
+    }
+    checkNotCyclic(computing, stage);
+    computing.addLast(stage);
+    Processor processor = getProcessor(model, stage);
+    List<Key<?>> deps = Lists.newArrayList();
+    for (Key<?> subStage : processor.requires()) {
+      collectUnestablished(model, computing, subStage, dependencies, order);
+      if (!model.hasAttribute(subStage)) {
+        deps.add(subStage);
+      }
+    }
+    computing.removeLast();
+    dependencies.put(stage, deps);
+    order.add(stage);
+  }
+
+  static void checkNotCyclic(Deque<Key<?>> computing, Key<?> stage) {
+    if (computing.contains(stage)) {
+      throw new IllegalStateException(
+          String.format(
+              "Cyclic dependency of stages: %s => %s", Joiner.on(" => ").join(computing), stage));
+    }
+  }
+
+  static Processor getProcessor(Model model, Key<?> stage) {
+    Processor processor = model.getProcessor(stage);
+    if (processor == null) {
+      throw new IllegalArgumentException(
+          String.format("No processor registered to establish stage '%s'", stage));
+    }
+    return processor;
+  }
+
+  private static String stageName(Key<?> stage) {
+    return stage.getAnnotation() != null
+        ? stage.getAnnotation().toString()
+        : stage.getTypeLiteral().getRawType().getSimpleName();
+  }
+
+  /** A scheduler which runs everything on the calling thread. */
+  private static class SerialStageScheduler extends StageScheduler {
+
+    @Override
+    boolean establishStage(Model model, Key<?> stage) {
+      Map<Key<?>, List<Key<?>>> dependencies = Maps.newLinkedHashMap();
+      boolean result = establishStage(model, Queues.<Key<?>>newArrayDeque(), stage, dependencies);
+      if (dependencies.isEmpty()) {
+        clearCriticalPath();
+      } else {
+        recordCriticalPath(stage, dependencies);
+      }
+      return result;
+    }
+
+    private boolean establishStage(
+        Model model,
+        Deque<Key<?>> computing,
+        Key<?> stage,
+        Map<Key<?>, List<Key<?>>> dependencies) {
+      if (model.hasAttribute(stage)) {
+        return true;
+      }
+      checkNotCyclic(computing, stage);
+      computing.addLast(stage);
+      Processor processor = getProcessor(model, stage);
+      List<Key<?>> deps = Lists.newArrayList();
+      dependencies.put(stage, deps);
+      for (Key<?> subStage : processor.requires()) {
+        if (!model.hasAttribute(subStage)) {
+          deps.add(subStage);
+        }
+        if (!establishStage(model, computing, subStage, dependencies)) {
+          return false;
+        }
+      }
+      computing.removeLast();
+      return runProcessor(model, stage, processor);
+    }
+
+    @Override
+    public <T> void forEach(Iterable<? extends T> items, Consumer<? super T> task) {
+      for (T item : items) {
+        task.accept(item);
+      }
+    }
+
+    @Override
+    public boolean isParallel() {
+      return false;
+    }
+  }
+
+  /** A scheduler which runs independent processors and tasks on a fork-join pool. */
+  private static class ParallelStageScheduler extends StageScheduler {
+
+    private final ForkJoinPool pool;
+
+    private ParallelStageScheduler(ForkJoinPool pool) {
+      this.pool = Preconditions.checkNotNull(pool);
+    }
+
+    @Override
+    boolean establishStage(final Model model, Key<?> stage) {
+      Map<Key<?>, List<Key<?>>> dependencies = Maps.newLinkedHashMap();
+      List<Key<?>> order = Lists.newArrayList();
+      collectUnestablished(model, Queues.<Key<?>>newArrayDeque(), stage, dependencies, order);
+      if (order.isEmpty()) {
+        clearCriticalPath();
+        return true;
+      }
+
+      // Chain a future for each processor to the futures of the processors it requires. As the
+      // order is topological, all required futures have been created before they are needed. It
+      // is also the order of the serial scheduler, so each processor runs as a diag task forked in
+      // that order.
+      ConcurrentDiagCollector.Task[] tasks = ConcurrentDiagCollector.forkSubtasks(order.size());
+      Map<Key<?>, CompletableFuture<Boolean>> futures = Maps.newHashMap();
+      for (int i = 0; i < order.size(); i++) {
+        final Key<?> current = order.get(i);
+        final ConcurrentDiagCollector.Task task = tasks[i];
+        List<Key<?>> deps = dependencies.get(current);
+        final List<CompletableFuture<Boolean>> depFutures = Lists.newArrayList();
+        for (Key<?> dep : deps) {
+          depFutures.add(futures.get(dep));
+        }
+        final Processor processor = getProcessor(model, current);
+        CompletableFuture<Boolean> future =
+            CompletableFuture.allOf(depFutures.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(
+                    ignored ->
+                        allSucceeded(depFutures)
+                            && ConcurrentDiagCollector.runInTask(
+                                task, () -> runProcessor(model, current, processor)),
+                    pool);
+        futures.put(current, future);
+      }
+      try {
+        return futures.get(stage).join();
+      } catch (CompletionException e) {
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        recordCriticalPath(stage, dependencies);
+      }
+    }
+
+    private static boolean allSucceeded(List<CompletableFuture<Boolean>> futures) {
+      for (CompletableFuture<Boolean> future : futures) {
+        if (!future.join()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public <T> void forEach(Iterable<? extends T> items, final Consumer<? super T> task) {
+      List<T> itemList = Lists.newArrayList(items);
+      // Fork a diag task per item in iteration order, so diags are ordered as if run serially.
+      ConcurrentDiagCollector.Task[] diagTasks =
+          ConcurrentDiagCollector.forkSubtasks(itemList.size());
+      final List<ForkJoinTask<?>> tasks = Lists.newArrayList();
+      for (int i = 0; i < itemList.size(); i++) {
+        final T item = itemList.get(i);
+        final ConcurrentDiagCollector.Task diagTask = diagTasks[i];
+        tasks.add(
+            new RecursiveAction() {
+              @Override
+              protected void compute() {
+                ConcurrentDiagCollector.runInTask(
+                    diagTask,
+                    () -> {
+                      task.accept(item);
+                      return null;
+                    });
+              }
+            });
+      }
+      RecursiveAction all =
+          new RecursiveAction() {
+            @Override
+            protected void compute() {
+              invokeAll(tasks);
+            }
+          };
+      if (ForkJoinTask.getPool() == pool) {
+        // Already running on a worker of our pool; fork from here instead of blocking a worker.
+        all.invoke();
+      } else {
+        pool.invoke(all);
+      }
+    }
+
+    @Override
+    public boolean isParallel() {
+      return true;
+    }
+  }
+}
@@ -18,29 +18,45 @@ package com.google.api.tools.framework.model;
 
 import com.google.api.tools.framework.model.stages.Requires;
 import com.google.api.tools.framework.model.stages.Resolved;
-import com.google.common.base.Predicate;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * Represents a symbol table, an object mapping interfaces and types by name. It also maintains a
  * set of simple names of fields. Established by stage {@link Resolved}.
  *
+ * <p>The symbols the table is created with never change. For a model with
+ * {@linkplain Model#hasLazyDependencies() lazy dependencies}, a lookup of a name declared by a
+ * file which is not materialized yet materializes the file, and the resolver adds its symbols with
+ * {@link #addMaterializedSymbols}.
+ *
+ * <p>Resolutions of partial names are memoized per (context, name) pair in a bounded cache, whose
+ * hit rate is reported by {@link #getStats}. Wildcard type patterns are matched against a sorted
+ * index of the declared type names.
  */
 @Requires(Resolved.class)
-@Immutable
+@ThreadSafe
 public class SymbolTable {
 
   private final ImmutableMap<String, Interface> interfaceByName;
@@ -49,14 +65,73 @@ public class SymbolTable {
   private final ImmutableSet<String> packageNames;
   private final ImmutableMap<String, ? extends List<Method>> methodsBySimpleName;
 
+  // Only present for models with lazy dependencies, together with the symbols of the files
+  // materialized after this table was created.
+  @Nullable private final Model lazyModel;
+  private final Map<String, Interface> lazyInterfaceByName =
+      Collections.synchronizedMap(Maps.<String, Interface>newLinkedHashMap());
+  private final Map<String, TypeRef> lazyTypeByName =
+      Collections.synchronizedMap(Maps.<String, TypeRef>newLinkedHashMap());
+  private final Set<String> lazyFieldNames = Sets.newConcurrentHashSet();
+  private final Set<String> lazyPackageNames = Sets.newConcurrentHashSet();
+  private final Map<String, List<Method>> lazyMethodsBySimpleName = Maps.newConcurrentMap();
+
+  /** The maximal number of memoized partial-name resolutions. */
+  private static final long MAX_MEMOIZED_RESOLUTIONS = 100000;
+
+  // Memoized results of resolveType, resolveType2 and resolveInterface. Absent results are
+  // memoized as well. Results do not depend on materialization, as lookups materialize the files
+  // they need, so the memo never needs to be invalidated.
+  private final Cache<ResolutionKey, Optional<Object>> resolutions =
+      CacheBuilder.newBuilder().maximumSize(MAX_MEMOIZED_RESOLUTIONS).recordStats().build();
+
+  // Built on first wildcard lookup, and rebuilt when materialization added types since.
+  @Nullable private volatile PrefixIndex prefixIndex;
+
   public SymbolTable(Map<String, Interface> interfaceByName, Map<String, TypeRef> typeByName,
       Set<String> fieldNames, Map<String, ? extends List<Method>> methodsBySimpleName,
       Set<String> packageNames) {
+    this(null, interfaceByName, typeByName, fieldNames, methodsBySimpleName, packageNames);
+  }
+
+  /**
+   * Creates a symbol table for the given model. If the model has lazy dependencies, lookups
+   * materialize the files declaring names which are not in the table yet.
+   */
+  public SymbolTable(@Nullable Model model, Map<String, Interface> interfaceByName,
+      Map<String, TypeRef> typeByName, Set<String> fieldNames,
+      Map<String, ? extends List<Method>> methodsBySimpleName, Set<String> packageNames) {
     this.interfaceByName = ImmutableMap.copyOf(interfaceByName);
     this.typeByName = ImmutableMap.copyOf(typeByName);
     this.fieldNames = ImmutableSet.copyOf(fieldNames);
     this.methodsBySimpleName = ImmutableMap.copyOf(methodsBySimpleName);
     this.packageNames = ImmutableSet.copyOf(packageNames);
+    this.lazyModel = model != null && model.hasLazyDependencies() ? model : null;
+  }
+
+  /**
+   * Adds the symbols of a file which was materialized after this table was created. Names already
+   * in the table keep their symbols.
+   */
+  public void addMaterializedSymbols(Map<String, Interface> interfaces,
+      Map<String, TypeRef> types, Set<String> fieldNames,
+      Map<String, ? extends List<Method>> methodsBySimpleName, Set<String> packageNames) {
+    for (Map.Entry<String, Interface> entry : interfaces.entrySet()) {
+      if (!interfaceByName.containsKey(entry.getKey())) {
+        lazyInterfaceByName.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    for (Map.Entry<String, TypeRef> entry : types.entrySet()) {
+      if (!typeByName.containsKey(entry.getKey())) {
+        lazyTypeByName.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    lazyFieldNames.addAll(fieldNames);
+    lazyPackageNames.addAll(packageNames);
+    for (Map.Entry<String, ? extends List<Method>> entry : methodsBySimpleName.entrySet()) {
+      lazyMethodsBySimpleName.merge(entry.getKey(), ImmutableList.copyOf(entry.getValue()),
+          (a, b) -> ImmutableList.<Method>builder().addAll(a).addAll(b).build());
+    }
   }
 
   /**
@@ -64,7 +139,14 @@ public class SymbolTable {
    */
   @Nullable
   public Interface lookupInterface(String fullName) {
-    return interfaceByName.get(fullName);
+    Interface result = interfaceByName.get(fullName);
+    if (result == null && lazyModel != null) {
+      result = lazyInterfaceByName.get(fullName);
+      if (result == null && lazyModel.materializeDeclaring(fullName)) {
+        result = lazyInterfaceByName.get(fullName);
+      }
+    }
+    return result;
   }
 
   /**
@@ -73,6 +155,21 @@ public class SymbolTable {
    */
   @Nullable
   public Interface resolveInterface(String inPackage, String name) {
+    if (name.startsWith(".")) {
+      return lookupInterface(name.substring(1));
+    }
+    ResolutionKey key = ResolutionKey.create(Resolution.INTERFACE, inPackage, name);
+    Optional<Object> memoized = resolutions.getIfPresent(key);
+    if (memoized != null) {
+      return (Interface) memoized.orNull();
+    }
+    Interface result = resolveInterfaceCandidates(inPackage, name);
+    resolutions.put(key, Optional.<Object>fromNullable(result));
+    return result;
+  }
+
+  @Nullable
+  private Interface resolveInterfaceCandidates(String inPackage, String name) {
     for (String cand : nameCandidates(inPackage, name)) {
       Interface endpointInterface = lookupInterface(cand);
       if (endpointInterface != null) {
@@ -87,7 +184,15 @@ public class SymbolTable {
    */
   @Nullable
   public TypeRef lookupType(String fullName) {
-    return typeByName.get(getTypeNameInSymbolTable(fullName));
+    String name = getTypeNameInSymbolTable(fullName);
+    TypeRef result = typeByName.get(name);
+    if (result == null && lazyModel != null) {
+      result = lazyTypeByName.get(name);
+      if (result == null && lazyModel.materializeDeclaring(name)) {
+        result = lazyTypeByName.get(name);
+      }
+    }
+    return result;
   }
 
   /**
@@ -95,31 +200,30 @@ public class SymbolTable {
    * {@code foo.bar.*} to match any name which starts with the prefix {@code foo.bar}, or a fixed
    * name.
    */
-  public List<TypeRef> lookupMatchingTypes(final String typeNamePattern, final Type kind) {
+  public List<TypeRef> lookupMatchingTypes(String typeNamePattern, Type kind) {
     if (Strings.isNullOrEmpty(typeNamePattern)) {
       return ImmutableList.of();
     }
     if (typeNamePattern.endsWith(".*")) {
-      List<TypeRef> typeRefs =
-          FluentIterable.from(getDeclaredTypes())
-              .filter(new Predicate<TypeRef>() {
-                @Override
-                public boolean apply(TypeRef type) {
-                  if (type.getKind() == kind) {
-                    if (type.isMessage()) {
-                      return type.getMessageType().getFullName().startsWith(
-                          typeNamePattern.substring(0, typeNamePattern.length() - 1));
-                    } else if (type.isEnum()) {
-                      return type.getEnumType().getFullName().startsWith(
-                          typeNamePattern.substring(0, typeNamePattern.length() - 1));
-                    }
-                    return false;
-                  }
-                  return false;
-                }
-              })
-              .toList();
-      return typeRefs;
+      String prefix = typeNamePattern.substring(0, typeNamePattern.length() - 1);
+      if (lazyModel != null) {
+        lazyModel.materializeDeclaringPrefix(prefix);
+      }
+      ImmutableList.Builder<TypeRef> typeRefs = ImmutableList.builder();
+      for (TypeRef type : getPrefixIndex().lookupPrefix(prefix)) {
+        if (type.getKind() == kind) {
+          if (type.isMessage()) {
+            if (type.getMessageType().getFullName().startsWith(prefix)) {
+              typeRefs.add(type);
+            }
+          } else if (type.isEnum()) {
+            if (type.getEnumType().getFullName().startsWith(prefix)) {
+              typeRefs.add(type);
+            }
+          }
+        }
+      }
+      return typeRefs.build();
 
     } else {
       TypeRef type = lookupType(typeNamePattern);
@@ -158,8 +262,23 @@ public class SymbolTable {
     if (type != null) {
       return type;
     }
+    if (name.startsWith(".")) {
+      return lookupType(name.substring(1));
+    }
+    ResolutionKey key = ResolutionKey.create(Resolution.TYPE, inPackage, name);
+    Optional<Object> memoized = resolutions.getIfPresent(key);
+    if (memoized != null) {
+      return (TypeRef) memoized.orNull();
+    }
+    type = resolveTypeCandidates(inPackage, name);
+    resolutions.put(key, Optional.<Object>fromNullable(type));
+    return type;
+  }
+
+  @Nullable
+  private TypeRef resolveTypeCandidates(String inPackage, String name) {
     for (String cand : nameCandidates(inPackage, name)) {
-      type = lookupType(cand);
+      TypeRef type = lookupType(cand);
       if (type != null) {
         return type;
       }
@@ -195,6 +314,18 @@ public class SymbolTable {
     } else {
       return resolveType(inPackage, name);
     }
+    ResolutionKey key = ResolutionKey.create(Resolution.TYPE_STRICT, inPackage, name);
+    Optional<Object> memoized = resolutions.getIfPresent(key);
+    if (memoized != null) {
+      return (TypeRef) memoized.orNull();
+    }
+    TypeRef type = resolveType2Candidates(inPackage, name, firstComponent);
+    resolutions.put(key, Optional.<Object>fromNullable(type));
+    return type;
+  }
+
+  @Nullable
+  private TypeRef resolveType2Candidates(String inPackage, String name, String firstComponent) {
     for (String cand : nameCandidates(inPackage, firstComponent)) {
       TypeRef outerType = lookupType(cand);
       if (outerType != null) {
@@ -205,7 +336,7 @@ public class SymbolTable {
         int lastDot = outerTypeName.lastIndexOf(".");
         String fullType = lastDot > 0 ? outerTypeName.substring(0, lastDot) + "." + name : name;
         return lookupType(fullType);
-      } else if (packageNames.contains(cand)) {
+      } else if (containsPackageName(cand)) {
         int lastDot = cand.lastIndexOf(".");
         String fullType = lastDot > 0 ? cand.substring(0, lastDot) + "." + name : name;
         return lookupType(fullType);
@@ -218,14 +349,30 @@ public class SymbolTable {
    * Get all interfaces in the symbol table.
    */
   public ImmutableCollection<Interface> getInterfaces() {
-    return interfaceByName.values();
+    if (lazyModel == null) {
+      return interfaceByName.values();
+    }
+    synchronized (lazyInterfaceByName) {
+      return ImmutableList.<Interface>builder()
+          .addAll(interfaceByName.values())
+          .addAll(lazyInterfaceByName.values())
+          .build();
+    }
   }
 
   /**
    * Get all declared types in the symbol table.
    */
   public ImmutableCollection<TypeRef> getDeclaredTypes() {
-    return typeByName.values();
+    if (lazyModel == null) {
+      return typeByName.values();
+    }
+    synchronized (lazyTypeByName) {
+      return ImmutableList.<TypeRef>builder()
+          .addAll(typeByName.values())
+          .addAll(lazyTypeByName.values())
+          .build();
+    }
   }
 
   /**
@@ -298,11 +445,164 @@ public class SymbolTable {
   }
 
   public boolean containsFieldName(String fieldName) {
-    return fieldNames.contains(fieldName);
+    if (fieldNames.contains(fieldName)) {
+      return true;
+    }
+    // Files not materialized yet still count, so that answers do not depend on materialization.
+    return lazyModel != null
+        && (lazyFieldNames.contains(fieldName)
+            || lazyModel.getDeclarationIndex().containsFieldName(fieldName));
   }
 
   @Nullable
   public List<Method> lookupMethodSimpleName(String methodName) {
-    return methodsBySimpleName.get(methodName);
+    List<Method> methods = methodsBySimpleName.get(methodName);
+    if (lazyModel == null) {
+      return methods;
+    }
+    List<Method> lazyMethods = lazyMethodsBySimpleName.get(methodName);
+    if (lazyMethods == null) {
+      return methods;
+    }
+    return methods == null
+        ? lazyMethods
+        : ImmutableList.<Method>builder().addAll(methods).addAll(lazyMethods).build();
+  }
+
+  private boolean containsPackageName(String name) {
+    if (packageNames.contains(name)) {
+      return true;
+    }
+    return lazyModel != null
+        && (lazyPackageNames.contains(name)
+            || lazyModel.getDeclarationIndex().containsPackage(name));
+  }
+
+  /** Returns statistics of the memoized partial-name resolutions of this table. */
+  public Stats getStats() {
+    CacheStats stats = resolutions.stats();
+    return Stats.create(
+        stats.hitCount(), stats.missCount(), stats.evictionCount(), resolutions.size());
+  }
+
+  private PrefixIndex getPrefixIndex() {
+    PrefixIndex index = prefixIndex;
+    if (index != null && index.size() == typeByName.size() + lazyTypeByName.size()) {
+      return index;
+    }
+    Map<String, TypeRef> types = typeByName;
+    if (lazyModel != null) {
+      types = Maps.newLinkedHashMap(typeByName);
+      synchronized (lazyTypeByName) {
+        types.putAll(lazyTypeByName);
+      }
+    }
+    index = new PrefixIndex(types);
+    prefixIndex = index;
+    return index;
+  }
+
+  /**
+   * The names of declared types in sorted order, so the names starting with a prefix form a
+   * contiguous range found by binary search.
+   */
+  private static class PrefixIndex {
+
+    private final String[] names;
+    private final int[] ordinals;
+    private final TypeRef[] types;
+
+    private PrefixIndex(Map<String, TypeRef> typesByName) {
+      names = typesByName.keySet().toArray(new String[0]);
+      types = typesByName.values().toArray(new TypeRef[0]);
+      Integer[] order = new Integer[names.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+      ordinals = new int[order.length];
+      String[] unsorted = names.clone();
+      for (int i = 0; i < order.length; i++) {
+        ordinals[i] = order[i];
+        names[i] = unsorted[order[i]];
+      }
+    }
+
+    private int size() {
+      return names.length;
+    }
+
+    /** Returns the types whose name starts with the prefix, in declaration order. */
+    private List<TypeRef> lookupPrefix(String prefix) {
+      int start = Arrays.binarySearch(names, prefix);
+      if (start < 0) {
+        start = -start - 1;
+      }
+      int end = start;
+      while (end < names.length && names[end].startsWith(prefix)) {
+        end++;
+      }
+      int[] matches = Arrays.copyOfRange(ordinals, start, end);
+      Arrays.sort(matches);
+      ImmutableList.Builder<TypeRef> result = ImmutableList.builder();
+      for (int ordinal : matches) {
+        result.add(types[ordinal]);
+      }
+      return result.build();
+    }
+  }
+
+  /** The kinds of memoized resolutions. */
+  enum Resolution {
+    TYPE,
+    TYPE_STRICT,
+    INTERFACE
+  }
+
+  /** A partial name to resolve within a context. */
+  @AutoValue
+  abstract static class ResolutionKey {
+
+    static ResolutionKey create(Resolution resolution, String inContainer, String name) {
+      return new AutoValue_SymbolTable_ResolutionKey(resolution, inContainer, name);
+    }
+
+    abstract Resolution getResolution();
+
+    abstract String getInContainer();
+
+    abstract String getName();
+  }
+
+  /** Statistics of the memoized resolutions. Counters cover the lifetime of the table. */
+  @AutoValue
+  public abstract static class Stats {
+
+    public static Stats create(long hitCount, long missCount, long evictionCount, long entryCount) {
+      return new AutoValue_SymbolTable_Stats(hitCount, missCount, evictionCount, entryCount);
+    }
+
+    public abstract long getHitCount();
+
+    public abstract long getMissCount();
+
+    public abstract long getEvictionCount();
+
+    /** Returns the number of resolutions currently memoized. */
+    public abstract long getEntryCount();
+
+    /** Returns the ratio of hits to lookups, or 1.0 if there were no lookups. */
+    public double getHitRate() {
+      long lookups = getHitCount() + getMissCount();
+      return lookups == 0 ? 1.0 : (double) getHitCount() / lookups;
+    }
+
+    /** Returns a human readable report of the statistics. */
+    public String describe() {
+      return String.format(
+          "Symbol table resolutions: %d hits, %d misses (%.1f%% hit rate), %d evictions, "
+              + "%d entries.",
+          getHitCount(), getMissCount(), getHitRate() * 100, getEvictionCount(), getEntryCount());
+    }
   }
 }
@@ -23,7 +23,8 @@ import com.google.common.base.Preconditions;
 /**
  * Base class for model visitors, using {@link GenericVisitor}. Implements the accept methods
  * necessary to traverse all model elements. Uses a {@link Scoper} to restrict visiting to
- * elements which are in scope.
+ * elements which are in scope. The contents of files which are not
+ * {@linkplain ProtoFile#isMaterialized() materialized} are not traversed.
  */
 public abstract class Visitor extends GenericVisitor<Element> {
 
@@ -34,9 +35,7 @@ public abstract class Visitor extends GenericVisitor<Element> {
    * Constructs a visitor which visits all elements.
    */
   protected Visitor() {
-    super(Element.class);
-    this.scoper = Scoper.UNRESTRICTED;
-    this.ignoreMapEntry = false;
+    this(Scoper.UNRESTRICTED, false);
   }
 
   /**
@@ -77,6 +76,11 @@ public abstract class Visitor extends GenericVisitor<Element> {
 
   @Accepts
   public void accept(ProtoFile file) {
+    if (!file.isVisitable()) {
+      // A lazily materialized dependency nothing has referenced so far, or one which another
+      // thread is materializing.
+      return;
+    }
     acceptContainer(file);
     acceptElems(file.getInterfaces());
   }
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.processors.linter;
+
+import com.google.api.tools.framework.aspects.ConfigAspectBase;
+import com.google.api.tools.framework.aspects.LintRule;
+import com.google.api.tools.framework.model.ConfigAspect;
+import com.google.api.tools.framework.model.ConfigAspectMeters;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.DiagCollector;
+import com.google.api.tools.framework.model.DiagReporter;
+import com.google.api.tools.framework.model.Element;
+import com.google.api.tools.framework.model.InstrumentationListener;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.ResourceMeter;
+import com.google.api.tools.framework.model.ResourceUsage;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the lint rules of the config aspects of a model on its proto elements.
+ *
+ * <p>The rules applying to each element class are collected into an array of steps once per
+ * model, instead of being looked up along the class hierarchy for each element and aspect. With a
+ * parallel {@link StageScheduler}, the elements are split into contiguous shards which are linted
+ * concurrently. The diags of each shard are buffered, and added to the model in shard order, so
+ * they are the same and in the same order as with a serial run.
+ *
+ * <p>Aspects which do not lint with {@link ConfigAspectBase} rules alone are linted by calling
+ * {@link ConfigAspect#lint(ProtoElement)}. Since such aspects may not be thread safe, their
+ * presence makes the engine lint serially.
+ *
+ * <p>If the model is instrumented, the usage of each rule is reported to {@link
+ * InstrumentationListener#lintRuleFinished}, so slow rules can be identified.
+ */
+class LintEngine {
+
+  /** The number of elements linted by a task of a parallel run. */
+  @VisibleForTesting static final int SHARD_SIZE = 256;
+
+  private final Model model;
+  private final boolean parallel;
+  private final boolean metered;
+  private final List<Step> steps = Lists.newArrayList();
+  private final Map<Object, Step> stepsByRuleOrAspect = Maps.newHashMap();
+  private final Map<Class<?>, Step[]> stepsByClass = Maps.newHashMap();
+
+  LintEngine(Model model) {
+    this.model = model;
+    this.metered = model.isInstrumented();
+    boolean onlyRules = true;
+    for (ConfigAspect aspect : model.getConfigAspects()) {
+      onlyRules &= lintsOnlyWithRules(aspect);
+    }
+    this.parallel = onlyRules && model.getStageScheduler().isParallel();
+  }
+
+  /**
+   * Lints the given elements in order, and adds the usage of each aspect to the meters. Must be
+   * called from the thread running the linter.
+   */
+  void lint(List<ProtoElement> elements, ConfigAspectMeters meters) {
+    for (ProtoElement element : elements) {
+      getSteps(element.getClass());
+    }
+    List<Shard> shards = Lists.newArrayList();
+    DiagCollector diagCollector = model.getDiagReporter().getDiagCollector();
+    int shardSize = parallel ? SHARD_SIZE : Math.max(elements.size(), 1);
+    for (int start = 0; start < elements.size(); start += shardSize) {
+      shards.add(
+          new Shard(
+              elements.subList(start, Math.min(start + shardSize, elements.size())),
+              diagCollector));
+    }
+
+    final DiagReporter diagReporter = model.getDiagReporter();
+    Consumer<Shard> task =
+        new Consumer<Shard>() {
+          @Override
+          public void accept(final Shard shard) {
+            diagReporter.collectOnCurrentThread(
+                shard,
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    shard.lint();
+                  }
+                });
+          }
+        };
+    if (parallel) {
+      model.getStageScheduler().forEach(shards, task);
+    } else {
+      for (Shard shard : shards) {
+        task.accept(shard);
+      }
+    }
+
+    for (Shard shard : shards) {
+      for (Diag diag : shard.diags) {
+        diagCollector.addDiag(diag);
+      }
+    }
+    if (metered) {
+      report(shards, elements.size(), meters);
+    }
+  }
+
+  private void report(List<Shard> shards, long elementCount, ConfigAspectMeters meters) {
+    Map<ConfigAspect, ResourceUsage> aspectUsage = Maps.newLinkedHashMap();
+    for (ConfigAspect aspect : model.getConfigAspects()) {
+      aspectUsage.put(aspect, ResourceUsage.create(0, 0, 0, elementCount));
+    }
+    for (Step step : steps) {
+      ResourceUsage usage = ResourceUsage.NONE;
+      for (Shard shard : shards) {
+        if (shard.meters[step.index] != null) {
+          usage = usage.plus(shard.meters[step.index].getUsage());
+        }
+      }
+      // The element count of an aspect is the number of elements linted, not of rules run.
+      aspectUsage.put(
+          step.aspect,
+          aspectUsage.get(step.aspect).plus(
+              ResourceUsage.create(
+                  usage.getWallNanos(), usage.getCpuNanos(), usage.getAllocatedBytes(), 0)));
+      if (step.rule != null) {
+        for (InstrumentationListener listener : model.getInstrumentationListeners()) {
+          listener.lintRuleFinished(step.aspect, step.rule.getName(), usage);
+        }
+      }
+    }
+    for (Map.Entry<ConfigAspect, ResourceUsage> entry : aspectUsage.entrySet()) {
+      meters.add(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Returns the steps linting elements of the given class, in the order of the model's aspects,
+   * and for each aspect, in the order of {@link ConfigAspectBase#getLintRules(Class)}.
+   */
+  private Step[] getSteps(Class<? extends ProtoElement> elemClass) {
+    Step[] result = stepsByClass.get(elemClass);
+    if (result == null) {
+      List<Step> classSteps = Lists.newArrayList();
+      for (ConfigAspect aspect : model.getConfigAspects()) {
+        if (lintsOnlyWithRules(aspect)) {
+          for (LintRule<Element> rule : ((ConfigAspectBase) aspect).getLintRules(elemClass)) {
+            classSteps.add(getStep(aspect, rule));
+          }
+        } else {
+          classSteps.add(getStep(aspect, null));
+        }
+      }
+      result = classSteps.toArray(new Step[classSteps.size()]);
+      stepsByClass.put(elemClass, result);
+    }
+    return result;
+  }
+
+  private Step getStep(ConfigAspect aspect, @Nullable LintRule<Element> rule) {
+    Object key = rule != null ? rule : aspect;
+    Step step = stepsByRuleOrAspect.get(key);
+    if (step == null) {
+      step = new Step(steps.size(), aspect, rule);
+      steps.add(step);
+      stepsByRuleOrAspect.put(key, step);
+    }
+    return step;
+  }
+
+  /**
+   * Returns true if linting an element with the aspect only runs its registered rules, i.e. the
+   * aspect does not override {@link ConfigAspectBase#lint(ProtoElement)}.
+   */
+  private static boolean lintsOnlyWithRules(ConfigAspect aspect) {
+    if (!(aspect instanceof ConfigAspectBase)) {
+      return false;
+    }
+    try {
+      return aspect.getClass().getMethod("lint", ProtoElement.class).getDeclaringClass()
+          == ConfigAspectBase.class;
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A lint rule of an aspect, or the lint method of an aspect if the rule is null. */
+  private static class Step {
+
+    private final int index;
+    private final ConfigAspect aspect;
+    @Nullable private final LintRule<Element> rule;
+
+    private Step(int index, ConfigAspect aspect, @Nullable LintRule<Element> rule) {
+      this.index = index;
+      this.aspect = aspect;
+      this.rule = rule;
+    }
+
+    private void run(ProtoElement element) {
+      if (rule != null) {
+        rule.run(element);
+      } else {
+        aspect.lint(element);
+      }
+    }
+  }
+
+  /**
+   * A contiguous range of elements linted by one task. Buffers the diags reported while linting.
+   * Error counts include the errors reported to the model before linting started.
+   */
+  private class Shard implements DiagCollector {
+
+    private final List<ProtoElement> elements;
+    private final DiagCollector modelDiagCollector;
+    private final ResourceMeter[] meters = new ResourceMeter[steps.size()];
+    private final List<Diag> diags = Lists.newArrayList();
+    private int errorCount;
+
+    private Shard(List<ProtoElement> elements, DiagCollector modelDiagCollector) {
+      this.elements = elements;
+      this.modelDiagCollector = modelDiagCollector;
+    }
+
+    private void lint() {
+      for (ProtoElement element : elements) {
+        for (Step step : stepsByClass.get(element.getClass())) {
+          if (metered) {
+            ResourceMeter meter = meters[step.index];
+            if (meter == null) {
+              meter = new ResourceMeter();
+              meters[step.index] = meter;
+            }
+            meter.start();
+            step.run(element);
+            meter.stop(1);
+          } else {
+            step.run(element);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void addDiag(Diag diag) {
+      diags.add(diag);
+      if (diag.getKind() == Diag.Kind.ERROR) {
+        errorCount++;
+      }
+    }
+
+    @Override
+    public int getErrorCount() {
+      return modelDiagCollector.getErrorCount() + errorCount;
+    }
+
+    @Override
+    public boolean hasErrors() {
+      return getErrorCount() > 0;
+    }
+
+    @Override
+    public List<Diag> getDiags() {
+      return ImmutableList.<Diag>builder()
+          .addAll(modelDiagCollector.getDiags())
+          .addAll(diags)
+          .build();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.google.api.tools.framework.processors.linter;
 
 import com.google.api.tools.framework.model.ConfigAspect;
+import com.google.api.tools.framework.model.ConfigAspectMeters;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.Processor;
 import com.google.api.tools.framework.model.ProtoElement;
@@ -25,10 +26,13 @@ import com.google.api.tools.framework.model.stages.Linted;
 import com.google.api.tools.framework.model.stages.Merged;
 import com.google.api.tools.framework.util.VisitsBefore;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.inject.Key;
+import java.util.List;
 
 /**
- * Linter for IDL and service config. Delegates work to config aspects.
+ * Linter for IDL and service config. Delegates work to config aspects, whose lint rules are run on
+ * the elements by a {@link LintEngine}, concurrently if the model has a parallel scheduler.
  */
 public class Linter implements Processor {
 
@@ -46,20 +50,27 @@ public class Linter implements Processor {
   public boolean run(final Model model) {
     int oldErrorCount = model.getDiagReporter().getDiagCollector().getErrorCount();
 
+    final ConfigAspectMeters meters = ConfigAspectMeters.create(model, Linted.KEY);
     for (ConfigAspect aspect : model.getConfigAspects()) {
+      meters.start(aspect);
       aspect.startLinting();
+      meters.stop(aspect, 0);
     }
+    final List<ProtoElement> elements = Lists.newArrayList();
     new Visitor(model.getScoper()) {
-      @VisitsBefore void validate(ProtoElement element) {
-        for (ConfigAspect aspect : model.getConfigAspects()) {
-          aspect.lint(element);
-        }
+      @VisitsBefore void collect(ProtoElement element) {
+        meters.countElement();
+        elements.add(element);
       }
     }.visit(model);
+    new LintEngine(model).lint(elements, meters);
 
     for (ConfigAspect aspect : model.getConfigAspects()) {
+      meters.start(aspect);
       aspect.endLinting();
+      meters.stop(aspect, 0);
     }
+    meters.report();
 
     if (oldErrorCount == model.getDiagReporter().getDiagCollector().getErrorCount()) {
       // No new errors produced -- success.
@@ -19,14 +19,19 @@ package com.google.api.tools.framework.processors.merger;
 import com.google.api.Service;
 import com.google.api.tools.framework.aspects.visibility.model.ScoperImpl;
 import com.google.api.tools.framework.model.ConfigAspect;
+import com.google.api.tools.framework.model.ConfigAspectMeters;
 import com.google.api.tools.framework.model.ConfigValidator;
 import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.DiagCollector;
+import com.google.api.tools.framework.model.DiagReporter;
 import com.google.api.tools.framework.model.Element;
 import com.google.api.tools.framework.model.Interface;
 import com.google.api.tools.framework.model.Location;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.Processor;
 import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.Scoper;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.model.TypeRef;
 import com.google.api.tools.framework.model.Visitor;
 import com.google.api.tools.framework.model.stages.Merged;
@@ -44,9 +49,12 @@ import com.google.common.collect.Sets;
 import com.google.inject.Key;
 import com.google.protobuf.Api;
 import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -56,6 +64,15 @@ import java.util.regex.Pattern;
  * <p>The merger also derives interpreted values from the configuration, for example, the {@link
  * com.google.api.tools.framework.aspects.http.HttpConfigAspect}, and reports consistency errors
  * encountered during interpretation.
+ *
+ * <p>Config aspects are merged in levels of their merge dependencies. With a parallel {@link
+ * StageScheduler}, the aspects of a level, which do not depend on each other, each walk the model
+ * concurrently. Their diagnostics are reported in the same order as with the serial merge.
+ *
+ * <p>While merging a level, an aspect's diag collector counts the errors reported before the level
+ * and by the aspect itself, but never those of the other aspects of the level, whether the level
+ * is merged serially or in parallel. Merge logic therefore must not depend on errors of sibling
+ * aspects; comparing the error count before and after its own work is the supported use.
  */
 public class Merger implements Processor {
 
@@ -98,22 +115,33 @@ public class Merger implements Processor {
     }
 
     List<Set<ConfigAspect>> orderedAspectGroup = sortForMerge(model.getConfigAspects());
+    ConfigAspectMeters meters = ConfigAspectMeters.create(model, Merged.KEY);
     // Merge-in config aspects.
     for (Set<ConfigAspect> aspects : orderedAspectGroup) {
       for (ConfigAspect aspect : aspects) {
+        meters.start(aspect);
         aspect.startMerging();
+        meters.stop(aspect, 0);
       }
     }
 
+    StageScheduler scheduler = model.getStageScheduler();
     for (Set<ConfigAspect> aspects : orderedAspectGroup) {
-      new ConfigAspectMerger(aspects).visit(model);
+      if (scheduler.isParallel() && aspects.size() > 1) {
+        mergeInParallel(model, scheduler, aspects);
+      } else {
+        new ConfigAspectMerger(model, aspects, meters).visit(model);
+      }
     }
 
     for (Set<ConfigAspect> aspects : orderedAspectGroup) {
       for (ConfigAspect aspect : aspects) {
+        meters.start(aspect);
         aspect.endMerging();
+        meters.stop(aspect, 0);
       }
     }
+    meters.report();
 
     runValidators(model);
 
@@ -213,19 +241,198 @@ public class Merger implements Processor {
     }
   }
 
+  /**
+   * Merges the aspects of a level serially, one element at a time. Each aspect reports to its own
+   * {@link LevelDiagCollector}, which passes diags on to the model right away.
+   */
   private static class ConfigAspectMerger extends Visitor {
 
-    private final Iterable<ConfigAspect> orderedAspects;
+    private final DiagReporter diagReporter;
+    private final List<ConfigAspect> orderedAspects;
+    private final List<LevelDiagCollector> diagCollectors = Lists.newArrayList();
+    private final ConfigAspectMeters meters;
 
-    private ConfigAspectMerger(Iterable<ConfigAspect> orderedAspects) {
-      this.orderedAspects = orderedAspects;
+    private ConfigAspectMerger(
+        Model model, Iterable<ConfigAspect> orderedAspects, ConfigAspectMeters meters) {
+      super(Scoper.UNRESTRICTED, false);
+      this.diagReporter = model.getDiagReporter();
+      this.orderedAspects = ImmutableList.copyOf(orderedAspects);
+      this.meters = meters;
+      for (int i = 0; i < this.orderedAspects.size(); i++) {
+        diagCollectors.add(new LevelDiagCollector(diagReporter.getDiagCollector(), true));
+      }
+    }
+
+    @VisitsBefore
+    void merge(final ProtoElement element) {
+      meters.countElement();
+      for (int i = 0; i < orderedAspects.size(); i++) {
+        final ConfigAspect aspect = orderedAspects.get(i);
+        meters.start(aspect);
+        diagReporter.collectOnCurrentThread(
+            diagCollectors.get(i),
+            new Runnable() {
+              @Override
+              public void run() {
+                aspect.merge(element);
+              }
+            });
+        meters.stop(aspect, 1);
+      }
+    }
+  }
+
+  /**
+   * Merges the independent aspects of a level concurrently, each walking the model on its own. The
+   * diags reported by each aspect are collected, and afterwards added in the order of the serial
+   * merge: by element, then by aspect.
+   */
+  private static void mergeInParallel(
+      Model model, StageScheduler scheduler, Set<ConfigAspect> aspects) {
+    final DiagReporter diagReporter = model.getDiagReporter();
+    DiagCollector diagCollector = diagReporter.getDiagCollector();
+    List<SingleAspectMerger> mergers = Lists.newArrayList();
+    for (ConfigAspect aspect : aspects) {
+      // Only the first merger counts elements, so they are counted once per level as serially.
+      mergers.add(new SingleAspectMerger(model, aspect, diagCollector, mergers.isEmpty()));
+    }
+    scheduler.forEach(
+        mergers,
+        new Consumer<SingleAspectMerger>() {
+          @Override
+          public void accept(final SingleAspectMerger merger) {
+            diagReporter.collectOnCurrentThread(
+                merger.diagCollector,
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    merger.visit(merger.model);
+                  }
+                });
+          }
+        });
+
+    List<CollectedDiag> diags = Lists.newArrayList();
+    for (SingleAspectMerger merger : mergers) {
+      diags.addAll(merger.diagCollector.diags);
+      merger.meters.report();
+    }
+    // The sort is stable, so the diags of each element stay in aspect order.
+    Collections.sort(
+        diags,
+        new Comparator<CollectedDiag>() {
+          @Override
+          public int compare(CollectedDiag a, CollectedDiag b) {
+            return Integer.compare(a.elementIndex, b.elementIndex);
+          }
+        });
+    for (CollectedDiag diag : diags) {
+      diagCollector.addDiag(diag.diag);
+    }
+  }
+
+  /**
+   * Merges a single aspect, while the other aspects of its level are merged concurrently. The diags
+   * reported on its thread are held back in a {@link LevelDiagCollector}, together with the index
+   * of the element being merged.
+   */
+  private static class SingleAspectMerger extends Visitor {
+
+    private final Model model;
+    private final ConfigAspect aspect;
+    private final LevelDiagCollector diagCollector;
+    private final ConfigAspectMeters meters;
+    private final boolean countElements;
+
+    private SingleAspectMerger(
+        Model model,
+        ConfigAspect aspect,
+        DiagCollector modelDiagCollector,
+        boolean countElements) {
+      super(Scoper.UNRESTRICTED, false);
+      this.model = model;
+      this.aspect = aspect;
+      this.diagCollector = new LevelDiagCollector(modelDiagCollector, false);
+      this.meters = ConfigAspectMeters.create(model, Merged.KEY);
+      this.countElements = countElements;
     }
 
     @VisitsBefore
     void merge(ProtoElement element) {
-      for (ConfigAspect aspect : orderedAspects) {
-        aspect.merge(element);
+      diagCollector.elementIndex++;
+      if (countElements) {
+        meters.countElement();
+      }
+      meters.start(aspect);
+      aspect.merge(element);
+      meters.stop(aspect, 1);
+    }
+  }
+
+  /**
+   * The diag collector of one aspect while a level is merged. Its error count and diags are those
+   * reported before the level plus the aspect's own, so the aspect sees the same counts whether the
+   * other aspects of the level are merged before it or concurrently. Own diags are either passed on
+   * to the model right away, or held back with their element index to be added after the level.
+   */
+  private static class LevelDiagCollector implements DiagCollector {
+
+    private final DiagCollector modelDiagCollector;
+    private final boolean passOn;
+    private final int errorCountBeforeLevel;
+    private final int diagCountBeforeLevel;
+    private final List<CollectedDiag> diags = Lists.newArrayList();
+    private int errorCount;
+    private int elementIndex = -1;
+
+    private LevelDiagCollector(DiagCollector modelDiagCollector, boolean passOn) {
+      this.modelDiagCollector = modelDiagCollector;
+      this.passOn = passOn;
+      this.errorCountBeforeLevel = modelDiagCollector.getErrorCount();
+      this.diagCountBeforeLevel = modelDiagCollector.getDiags().size();
+    }
+
+    @Override
+    public void addDiag(Diag diag) {
+      diags.add(new CollectedDiag(elementIndex, diag));
+      if (diag.getKind() == Diag.Kind.ERROR) {
+        errorCount++;
       }
+      if (passOn) {
+        modelDiagCollector.addDiag(diag);
+      }
+    }
+
+    @Override
+    public int getErrorCount() {
+      return errorCountBeforeLevel + errorCount;
+    }
+
+    @Override
+    public boolean hasErrors() {
+      return getErrorCount() > 0;
+    }
+
+    @Override
+    public List<Diag> getDiags() {
+      List<Diag> result =
+          Lists.newArrayList(modelDiagCollector.getDiags().subList(0, diagCountBeforeLevel));
+      for (CollectedDiag diag : diags) {
+        result.add(diag.diag);
+      }
+      return result;
+    }
+  }
+
+  /** A diag reported while merging the element with the given index. */
+  private static class CollectedDiag {
+
+    private final int elementIndex;
+    private final Diag diag;
+
+    private CollectedDiag(int elementIndex, Diag diag) {
+      this.elementIndex = elementIndex;
+      this.diag = diag;
     }
   }
 
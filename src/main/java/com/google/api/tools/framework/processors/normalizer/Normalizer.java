@@ -19,6 +19,7 @@ package com.google.api.tools.framework.processors.normalizer;
 import com.google.api.Service;
 import com.google.api.Service.Builder;
 import com.google.api.tools.framework.model.ConfigAspect;
+import com.google.api.tools.framework.model.ConfigAspectMeters;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.Processor;
 import com.google.api.tools.framework.model.ProtoElement;
@@ -67,13 +68,19 @@ public class Normalizer implements Processor {
       Model model, Iterable<ConfigAspect> aspects, Service.Builder normalizedConfig) {
 
     // Run aspect normalizers.
+    ConfigAspectMeters meters = ConfigAspectMeters.create(model, Normalized.KEY);
     for (ConfigAspect aspect : aspects) {
+      meters.start(aspect);
       aspect.startNormalization(normalizedConfig);
+      meters.stop(aspect, 0);
     }
-    new AspectNormalizer(model.getScoper(), aspects, normalizedConfig).visit(model);
+    new AspectNormalizer(model.getScoper(), aspects, normalizedConfig, meters).visit(model);
     for (ConfigAspect aspect : aspects) {
+      meters.start(aspect);
       aspect.endNormalization(normalizedConfig);
+      meters.stop(aspect, 0);
     }
+    meters.report();
 
   }
 
@@ -81,18 +88,26 @@ public class Normalizer implements Processor {
 
     private final Service.Builder normalizedConfig;
     private final Iterable<ConfigAspect> configAspects;
+    private final ConfigAspectMeters meters;
 
     private AspectNormalizer(
-        Scoper scoper, Iterable<ConfigAspect> aspects, Builder normalizedConfig) {
+        Scoper scoper,
+        Iterable<ConfigAspect> aspects,
+        Builder normalizedConfig,
+        ConfigAspectMeters meters) {
       super(scoper, false /*ignoreMapEntry*/);
       this.normalizedConfig = normalizedConfig;
       this.configAspects = aspects;
+      this.meters = meters;
     }
 
     @VisitsBefore
     void normalize(ProtoElement element) {
+      meters.countElement();
       for (ConfigAspect aspect : this.configAspects) {
+        meters.start(aspect);
         aspect.normalize(element, normalizedConfig);
+        meters.stop(aspect, 1);
       }
     }
   }
@@ -20,33 +20,45 @@ import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.EnumType;
 import com.google.api.tools.framework.model.EnumValue;
 import com.google.api.tools.framework.model.Field;
-import com.google.api.tools.framework.model.Location;
 import com.google.api.tools.framework.model.Method;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.ProtoContainerElement;
 import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.ProtoFile;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.model.SymbolTable;
 import com.google.api.tools.framework.model.TypeRef;
 import com.google.api.tools.framework.model.Visitor;
 import com.google.api.tools.framework.util.Visits;
 import com.google.api.tools.framework.util.VisitsBefore;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
 
 /**
  * Visitor which resolves type references.
+ *
+ * <p>With a parallel {@link StageScheduler}, files are resolved concurrently against the symbol
+ * table, each by its own resolver, and their diagnostics are reported in file order afterwards.
  */
 class ReferenceResolver extends Visitor {
 
   private final Model model;
   private final SymbolTable symbolTable;
+  // Diagnostics of the visited file, if this resolver defers reporting them.
+  @Nullable private final List<Diag> deferredDiags;
 
   // Represents a stack of namespaces, with the top element the most active one.
   // Namespace here either means the package (on file level) or the package
@@ -55,16 +67,69 @@ class ReferenceResolver extends Visitor {
   private final Set<String> foundOptionTypes = new HashSet<>();
 
   ReferenceResolver(Model model, SymbolTable symbolTable) {
+    this(model, symbolTable, null);
+  }
+
+  private ReferenceResolver(
+      Model model, SymbolTable symbolTable, @Nullable List<Diag> deferredDiags) {
     this.model = model;
     this.symbolTable = symbolTable;
+    this.deferredDiags = deferredDiags;
   }
 
   void run() {
-    visit(model);
+    // Files materialized while resolving are resolved by the materialization listener instead.
+    ImmutableList<ProtoFile> files = materializedFiles();
+    StageScheduler scheduler = model.getStageScheduler();
+    if (scheduler.isParallel()) {
+      runPerFile(scheduler, files);
+    } else {
+      for (ProtoFile file : files) {
+        visit(file);
+      }
+    }
     // Make sure any internal options/extensions we find get added into the model traversals.
     addExtraExtensionTypes();
   }
 
+  private ImmutableList<ProtoFile> materializedFiles() {
+    ImmutableList.Builder<ProtoFile> files = ImmutableList.builder();
+    for (ProtoFile file : model.getFiles()) {
+      if (file.isMaterialized()) {
+        files.add(file);
+      }
+    }
+    return files.build();
+  }
+
+  private void runPerFile(StageScheduler scheduler, ImmutableList<ProtoFile> files) {
+    final Map<ProtoFile, ReferenceResolver> resolvers = Maps.newConcurrentMap();
+    scheduler.forEach(
+        files,
+        new Consumer<ProtoFile>() {
+          @Override
+          public void accept(ProtoFile file) {
+            ReferenceResolver resolver =
+                new ReferenceResolver(model, symbolTable, Lists.<Diag>newArrayList());
+            resolver.visit(file);
+            resolvers.put(file, resolver);
+          }
+        });
+    for (ProtoFile file : files) {
+      ReferenceResolver resolver = resolvers.get(file);
+      for (Diag diag : resolver.deferredDiags) {
+        model.getDiagReporter().report(diag);
+      }
+      foundOptionTypes.addAll(resolver.foundOptionTypes);
+    }
+  }
+
+  /** Resolves the references of a file materialized after the model was resolved. */
+  void run(ProtoFile file) {
+    visit(file);
+    addExtraExtensionTypes();
+  }
+
   private static final ImmutableSet<String> WHITELISTED_EXTENSION_TYPES =
       ImmutableSet.of(
           );
@@ -115,7 +180,7 @@ class ReferenceResolver extends Visitor {
   @VisitsBefore
   void visit(Field field) {
     // Resolve type of this field.
-    TypeRef type = resolveType(field.getLocation(), field.getProto().getType(),
+    TypeRef type = resolveType(field, field.getProto().getType(),
         field.getProto().getTypeName());
     if (type != null) {
       if (field.isRepeated()) {
@@ -129,14 +194,12 @@ class ReferenceResolver extends Visitor {
     // Check for resolution of oneof.
     if (field.getProto().hasOneofIndex() && field.getOneof() == null) {
       // Indicates the oneof index could not be resolved.
-      model
-          .getDiagReporter()
-          .report(
-              Diag.error(
-                  field.getLocation(),
-                  "Unresolved oneof reference (indicates internal inconsistency of input; oneof "
-                      + "index: %s)",
-                  field.getProto().getOneofIndex()));
+      report(
+          Diag.error(
+              field.getLocation(),
+              "Unresolved oneof reference (indicates internal inconsistency of input; oneof "
+                  + "index: %s)",
+              field.getProto().getOneofIndex()));
     }
 
     findOptionTypes(field.getOptionFields());
@@ -145,12 +208,12 @@ class ReferenceResolver extends Visitor {
   @VisitsBefore
   void visit(Method method) {
     // Resolve input and output type of this method.
-    TypeRef inputType = resolveType(method.getLocation(),
+    TypeRef inputType = resolveType(method,
         FieldDescriptorProto.Type.TYPE_MESSAGE, method.getDescriptor().getInputTypeName());
     if (inputType != null) {
       method.setInputType(inputType);
     }
-    TypeRef outputType = resolveType(method.getLocation(),
+    TypeRef outputType = resolveType(method,
         FieldDescriptorProto.Type.TYPE_MESSAGE, method.getDescriptor().getOutputTypeName());
     if (outputType != null) {
       method.setOutputType(outputType);
@@ -181,7 +244,7 @@ class ReferenceResolver extends Visitor {
    * Resolves a type based on the given partial name. This does not assume that the name, as
    * obtained from the descriptor, is in absolute form.
    */
-  private TypeRef resolveType(Location location, FieldDescriptorProto.Type kind, String name) {
+  private TypeRef resolveType(ProtoElement element, FieldDescriptorProto.Type kind, String name) {
     TypeRef type;
     switch (kind) {
       case TYPE_MESSAGE:
@@ -193,8 +256,16 @@ class ReferenceResolver extends Visitor {
         type = TypeRef.of(kind);
     }
     if (type == null) {
-      model.getDiagReporter().report(Diag.error(location, "Unresolved type '%s'", name));
+      report(Diag.error(element.getLocation(), "Unresolved type '%s'", name));
     }
     return type;
   }
+
+  private void report(Diag diag) {
+    if (deferredDiags != null) {
+      deferredDiags.add(diag);
+    } else {
+      model.getDiagReporter().report(diag);
+    }
+  }
 }
@@ -16,8 +16,10 @@
 
 package com.google.api.tools.framework.processors.resolver;
 
+import com.google.api.tools.framework.model.MaterializationListener;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.Processor;
+import com.google.api.tools.framework.model.ProtoFile;
 import com.google.api.tools.framework.model.SymbolTable;
 import com.google.api.tools.framework.model.stages.Resolved;
 import com.google.common.collect.ImmutableList;
@@ -45,10 +47,25 @@ public class Resolver implements Processor {
   }
 
   @Override
-  public boolean run(Model model) {
+  public boolean run(final Model model) {
     int oldErrorCount = model.getDiagReporter().getDiagCollector().getErrorCount();
-    SymbolTable symbolTable = new SymbolTableBuilder(model).run();
+    // Dependencies the roots can reach are materialized up front and resolved with the other files,
+    // so the stages which follow see all of them; see Model#materializeReachable.
+    model.materializeReachable();
+    final SymbolTable symbolTable = new SymbolTableBuilder(model).run();
     model.setSymbolTable(symbolTable);
+    if (model.hasLazyDependencies()) {
+      // Files materialized by lookups from now on are added to the table and resolved. The
+      // resolver below does not visit them, since they were not materialized when it started.
+      model.addMaterializationListener(
+          new MaterializationListener() {
+            @Override
+            public void fileMaterialized(ProtoFile file) {
+              new SymbolTableBuilder(model).addMaterialized(file, symbolTable);
+              new ReferenceResolver(model, symbolTable).run(file);
+            }
+          });
+    }
     new ReferenceResolver(model, symbolTable).run();
     if (oldErrorCount == model.getDiagReporter().getDiagCollector().getErrorCount()) {
       // No new errors produced -- success.
@@ -21,14 +21,18 @@ import com.google.api.tools.framework.model.EnumType;
 import com.google.api.tools.framework.model.EnumValue;
 import com.google.api.tools.framework.model.Field;
 import com.google.api.tools.framework.model.Interface;
-import com.google.api.tools.framework.model.Location;
 import com.google.api.tools.framework.model.MessageType;
 import com.google.api.tools.framework.model.Method;
 import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.ProtoFile;
+import com.google.api.tools.framework.model.Scoper;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.model.SymbolTable;
 import com.google.api.tools.framework.model.TypeRef;
 import com.google.api.tools.framework.model.Visitor;
 import com.google.api.tools.framework.util.VisitsBefore;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -36,10 +40,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
 
 /**
  * Visitor which creates the symbol table for an model. Reports errors for duplicate
  * declarations.
+ *
+ * <p>With a parallel {@link StageScheduler}, each file is visited by its own builder on the
+ * scheduler's pool. Those builders do the work local to elements, like the field-by-name maps of
+ * messages, and record the declarations and diagnostics of their file in visit order. The records
+ * are then replayed file by file into the table, so the table and the diagnostics are the same as
+ * with a serial visit of the model.
  */
 class SymbolTableBuilder extends Visitor {
 
@@ -50,104 +62,183 @@ class SymbolTableBuilder extends Visitor {
   private final Set<String> fieldNames =  new HashSet<>();
   private final Set<String> packageNames = new HashSet<>();
 
+  // Declared elements and diagnostics of a file, in visit order, if this builder records them
+  // instead of adding them to its own table.
+  @Nullable private final List<Object> records;
+
   SymbolTableBuilder(Model model) {
+    this(model, null);
+  }
+
+  private SymbolTableBuilder(Model model, @Nullable List<Object> records) {
     this.model = model;
+    this.records = records;
   }
 
   SymbolTable run() {
-    visit(model);
-    return new SymbolTable(interfaces, types, fieldNames, methods, packageNames);
+    StageScheduler scheduler = model.getStageScheduler();
+    if (scheduler.isParallel()) {
+      runPerFile(scheduler);
+    } else {
+      visit(model);
+    }
+    return new SymbolTable(model, interfaces, types, fieldNames, methods, packageNames);
   }
 
-  @VisitsBefore void visit(Interface endpointInterface) {
-    // Add the interface to the map of known interfaces.
-    Interface old = interfaces.put(endpointInterface.getFullName(), endpointInterface);
-    if (old != null) {
-      model
-          .getDiagReporter()
-          .report(
-              Diag.error(
-                  endpointInterface.getLocation(),
-                  "Duplicate declaration of interface '%s'. Previous location: %s",
-                  endpointInterface.getFullName(),
-                  old.getLocation().getDisplayString()));
+  private void runPerFile(StageScheduler scheduler) {
+    ImmutableList<ProtoFile> files = model.getFiles();
+    final Map<ProtoFile, List<Object>> recordsByFile = Maps.newConcurrentMap();
+    scheduler.forEach(
+        files,
+        new Consumer<ProtoFile>() {
+          @Override
+          public void accept(ProtoFile file) {
+            List<Object> fileRecords = Lists.newArrayList();
+            new SymbolTableBuilder(model, fileRecords).visit(file);
+            recordsByFile.put(file, fileRecords);
+          }
+        });
+    for (ProtoFile file : files) {
+      for (Object record : recordsByFile.get(file)) {
+        if (record instanceof Diag) {
+          model.getDiagReporter().report((Diag) record);
+        } else {
+          addDeclaration((ProtoElement) record);
+        }
+      }
     }
+  }
+
+  /**
+   * Adds the symbols of a file materialized after the symbol table was built to the table. The
+   * builder must be fresh, so that it only collects the symbols of this file.
+   */
+  void addMaterialized(ProtoFile file, SymbolTable symbolTable) {
+    visit(file);
+    symbolTable.addMaterializedSymbols(interfaces, types, fieldNames, methods, packageNames);
+  }
 
-    // Build the method-by-name map for this interface, and register the method simple name in the
-    // method name map.
+  @VisitsBefore void visit(Interface endpointInterface) {
+    declare(endpointInterface);
+
+    // Build the method-by-name map for this interface.
     Map<String, Method> methodByName = Maps.newLinkedHashMap();
     for (Method method : endpointInterface.getMethods()) {
       Method oldMethod = methodByName.put(method.getSimpleName(), method);
       if (oldMethod != null) {
-        model
-            .getDiagReporter()
-            .report(
-                Diag.error(
-                    method.getLocation(),
-                    "Duplicate declaration of method '%s'. Previous location: %s",
-                    method.getSimpleName(),
-                    oldMethod.getLocation().getDisplayString()));
-      }
-
-      List<Method> allMethodsOfName = methods.get(method.getSimpleName());
-      if (allMethodsOfName == null) {
-        methods.put(method.getSimpleName(), Lists.newArrayList(method));
-      } else {
-        allMethodsOfName.add(method);
+        report(
+            Diag.error(
+                method.getLocation(),
+                "Duplicate declaration of method '%s'. Previous location: %s",
+                method.getSimpleName(),
+                oldMethod.getLocation().getDisplayString()));
       }
     }
     endpointInterface.setMethodByNameMap(ImmutableMap.copyOf(methodByName));
   }
 
   @VisitsBefore void visit(MessageType message) {
-    // Add the message to the set of known types.
-    addType(message.getLocation(), message.getFullName(), TypeRef.of(message));
-
-    // Add the message's package to the set of known packages
-    addPackage(message.getFile().getFullName());
+    declare(message);
 
-    // Build the field-by-name map for this message, and record field simple names.
+    // Build the field-by-name map for this message.
     Map<String, Field> fieldByName = Maps.newLinkedHashMap();
     for (Field field : message.getFields()) {
-      fieldNames.add(field.getSimpleName());
       Field old = fieldByName.put(field.getSimpleName(), field);
       if (old != null) {
-        model
-            .getDiagReporter()
-            .report(
-                Diag.error(
-                    field.getLocation(),
-                    "Duplicate declaration of field '%s'. Previous location: %s",
-                    field.getSimpleName(),
-                    old.getLocation().getDisplayString()));
+        report(
+            Diag.error(
+                field.getLocation(),
+                "Duplicate declaration of field '%s'. Previous location: %s",
+                field.getSimpleName(),
+                old.getLocation().getDisplayString()));
       }
     }
     message.setFieldByNameMap(ImmutableMap.copyOf(fieldByName));
   }
 
   @VisitsBefore void visit(EnumType enumType) {
-    // Add the enum type to the set of known types.
-    addType(enumType.getLocation(), enumType.getFullName(),
-        TypeRef.of(enumType));
+    declare(enumType);
 
     // Build the field-by-name map for this enum type.
     Map<String, EnumValue> valueByName = Maps.newLinkedHashMap();
     for (EnumValue value : enumType.getValues()) {
       EnumValue old = valueByName.put(value.getSimpleName(), value);
       if (old != null) {
-        model
-            .getDiagReporter()
-            .report(
-                Diag.error(
-                    value.getLocation(),
-                    "Duplicate declaration of enum value '%s'. Previous location: %s",
-                    value.getSimpleName(),
-                    old.getLocation().getDisplayString()));
+        report(
+            Diag.error(
+                value.getLocation(),
+                "Duplicate declaration of enum value '%s'. Previous location: %s",
+                value.getSimpleName(),
+                old.getLocation().getDisplayString()));
       }
     }
     enumType.setValueByNameMap(ImmutableMap.copyOf(valueByName));
   }
 
+  private void declare(ProtoElement element) {
+    if (records != null) {
+      records.add(element);
+    } else {
+      addDeclaration(element);
+    }
+  }
+
+  private void report(Diag diag) {
+    if (records != null) {
+      records.add(diag);
+    } else {
+      model.getDiagReporter().report(diag);
+    }
+  }
+
+  /** Adds an interface, message or enum type to the table. */
+  private void addDeclaration(ProtoElement element) {
+    if (element instanceof Interface) {
+      addInterface((Interface) element);
+    } else if (element instanceof MessageType) {
+      MessageType message = (MessageType) element;
+      // Add the message to the set of known types.
+      addType(message, TypeRef.of(message));
+
+      // Add the message's package to the set of known packages
+      addPackage(message.getFile().getFullName());
+
+      // Record field simple names.
+      for (Field field : message.getFields()) {
+        fieldNames.add(field.getSimpleName());
+      }
+    } else {
+      // Add the enum type to the set of known types.
+      EnumType enumType = (EnumType) element;
+      addType(enumType, TypeRef.of(enumType));
+    }
+  }
+
+  private void addInterface(Interface endpointInterface) {
+    // Add the interface to the map of known interfaces.
+    Interface old = interfaces.put(endpointInterface.getFullName(), endpointInterface);
+    if (old != null) {
+      model
+          .getDiagReporter()
+          .report(
+              Diag.error(
+                  endpointInterface.getLocation(),
+                  "Duplicate declaration of interface '%s'. Previous location: %s",
+                  endpointInterface.getFullName(),
+                  old.getLocation().getDisplayString()));
+    }
+
+    // Register the method simple names in the method name map.
+    for (Method method : endpointInterface.getMethods()) {
+      List<Method> allMethodsOfName = methods.get(method.getSimpleName());
+      if (allMethodsOfName == null) {
+        methods.put(method.getSimpleName(), Lists.newArrayList(method));
+      } else {
+        allMethodsOfName.add(method);
+      }
+    }
+  }
+
   private void addPackage(String pkg) {
     packageNames.add(pkg);
     int lastDot = pkg.lastIndexOf(".");
@@ -156,17 +247,18 @@ class SymbolTableBuilder extends Visitor {
     }
   }
 
-  private void addType(Location location, String fullName, TypeRef type) {
-    String typeName = SymbolTable.getTypeNameInSymbolTable(fullName);
+  private void addType(ProtoElement element, TypeRef type) {
+    String typeName = SymbolTable.getTypeNameInSymbolTable(element.getFullName());
     TypeRef old = types.put(typeName , type);
     if (old != null) {
+      // Locations are only computed for errors, as they build the location map of the file.
       model
           .getDiagReporter()
           .report(
               Diag.error(
-                  location,
+                  element.getLocation(),
                   "Duplicate declaration of type '%s'. Previous location: %s",
-                  fullName,
+                  element.getFullName(),
                   old.getLocation().getDisplayString()));
     }
   }
@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.aspects.documentation.source.FileInclusion;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * An on-disk cache of compilation results, keyed by the content of all inputs of a compilation.
+ *
+ * <p>Entries hold the normalized {@link Service} and the diagnostics of a successful compilation.
+ * The key is a hash of the descriptor set and extension descriptor set bytes, the names and
+ * contents of the service config files, the data path, the experiments and other options affecting
+ * the result, and the tool version. Diagnostics are restored with their locations as plain display
+ * strings.
+ *
+ * <p>Documentation may include files from the data path, which are only known after compiling. An
+ * entry therefore also records the hashes of the files included by its compilation, see {@link
+ * Model#getIncludedDataFiles()}. Looking up an entry resolves these files again, and an entry is
+ * a miss if any of them changed.
+ *
+ * <p>The cache is bounded by the total size of its entries. When a write exceeds the bound, the
+ * least recently used entries are evicted; reading an entry marks it as used. Several processes may
+ * share a cache directory: entries are written atomically, and an entry evicted by another process
+ * while being read is a miss.
+ */
+public class CompilationCache {
+
+  /** Changes whenever the format of entries or the set of hashed inputs changes. */
+  private static final int FORMAT_VERSION = 2;
+
+  /** The version of the jar the tool runs from, if any. */
+  @Nullable
+  private static final String TOOL_VERSION =
+      CompilationCache.class.getPackage().getImplementationVersion();
+
+  private static final String ENTRY_SUFFIX = ".entry";
+
+  private static final Logger logger = Logger.getLogger(CompilationCache.class.getName());
+
+  private static final ConcurrentMap<Path, CompilationCache> OPEN_CACHES =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cache configured by {@link ToolOptions#COMPILATION_CACHE_DIR} and
+   * {@link ToolOptions#COMPILATION_CACHE_MAX_MB}, or null if caching is disabled. Caches are
+   * shared by all tools in the process using the same directory, so that statistics accumulate.
+   */
+  @Nullable
+  public static CompilationCache fromOptions(ToolOptions options) {
+    String dir = options.get(ToolOptions.COMPILATION_CACHE_DIR);
+    if (Strings.isNullOrEmpty(dir)) {
+      return null;
+    }
+    final long maxBytes = options.get(ToolOptions.COMPILATION_CACHE_MAX_MB) * 1024L * 1024L;
+    CompilationCache cache =
+        OPEN_CACHES.computeIfAbsent(
+            Paths.get(dir).toAbsolutePath(), path -> new CompilationCache(path, maxBytes));
+    cache.setMaxBytes(maxBytes);
+    return cache;
+  }
+
+  private final Path directory;
+  private volatile long maxBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** Creates a cache in the given directory, holding entries of up to maxBytes in total. */
+  public CompilationCache(Path directory, long maxBytes) {
+    Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive: %s", maxBytes);
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Sets the bound of the total size of entries, which applies from the next write on. */
+  public void setMaxBytes(long maxBytes) {
+    Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive: %s", maxBytes);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Computes the cache key of a compilation with the given options. Additional inputs which
+   * affect the result, like tool specific options, are passed as {@code extraInputs}. Returns null
+   * if an input cannot be read; the compilation itself will then report the problem.
+   */
+  @Nullable
+  public static String computeKey(ToolOptions options, String dataPath, Object... extraInputs) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    putString(hasher, Strings.nullToEmpty(TOOL_VERSION));
+    putString(hasher, resolveDataPath(dataPath));
+    try {
+      putBytes(
+          hasher,
+          readInput(options, ToolOptions.DESCRIPTOR_SET, ToolOptions.DESCRIPTOR_SET_CONTENTS));
+      putBytes(
+          hasher,
+          readInput(
+              options,
+              ToolOptions.EXTENSION_DESCRIPTOR_SET,
+              ToolOptions.EXTENSION_DESCRIPTOR_SET_CONTENTS));
+      List<FileWrapper> configs;
+      if (!options.get(ToolOptions.CONFIG_FILES).isEmpty()) {
+        configs = Lists.newArrayList();
+        for (String config : options.get(ToolOptions.CONFIG_FILES)) {
+          if (ToolUtil.findDataFile(config, dataPath) == null) {
+            return null;
+          }
+          configs.add(FileWrapper.from(config));
+        }
+      } else {
+        configs = options.get(ToolOptions.CONFIG_FILE_CONTENTS);
+      }
+      hasher.putInt(configs.size());
+      for (FileWrapper config : configs) {
+        putString(hasher, config.getFilename());
+        putBytes(hasher, config.getFileContents());
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    putStrings(hasher, options.get(ToolOptions.EXPERIMENTS));
+    putStrings(hasher, options.get(ToolOptions.PROTO_SOURCES));
+    putString(hasher, Strings.nullToEmpty(options.get(ToolOptions.VISIBILITY_LABELS)));
+    hasher.putInt(extraInputs.length);
+    for (Object input : extraInputs) {
+      putString(hasher, String.valueOf(input));
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the entry for the given key, or null if there is none or if a file included by its
+   * compilation changed. Included files are resolved against the given data path.
+   */
+  @Nullable
+  public Entry get(String key, String dataPath) {
+    Path file = entryFile(key);
+    try (InputStream stream = Files.newInputStream(file)) {
+      Entry entry = readEntry(new DataInputStream(stream));
+      if (!includedFilesUnchanged(entry, dataPath)) {
+        misses.incrementAndGet();
+        return null;
+      }
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      hits.incrementAndGet();
+      return entry;
+    } catch (NoSuchFileException e) {
+      misses.incrementAndGet();
+      return null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Dropping unreadable compilation cache entry " + file, e);
+      deleteQuietly(file);
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Stores the result of a successful compilation under the given key, and evicts least recently
+   * used entries if the cache exceeds its size bound. The included files map the paths relative to
+   * the data path of all files included by the compilation to their content. Failures to write are
+   * logged and ignored.
+   */
+  public void put(
+      String key, Service serviceConfig, List<Diag> diags, Map<String, String> includedFiles) {
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, key, ".tmp");
+      try (OutputStream stream = Files.newOutputStream(temp)) {
+        DataOutputStream out = new DataOutputStream(stream);
+        writeEntry(out, serviceConfig, diags, includedFiles);
+        out.flush();
+      }
+      Files.move(
+          temp,
+          entryFile(key),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      writes.incrementAndGet();
+      evict();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write compilation cache entry to " + directory, e);
+    }
+  }
+
+  /** Returns statistics of this cache. */
+  public Stats getStats() {
+    long entryCount = 0;
+    long sizeBytes = 0;
+    for (EntryFile file : listEntries()) {
+      entryCount++;
+      sizeBytes += file.size;
+    }
+    return Stats.create(
+        hits.get(), misses.get(), writes.get(), evictions.get(), entryCount, sizeBytes);
+  }
+
+  private synchronized void evict() {
+    List<EntryFile> entries = listEntries();
+    long total = 0;
+    for (EntryFile entry : entries) {
+      total += entry.size;
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Collections.sort(
+        entries,
+        new Comparator<EntryFile>() {
+          @Override
+          public int compare(EntryFile a, EntryFile b) {
+            return Long.compare(a.lastUsedMillis, b.lastUsedMillis);
+          }
+        });
+    for (EntryFile entry : entries) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (deleteQuietly(entry.path)) {
+        evictions.incrementAndGet();
+      }
+      total -= entry.size;
+    }
+  }
+
+  private List<EntryFile> listEntries() {
+    List<EntryFile> entries = Lists.newArrayList();
+    if (!Files.isDirectory(directory)) {
+      return entries;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+      for (Path file : files) {
+        try {
+          entries.add(
+              new EntryFile(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        } catch (NoSuchFileException e) {
+          // Evicted concurrently.
+        }
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot list compilation cache " + directory, e);
+    }
+    return entries;
+  }
+
+  private Path entryFile(String key) {
+    return directory.resolve(key + ENTRY_SUFFIX);
+  }
+
+  private static boolean deleteQuietly(Path file) {
+    try {
+      return Files.deleteIfExists(file);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void writeEntry(
+      DataOutputStream out,
+      Service serviceConfig,
+      List<Diag> diags,
+      Map<String, String> includedFiles)
+      throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    byte[] config = serviceConfig.toByteArray();
+    out.writeInt(config.length);
+    out.write(config);
+    out.writeInt(diags.size());
+    for (Diag diag : diags) {
+      out.writeUTF(diag.getKind().name());
+      out.writeUTF(diag.getLocation().getDisplayString());
+      out.writeUTF(diag.getMessage());
+    }
+    out.writeInt(includedFiles.size());
+    for (Map.Entry<String, String> includedFile : includedFiles.entrySet()) {
+      out.writeUTF(includedFile.getKey());
+      out.writeUTF(hashContent(includedFile.getValue()));
+    }
+  }
+
+  private static Entry readEntry(DataInputStream in) throws IOException {
+    if (in.readInt() != FORMAT_VERSION) {
+      throw new IOException("Unknown entry format.");
+    }
+    byte[] config = new byte[in.readInt()];
+    in.readFully(config);
+    int diagCount = in.readInt();
+    ImmutableList.Builder<Diag> diags = ImmutableList.builder();
+    for (int i = 0; i < diagCount; i++) {
+      Diag.Kind kind = Diag.Kind.valueOf(in.readUTF());
+      SimpleLocation location = new SimpleLocation(in.readUTF());
+      diags.add(Diag.create(location, "%s", kind, in.readUTF()));
+    }
+    int includedFileCount = in.readInt();
+    ImmutableMap.Builder<String, String> includedFileHashes = ImmutableMap.builder();
+    for (int i = 0; i < includedFileCount; i++) {
+      includedFileHashes.put(in.readUTF(), in.readUTF());
+    }
+    return Entry.create(Service.parseFrom(config), diags.build(), includedFileHashes.build());
+  }
+
+  /** Checks whether the files included by the compilation of the entry still have its hashes. */
+  private static boolean includedFilesUnchanged(Entry entry, String dataPath) {
+    for (Map.Entry<String, String> includedFile : entry.getIncludedFileHashes().entrySet()) {
+      String path = FileInclusion.resolveFilePath(dataPath, includedFile.getKey());
+      if (path == null) {
+        return false;
+      }
+      String content;
+      try {
+        content = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        return false;
+      }
+      if (!hashContent(content).equals(includedFile.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String hashContent(String content) {
+    return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+  }
+
+  /** Returns the data path with its directories made absolute, so that the key is location free. */
+  private static String resolveDataPath(String dataPath) {
+    List<String> directories = Lists.newArrayList();
+    for (String directory : Splitter.on(File.pathSeparator).split(Strings.nullToEmpty(dataPath))) {
+      directories.add(Paths.get(directory).toAbsolutePath().normalize().toString());
+    }
+    return Joiner.on(File.pathSeparator).join(directories);
+  }
+
+  private static void putBytes(Hasher hasher, @Nullable ByteString bytes) {
+    if (bytes == null) {
+      hasher.putInt(-1);
+      return;
+    }
+    hasher.putInt(bytes.size());
+    hasher.putBytes(bytes.asReadOnlyByteBuffer());
+  }
+
+  private static void putString(Hasher hasher, String value) {
+    hasher.putInt(value.length());
+    hasher.putString(value, StandardCharsets.UTF_8);
+  }
+
+  private static void putStrings(Hasher hasher, List<String> values) {
+    hasher.putInt(values.size());
+    for (String value : values) {
+      putString(hasher, value);
+    }
+  }
+
+  @Nullable
+  private static ByteString readInput(
+      ToolOptions options,
+      ToolOptions.Option<String> fileOption,
+      ToolOptions.Option<FileWrapper> contentsOption)
+      throws IOException {
+    String fileName = options.get(fileOption);
+    if (!Strings.isNullOrEmpty(fileName)) {
+      return FileWrapper.from(fileName).getFileContents();
+    }
+    FileWrapper contents = options.get(contentsOption);
+    return contents == null ? null : contents.getFileContents();
+  }
+
+  /** A file holding an entry. */
+  private static class EntryFile {
+    private final Path path;
+    private final long size;
+    private final long lastUsedMillis;
+
+    private EntryFile(Path path, long size, long lastUsedMillis) {
+      this.path = path;
+      this.size = size;
+      this.lastUsedMillis = lastUsedMillis;
+    }
+  }
+
+  /** A cached compilation result. */
+  @AutoValue
+  public abstract static class Entry {
+
+    public static Entry create(
+        Service serviceConfig, List<Diag> diags, Map<String, String> includedFileHashes) {
+      return new AutoValue_CompilationCache_Entry(
+          serviceConfig, ImmutableList.copyOf(diags), ImmutableMap.copyOf(includedFileHashes));
+    }
+
+    /** Returns the normalized service config. */
+    public abstract Service getServiceConfig();
+
+    /** Returns the diagnostics, all warnings, reported by the compilation. */
+    public abstract ImmutableList<Diag> getDiags();
+
+    /**
+     * Returns the paths relative to the data path of the files included by the compilation,
+     * mapped to the hashes of their content.
+     */
+    public abstract ImmutableMap<String, String> getIncludedFileHashes();
+  }
+
+  /** Statistics of a cache. Counters cover the lifetime of the cache object. */
+  @AutoValue
+  public abstract static class Stats {
+
+    public static Stats create(
+        long hitCount,
+        long missCount,
+        long writeCount,
+        long evictionCount,
+        long entryCount,
+        long sizeBytes) {
+      return new AutoValue_CompilationCache_Stats(
+          hitCount, missCount, writeCount, evictionCount, entryCount, sizeBytes);
+    }
+
+    public abstract long getHitCount();
+
+    public abstract long getMissCount();
+
+    public abstract long getWriteCount();
+
+    public abstract long getEvictionCount();
+
+    /** Returns the number of entries currently on disk. */
+    public abstract long getEntryCount();
+
+    /** Returns the total size of the entries currently on disk. */
+    public abstract long getSizeBytes();
+
+    /** Returns the ratio of hits to lookups, or 1.0 if there were no lookups. */
+    public double getHitRate() {
+      long lookups = getHitCount() + getMissCount();
+      return lookups == 0 ? 1.0 : (double) getHitCount() / lookups;
+    }
+
+    /** Returns a human readable report of the statistics. */
+    public String describe() {
+      return String.format(
+          "Compilation cache: %d hits, %d misses (%.1f%% hit rate), %d writes, %d evictions, "
+              + "%d entries using %d KB.",
+          getHitCount(),
+          getMissCount(),
+          getHitRate() * 100,
+          getWriteCount(),
+          getEvictionCount(),
+          getEntryCount(),
+          getSizeBytes() / 1024);
+    }
+  }
+}
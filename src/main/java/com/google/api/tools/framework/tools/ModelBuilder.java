@@ -17,12 +17,14 @@
 package com.google.api.tools.framework.tools;
 
 import com.google.api.tools.framework.model.BoundedDiagCollector;
+import com.google.api.tools.framework.model.ConcurrentDiagCollector;
 import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.DiagCollector;
 import com.google.api.tools.framework.model.ExperimentsImpl;
 import com.google.api.tools.framework.model.ExtensionPool;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
@@ -45,7 +47,10 @@ public class ModelBuilder {
   public ModelBuildResult setup(
       ToolOptions options, ModelBuildOverrides registry, String builtDataPath) {
 
-    DiagCollector diagCollector = new BoundedDiagCollector();
+    // Processors of a parallel scheduler report diags concurrently.
+    int stageParallelism = options.get(ToolOptions.STAGE_PARALLELISM);
+    DiagCollector diagCollector =
+        stageParallelism > 0 ? new ConcurrentDiagCollector() : new BoundedDiagCollector();
     Set<FileWrapper> protoFiles = parseConfigFiles(options, builtDataPath, diagCollector);
     List<String> protoFileNames = Lists.newArrayList();
     for (FileWrapper protoFile : protoFiles) {
@@ -70,6 +75,9 @@ public class ModelBuilder {
     }
 
     registry.registerProcessors(model);
+    if (stageParallelism > 0) {
+      model.setStageScheduler(StageScheduler.parallel(stageParallelism));
+    }
 
     model.setDataPath(builtDataPath);
 
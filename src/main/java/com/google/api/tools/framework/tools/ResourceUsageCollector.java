@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.tools.framework.model.ConfigAspect;
+import com.google.api.tools.framework.model.InstrumentationListener;
+import com.google.api.tools.framework.model.ResourceUsage;
+import com.google.api.tools.framework.model.SymbolTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Key;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link InstrumentationListener} which sums up the resource usage per stage, per config
+ * aspect within each stage, and per lint rule, and renders it as JSON together with the
+ * statistics of the model's symbol table and the output files written by the tool.
+ */
+public class ResourceUsageCollector implements InstrumentationListener {
+
+  private final Map<String, ResourceUsage> processors = Maps.newLinkedHashMap();
+  private final Map<String, Map<String, ResourceUsage>> aspects = Maps.newLinkedHashMap();
+  private final Map<String, ResourceUsage> lintRules = Maps.newLinkedHashMap();
+  private final List<Map<String, Object>> outputs = Lists.newArrayList();
+  @Nullable private SymbolTable.Stats symbolTableStats;
+
+  @Override
+  public synchronized void processorFinished(Key<?> stage, ResourceUsage usage) {
+    String name = stageName(stage);
+    processors.put(name, add(processors.get(name), usage));
+    if (!aspects.containsKey(name)) {
+      aspects.put(name, Maps.<String, ResourceUsage>newLinkedHashMap());
+    }
+  }
+
+  @Override
+  public synchronized void configAspectFinished(
+      Key<?> stage, ConfigAspect aspect, ResourceUsage usage) {
+    String name = stageName(stage);
+    Map<String, ResourceUsage> stageAspects = aspects.get(name);
+    if (stageAspects == null) {
+      stageAspects = Maps.newLinkedHashMap();
+      aspects.put(name, stageAspects);
+    }
+    stageAspects.put(
+        aspect.getAspectName(), add(stageAspects.get(aspect.getAspectName()), usage));
+  }
+
+  @Override
+  public synchronized void lintRuleFinished(
+      ConfigAspect aspect, String ruleName, ResourceUsage usage) {
+    String name = aspect.getAspectName() + "-" + ruleName;
+    lintRules.put(name, add(lintRules.get(name), usage));
+  }
+
+  /** Returns the usage of the processors run so far, by stage name. */
+  public synchronized ImmutableMap<String, ResourceUsage> getProcessorUsage() {
+    return ImmutableMap.copyOf(processors);
+  }
+
+  /** Returns the usage of the config aspects of the given stage, by aspect name. */
+  public synchronized ImmutableMap<String, ResourceUsage> getConfigAspectUsage(String stage) {
+    Map<String, ResourceUsage> stageAspects = aspects.get(stage);
+    return stageAspects == null
+        ? ImmutableMap.<String, ResourceUsage>of()
+        : ImmutableMap.copyOf(stageAspects);
+  }
+
+  /** Returns the usage of the lint rules run so far, by aspect and rule name. */
+  public synchronized ImmutableMap<String, ResourceUsage> getLintRuleUsage() {
+    return ImmutableMap.copyOf(lintRules);
+  }
+
+  /**
+   * Adds an output file written by the tool in the given format, with the size of its content
+   * before and after compression.
+   */
+  public synchronized void addOutput(
+      String format,
+      String path,
+      long serializedBytes,
+      long writtenBytes,
+      ResourceUsage usage) {
+    Map<String, Object> json = toJson("format", format, usage);
+    json.put("path", path);
+    json.put("serializedBytes", serializedBytes);
+    json.put("writtenBytes", writtenBytes);
+    outputs.add(json);
+  }
+
+  /** Sets the statistics of the model's symbol table, to be included in the JSON. */
+  public synchronized void setSymbolTableStats(SymbolTable.Stats stats) {
+    this.symbolTableStats = stats;
+  }
+
+  /**
+   * Returns the collected usage as a JSON object, with a list of stages in the order they were
+   * run, each with the list of its config aspects, the lint rules sorted by decreasing wall time,
+   * the output files, and the symbol table statistics if set.
+   */
+  public synchronized String toJson() {
+    List<Object> stages = Lists.newArrayList();
+    for (Map.Entry<String, ResourceUsage> stage : processors.entrySet()) {
+      Map<String, Object> stageJson = toJson("stage", stage.getKey(), stage.getValue());
+      List<Object> aspectsJson = Lists.newArrayList();
+      for (Map.Entry<String, ResourceUsage> aspect : aspects.get(stage.getKey()).entrySet()) {
+        aspectsJson.add(toJson("aspect", aspect.getKey(), aspect.getValue()));
+      }
+      stageJson.put("aspects", aspectsJson);
+      stages.add(stageJson);
+    }
+    Map<String, Object> json = Maps.newLinkedHashMap();
+    json.put("stages", stages);
+    List<Map.Entry<String, ResourceUsage>> sortedRules = Lists.newArrayList(lintRules.entrySet());
+    Collections.sort(
+        sortedRules,
+        new Comparator<Map.Entry<String, ResourceUsage>>() {
+          @Override
+          public int compare(
+              Map.Entry<String, ResourceUsage> a, Map.Entry<String, ResourceUsage> b) {
+            return Long.compare(b.getValue().getWallNanos(), a.getValue().getWallNanos());
+          }
+        });
+    List<Object> rulesJson = Lists.newArrayList();
+    for (Map.Entry<String, ResourceUsage> rule : sortedRules) {
+      rulesJson.add(toJson("rule", rule.getKey(), rule.getValue()));
+    }
+    json.put("lintRules", rulesJson);
+    json.put("outputs", outputs);
+    if (symbolTableStats != null) {
+      Map<String, Object> statsJson = Maps.newLinkedHashMap();
+      statsJson.put("resolutionHits", symbolTableStats.getHitCount());
+      statsJson.put("resolutionMisses", symbolTableStats.getMissCount());
+      statsJson.put("resolutionHitRate", symbolTableStats.getHitRate());
+      statsJson.put("resolutionEvictions", symbolTableStats.getEvictionCount());
+      json.put("symbolTable", statsJson);
+    }
+    try {
+      return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(json);
+    } catch (JsonProcessingException e) {
+      // Cannot happen for maps, lists, strings and numbers.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Map<String, Object> toJson(String kind, String name, ResourceUsage usage) {
+    Map<String, Object> json = Maps.newLinkedHashMap();
+    json.put(kind, name);
+    json.put("wallNanos", usage.getWallNanos());
+    json.put("cpuNanos", usage.getCpuNanos());
+    json.put("allocatedBytes", usage.getAllocatedBytes());
+    json.put("elementCount", usage.getElementCount());
+    return json;
+  }
+
+  private static ResourceUsage add(ResourceUsage total, ResourceUsage usage) {
+    return total == null ? usage : total.plus(usage);
+  }
+
+  private static String stageName(Key<?> stage) {
+    return stage.getAnnotation() != null
+        ? stage.getAnnotation().toString()
+        : stage.getTypeLiteral().getRawType().getSimpleName();
+  }
+}
@@ -23,6 +23,7 @@ import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.Diag.Kind;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.setup.StandardSetup;
 import com.google.api.tools.framework.tools.ToolOptions.Option;
 import com.google.common.base.Joiner;
@@ -130,13 +131,15 @@ public abstract class SwaggerToolDriverBase extends GenericToolDriverBase {
       additionalConfigsMap.add(FileWrapper.from(additionalConfig));
     }
 
+    int parallelism = options.get(ToolOptions.STAGE_PARALLELISM);
     try {
       tool =
           new OpenApiToService(
               fileContentMap.build(),
               options.get(SERVICE_NAME),
               options.get(TYPE_NAMESPACE),
-              additionalConfigsMap.build());
+              additionalConfigsMap.build(),
+              parallelism > 0 ? StageScheduler.parallel(parallelism) : StageScheduler.serial());
 
       serviceConfig = tool.createServiceConfig();
     } catch (OpenApiConversionException ex) {
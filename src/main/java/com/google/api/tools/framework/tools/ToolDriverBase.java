@@ -19,7 +19,12 @@ package com.google.api.tools.framework.tools;
 import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.setup.StandardSetup;
 import com.google.api.tools.framework.tools.ModelBuilder.ModelBuildResult;
+import com.google.common.base.Strings;
 import com.google.protobuf.ExtensionRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -32,6 +37,7 @@ import javax.annotation.Nullable;
 public abstract class ToolDriverBase extends GenericToolDriverBase implements ModelBuildOverrides {
 
   protected Model model;
+  @Nullable private ResourceUsageCollector sharedResourceUsage;
 
   protected ToolDriverBase(ToolOptions options) {
     super(options);
@@ -53,12 +59,12 @@ public abstract class ToolDriverBase extends GenericToolDriverBase implements Mo
     StandardSetup.registerStandardConfigAspects(model);
   }
   /**
-   * Get the extension registry to use for processing service config. By default, registers
-   * extensions from {@code google/api/annotations.proto}.
+   * Get the extension registry to use for processing service config. By default, the shared
+   * registry of extensions from {@code google/api/annotations.proto}.
    */
   @Override
   public ExtensionRegistry getPlatformExtensions() {
-    return ToolProtoUtil.getStandardPlatformExtensions();
+    return ToolProtoUtil.getSharedPlatformExtensions();
   }
 
   @Override
@@ -66,11 +72,59 @@ public abstract class ToolDriverBase extends GenericToolDriverBase implements Mo
     return true;
   }
 
+  /**
+   * Makes this driver report the resource usage of its model to the given collector, instead of
+   * writing a collector of its own to {@link ToolOptions#INSTRUMENTATION_OUT}. Used by drivers
+   * delegating to this one, which add their own usage and write the collector once.
+   */
+  public void setResourceUsageCollector(ResourceUsageCollector resourceUsage) {
+    this.sharedResourceUsage = resourceUsage;
+  }
+
   /** Runs the tool. Returns a non-zero exit code on errors. */
   @Override
   public int run() {
-    this.model = setupModel();
-    return super.run();
+    this.model = buildsModel() ? setupModel() : null;
+    ResourceUsageCollector resourceUsage = sharedResourceUsage;
+    boolean writesResourceUsage = false;
+    if (resourceUsage == null
+        && model != null
+        && !Strings.isNullOrEmpty(options.get(ToolOptions.INSTRUMENTATION_OUT))) {
+      resourceUsage = new ResourceUsageCollector();
+      writesResourceUsage = true;
+    }
+    if (model != null && resourceUsage != null) {
+      model.addInstrumentationListener(resourceUsage);
+    }
+    int exitCode = super.run();
+    if (model != null && resourceUsage != null && model.getSymbolTable() != null) {
+      resourceUsage.setSymbolTableStats(model.getSymbolTable().getStats());
+    }
+    if (writesResourceUsage) {
+      writeInstrumentation(resourceUsage);
+    }
+    return exitCode;
+  }
+
+  /** Writes the collected resource usage to {@link ToolOptions#INSTRUMENTATION_OUT}. */
+  protected void writeInstrumentation(ResourceUsageCollector resourceUsage) {
+    String instrumentationOut = options.get(ToolOptions.INSTRUMENTATION_OUT);
+    try {
+      Files.write(
+          Paths.get(instrumentationOut), resourceUsage.toJson().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      Logger.getLogger(ToolDriverBase.class.getName())
+          .log(Level.WARNING, "Cannot write instrumentation to " + instrumentationOut, e);
+    }
+  }
+
+  /**
+   * Returns true if {@link #run()} builds the model from the options before processing. Drivers
+   * which delegate to another driver building its own model return false, so the inputs are not
+   * parsed twice.
+   */
+  protected boolean buildsModel() {
+    return true;
   }
 
   /** Initializes the model. */
@@ -266,6 +266,45 @@ public class ToolOptions {
               + "contents.",
           null);
 
+  public static final Option<Integer> STAGE_PARALLELISM =
+      createOption(
+          Integer.class,
+          "stage_parallelism",
+          "The number of threads used to run independent processing stages and per-file work. "
+              + "Zero runs all processing serially on the calling thread.",
+          0);
+
+  public static final Option<String> INSTRUMENTATION_OUT =
+      createOption(
+          String.class,
+          "instrumentation_out",
+          "A file to write the wall time, CPU time, allocated bytes and element counts of each "
+              + "processing stage and config aspect to, as JSON. Empty disables instrumentation.",
+          "");
+
+  public static final Option<String> COMPILATION_CACHE_DIR =
+      createOption(
+          String.class,
+          "compilation_cache_dir",
+          "A directory to cache compilation results in, keyed by the content of all inputs. "
+              + "Empty disables caching.",
+          "");
+
+  public static final Option<Integer> COMPILATION_CACHE_MAX_MB =
+      createOption(
+          Integer.class,
+          "compilation_cache_max_mb",
+          "The size bound of the compilation cache in megabytes. Least recently used entries are "
+              + "evicted beyond it.",
+          512);
+
+  public static final Option<Boolean> COMPILATION_CACHE_STATS =
+      createOption(
+          Boolean.class,
+          "compilation_cache_stats",
+          "Print statistics of the compilation cache after the tool ran.",
+          false);
+
   private final Map<Key<?>, Object> options = Maps.newHashMap();
 
   /** Returns new empty tool options instance. */
@@ -35,8 +35,23 @@ public class ToolProtoUtil {
     return registry;
   }
 
+  /**
+   * Returns an unmodifiable registry of the standard extensions, shared by all callers. Prefer it
+   * over {@link #getStandardPlatformExtensions()} when the registry is not modified, to avoid
+   * rebuilding it for every tool run in a process.
+   */
+  public static ExtensionRegistry getSharedPlatformExtensions() {
+    return SharedPlatformExtensions.REGISTRY;
+  }
+
+  /** Holder of the shared registry, initialized on first use. */
+  private static class SharedPlatformExtensions {
+    private static final ExtensionRegistry REGISTRY =
+        getStandardPlatformExtensions().getUnmodifiable();
+  }
+
   public static FileDescriptorSet openDescriptorSet(String fileName) {
-    return openDescriptorSet(fileName, getStandardPlatformExtensions());
+    return openDescriptorSet(fileName, getSharedPlatformExtensions());
   }
 
   public static FileDescriptorSet openDescriptorSet(String fileName, ExtensionRegistry registry) {
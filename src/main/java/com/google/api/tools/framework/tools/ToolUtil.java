@@ -17,6 +17,7 @@
 package com.google.api.tools.framework.tools;
 
 import com.google.api.tools.framework.model.ConfigSource;
+import com.google.api.tools.framework.model.ConfigSource.LocationStorage;
 import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.DiagCollector;
 import com.google.api.tools.framework.model.Model;
@@ -224,7 +225,8 @@ public class ToolUtil {
     if (filename.endsWith(".textproto")) {
       return ProtoServiceReader.readTextConfig(diag, filename, fileContents);
     }
-    return YamlReader.readConfig(diag, filename, fileContents.toStringUtf8());
+    return YamlReader.readConfig(
+        diag, filename, fileContents.toStringUtf8(), LocationStorage.COMPACT);
   }
 
   /** Sets up the model configs, attaching to the model. */
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.api.tools.framework.tools.ToolOptions.Option;
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ObjectArrays;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Runs many config generation jobs in one process, concurrently on a bounded pool of workers.
+ *
+ * <p>Each job is a line of the command line flags of a single {@link ServiceConfigGeneratorTool}
+ * run, separated by whitespace. Empty lines and lines starting with '#' are ignored. Flags given to
+ * the batch itself apply to every job which does not set them, so that for example a compilation
+ * cache can be configured once. Jobs are started as they are read, so a build system can keep the
+ * process running and feed it jobs on standard input.
+ *
+ * <p>All jobs share the warm JVM: visitor dispatchers, extension registries and the JSON type
+ * registry are built once per process instead of once per job. The latency of each job is printed
+ * when it completes, and a summary with the throughput when all jobs are done.
+ */
+public class BatchConfigGenerator {
+
+  public static final Option<String> BATCH =
+      ToolOptions.createOption(
+          String.class,
+          "batch",
+          "A file of config generation jobs, one per line, each given as the flags of a single "
+              + "run. '-' reads jobs from standard input until it is closed.",
+          "");
+
+  public static final Option<Integer> BATCH_WORKERS =
+      ToolOptions.createOption(
+          Integer.class,
+          "batch_workers",
+          "The number of jobs run concurrently in batch mode. Zero uses one per processor.",
+          0);
+
+  private static final Splitter ARG_SPLITTER = Splitter.onPattern("\\s+").omitEmptyStrings();
+
+  private final ImmutableList<Option<?>> jobOptions;
+  private final String[] defaultArgs;
+  private final int workers;
+  private final PrintStream out;
+
+  /**
+   * Creates a batch generator. Jobs accept the given options, and default to the values in {@code
+   * defaultArgs}.
+   */
+  public BatchConfigGenerator(
+      List<Option<?>> jobOptions, String[] defaultArgs, int workers, PrintStream out) {
+    this.jobOptions = ImmutableList.copyOf(jobOptions);
+    this.defaultArgs = defaultArgs.clone();
+    this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    this.out = out;
+  }
+
+  /** Runs all jobs read from the given reader. Returns a non-zero exit code if any job failed. */
+  public int run(BufferedReader jobs) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<JobResult>> results = Lists.newArrayList();
+    Stopwatch batchTime = Stopwatch.createStarted();
+    try {
+      int lineNumber = 0;
+      for (String line = jobs.readLine(); line != null; line = jobs.readLine()) {
+        lineNumber++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        final int jobNumber = lineNumber;
+        final String[] args = Iterables.toArray(ARG_SPLITTER.split(line), String.class);
+        results.add(pool.submit(() -> runJob(jobNumber, args)));
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    List<Long> latencies = Lists.newArrayList();
+    int failures = 0;
+    for (Future<JobResult> future : results) {
+      JobResult result;
+      try {
+        result = future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for jobs.", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Unexpected failure of a batch job.", e.getCause());
+      }
+      latencies.add(result.millis);
+      if (!result.succeeded) {
+        failures++;
+      }
+    }
+    printSummary(latencies, failures, batchTime.elapsed(TimeUnit.MILLISECONDS));
+    return failures > 0 ? 1 : 0;
+  }
+
+  private JobResult runJob(int jobNumber, String[] args) {
+    Stopwatch jobTime = Stopwatch.createStarted();
+    boolean succeeded;
+    try {
+      Options cliOptions = ToolOptions.convertToApacheCliOptions(jobOptions);
+      // Apache CLI returns the first value of a repeated flag, so job flags take precedence.
+      CommandLine cmd =
+          new BasicParser().parse(cliOptions, ObjectArrays.concat(args, defaultArgs, String.class));
+      ToolOptions options = ToolOptions.getToolOptionsFromCommandLine(cmd, jobOptions);
+      succeeded = new ConfigGeneratorDriver(options).run() == 0;
+    } catch (ParseException | RuntimeException e) {
+      out.printf("job %d: %s%n", jobNumber, e);
+      succeeded = false;
+    }
+    long millis = jobTime.elapsed(TimeUnit.MILLISECONDS);
+    out.printf("job %d: %s in %d ms%n", jobNumber, succeeded ? "done" : "FAILED", millis);
+    return new JobResult(succeeded, millis);
+  }
+
+  private void printSummary(List<Long> latencies, int failures, long elapsedMillis) {
+    if (latencies.isEmpty()) {
+      out.println("No jobs.");
+      return;
+    }
+    Collections.sort(latencies);
+    out.printf(
+        "%d jobs, %d failed, in %d ms with %d workers: %.2f jobs/s; "
+            + "latency p50 %d ms, p90 %d ms, max %d ms%n",
+        latencies.size(),
+        failures,
+        elapsedMillis,
+        workers,
+        latencies.size() * 1000.0 / Math.max(1, elapsedMillis),
+        percentile(latencies, 50),
+        percentile(latencies, 90),
+        latencies.get(latencies.size() - 1));
+  }
+
+  private static long percentile(List<Long> sorted, int percent) {
+    int index = (int) Math.ceil(sorted.size() * percent / 100.0) - 1;
+    return sorted.get(Math.max(0, index));
+  }
+
+  /** The outcome of a job. */
+  private static class JobResult {
+    private final boolean succeeded;
+    private final long millis;
+
+    private JobResult(boolean succeeded, long millis) {
+      this.succeeded = succeeded;
+      this.millis = millis;
+    }
+  }
+}
@@ -18,7 +18,10 @@ package com.google.api.tools.framework.tools.configgen;
 
 import com.google.api.Service;
 import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.tools.ResourceUsageCollector;
 import com.google.api.tools.framework.tools.SwaggerToolDriverBase;
 import com.google.api.tools.framework.tools.ToolDriverBase;
 import com.google.api.tools.framework.tools.ToolOptions;
@@ -27,26 +30,24 @@ import com.google.api.tools.framework.tools.ToolProtoUtil;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.protobuf.ExtensionRegistry;
-import com.google.protobuf.TextFormat;
 import com.google.protobuf.util.JsonFormat;
 import com.google.protobuf.util.JsonFormat.TypeRegistry;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
  * This tool generate the normalized config for an API service (defined using either proto
- * descriptors or swagger spec) and outputs it in binary proto, text or json format.
+ * descriptors or swagger spec) and outputs it in binary proto, text or json format. Outputs are
+ * written by a {@link ConfigOutputWriter}, so paths ending with {@code .gz} are gzip compressed.
  */
 public class ConfigGeneratorDriver extends ToolDriverBase {
 
@@ -71,6 +72,8 @@ public class ConfigGeneratorDriver extends ToolDriverBase {
 
   private final ConfigGenerator configGenerator;
   private Service generatedServiceConfig = null;
+  private ImmutableList<ConfigOutputWriter.OutputStats> outputStats = ImmutableList.of();
+  @Nullable private ResourceUsageCollector resourceUsage;
 
   public ConfigGeneratorDriver(ToolOptions options) {
     super(options);
@@ -81,6 +84,27 @@ public class ConfigGeneratorDriver extends ToolDriverBase {
     }
   }
 
+  /**
+   * Runs the tool. If {@link ToolOptions#INSTRUMENTATION_OUT} is set, the config generator reports
+   * the usage of its model to a collector of this driver, to which the stats of the output files
+   * are added before it is written.
+   */
+  @Override
+  public int run() {
+    resourceUsage = null;
+    if (!Strings.isNullOrEmpty(options.get(ToolOptions.INSTRUMENTATION_OUT))) {
+      resourceUsage = new ResourceUsageCollector();
+      if (configGenerator instanceof ToolDriverBase) {
+        ((ToolDriverBase) configGenerator).setResourceUsageCollector(resourceUsage);
+      }
+    }
+    int exitCode = super.run();
+    if (resourceUsage != null) {
+      writeInstrumentation(resourceUsage);
+    }
+    return exitCode;
+  }
+
   @Override
   public void process() throws IOException {
     if (!validateInputs()) {
@@ -109,6 +133,23 @@ public class ConfigGeneratorDriver extends ToolDriverBase {
     return generatedServiceConfig;
   }
 
+  /**
+   * The config generator builds the model, or finds the result in the {@link
+   * com.google.api.tools.framework.tools.CompilationCache} without building one, so this driver
+   * does not build a model of its own.
+   */
+  @Override
+  protected boolean buildsModel() {
+    return false;
+  }
+
+  /** Returns the model of the config generator, which is null on a compilation cache hit. */
+  @Override
+  @Nullable
+  public Model getModel() {
+    return configGenerator.getModel();
+  }
+
   private void updateProducerProjectId(Service.Builder builder) {
     if (!Strings.isNullOrEmpty(options.get(PROJECT_ID))) {
       builder.setProducerProjectId(options.get(PROJECT_ID));
@@ -164,49 +205,42 @@ public class ConfigGeneratorDriver extends ToolDriverBase {
         SwaggerToolDriverBase.SERVICE_NAME, SwaggerToolDriverBase.TYPE_NAMESPACE);
   }
 
-  private void generateOutputFiles(Service serviceConfig)
-      throws FileNotFoundException, IOException {
-    // Create normalized service proto, in binary form.
-    if (!Strings.isNullOrEmpty(options.get(BIN_OUT))) {
-      File outFileBinaryServiceConfig = new File(options.get(BIN_OUT));
-      OutputStream normalizedOut = new FileOutputStream(outFileBinaryServiceConfig);
-      serviceConfig.writeTo(normalizedOut);
-      normalizedOut.close();
-    }
-
-    // Create normalized service proto, in text form.
-    if (!Strings.isNullOrEmpty(options.get(TXT_OUT))) {
-      File outFileTxtServiceConfig = new File(options.get(TXT_OUT));
-      try (PrintWriter textPrintWriter =
-          new PrintWriter(outFileTxtServiceConfig, StandardCharsets.UTF_8.name())) {
-        TextFormat.print(serviceConfig, textPrintWriter);
+  private void generateOutputFiles(Service serviceConfig) throws IOException {
+    Map<ConfigOutputWriter.Format, String> outputs = Maps.newLinkedHashMap();
+    addOutput(outputs, ConfigOutputWriter.Format.BINARY, BIN_OUT);
+    addOutput(outputs, ConfigOutputWriter.Format.TEXT, TXT_OUT);
+    addOutput(outputs, ConfigOutputWriter.Format.JSON, JSON_OUT);
+    int parallelism = options.get(ToolOptions.STAGE_PARALLELISM);
+    StageScheduler scheduler =
+        parallelism > 0 ? StageScheduler.parallel(parallelism) : StageScheduler.serial();
+    outputStats =
+        new ConfigOutputWriter(scheduler, JSON_PRINTER.get()).write(serviceConfig, outputs);
+    if (resourceUsage != null) {
+      for (ConfigOutputWriter.OutputStats stats : outputStats) {
+        resourceUsage.addOutput(
+            stats.getFormat().name().toLowerCase(),
+            stats.getPath(),
+            stats.getSerializedBytes(),
+            stats.getWrittenBytes(),
+            stats.getUsage());
       }
     }
+  }
 
-    // Create normalized service proto, in json form.
-    if (!Strings.isNullOrEmpty(options.get(JSON_OUT))) {
-      File outFileJsonServiceConfig = new File(options.get(JSON_OUT));
-      TypeRegistry registry =
-          addPlatformExtensions(TypeRegistry.newBuilder())
-              .add(Service.getDescriptor())
-              .add(com.google.protobuf.BoolValue.getDescriptor())
-              .add(com.google.protobuf.BytesValue.getDescriptor())
-              .add(com.google.protobuf.DoubleValue.getDescriptor())
-              .add(com.google.protobuf.FloatValue.getDescriptor())
-              .add(com.google.protobuf.Int32Value.getDescriptor())
-              .add(com.google.protobuf.Int64Value.getDescriptor())
-              .add(com.google.protobuf.StringValue.getDescriptor())
-              .add(com.google.protobuf.UInt32Value.getDescriptor())
-              .add(com.google.protobuf.UInt64Value.getDescriptor())
-              .build();
-      JsonFormat.Printer jsonPrinter = JsonFormat.printer().usingTypeRegistry(registry);
-      try (PrintWriter jsonPrintWriter =
-          new PrintWriter(outFileJsonServiceConfig, StandardCharsets.UTF_8.name())) {
-        jsonPrinter.appendTo(serviceConfig, jsonPrintWriter);
-      }
+  private void addOutput(
+      Map<ConfigOutputWriter.Format, String> outputs,
+      ConfigOutputWriter.Format format,
+      Option<String> option) {
+    if (!Strings.isNullOrEmpty(options.get(option))) {
+      outputs.put(format, options.get(option));
     }
   }
 
+  /** Returns the stats of the output files written by the last run. */
+  public ImmutableList<ConfigOutputWriter.OutputStats> getOutputStats() {
+    return outputStats;
+  }
+
   private static final ImmutableSet<String> EXTENDED_ELEMENTS =
       ImmutableSet.of(
           "proto2.FileOptions",
@@ -217,8 +251,34 @@ public class ConfigGeneratorDriver extends ToolDriverBase {
           "proto2.EnumValueOptions",
           "proto2.FieldOptions");
 
-  private TypeRegistry.Builder addPlatformExtensions(TypeRegistry.Builder registryBuilder) {
-    ExtensionRegistry extensions = ToolProtoUtil.getStandardPlatformExtensions();
+  /**
+   * The printer for the json output. Building its type registry walks all platform extensions, so
+   * it is built once and shared by all runs in the process.
+   */
+  private static final Supplier<JsonFormat.Printer> JSON_PRINTER =
+      Suppliers.memoize(
+          new Supplier<JsonFormat.Printer>() {
+            @Override
+            public JsonFormat.Printer get() {
+              TypeRegistry registry =
+                  addPlatformExtensions(TypeRegistry.newBuilder())
+                      .add(Service.getDescriptor())
+                      .add(com.google.protobuf.BoolValue.getDescriptor())
+                      .add(com.google.protobuf.BytesValue.getDescriptor())
+                      .add(com.google.protobuf.DoubleValue.getDescriptor())
+                      .add(com.google.protobuf.FloatValue.getDescriptor())
+                      .add(com.google.protobuf.Int32Value.getDescriptor())
+                      .add(com.google.protobuf.Int64Value.getDescriptor())
+                      .add(com.google.protobuf.StringValue.getDescriptor())
+                      .add(com.google.protobuf.UInt32Value.getDescriptor())
+                      .add(com.google.protobuf.UInt64Value.getDescriptor())
+                      .build();
+              return JsonFormat.printer().usingTypeRegistry(registry);
+            }
+          });
+
+  private static TypeRegistry.Builder addPlatformExtensions(TypeRegistry.Builder registryBuilder) {
+    ExtensionRegistry extensions = ToolProtoUtil.getSharedPlatformExtensions();
     for (String extendedType : EXTENDED_ELEMENTS) {
       for (ExtensionRegistry.ExtensionInfo info :
           extensions.getAllImmutableExtensionsByExtendedType(extendedType)) {
@@ -17,7 +17,10 @@
 package com.google.api.tools.framework.tools.configgen;
 
 import com.google.api.Service;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.Model;
 import com.google.api.tools.framework.model.stages.Normalized;
+import com.google.api.tools.framework.tools.CompilationCache;
 import com.google.api.tools.framework.tools.ToolDriverBase;
 import com.google.api.tools.framework.tools.ToolOptions;
 import com.google.api.tools.framework.tools.ToolOptions.Option;
@@ -43,16 +46,35 @@ public class ConfigGeneratorFromProtoDescriptor extends ToolDriverBase implement
           "True if lint warnings need to be suppressed when building the service config.",
           false);
 
+  @Nullable private Service cachedServiceConfig;
+
   public ConfigGeneratorFromProtoDescriptor(ToolOptions options) {
     super(options);
   }
 
+  /**
+   * Returns the normalized service config, either of the model or, if {@link
+   * #generateServiceConfig()} found it in the {@link CompilationCache}, the cached one.
+   */
   @Nullable
   public Service getServiceConfig() {
     if (model != null) {
       return model.getNormalizedConfig();
     }
-    return null;
+    return cachedServiceConfig;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The model is null if {@link #generateServiceConfig()} found the result in the {@link
+   * CompilationCache}, as no model is built then. Callers needing a model must not configure a
+   * cache.
+   */
+  @Override
+  @Nullable
+  public Model getModel() {
+    return super.getModel();
   }
 
   @Override
@@ -73,14 +95,47 @@ public class ConfigGeneratorFromProtoDescriptor extends ToolDriverBase implement
    */
   static void ensureStaticsInitialized() {}
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>If a {@link CompilationCache} is configured and holds the result for the same inputs,
+   * including the data path and the files included by documentation, returns the cached config and
+   * reports the cached diagnostics without building a model. {@link #getModel()} is null in that
+   * case.
+   */
   @Override
   @Nullable
   public Service generateServiceConfig() throws IOException {
-    int exitCode = super.run();
-    if (exitCode == 1) {
-      return null;
-    } else {
-      return super.getModel().getNormalizedConfig();
+    CompilationCache cache = CompilationCache.fromOptions(options);
+    String cacheKey =
+        cache == null
+            ? null
+            : CompilationCache.computeKey(options, getDataPath(), options.get(SUPPRESS_WARNINGS));
+    try {
+      if (cacheKey != null) {
+        CompilationCache.Entry entry = cache.get(cacheKey, getDataPath());
+        if (entry != null) {
+          cachedServiceConfig = entry.getServiceConfig();
+          for (Diag diag : entry.getDiags()) {
+            getDiagCollector().addDiag(diag);
+          }
+          reportDiag();
+          return entry.getServiceConfig();
+        }
+      }
+      int exitCode = super.run();
+      if (exitCode == 1) {
+        return null;
+      }
+      Service serviceConfig = super.getModel().getNormalizedConfig();
+      if (cacheKey != null) {
+        cache.put(cacheKey, serviceConfig, getDiags(), model.getIncludedDataFiles());
+      }
+      return serviceConfig;
+    } finally {
+      if (cache != null && options.get(ToolOptions.COMPILATION_CACHE_STATS)) {
+        System.out.println(cache.getStats().describe());
+      }
     }
   }
 
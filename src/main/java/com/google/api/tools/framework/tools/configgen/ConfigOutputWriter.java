@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.model.ResourceMeter;
+import com.google.api.tools.framework.model.ResourceUsage;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.io.CountingOutputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.util.JsonFormat;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a generated service config to output files in binary proto, text and json format.
+ *
+ * <p>All formats are serialized from the same immutable {@link Service}, concurrently if the given
+ * {@link StageScheduler} is parallel. Each output is streamed through a buffer into the file,
+ * without materializing the serialized form. Outputs whose path ends with {@link #GZIP_SUFFIX} are
+ * gzip compressed. The bytes and resources used to write each output are returned as
+ * {@link OutputStats}.
+ */
+public class ConfigOutputWriter {
+
+  /** The output formats of a service config. */
+  public enum Format {
+    BINARY,
+    TEXT,
+    JSON
+  }
+
+  /** The suffix of output paths which are written gzip compressed. */
+  public static final String GZIP_SUFFIX = ".gz";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final StageScheduler scheduler;
+  private final JsonFormat.Printer jsonPrinter;
+
+  /**
+   * Creates a writer which writes the outputs using the given scheduler, and the given printer for
+   * json output.
+   */
+  public ConfigOutputWriter(StageScheduler scheduler, JsonFormat.Printer jsonPrinter) {
+    this.scheduler = Preconditions.checkNotNull(scheduler);
+    this.jsonPrinter = Preconditions.checkNotNull(jsonPrinter);
+  }
+
+  /**
+   * Writes the service config to the output path of each format, and returns the stats of the
+   * outputs in the iteration order of the map.
+   */
+  public ImmutableList<OutputStats> write(final Service service, Map<Format, String> outputs)
+      throws IOException {
+    final List<Map.Entry<Format, String>> entries = ImmutableList.copyOf(outputs.entrySet());
+    final OutputStats[] stats = new OutputStats[entries.size()];
+    try {
+      scheduler.forEach(
+          ContiguousSet.create(Range.closedOpen(0, entries.size()), DiscreteDomain.integers()),
+          new Consumer<Integer>() {
+            @Override
+            public void accept(Integer index) {
+              Map.Entry<Format, String> output = entries.get(index);
+              try {
+                stats[index] = write(service, output.getKey(), output.getValue());
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return ImmutableList.copyOf(stats);
+  }
+
+  private OutputStats write(Service service, Format format, String path) throws IOException {
+    ResourceMeter meter = new ResourceMeter();
+    meter.start();
+    CountingOutputStream written =
+        new CountingOutputStream(Files.newOutputStream(Paths.get(path)));
+    OutputStream sink = new BufferedOutputStream(written, BUFFER_SIZE);
+    if (path.endsWith(GZIP_SUFFIX)) {
+      sink = new GZIPOutputStream(sink, BUFFER_SIZE);
+    }
+    CountingOutputStream serialized = new CountingOutputStream(sink);
+    try {
+      switch (format) {
+        case BINARY:
+          CodedOutputStream codedOut = CodedOutputStream.newInstance(serialized, BUFFER_SIZE);
+          service.writeTo(codedOut);
+          codedOut.flush();
+          break;
+        case TEXT:
+          Writer textWriter = newWriter(serialized);
+          TextFormat.print(service, textWriter);
+          textWriter.flush();
+          break;
+        case JSON:
+          Writer jsonWriter = newWriter(serialized);
+          jsonPrinter.appendTo(service, jsonWriter);
+          jsonWriter.flush();
+          break;
+      }
+    } finally {
+      serialized.close();
+    }
+    meter.stop(1);
+    return OutputStats.create(
+        format, path, serialized.getCount(), written.getCount(), meter.getUsage());
+  }
+
+  private static Writer newWriter(OutputStream out) {
+    return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+
+  /** The size of an output, and the resources used to write it. */
+  @AutoValue
+  public abstract static class OutputStats {
+
+    static OutputStats create(
+        Format format, String path, long serializedBytes, long writtenBytes, ResourceUsage usage) {
+      return new AutoValue_ConfigOutputWriter_OutputStats(
+          format, path, serializedBytes, writtenBytes, usage);
+    }
+
+    /** Returns the format of the output. */
+    public abstract Format getFormat();
+
+    /** Returns the path of the output file. */
+    public abstract String getPath();
+
+    /** Returns the size of the serialized config, before compression. */
+    public abstract long getSerializedBytes();
+
+    /** Returns the size of the output file. */
+    public abstract long getWrittenBytes();
+
+    /** Returns the resources used to serialize and write the output. */
+    public abstract ResourceUsage getUsage();
+  }
+}
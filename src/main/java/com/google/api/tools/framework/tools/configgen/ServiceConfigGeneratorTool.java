@@ -20,7 +20,13 @@ import com.google.api.tools.framework.tools.SwaggerToolDriverBase;
 import com.google.api.tools.framework.tools.ToolOptions;
 import com.google.api.tools.framework.tools.ToolOptions.Option;
 import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -41,9 +47,31 @@ public class ServiceConfigGeneratorTool {
       System.exit(0);
     }
     ToolOptions toolOptions = ToolOptions.getToolOptionsFromCommandLine(cmd, frameworkOptions);
+    String batch = toolOptions.get(BatchConfigGenerator.BATCH);
+    if (!batch.isEmpty()) {
+      System.exit(runBatch(batch, toolOptions, frameworkOptions, args));
+    }
     System.exit(new ConfigGeneratorDriver(toolOptions).run());
   }
 
+  private static int runBatch(
+      String batch, ToolOptions toolOptions, List<Option<?>> frameworkOptions, String[] args)
+      throws IOException {
+    BatchConfigGenerator generator =
+        new BatchConfigGenerator(
+            frameworkOptions,
+            args,
+            toolOptions.get(BatchConfigGenerator.BATCH_WORKERS),
+            System.out);
+    if (batch.equals("-")) {
+      return generator.run(
+          new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+    }
+    try (BufferedReader jobs = Files.newBufferedReader(Paths.get(batch), StandardCharsets.UTF_8)) {
+      return generator.run(jobs);
+    }
+  }
+
   /**
    * Add all options that will be accepted on the command line.
    */
@@ -58,6 +86,13 @@ public class ServiceConfigGeneratorTool {
     frameworkOptions.add(SwaggerToolDriverBase.OPEN_API);
     frameworkOptions.add(SwaggerToolDriverBase.SERVICE_NAME);
     frameworkOptions.add(SwaggerToolDriverBase.TYPE_NAMESPACE);
+    frameworkOptions.add(ToolOptions.STAGE_PARALLELISM);
+    frameworkOptions.add(ToolOptions.INSTRUMENTATION_OUT);
+    frameworkOptions.add(ToolOptions.COMPILATION_CACHE_DIR);
+    frameworkOptions.add(ToolOptions.COMPILATION_CACHE_MAX_MB);
+    frameworkOptions.add(ToolOptions.COMPILATION_CACHE_STATS);
+    frameworkOptions.add(BatchConfigGenerator.BATCH);
+    frameworkOptions.add(BatchConfigGenerator.BATCH_WORKERS);
 
     return frameworkOptions.build();
   }
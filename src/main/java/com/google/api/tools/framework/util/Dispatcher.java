@@ -74,6 +74,17 @@ public final class Dispatcher<BaseType> {
   private final Class<BaseType> baseType;
   private final LoadingCache<Class<? extends BaseType>, Optional<FastMethod>> dispatchTable;
 
+  // A per-class view of the dispatch table for the hot lookup path. Once a type has been resolved,
+  // lookups avoid hashing into the loading cache.
+  private final ClassValue<Optional<FastMethod>> resolved =
+      new ClassValue<Optional<FastMethod>>() {
+        @SuppressWarnings("unchecked") // only called with types of instances of BaseType
+        @Override
+        protected Optional<FastMethod> computeValue(Class<?> type) {
+          return dispatchTable.getUnchecked((Class<? extends BaseType>) type);
+        }
+      };
+
   /**
    * Creates a dispatcher which dispatches over methods which are annotated with
    * {@code marker} and have an instance of {@code BaseType} as their only parameter.
@@ -141,7 +152,7 @@ public final class Dispatcher<BaseType> {
    * Delivers the method with most specific type, or null, if none exists.
    */
   public FastMethod getMethod(Class<? extends BaseType> type) {
-    Optional<FastMethod> result = dispatchTable.getUnchecked(type);
+    Optional<FastMethod> result = resolved.get(type);
     return result.isPresent() ? result.get() : null;
   }
 
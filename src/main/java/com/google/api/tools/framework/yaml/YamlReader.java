@@ -18,6 +18,7 @@ package com.google.api.tools.framework.yaml;
 
 import com.google.api.Service;
 import com.google.api.tools.framework.model.ConfigSource;
+import com.google.api.tools.framework.model.ConfigSource.LocationStorage;
 import com.google.api.tools.framework.model.DiagCollector;
 import com.google.api.tools.framework.model.SimpleLocation;
 import com.google.common.annotations.VisibleForTesting;
@@ -52,7 +53,18 @@ public class YamlReader {
   */
   @Nullable public static ConfigSource readConfig(DiagCollector collector,
       String inputName, String input, Map<String, Message> supportedConfigTypes) {
-    return new YamlReader(collector, inputName, supportedConfigTypes).readYamlString(input);
+    return readConfig(collector, inputName, input, supportedConfigTypes, LocationStorage.MAP);
+  }
+
+  /**
+   * Same as {@link #readConfig(DiagCollector, String, String, Map)} but stores the source
+   * locations of the config as given.
+   */
+  @Nullable public static ConfigSource readConfig(DiagCollector collector,
+      String inputName, String input, Map<String, Message> supportedConfigTypes,
+      LocationStorage locationStorage) {
+    return new YamlReader(collector, inputName, supportedConfigTypes, locationStorage)
+        .readYamlString(input);
   }
 
   /**
@@ -64,6 +76,15 @@ public class YamlReader {
     return readConfig(collector, inputName, input, SUPPORTED_CONFIG_TYPES);
   }
 
+  /**
+   * Same as {@link #readConfig(DiagCollector, String, String)} but stores the source locations of
+   * the config as given.
+   */
+  @Nullable public static ConfigSource readConfig(DiagCollector collector,
+      String inputName, String input, LocationStorage locationStorage) {
+    return readConfig(collector, inputName, input, SUPPORTED_CONFIG_TYPES, locationStorage);
+  }
+
   // An instance of the snakeyaml reader which does not do any implicit conversions.
   private static final Yaml YAML =
       new Yaml(new Constructor(), new Representer(), new DumperOptions(), new Resolver());
@@ -79,11 +100,13 @@ public class YamlReader {
 
   private final YamlReaderHelper helper;
   private final Map<String, Message> supportedConfigTypes;
+  private final LocationStorage locationStorage;
 
   private YamlReader(DiagCollector diag, String inputName,
-      Map<String, Message> supportedConfigTypes) {
+      Map<String, Message> supportedConfigTypes, LocationStorage locationStorage) {
     helper = new YamlReaderHelper(diag, inputName);
     this.supportedConfigTypes = supportedConfigTypes;
+    this.locationStorage = locationStorage;
   }
 
   private ConfigSource readYamlString(String input) {
@@ -140,7 +163,7 @@ public class YamlReader {
           typeName);
       return null;
     }
-    ConfigSource.Builder builder = ConfigSource.newBuilder(prototype);
+    ConfigSource.Builder builder = ConfigSource.newBuilder(prototype, locationStorage);
     new YamlNodeReader(helper, builder, "").readNode(map);
     return helper.getDiag().getErrorCount() == initialErrorCount ? builder.build() : null;
   }
@@ -21,6 +21,7 @@ import com.google.api.tools.framework.model.DiagCollector;
 import com.google.api.tools.framework.model.Location;
 import com.google.api.tools.framework.model.SimpleLocation;
 import com.google.protobuf.Descriptors.FieldDescriptor;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import org.yaml.snakeyaml.error.Mark;
@@ -35,6 +36,9 @@ final class YamlReaderHelper {
   private final String fileName;
   private final Set<String> traversedPaths = new HashSet<>();
 
+  // Locations by zero-based line, shared by all nodes on a line.
+  private Location[] lineLocations = new Location[0];
+
   public YamlReaderHelper(DiagCollector diag, String fileName){
     this.diag = diag;
     this.fileName = fileName;
@@ -78,6 +82,14 @@ final class YamlReaderHelper {
   }
 
   private Location getLocation(Mark mark) {
-    return new SimpleLocation(String.format("%s:%s", fileName, mark.getLine() + 1), fileName);
+    int line = mark.getLine();
+    if (line >= lineLocations.length) {
+      lineLocations = Arrays.copyOf(lineLocations, Math.max(line + 1, 2 * lineLocations.length));
+    }
+    if (lineLocations[line] == null) {
+      lineLocations[line] =
+          new SimpleLocation(String.format("%s:%s", fileName, line + 1), fileName);
+    }
+    return lineLocations[line];
   }
 }
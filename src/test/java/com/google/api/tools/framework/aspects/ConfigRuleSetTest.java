@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.aspects;
+
+import com.google.api.DocumentationRule;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.MessageType;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoFile;
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConfigRuleSet}. */
+@RunWith(JUnit4.class)
+public class ConfigRuleSetTest {
+
+  private static final String TEST_SOURCE =
+      "syntax = \"proto3\"; "
+          + "package test.pack;"
+          + "message M {"
+          + "  string s = 1;"
+          + "  message X {"
+          + "    string f = 1;"
+          + "  }"
+          + "}"
+          + "message N {"
+          + "  string s = 1;"
+          + "}";
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private Model model;
+  private MessageType m;
+  private MessageType x;
+  private MessageType n;
+
+  @Before
+  public void before() throws Exception {
+    TestDataLocator locator = TestDataLocator.create(getClass());
+    locator.injectVirtualTestData("source.proto", TEST_SOURCE);
+    model =
+        new TestConfig(locator, tempDir.getRoot().getPath(), ImmutableList.of("source.proto"))
+            .createModel(ImmutableList.<String>of());
+    ProtoFile file = model.getFiles().get(0);
+    m = file.getMessages().get(0);
+    x = m.getMessages().get(0);
+    n = file.getMessages().get(1);
+  }
+
+  private static DocumentationRule rule(String selector, String description) {
+    return DocumentationRule.newBuilder()
+        .setSelector(selector)
+        .setDescription(description)
+        .build();
+  }
+
+  private ConfigRuleSet<DocumentationRule> ruleSet(DocumentationRule... rules) {
+    return ConfigRuleSet.of(
+        DocumentationRule.getDescriptor(),
+        ImmutableList.copyOf(rules),
+        model.getExperiments(),
+        model,
+        model.getDiagReporter());
+  }
+
+  private static String description(DocumentationRule rule) {
+    return rule == null ? null : rule.getDescription();
+  }
+
+  @Test
+  public void lastMatchingRuleWins() {
+    ConfigRuleSet<DocumentationRule> rules =
+        ruleSet(
+            rule("*", "star"),
+            rule("test.pack.*", "package"),
+            rule("test.pack.M, test.other.M", "exact"),
+            rule("test.pack.M.*", "nested"));
+    Assert.assertEquals("exact", description(rules.matchingRule(m)));
+    Assert.assertEquals("nested", description(rules.matchingRule(x)));
+    Assert.assertEquals("package", description(rules.matchingRule(n)));
+
+    rules = ruleSet(rule("test.pack.M", "exact"), rule("*", "star"));
+    Assert.assertEquals("star", description(rules.matchingRule(m)));
+    Assert.assertEquals("star", description(rules.matchingRule(n)));
+  }
+
+  @Test
+  public void noMatchingRule() {
+    ConfigRuleSet<DocumentationRule> rules =
+        ruleSet(rule("test.pack.M", "exact"), rule("test.pack.M.*", "nested"));
+    Assert.assertNull(rules.matchingRule(n));
+  }
+
+  @Test
+  public void reportsUnmatchedSelectors() {
+    ConfigRuleSet<DocumentationRule> rules =
+        ruleSet(rule("test.pack.M, test.pack.Missing", "exact"), rule("test.pack.N", "n"));
+    rules.matchingRule(m);
+    rules.matchingRule(n);
+    rules.reportUnmatchedRules("documentation");
+
+    List<Diag> diags = model.getDiagReporter().getDiagCollector().getDiags();
+    Assert.assertEquals(1, diags.size());
+    String message = diags.get(0).getMessage();
+    Assert.assertTrue(message, message.contains("'test.pack.Missing'"));
+  }
+
+  @Test
+  public void minimizesSubsumedSelectors() {
+    ConfigRuleSet<DocumentationRule> rules =
+        ruleSet(
+            rule("test.pack.M, test.pack.M.X, google.protobuf.Empty", "first"),
+            rule("test.pack.M.*, test.other.*", "nested"),
+            rule("test.other.N", "other"),
+            rule("test.pack.*", "package"),
+            rule("*", "star"));
+    // Only the system selector survives, since '*' does not subsume it.
+    Assert.assertEquals("star", description(rules.matchingRule(m)));
+    Assert.assertEquals("star", description(rules.matchingRule(x)));
+    rules.reportUnmatchedRules("documentation");
+
+    List<Diag> diags = model.getDiagReporter().getDiagCollector().getDiags();
+    Assert.assertEquals(1, diags.size());
+    String message = diags.get(0).getMessage();
+    Assert.assertTrue(message, message.contains("'google.protobuf.Empty'"));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.aspects.documentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.tools.framework.model.DiagReporter;
+import com.google.api.tools.framework.model.DiagReporter.LocationContext;
+import com.google.api.tools.framework.model.DiagReporter.ResolvedLocation;
+import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.api.tools.framework.model.testing.TestDiagReporter;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CommentMarkers}. */
+@RunWith(JUnit4.class)
+public class CommentMarkersTest {
+  private final DiagReporter diagReporter = TestDiagReporter.createForTest();
+  private final LocationContext location = ResolvedLocation.create(SimpleLocation.TOPLEVEL);
+
+  @Test
+  public void scan_findsMarkers() {
+    CommentMarkers markers = CommentMarkers.scan("See [Foo][]. (== page x ==) (-- internal --)");
+    assertThat(markers.hasLinks()).isTrue();
+    assertThat(markers.hasInstructions()).isTrue();
+    assertThat(markers.hasInternalCommentTags()).isTrue();
+    assertThat(markers.hasHeadingsOrHtml()).isFalse();
+
+    assertThat(CommentMarkers.scan("stray end tag ==)").hasInstructions()).isTrue();
+    assertThat(CommentMarkers.scan("stray end tag --)").hasInternalCommentTags()).isTrue();
+    assertThat(CommentMarkers.scan("# Heading").hasHeadingsOrHtml()).isTrue();
+    assertThat(CommentMarkers.scan("<pre>code</pre>").hasHeadingsOrHtml()).isTrue();
+    assertThat(CommentMarkers.scan("Heading\n---\nText").hasHeadingsOrHtml()).isTrue();
+    assertThat(CommentMarkers.scan("Heading\n=== \n").hasHeadingsOrHtml()).isTrue();
+  }
+
+  @Test
+  public void scan_findsNoMarkersInPlainComments() {
+    CommentMarkers markers =
+        CommentMarkers.scan("A list:\n- one -- or\n- two\n\n    code (=) block\na = b - c");
+    assertThat(markers.hasLinks()).isFalse();
+    assertThat(markers.hasInstructions()).isFalse();
+    assertThat(markers.hasInternalCommentTags()).isFalse();
+    assertThat(markers.hasHeadingsOrHtml()).isFalse();
+  }
+
+  @Test
+  public void skippedProcessors_leaveSourceUnchanged() {
+    ImmutableList<DocumentationProcessor> processors =
+        ImmutableList.of(
+            new SourceNormalizer(diagReporter, null), new CommentChecker(diagReporter));
+    ImmutableList<String> sources =
+        ImmutableList.of(
+            "Plain text.",
+            "Text\n\n    indented code\n\nmore text",
+            "Text\n```\nfenced (- code -)\n```\n",
+            "- item 1\n- item 2\n-- not an underline\n",
+            "Format: `projects/{project}/items/{item}`\nOutput only.");
+    for (String source : sources) {
+      CommentMarkers markers = CommentMarkers.scan(source);
+      for (DocumentationProcessor processor : processors) {
+        assertThat(processor.appliesTo(markers)).isFalse();
+        assertThat(processor.process(source, location, null)).isEqualTo(source);
+      }
+    }
+    assertThat(diagReporter.getDiagCollector().getDiags()).isEmpty();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.aspects.documentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.tools.framework.model.DiagReporter.ResolvedLocation;
+import com.google.api.tools.framework.model.MessageType;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CommentReferenceResolver}. */
+@RunWith(JUnit4.class)
+public class CommentReferenceResolverTest {
+  private final Model model =
+      Model.create(
+          FileDescriptorSet.newBuilder()
+              .addFile(
+                  FileDescriptorProto.newBuilder()
+                      .setName("a/b/refs.proto")
+                      .setPackage("a.b")
+                      .addMessageType(
+                          DescriptorProto.newBuilder()
+                              .setName("Foo")
+                              .addField(
+                                  FieldDescriptorProto.newBuilder()
+                                      .setName("bar")
+                                      .setNumber(1)
+                                      .setLabel(Label.LABEL_OPTIONAL)
+                                      .setType(Type.TYPE_STRING))
+                              .addNestedType(DescriptorProto.newBuilder().setName("Inner")))
+                      .addMessageType(DescriptorProto.newBuilder().setName("Baz")))
+              .build());
+  private final CommentReferenceResolver resolver = new CommentReferenceResolver(model);
+
+  @Test
+  public void resolveLink_walksUpEnclosingScopes() {
+    assertThat(resolver.resolveLink("a.b.Baz", "Foo")).isEqualTo("a.b.Foo");
+    assertThat(resolver.resolveLink("a.b.Baz", "Foo.bar")).isEqualTo("a.b.Foo.bar");
+    assertThat(resolver.resolveLink("a.b.Foo.bar", "Inner")).isEqualTo("a.b.Foo.Inner");
+    assertThat(resolver.resolveLink("a.b.Foo", "b.Baz")).isEqualTo("a.b.Baz");
+    assertThat(resolver.resolveLink("a.b.Foo", "a.b")).isEqualTo("a.b");
+    assertThat(resolver.resolveLink("x.y", "a.b.Foo")).isEqualTo("a.b.Foo");
+    assertThat(resolver.resolveLink("", "a.b.Baz")).isEqualTo("a.b.Baz");
+  }
+
+  @Test
+  public void resolveLink_absoluteAndMissingNames() {
+    assertThat(resolver.resolveLink("a.b.Foo", ".a.b.Baz")).isEqualTo("a.b.Baz");
+    assertThat(resolver.resolveLink("a.b.Foo", ".Baz")).isNull();
+    assertThat(resolver.resolveLink("a.b.Foo", "Missing")).isNull();
+    assertThat(resolver.resolveLink("a.b.Foo", "Foo.Missing")).isNull();
+    assertThat(resolver.resolveLink("a.b.Foo", "a")).isNull();
+    assertThat(resolver.resolveLink("a.b.Foo", "Foo.")).isNull();
+  }
+
+  @Test
+  public void process_replacesResolvedIds() {
+    MessageType baz = model.getFiles().get(0).getMessages().get(1);
+    assertThat(
+            resolver.process(
+                "See [Foo][], [the bar][Foo.bar] and [x][Missing].",
+                ResolvedLocation.create(SimpleLocation.TOPLEVEL),
+                baz))
+        .isEqualTo("See [Foo][a.b.Foo], [the bar][a.b.Foo.bar] and [x][Missing].");
+  }
+}
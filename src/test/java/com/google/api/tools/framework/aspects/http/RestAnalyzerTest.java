@@ -134,9 +134,11 @@ public class RestAnalyzerTest extends BaselineTestCase {
     ProtoFile file =
         ProtoFile.create(
             model, FileDescriptorProto.getDefaultInstance(), true, ExtensionPool.EMPTY);
-    Interface iface = Interface.create(file, ServiceDescriptorProto.getDefaultInstance(), "");
+    Interface iface =
+        Interface.create(file, ServiceDescriptorProto.getDefaultInstance(), new int[0]);
     Method method =
-        Method.create(iface, MethodDescriptorProto.newBuilder().setName(simpleName).build(), "");
+        Method.create(
+            iface, MethodDescriptorProto.newBuilder().setName(simpleName).build(), new int[0]);
     RestMethod restMethod;
     ImmutableList<PathSegment> path = parse(model, template);
     if (!model.getDiagReporter().getDiagCollector().getDiags().isEmpty()) {
@@ -147,7 +149,8 @@ public class RestAnalyzerTest extends BaselineTestCase {
           new HttpAttribute(
               httpRule,
               httpKind,
-              MessageType.create(file, Empty.getDescriptor().toProto(), "", ExtensionPool.EMPTY),
+              MessageType.create(
+                  file, Empty.getDescriptor().toProto(), new int[0], ExtensionPool.EMPTY),
               path,
               "",
               false,
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.importers.swagger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.importers.swagger.MultiOpenApiParser.OpenApiFile;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.tools.FileWrapper;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link MultiOpenApiParser}. */
+@RunWith(JUnit4.class)
+public class MultiOpenApiParserTest {
+
+  private static final String TYPE_NAMESPACE = "namespace.types";
+
+  private static final TestDataLocator testDataLocator =
+      TestDataLocator.create(MultiOpenApiParserTest.class);
+
+  @Test
+  public void convertsInParallelLikeSerially() throws Exception {
+    List<FileWrapper> files =
+        files(
+            "multi_apis_single_name.json",
+            "multi_apis_single_name2.json",
+            "multi_apis_single_name3.json",
+            "multi_apis_single_name4.json");
+    List<OpenApiFile> serial =
+        MultiOpenApiParser.convert(files, TYPE_NAMESPACE, StageScheduler.serial());
+    List<OpenApiFile> parallel =
+        MultiOpenApiParser.convert(files, TYPE_NAMESPACE, StageScheduler.parallel(4));
+    assertThat(parallel).hasSize(serial.size());
+    for (int i = 0; i < serial.size(); i++) {
+      assertThat(parallel.get(i).filename()).isEqualTo(serial.get(i).filename());
+      assertThat(parallel.get(i).apiName()).isEqualTo(serial.get(i).apiName());
+      assertThat(parallel.get(i).swagger()).isEqualTo(serial.get(i).swagger());
+    }
+
+    Service serialService =
+        new OpenApiToService(files, "", TYPE_NAMESPACE, ImmutableList.<FileWrapper>of())
+            .createServiceConfig();
+    Service parallelService =
+        new OpenApiToService(
+                files,
+                "",
+                TYPE_NAMESPACE,
+                ImmutableList.<FileWrapper>of(),
+                StageScheduler.parallel(4))
+            .createServiceConfig();
+    assertThat(parallelService).isEqualTo(serialService);
+  }
+
+  @Test
+  public void convertsFilesWithExternalReferences() throws Exception {
+    List<OpenApiFile> converted =
+        MultiOpenApiParser.convert(
+            files(
+                "distributed_swagger.json",
+                "distributed_shared_json.json",
+                "distributed_shared_swagger_defs.json"),
+            TYPE_NAMESPACE,
+            StageScheduler.parallel(4));
+    assertThat(converted).hasSize(1);
+    assertThat(converted.get(0).swagger().getDefinitions()).isNotEmpty();
+  }
+
+  @Test
+  public void reportsFirstInvalidFile() throws Exception {
+    List<FileWrapper> files =
+        ImmutableList.of(
+            FileWrapper.create("shared.json", "{}"),
+            FileWrapper.create("first.txt", "{}"),
+            FileWrapper.create("second.txt", "{}"));
+    try {
+      MultiOpenApiParser.convert(files, TYPE_NAMESPACE, StageScheduler.parallel(4));
+      Assert.fail("Expected an OpenApiConversionException");
+    } catch (OpenApiConversionException ex) {
+      assertThat(ex.getMessage()).contains("'first.txt'");
+    }
+  }
+
+  private static List<FileWrapper> files(String... fileNames) {
+    ImmutableList.Builder<FileWrapper> files = ImmutableList.builder();
+    for (String fileName : fileNames) {
+      files.add(
+          FileWrapper.create(
+              fileName, testDataLocator.readTestData(testDataLocator.findTestData(fileName))));
+    }
+    return files.build();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.importers.swagger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.tools.FileWrapper;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OpenApiToService}. */
+@RunWith(JUnit4.class)
+public class OpenApiToServiceTest {
+
+  private static final TestDataLocator testDataLocator =
+      TestDataLocator.create(OpenApiToServiceTest.class);
+
+  private static final String ENDPOINTS =
+      "\"x-google-endpoints\": [{\"name\": \"library-example.cloud.goog\"}],";
+  private static final String AUTHORIZATION =
+      "\"x-google-experimental-authorization\": {\"provider\": \"rules.example.com\"},";
+  private static final String METRICS =
+      "\"x-google-management\": {\"metrics\": [{\"name\": \"library/requests\"}]},";
+  private static final String METRIC_COSTS =
+      "\"x-google-quota\": {\"metricCosts\": {\"library/requests\": 1}},";
+
+  @Test
+  public void convertsFilesInParallelLikeSerially() throws Exception {
+    assertConvertsInParallelLikeSerially(files("petstore.json", "petstore_v2.json"));
+    assertConvertsInParallelLikeSerially(
+        files(
+            "multi_apis_single_name.json",
+            "multi_apis_single_name2.json",
+            "multi_apis_single_name3.json"));
+    assertConvertsInParallelLikeSerially(
+        ImmutableList.of(
+            spec("v1", ENDPOINTS + METRICS, METRIC_COSTS),
+            spec("v2", AUTHORIZATION, ""),
+            spec("v3", "", "")));
+  }
+
+  @Test
+  public void convertsFilesWithSharedExtensionsLikeSerially() throws Exception {
+    // Endpoints are validated across files.
+    assertConvertsInParallelLikeSerially(
+        ImmutableList.of(spec("v1", ENDPOINTS, ""), spec("v2", ENDPOINTS, "")));
+    // Metric costs may refer to metrics of an earlier file.
+    assertConvertsInParallelLikeSerially(
+        ImmutableList.of(spec("v1", METRICS, ""), spec("v2", "", METRIC_COSTS)));
+  }
+
+  /**
+   * Returns an OpenAPI spec for the given version, with the given top level extensions and one
+   * operation with the given extensions.
+   */
+  private static FileWrapper spec(
+      String version, String topLevelExtensions, String operationExtensions) {
+    return FileWrapper.create(
+        "library_" + version + ".json",
+        String.format(
+            "{\"swagger\": \"2.0\", "
+                + "\"info\": {\"title\": \"Library\", \"version\": \"%1$s\"}, "
+                + "\"host\": \"library-example.cloud.goog\", "
+                + "%2$s"
+                + "\"paths\": {\"/%1$s/shelves\": {\"get\": {"
+                + "\"operationId\": \"ListShelves%1$s\", "
+                + "%3$s"
+                + "\"responses\": {\"default\": {\"description\": \"ok\"}}}}}}",
+            version,
+            topLevelExtensions,
+            operationExtensions));
+  }
+
+  private static void assertConvertsInParallelLikeSerially(List<FileWrapper> files)
+      throws Exception {
+    OpenApiToService serial =
+        new OpenApiToService(files, "", "", ImmutableList.<FileWrapper>of());
+    OpenApiToService parallel =
+        new OpenApiToService(
+            files, "", "", ImmutableList.<FileWrapper>of(), StageScheduler.parallel(4));
+    Service serialService = serial.createServiceConfig();
+    Service parallelService = parallel.createServiceConfig();
+    assertThat(parallelService).isEqualTo(serialService);
+    assertThat(messages(parallel.getDiagCollector().getDiags()))
+        .containsExactlyElementsIn(messages(serial.getDiagCollector().getDiags()))
+        .inOrder();
+  }
+
+  private static List<String> messages(List<Diag> diags) {
+    ImmutableList.Builder<String> messages = ImmutableList.builder();
+    for (Diag diag : diags) {
+      messages.add(diag.toString());
+    }
+    return messages.build();
+  }
+
+  private static List<FileWrapper> files(String... fileNames) {
+    ImmutableList.Builder<FileWrapper> files = ImmutableList.builder();
+    for (String fileName : fileNames) {
+      files.add(
+          FileWrapper.create(
+              fileName, testDataLocator.readTestData(testDataLocator.findTestData(fileName))));
+    }
+    return files.build();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.api.tools.framework.model.ConfigSource.BuildAction;
+import com.google.api.tools.framework.model.ConfigSource.LocationStorage;
+import com.google.api.tools.framework.model.testdata.ConfigSource.NestedConfig;
+import com.google.api.tools.framework.model.testdata.ConfigSource.SomeConfig;
+import com.google.common.truth.Truth;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Runs {@link ConfigSourceTest} with {@link LocationStorage#COMPACT}. */
+@RunWith(JUnit4.class)
+public class CompactConfigSourceTest extends ConfigSourceTest {
+
+  private static final FieldDescriptor REPEATED_NESTED_CONFIG_FIELD =
+      SomeConfig.getDescriptor().findFieldByName("repeated_nested_config");
+
+  private static final FieldDescriptor NESTED_STRING_VALUE_FIELD =
+      NestedConfig.getDescriptor().findFieldByName("nested_string_value");
+
+  @Override
+  ConfigSource.Builder newBuilder() {
+    return ConfigSource.newBuilder(SomeConfig.getDefaultInstance(), LocationStorage.COMPACT);
+  }
+
+  @Test
+  public void manyElements() {
+    ConfigSource.Builder builder = newBuilder();
+    for (int i = 0; i < 1000; i++) {
+      final Location location = new SimpleLocation("l" + i);
+      builder.withAddedBuilder(
+          REPEATED_NESTED_CONFIG_FIELD,
+          new BuildAction() {
+            @Override
+            public void accept(ConfigSource.Builder nestedBuilder) {
+              nestedBuilder.setValue(NESTED_STRING_VALUE_FIELD, null, "value", location);
+            }
+          });
+    }
+    ConfigSource source = builder.build();
+    SomeConfig config = (SomeConfig) source.getConfig();
+    for (int i = 0; i < 1000; i++) {
+      Truth.assertThat(
+              source.getLocation(
+                  config.getRepeatedNestedConfig(i), NESTED_STRING_VALUE_FIELD.getName(), null))
+          .isEqualTo(new SimpleLocation("l" + i));
+    }
+  }
+
+  @Test
+  public void builtConfigUnaffectedByDerivedBuilder() {
+    ConfigSource.Builder builder = newBuilder();
+    builder.withAddedBuilder(
+        REPEATED_NESTED_CONFIG_FIELD,
+        new BuildAction() {
+          @Override
+          public void accept(ConfigSource.Builder nestedBuilder) {
+            nestedBuilder.setValue(NESTED_STRING_VALUE_FIELD, null, "a", new SimpleLocation("l1"));
+          }
+        });
+    ConfigSource source = builder.build();
+    NestedConfig nested = ((SomeConfig) source.getConfig()).getRepeatedNestedConfig(0);
+
+    builder = source.toBuilder();
+    builder.withBuilderAt(
+        REPEATED_NESTED_CONFIG_FIELD,
+        0,
+        new BuildAction() {
+          @Override
+          public void accept(ConfigSource.Builder nestedBuilder) {
+            nestedBuilder.setValue(NESTED_STRING_VALUE_FIELD, null, "b", new SimpleLocation("l2"));
+          }
+        });
+    ConfigSource derived = builder.build();
+    NestedConfig derivedNested = ((SomeConfig) derived.getConfig()).getRepeatedNestedConfig(0);
+
+    Truth.assertThat(source.getLocation(nested, NESTED_STRING_VALUE_FIELD.getName(), null))
+        .isEqualTo(new SimpleLocation("l1"));
+    Truth.assertThat(derived.getLocation(derivedNested, NESTED_STRING_VALUE_FIELD.getName(), null))
+        .isEqualTo(new SimpleLocation("l2"));
+  }
+}
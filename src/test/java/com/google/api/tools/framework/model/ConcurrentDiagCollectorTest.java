@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.api.tools.framework.model.BoundedDiagCollector.TooManyDiagsException;
+import com.google.api.tools.framework.model.Diag.Kind;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConcurrentDiagCollector}. */
+@RunWith(JUnit4.class)
+public class ConcurrentDiagCollectorTest {
+
+  private static final int THREADS = 8;
+  private static final int DIAGS_PER_THREAD = 200;
+
+  @Test
+  public void testConcurrentTasksMergeInForkOrder() {
+    ConcurrentDiagCollector diagCollector = new ConcurrentDiagCollector();
+    diagCollector.addDiag(Diag.warning(new SimpleLocation("before"), "warning"));
+    addConcurrently(diagCollector);
+    List<Diag> diags = diagCollector.getDiags();
+
+    Assert.assertEquals(THREADS * DIAGS_PER_THREAD + 2, diags.size());
+    Assert.assertEquals("before", diags.get(0).getLocation().getDisplayString());
+    for (int t = 0; t < THREADS; t++) {
+      for (int i = 0; i < DIAGS_PER_THREAD; i++) {
+        Assert.assertEquals(
+            String.format("file%d:%d", t, i),
+            diags.get(1 + t * DIAGS_PER_THREAD + i).getLocation().getDisplayString());
+      }
+    }
+    // Added by the outermost task after its subtasks were forked.
+    Assert.assertEquals("after", diags.get(diags.size() - 1).getLocation().getDisplayString());
+  }
+
+  @Test
+  public void testGetDiagsOnlyReturnsFinishedTasks() {
+    final ConcurrentDiagCollector diagCollector = new ConcurrentDiagCollector();
+    diagCollector.collectInOrder(
+        () -> {
+          diagCollector.addDiag(Diag.error(new SimpleLocation("a"), "error"));
+          Assert.assertEquals(1, diagCollector.getErrorCount());
+          Assert.assertEquals(0, diagCollector.getDiags().size());
+          return null;
+        });
+    Assert.assertEquals(1, diagCollector.getDiags().size());
+  }
+
+  @Test
+  public void testErrorCountIsCurrentBeforeMerge() {
+    ConcurrentDiagCollector diagCollector = new ConcurrentDiagCollector();
+    diagCollector.addDiag(Diag.warning(new SimpleLocation("a"), "warning"));
+    diagCollector.addDiag(Diag.error(new SimpleLocation("b"), "error"));
+    Assert.assertEquals(1, diagCollector.getErrorCount());
+    Assert.assertTrue(diagCollector.hasErrors());
+    Assert.assertEquals(2, diagCollector.getDiags().size());
+  }
+
+  @Test
+  public void testTooManyWarnings() {
+    ConcurrentDiagCollector diagCollector =
+        new ConcurrentDiagCollector(ImmutableMap.of(Kind.ERROR, 5, Kind.WARNING, 10));
+    for (int i = 0; i < 15; i++) {
+      diagCollector.addDiag(
+          Diag.warning(new SimpleLocation("testTooManyWarnings:" + i), "A warning"));
+    }
+    // We should have `count` warnings plus the "too many" warning in the diagnostics.
+    Assert.assertEquals(11, diagCollector.getDiags().size());
+    Assert.assertEquals(0, diagCollector.getErrorCount());
+  }
+
+  @Test
+  public void testTooManyErrors() {
+    ConcurrentDiagCollector diagCollector =
+        new ConcurrentDiagCollector(ImmutableMap.of(Kind.ERROR, 5, Kind.WARNING, 10));
+    try {
+      for (int i = 0; i < 10; i++) {
+        diagCollector.addDiag(Diag.error(new SimpleLocation("testTooManyErrors:" + i), "An error"));
+      }
+      Assert.fail("Expected TooManyDiagsException was not thrown");
+    } catch (TooManyDiagsException ex) {
+      // fall through to assertions
+    }
+    Assert.assertEquals(6, diagCollector.getErrorCount());
+    Assert.assertEquals(6, diagCollector.getDiags().size());
+  }
+
+  private static void addConcurrently(final ConcurrentDiagCollector diagCollector) {
+    diagCollector.collectInOrder(
+        () -> {
+          final ConcurrentDiagCollector.Task[] tasks =
+              ConcurrentDiagCollector.forkSubtasks(THREADS);
+          diagCollector.addDiag(Diag.warning(new SimpleLocation("after"), "warning"));
+          final CountDownLatch start = new CountDownLatch(1);
+          List<Thread> threads = Lists.newArrayList();
+          // Start the threads in reverse order, so they do not finish in fork order.
+          for (int t = THREADS - 1; t >= 0; t--) {
+            final int thread = t;
+            threads.add(
+                new Thread() {
+                  @Override
+                  public void run() {
+                    ConcurrentDiagCollector.runInTask(
+                        tasks[thread],
+                        () -> {
+                          Uninterruptibles.awaitUninterruptibly(start);
+                          for (int i = 0; i < DIAGS_PER_THREAD; i++) {
+                            Location location =
+                                new SimpleLocation(String.format("file%d:%d", thread, i));
+                            diagCollector.addDiag(Diag.warning(location, "warning %d", i));
+                          }
+                          return null;
+                        });
+                  }
+                });
+          }
+          for (Thread thread : threads) {
+            thread.start();
+          }
+          start.countDown();
+          for (Thread thread : threads) {
+            Uninterruptibles.joinUninterruptibly(thread);
+          }
+          return null;
+        });
+  }
+}
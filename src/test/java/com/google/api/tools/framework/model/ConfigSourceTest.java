@@ -58,9 +58,14 @@ public class ConfigSourceTest {
   private static final FieldDescriptor NESTED_REPEATED_INT32_VALUE_FIELD =
       NestedConfig.getDescriptor().findFieldByName("nested_repeated_int32_value");
 
+  /** Returns a new builder for {@code SomeConfig}, storing locations as under test. */
+  ConfigSource.Builder newBuilder() {
+    return ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+  }
+
   @Test
   public void simpleField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.setValue(STRING_VALUE_FIELD, null, "Hello World", L1);
     ConfigSource source = builder.build();
     SomeConfig config = (SomeConfig) source.getConfig();
@@ -77,7 +82,7 @@ public class ConfigSourceTest {
 
   @Test
   public void nestedSimpleField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.setValue(STRING_VALUE_FIELD, null, "Hello World", L1);
     builder.withBuilder(
         NESTED_CONFIG_FIELD,
@@ -100,7 +105,7 @@ public class ConfigSourceTest {
 
   @Test
   public void simpleRepeatedField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.addValue(REPEATED_STRING_VALUE_FIELD, "a", L1);
     builder.addValue(REPEATED_STRING_VALUE_FIELD, "b", L2);
     ConfigSource source = builder.build();
@@ -126,7 +131,7 @@ public class ConfigSourceTest {
 
   @Test
   public void nestedRepeatedField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.withAddedBuilder(
         REPEATED_NESTED_CONFIG_FIELD,
         new BuildAction() {
@@ -162,7 +167,7 @@ public class ConfigSourceTest {
 
   @Test
   public void mapField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.setValue(MAP_VALUE_FIELD, "X", "A", L1);
     builder.setValue(MAP_VALUE_FIELD, "Y", "B", L2);
 
@@ -176,7 +181,7 @@ public class ConfigSourceTest {
 
   @Test
   public void nestedMapField() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.withBuilder(
         NESTED_MAP_VALUE_FIELD,
         "X",
@@ -213,7 +218,7 @@ public class ConfigSourceTest {
 
   @Test
   public void mergeTest() {
-    ConfigSource.Builder builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    ConfigSource.Builder builder = newBuilder();
     builder.setValue(STRING_VALUE_FIELD, null, "A", L1);
     builder.withBuilder(
         NESTED_CONFIG_FIELD,
@@ -227,7 +232,7 @@ public class ConfigSourceTest {
     builder.addValue(REPEATED_STRING_VALUE_FIELD, "a", L1);
     ConfigSource source = builder.build();
 
-    builder = ConfigSource.newBuilder(SomeConfig.getDefaultInstance());
+    builder = newBuilder();
     builder.setValue(STRING_VALUE_FIELD, null, "", L2);
     builder.withBuilder(
         NESTED_CONFIG_FIELD,
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.setup.StandardSetup;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DiagSuppressor}. */
+@RunWith(JUnit4.class)
+public class DiagSuppressorTest {
+
+  private static final String TEST_SOURCE =
+      "syntax = \"proto3\"; "
+          + "package test.pack;"
+          + "message M {"
+          + "  string s = 1;"
+          + "}"
+          + "message N {"
+          + "  string s = 1;"
+          + "}";
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private Model model;
+  private DiagSuppressor suppressor;
+  private MessageType m;
+  private MessageType n;
+
+  @Before
+  public void before() throws Exception {
+    TestDataLocator locator = TestDataLocator.create(getClass());
+    locator.injectVirtualTestData("source.proto", TEST_SOURCE);
+    model =
+        new TestConfig(locator, tempDir.getRoot().getPath(), ImmutableList.of("source.proto"))
+            .createModel(ImmutableList.<String>of());
+    StandardSetup.registerStandardConfigAspects(model);
+    suppressor = model.getDiagReporter().getDiagSuppressor();
+    ProtoFile file = model.getFiles().get(0);
+    m = file.getMessages().get(0);
+    n = file.getMessages().get(1);
+  }
+
+  private static Diag lintWarning(String aspect, String rule) {
+    return Diag.warning(
+        SimpleLocation.TOPLEVEL, "(lint) %s-%s: Something is not quite right.", aspect, rule);
+  }
+
+  // Returns an aspect which has lint rules.
+  private ConfigAspect aspectWithLintRules() {
+    for (ConfigAspect aspect : model.getConfigAspects()) {
+      if (!aspect.getLintRuleNames().isEmpty()) {
+        return aspect;
+      }
+    }
+    throw new AssertionError("No aspect with lint rules");
+  }
+
+  @Test
+  public void directiveAppliesToElementAndChildren() {
+    ConfigAspect aspect = aspectWithLintRules();
+    String rule = aspect.getLintRuleNames().iterator().next();
+    suppressor.addSuppressionDirective(
+        m, aspect.getAspectName() + "-" + rule, model.getConfigAspects());
+    Diag diag = lintWarning(aspect.getAspectName(), rule);
+    Assert.assertTrue(suppressor.isSuppressedWarning(diag, m));
+    Assert.assertTrue(suppressor.isSuppressedWarning(diag, m.getFields().get(0)));
+    Assert.assertFalse(suppressor.isSuppressedWarning(diag, n));
+    Assert.assertFalse(
+        suppressor.isSuppressedWarning(lintWarning(aspect.getAspectName(), "other"), m));
+    Assert.assertFalse(suppressor.isSuppressedWarning(lintWarning("unknown", rule), m));
+  }
+
+  @Test
+  public void wildcardDirectiveAppliesToAllRulesOfAspect() {
+    suppressor.addSuppressionDirective(m, "documentation-*", model.getConfigAspects());
+    Assert.assertTrue(suppressor.isSuppressedWarning(lintWarning("documentation", "any-rule"), m));
+    Assert.assertFalse(suppressor.isSuppressedWarning(lintWarning("http", "any-rule"), m));
+    Assert.assertFalse(
+        suppressor.isSuppressedWarning(Diag.warning(SimpleLocation.TOPLEVEL, "No lint"), m));
+  }
+
+  @Test
+  public void errorsAreNotSuppressed() {
+    suppressor.suppressAllWarningsUnder(m);
+    Assert.assertTrue(
+        suppressor.isSuppressedWarning(Diag.warning(SimpleLocation.TOPLEVEL, "Warning"), m));
+    Assert.assertFalse(
+        suppressor.isSuppressedWarning(Diag.error(SimpleLocation.TOPLEVEL, "Error"), m));
+  }
+
+  @Test
+  public void modelSuppressionAppliesGlobally() {
+    suppressor.addSuppressionDirective(model, "documentation-*", model.getConfigAspects());
+    Diag diag = lintWarning("documentation", "any-rule");
+    Assert.assertTrue(suppressor.isSuppressedWarning(diag, n));
+    Assert.assertTrue(suppressor.isDiagSuppressed(diag, SimpleLocation.TOPLEVEL));
+    Assert.assertFalse(
+        suppressor.isDiagSuppressed(lintWarning("http", "any-rule"), SimpleLocation.TOPLEVEL));
+  }
+
+  @Test
+  public void legacyPatternsStillApply() {
+    suppressor.addPattern(m, "Legacy.*");
+    Assert.assertTrue(
+        suppressor.isSuppressedWarning(Diag.warning(SimpleLocation.TOPLEVEL, "Legacy x"), m));
+    Assert.assertFalse(
+        suppressor.isSuppressedWarning(Diag.warning(SimpleLocation.TOPLEVEL, "Other"), m));
+  }
+}
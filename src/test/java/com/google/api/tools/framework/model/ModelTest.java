@@ -16,11 +16,25 @@
 
 package com.google.api.tools.framework.model;
 
+import com.google.api.tools.framework.model.stages.Linted;
+import com.google.api.tools.framework.model.stages.Merged;
+import com.google.api.tools.framework.model.stages.Normalized;
+import com.google.api.tools.framework.model.stages.Resolved;
 import com.google.api.tools.framework.model.testing.TestConfig;
 import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.setup.StandardSetup;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Key;
 import com.google.inject.name.Names;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -80,6 +94,33 @@ public class ModelTest {
     Assert.assertEquals(1, file.getInterfaces().size());
   }
 
+  @Test public void testElementIdsAreDenseAndUnique() {
+    List<ProtoElement> elements = Lists.newArrayList();
+    for (ProtoFile file : testModel.getFiles()) {
+      elements.add(file);
+      for (MessageType message : file.getMessages()) {
+        elements.add(message);
+        elements.addAll(message.getFields());
+        elements.addAll(message.getMessages());
+      }
+      for (EnumType enumType : file.getEnums()) {
+        elements.add(enumType);
+        elements.addAll(enumType.getValues());
+      }
+      for (Interface iface : file.getInterfaces()) {
+        elements.add(iface);
+        elements.addAll(iface.getMethods());
+      }
+    }
+    BitSet ids = new BitSet();
+    for (ProtoElement element : elements) {
+      Assert.assertTrue(element.getElementId() < testModel.getElementIdBound());
+      Assert.assertFalse(ids.get(element.getElementId()));
+      ids.set(element.getElementId());
+    }
+    Assert.assertEquals(elements.size(), ids.cardinality());
+  }
+
   @Test public void testStageProcessing() {
     final StringBuilder log = new StringBuilder();
     final Key<Boolean> stage1 = Key.get(Boolean.class, Names.named("stage1"));
@@ -120,6 +161,109 @@ public class ModelTest {
     Assert.assertEquals("stage1stage2", log.toString());
   }
 
+  @Test public void testParallelStageProcessing() throws Exception {
+    // A diamond: stage3 requires stage1 and stage2, which are independent of each other. Both
+    // need to be running at the same time to pass the latch.
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    final Key<Boolean> stage1 = Key.get(Boolean.class, Names.named("stage1"));
+    final Key<Boolean> stage2 = Key.get(Boolean.class, Names.named("stage2"));
+    final Key<Boolean> stage3 = Key.get(Boolean.class, Names.named("stage3"));
+    testModel.registerProcessor(new LatchedProcessor(stage1, bothRunning));
+    testModel.registerProcessor(new LatchedProcessor(stage2, bothRunning));
+    testModel.registerProcessor(new LatchedProcessor(stage3, null, stage1, stage2));
+
+    StageScheduler scheduler = StageScheduler.parallel(new ForkJoinPool(2));
+    testModel.setStageScheduler(scheduler);
+    Assert.assertTrue(testModel.establishStage(stage3));
+    Assert.assertTrue(testModel.hasAttribute(stage1));
+    Assert.assertTrue(testModel.hasAttribute(stage2));
+    Assert.assertEquals(3, scheduler.getElapsedNanos().size());
+    Assert.assertEquals(2, scheduler.getCriticalPath().size());
+    Assert.assertEquals(stage3, scheduler.getCriticalPath().get(1));
+
+    Assert.assertTrue(testModel.establishStage(stage3));
+    Assert.assertTrue(scheduler.getCriticalPath().isEmpty());
+  }
+
+  @Test public void testSerialCriticalPath() {
+    final Key<Boolean> stage1 = Key.get(Boolean.class, Names.named("stage1"));
+    final Key<Boolean> stage2 = Key.get(Boolean.class, Names.named("stage2"));
+    testModel.registerProcessor(new LatchedProcessor(stage1, null));
+    testModel.registerProcessor(new LatchedProcessor(stage2, null, stage1));
+
+    Assert.assertTrue(testModel.establishStage(stage2));
+    Assert.assertEquals(
+        ImmutableList.of(stage1, stage2), testModel.getStageScheduler().getCriticalPath());
+  }
+
+  /** A processor which waits on an optional latch before establishing its stage. */
+  @Test public void testInstrumentationListener() {
+    StandardSetup.registerStandardProcessors(testModel);
+    StandardSetup.registerStandardConfigAspects(testModel);
+    final List<Key<?>> stages = Lists.newArrayList();
+    final Map<String, ResourceUsage> mergedAspects = Maps.newHashMap();
+    testModel.addInstrumentationListener(new InstrumentationListener() {
+      @Override public void processorFinished(Key<?> stage, ResourceUsage usage) {
+        stages.add(stage);
+        Assert.assertTrue(usage.getWallNanos() > 0);
+      }
+      @Override public void configAspectFinished(
+          Key<?> stage, ConfigAspect aspect, ResourceUsage usage) {
+        if (stage.equals(Merged.KEY)) {
+          mergedAspects.put(aspect.getAspectName(), usage);
+        }
+      }
+      @Override public void lintRuleFinished(
+          ConfigAspect aspect, String ruleName, ResourceUsage usage) {}
+    });
+
+    Assert.assertTrue(testModel.establishStage(Normalized.KEY));
+    Assert.assertEquals(
+        ImmutableList.of(Resolved.KEY, Merged.KEY, Linted.KEY, Normalized.KEY), stages);
+    Assert.assertEquals(Iterables.size(testModel.getConfigAspects()), mergedAspects.size());
+    // The merger visits every element of the model, and applies every aspect to each.
+    ResourceUsage http = mergedAspects.get("http");
+    Assert.assertTrue(http.getElementCount() > 0);
+    for (ResourceUsage usage : mergedAspects.values()) {
+      Assert.assertEquals(http.getElementCount(), usage.getElementCount());
+    }
+  }
+
+  private static class LatchedProcessor implements Processor {
+    private final Key<Boolean> stage;
+    private final CountDownLatch latch;
+    private final ImmutableList<Key<?>> requires;
+
+    private LatchedProcessor(Key<Boolean> stage, CountDownLatch latch, Key<?>... requires) {
+      this.stage = stage;
+      this.latch = latch;
+      this.requires = ImmutableList.copyOf(requires);
+    }
+
+    @Override public ImmutableList<Key<?>> requires() {
+      return requires;
+    }
+
+    @Override public Key<?> establishes() {
+      return stage;
+    }
+
+    @Override public boolean run(Model model) {
+      if (latch != null) {
+        latch.countDown();
+        try {
+          if (!latch.await(10, TimeUnit.SECONDS)) {
+            return false;
+          }
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }
+      model.putAttribute(stage, true);
+      return true;
+    }
+  }
+
   @Test public void testPrivateServiceNames() {
     Assert.assertFalse(Model.isPrivateService("foobar.googleapis.com"));
     Assert.assertTrue(Model.isPrivateService("foobar-pa.googleapis.com"));
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.api.tools.framework.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo;
+import com.google.protobuf.DescriptorProtos.SourceCodeInfo.Location;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SourceLocationIndex}. */
+@RunWith(JUnit4.class)
+public class SourceLocationIndexTest {
+
+  @Test
+  public void getFindsLocationsByPath() {
+    SourceCodeInfo.Builder info = SourceCodeInfo.newBuilder();
+    for (int i = 0; i < 1000; i++) {
+      info.addLocation(location("message " + i, 4, i));
+      info.addLocation(location("field " + i, 4, i, 2, 0));
+    }
+    SourceLocationIndex index = new SourceLocationIndex(info.build());
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(index.get(new int[] {4, i}).getLeadingComments()).isEqualTo("message " + i);
+      assertThat(index.get(new int[] {4, i, 2, 0}).getLeadingComments()).isEqualTo("field " + i);
+    }
+    assertThat(index.get(new int[] {4, 1000})).isNull();
+    assertThat(index.get(new int[] {4, 1, 2})).isNull();
+    assertThat(index.get(new int[0])).isNull();
+  }
+
+  @Test
+  public void getReturnsFirstLocationOfPath() {
+    SourceCodeInfo info =
+        SourceCodeInfo.newBuilder()
+            .addLocation(location("file"))
+            .addLocation(location("first", 2))
+            .addLocation(location("second", 2))
+            .build();
+    SourceLocationIndex index = new SourceLocationIndex(info);
+
+    assertThat(index.get(new int[] {2}).getLeadingComments()).isEqualTo("first");
+    assertThat(index.get(new int[0]).getLeadingComments()).isEqualTo("file");
+  }
+
+  @Test
+  public void getOnEmptyIndex() {
+    SourceLocationIndex index = new SourceLocationIndex(SourceCodeInfo.getDefaultInstance());
+
+    assertThat(index.get(new int[0])).isNull();
+    assertThat(index.get(new int[] {4, 0})).isNull();
+  }
+
+  private static Location location(String comment, int... path) {
+    Location.Builder location = Location.newBuilder().setLeadingComments(comment);
+    for (int segment : path) {
+      location.addPath(segment);
+    }
+    return location.build();
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.api.tools.framework.model;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -102,4 +103,42 @@ public class SymbolTableTest {
     Assert.assertSame(m4, table.resolveType2("a.b.a",  "a.n"));
     Assert.assertNull(table.resolveType2("a.b.a",  "a.m")); // Note: different from resolveType()
   }
+
+  @Test public void testResolutionsAreMemoized() {
+    Assert.assertSame(m1, table.resolveType("a.b",  "m"));
+    Assert.assertSame(m1, table.resolveType("a.b",  "m"));
+    Assert.assertNull(table.resolveType("a.b",  "x"));
+    Assert.assertNull(table.resolveType("a.b",  "x"));
+    Assert.assertSame(s1, table.resolveInterface("a.b",  "s1"));
+    Assert.assertSame(s1, table.resolveInterface("a.b",  "s1"));
+    // Fully qualified names bypass the memo.
+    Assert.assertSame(m1, table.resolveType("a.b",  ".a.b.m"));
+
+    SymbolTable.Stats stats = table.getStats();
+    Assert.assertEquals(3, stats.getHitCount());
+    Assert.assertEquals(3, stats.getMissCount());
+    Assert.assertEquals(3, stats.getEntryCount());
+    Assert.assertEquals(0.5, stats.getHitRate(), 0.0);
+  }
+
+  @Test public void testLookupMatchingTypes() {
+    Mockito.when(message1.getFullName()).thenReturn(m1Name);
+    Mockito.when(message2.getFullName()).thenReturn(m2Name);
+    Mockito.when(message3.getFullName()).thenReturn(m3Name);
+    Mockito.when(message4.getFullName()).thenReturn(m4Name);
+
+    // Matches are returned in declaration order.
+    Assert.assertEquals(ImmutableList.of(m1, m2, m4),
+        table.lookupMatchingTypes("a.b.*", Type.TYPE_MESSAGE));
+    Assert.assertEquals(ImmutableList.of(m1, m2, m3, m4),
+        table.lookupMatchingTypes("a.*", Type.TYPE_MESSAGE));
+    Assert.assertEquals(ImmutableList.of(m2),
+        table.lookupMatchingTypes("a.b.m.*", Type.TYPE_MESSAGE));
+    Assert.assertEquals(ImmutableList.of(),
+        table.lookupMatchingTypes("a.c.*", Type.TYPE_MESSAGE));
+    Assert.assertEquals(ImmutableList.of(),
+        table.lookupMatchingTypes("a.b.*", Type.TYPE_ENUM));
+    Assert.assertEquals(ImmutableList.of(m3),
+        table.lookupMatchingTypes("a.m", Type.TYPE_MESSAGE));
+  }
 }
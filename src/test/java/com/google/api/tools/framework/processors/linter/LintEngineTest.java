@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.processors.linter;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ResourceUsage;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.model.stages.Linted;
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.setup.StandardSetup;
+import com.google.api.tools.framework.tools.ResourceUsageCollector;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.truth.Truth;
+import com.google.protobuf.TextFormat;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LintEngine}. */
+@RunWith(JUnit4.class)
+public class LintEngineTest {
+
+  // Enough methods for the elements to span several shards.
+  private static final int METHOD_COUNT = LintEngine.SHARD_SIZE;
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void lintsInParallelLikeSerially() throws Exception {
+    List<String> serialDiags = diags(lint(createModel(StageScheduler.serial())));
+    List<String> parallelDiags = diags(lint(createModel(StageScheduler.parallel(4))));
+    // Each method has a query parameter which is a reserved keyword.
+    Truth.assertThat(serialDiags.size()).isAtLeast(METHOD_COUNT);
+    Truth.assertThat(parallelDiags).containsExactlyElementsIn(serialDiags).inOrder();
+  }
+
+  @Test
+  public void reportsLintRuleUsage() throws Exception {
+    Model model = createModel(StageScheduler.parallel(4));
+    ResourceUsageCollector collector = new ResourceUsageCollector();
+    model.addInstrumentationListener(collector);
+    lint(model);
+    ResourceUsage usage = collector.getLintRuleUsage().get("http-param-reserved-keyword");
+    Truth.assertThat(usage).isNotNull();
+    Truth.assertThat(usage.getElementCount()).isEqualTo((long) METHOD_COUNT);
+  }
+
+  private Model createModel(StageScheduler scheduler) throws Exception {
+    StringBuilder source =
+        new StringBuilder(
+            "syntax = \"proto3\"; package protiary.test;"
+                + "message Request { string fields = 1; string name = 2; }"
+                + "service S {");
+    StringBuilder config =
+        new StringBuilder(
+            "name: \"blob.googleapis.com\" config_version { value: 3 }"
+                + "apis { name: \"protiary.test.S\" } http {");
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      source.append(String.format("rpc Get%d(Request) returns (Request);", i));
+      config.append(
+          String.format("rules { selector: \"protiary.test.S.Get%d\" get: \"/v1/r%d\" }", i, i));
+    }
+    source.append("}");
+    config.append("}");
+
+    TestDataLocator locator = TestDataLocator.create(LintEngineTest.class);
+    locator.injectVirtualTestData("source.proto", source.toString());
+    TestConfig testConfig =
+        new TestConfig(locator, tempDir.getRoot().getPath(), ImmutableList.of("source.proto"));
+    Model model = testConfig.createModel(ImmutableList.<String>of());
+    model.setStageScheduler(scheduler);
+    StandardSetup.registerStandardProcessors(model);
+    Service.Builder configBuilder = Service.newBuilder();
+    TextFormat.merge(config.toString(), configBuilder);
+    model.setServiceConfig(configBuilder.build());
+    StandardSetup.registerStandardConfigAspects(model);
+    return model;
+  }
+
+  private static Model lint(Model model) {
+    model.establishStage(Linted.KEY);
+    return model;
+  }
+
+  private static List<String> diags(Model model) {
+    List<String> diags = Lists.newArrayList();
+    for (Diag diag : model.getDiagReporter().getDiagCollector().getDiags()) {
+      diags.add(diag.toString());
+    }
+    return diags;
+  }
+}
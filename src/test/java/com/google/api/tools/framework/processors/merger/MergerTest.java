@@ -17,16 +17,20 @@
 package com.google.api.tools.framework.processors.merger;
 
 import com.google.api.Service;
+import com.google.api.tools.framework.aspects.ConfigAspectBase;
 import com.google.api.tools.framework.aspects.documentation.model.ElementDocumentationAttribute;
 import com.google.api.tools.framework.aspects.http.model.HttpAttribute;
 import com.google.api.tools.framework.aspects.http.model.MethodKind;
 import com.google.api.tools.framework.aspects.versioning.model.VersionAttribute;
+import com.google.api.tools.framework.model.ConfigAspect;
 import com.google.api.tools.framework.model.Diag;
 import com.google.api.tools.framework.model.Diag.Kind;
 import com.google.api.tools.framework.model.FieldSelector;
 import com.google.api.tools.framework.model.Interface;
 import com.google.api.tools.framework.model.Method;
 import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoElement;
+import com.google.api.tools.framework.model.StageScheduler;
 import com.google.api.tools.framework.model.TypeRef;
 import com.google.api.tools.framework.model.stages.Merged;
 import com.google.api.tools.framework.model.stages.Resolved;
@@ -44,6 +48,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.inject.Key;
 import com.google.protobuf.TextFormat;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -178,6 +183,32 @@ public class MergerTest {
     assertError("protiary.test.Bucket");
   }
 
+  @Test public void mergesInParallelLikeSerially() throws Exception {
+    List<String> serialDiags =
+        mergeWithYamlConfig(false, "service_type_mismatch.yaml", "service_type_mismatch.proto");
+    List<String> parallelDiags =
+        mergeWithYamlConfig(true, "service_type_mismatch.yaml", "service_type_mismatch.proto");
+    Assert.assertFalse(serialDiags.isEmpty());
+    Assert.assertEquals(serialDiags, parallelDiags);
+
+    mergeWithYamlConfig(true, "service.yaml", "service.proto", "included_type.proto");
+    Assert.assertFalse(model.getDiagReporter().getDiagCollector().hasErrors());
+    Method getBucket = getMethod("protiary.test.Storage", "GetBucket");
+    Assert.assertEquals("Override GetBucket documentation.",
+        getBucket.getAttribute(ElementDocumentationAttribute.KEY).documentation());
+    Assert.assertEquals("v1",
+        getInterface("protiary.test.Storage").getAttribute(VersionAttribute.KEY).majorVersion());
+  }
+
+  @Test public void aspectsSeeSameErrorCountInParallelAsSerially() throws Exception {
+    List<Integer> serialCounts = mergeWithErrorCountingAspects(false);
+    List<Integer> parallelCounts = mergeWithErrorCountingAspects(true);
+    Assert.assertFalse(serialCounts.isEmpty());
+    Assert.assertEquals(serialCounts, parallelCounts);
+    // Errors of the sibling aspect, which is merged before it serially, are never counted.
+    Assert.assertEquals(ImmutableSet.of(serialCounts.get(0)), ImmutableSet.copyOf(serialCounts));
+  }
+
   @Test public void mergesWithApiVersion() throws Exception {
     createApi("service_with_version.proto");
     model.setConfigSources(
@@ -296,6 +327,65 @@ public class MergerTest {
         makeSet("bucket_name.bucket_id"), makeSet("object", "mode", "kind"), makeSet());
   }
 
+  private List<String> mergeWithYamlConfig(boolean parallel, String yamlFile,
+      String... protoFiles) throws Exception {
+    createApi(protoFiles);
+    if (parallel) {
+      model.setStageScheduler(StageScheduler.parallel(4));
+    }
+    model.setConfigSources(
+        testConfig.getApiYamlConfigSources(
+            model.getDiagReporter().getDiagCollector(), ImmutableList.of(yamlFile)));
+    StandardSetup.registerStandardConfigAspects(model);
+    model.establishStage(Merged.KEY);
+    List<String> diags = Lists.newArrayList();
+    for (Diag diag : model.getDiagReporter().getDiagCollector().getDiags()) {
+      diags.add(diag.toString());
+    }
+    return diags;
+  }
+
+  private List<Integer> mergeWithErrorCountingAspects(boolean parallel) throws Exception {
+    createApi("service.proto", "included_type.proto");
+    if (parallel) {
+      model.setStageScheduler(StageScheduler.parallel(4));
+    }
+    model.setConfigSources(
+        testConfig.getApiYamlConfigSources(
+            model.getDiagReporter().getDiagCollector(), ImmutableList.of("service.yaml")));
+    StandardSetup.registerStandardConfigAspects(model);
+    final List<Integer> errorCounts = Lists.newArrayList();
+    model.registerConfigAspect(
+        new IndependentAspect(model, "error_reporter") {
+          @Override
+          public void merge(ProtoElement element) {
+            error(element.getLocation(), "Error on '%s'.", element.getFullName());
+          }
+        });
+    model.registerConfigAspect(
+        new IndependentAspect(model, "error_counter") {
+          @Override
+          public void merge(ProtoElement element) {
+            errorCounts.add(getDiagReporter().getDiagCollector().getErrorCount());
+          }
+        });
+    model.establishStage(Merged.KEY);
+    return errorCounts;
+  }
+
+  /** A config aspect without merge dependencies, merged on the first level. */
+  private abstract static class IndependentAspect extends ConfigAspectBase {
+
+    private IndependentAspect(Model model, String aspectName) {
+      super(model, aspectName);
+    }
+
+    @Override
+    public List<Class<? extends ConfigAspect>> mergeDependencies() {
+      return ImmutableList.of();
+    }
+  }
+
   private void assertError(final String phrase) {
     Assert.assertTrue(model.getDiagReporter().getDiagCollector().hasErrors());
     Assert.assertTrue(
@@ -18,16 +18,31 @@ package com.google.api.tools.framework.processors.resolver;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.api.Service;
+import com.google.api.tools.framework.model.ConfigSource;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.ExperimentsImpl;
+import com.google.api.tools.framework.model.ExtensionPool;
 import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.ProtoFile;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.model.TypeRef;
 import com.google.api.tools.framework.model.stages.Resolved;
 import com.google.api.tools.framework.model.testing.StageValidator;
 import com.google.api.tools.framework.model.testing.TestConfig;
 import com.google.api.tools.framework.model.testing.TestDataLocator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.truth.Truth;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Key;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type;
 import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -62,6 +77,33 @@ public class ResolverTest {
           + "  rpc Rpc(M) returns (N);"
           + "}";
 
+  private static final String DEPENDENCY_SOURCE =
+      "syntax = \"proto2\"; "
+          + "package test.dep;"
+          + "message D {"
+          + "  optional Inner inner = 1;"
+          + "}"
+          + "message Inner {"
+          + "  optional string unused_field = 1;"
+          + "}";
+
+  private static final String UNUSED_SOURCE =
+      "syntax = \"proto2\"; "
+          + "import \"dep.proto\";\n"
+          + "package test.unused;"
+          + "message U {"
+          + "  optional test.dep.Inner inner = 1;"
+          + "}";
+
+  private static final String LAZY_SOURCE =
+      "syntax = \"proto2\"; "
+          + "import \"dep.proto\";\n"
+          + "import \"unused.proto\";\n"
+          + "package test.lazy;"
+          + "message M {"
+          + "  optional test.dep.D d = 1;"
+          + "}";
+
   @Rule public TemporaryFolder tempDir = new TemporaryFolder();
   private FileDescriptorSet descriptors;
 
@@ -122,4 +164,162 @@ public class ResolverTest {
     assertThat(testApi.getDiagReporter().getDiagCollector().getDiags().get(1).toString())
         .contains("undef_E");
   }
+
+  @Test
+  public void resolvesLazyDependenciesOnDemand() throws Exception {
+    Model testApi =
+        Model.create(
+            multiFileDescriptors(),
+            ImmutableList.of("lazy_source.proto"),
+            new ExperimentsImpl(Model.LAZY_DEPENDENCIES_EXPERIMENT),
+            ExtensionPool.EMPTY);
+    testApi.registerProcessor(new Resolver());
+
+    Truth.assertThat(testApi.establishStage(Resolved.KEY)).isTrue();
+    Truth.assertThat(testApi.getDiagReporter().getDiagCollector().hasErrors()).isFalse();
+    Truth.assertThat(file(testApi, "dep.proto").isMaterialized()).isTrue();
+    Truth.assertThat(file(testApi, "unused.proto").isMaterialized()).isFalse();
+    Truth.assertThat(testApi.getSymbolTable().lookupType("test.dep.Inner").getMessageType()
+        .getFields().get(0).getType()).isEqualTo(TypeRef.of(Type.TYPE_STRING));
+    // Field names of files which are not materialized are known nevertheless.
+    Truth.assertThat(testApi.getSymbolTable().containsFieldName("unused_field")).isTrue();
+
+    // A lookup materializes and resolves the declaring file.
+    TypeRef unused = testApi.getSymbolTable().lookupType("test.unused.U");
+    Truth.assertThat(unused).isNotNull();
+    Truth.assertThat(file(testApi, "unused.proto").isMaterialized()).isTrue();
+    Truth.assertThat(unused.getMessageType().getFields().get(0).getType().getMessageType())
+        .isSameAs(testApi.getSymbolTable().lookupType("test.dep.Inner").getMessageType());
+    Truth.assertThat(testApi.getSymbolTable().getDeclaredTypes()).contains(unused);
+  }
+
+  @Test
+  public void materializesDependenciesReachableFromConfigBeforeResolving() throws Exception {
+    Model testApi =
+        Model.create(
+            multiFileDescriptors(),
+            ImmutableList.of("lazy_source.proto"),
+            new ExperimentsImpl(Model.LAZY_DEPENDENCIES_EXPERIMENT),
+            ExtensionPool.EMPTY);
+    testApi.setServiceConfig(
+        ConfigSource.newBuilder(
+                Service.newBuilder()
+                    .addTypes(com.google.protobuf.Type.newBuilder().setName("test.unused.U"))
+                    .build())
+            .build());
+    testApi.setStageScheduler(StageScheduler.parallel(4));
+    testApi.registerProcessor(new Resolver());
+
+    Truth.assertThat(testApi.establishStage(Resolved.KEY)).isTrue();
+    Truth.assertThat(file(testApi, "unused.proto").isMaterialized()).isTrue();
+    Truth.assertThat(testApi.getSymbolTable().getDeclaredTypes())
+        .contains(testApi.getSymbolTable().lookupType("test.unused.U"));
+  }
+
+  @Test
+  public void resolvesLateMaterializedFileOnce() throws Exception {
+    FileDescriptorSet.Builder builder = multiFileDescriptors().toBuilder();
+    builder.getFileBuilder(1).getMessageTypeBuilder(0).getFieldBuilder(0).setTypeName("undef_U");
+    final Model testApi =
+        Model.create(
+            builder.build(),
+            ImmutableList.of("lazy_source.proto"),
+            new ExperimentsImpl(Model.LAZY_DEPENDENCIES_EXPERIMENT),
+            ExtensionPool.EMPTY);
+    testApi.setStageScheduler(StageScheduler.parallel(4));
+    testApi.registerProcessor(new Resolver());
+    Truth.assertThat(testApi.establishStage(Resolved.KEY)).isTrue();
+    Truth.assertThat(file(testApi, "unused.proto").isMaterialized()).isFalse();
+
+    // Threads looking up a name of the file concurrently materialize and resolve it once.
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<TypeRef> results = Collections.synchronizedList(Lists.<TypeRef>newArrayList());
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      threads.add(
+          new Thread() {
+            @Override
+            public void run() {
+              Uninterruptibles.awaitUninterruptibly(start);
+              results.add(testApi.getSymbolTable().lookupType("test.unused.U"));
+            }
+          });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      Uninterruptibles.joinUninterruptibly(thread);
+    }
+
+    Truth.assertThat(results).hasSize(4);
+    Truth.assertThat(Sets.newHashSet(results)).hasSize(1);
+    Truth.assertThat(results.get(0)).isNotNull();
+    Truth.assertThat(testApi.getDiagReporter().getDiagCollector().getErrorCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void resolvesInParallelLikeSerially() throws Exception {
+    // Inject a duplicate type declared in another file, and an unresolved type.
+    FileDescriptorSet.Builder builder = multiFileDescriptors().toBuilder();
+    builder.getFileBuilder(1).setPackage("test.dep").getMessageTypeBuilder(0).setName("D");
+    builder.getFileBuilder(2).getMessageTypeBuilder(0).getFieldBuilder(0).setTypeName("undef_D");
+    FileDescriptorSet withErrors = builder.build();
+
+    Model serial = Model.create(withErrors);
+    serial.registerProcessor(new Resolver());
+    Truth.assertThat(serial.establishStage(Resolved.KEY)).isFalse();
+    Model parallel = Model.create(withErrors);
+    parallel.setStageScheduler(StageScheduler.parallel(4));
+    parallel.registerProcessor(new Resolver());
+    Truth.assertThat(parallel.establishStage(Resolved.KEY)).isFalse();
+
+    Truth.assertThat(parallel.getDiagReporter().getDiagCollector().getErrorCount()).isEqualTo(2);
+    Truth.assertThat(diagStrings(parallel)).containsExactlyElementsIn(diagStrings(serial))
+        .inOrder();
+    Truth.assertThat(typeNames(parallel)).containsExactlyElementsIn(typeNames(serial)).inOrder();
+    // The last declaration of a duplicate wins, as with a serial visit.
+    Truth.assertThat(parallel.getSymbolTable().lookupType("test.dep.D").getMessageType()
+        .getFile().getSimpleName()).isEqualTo("unused.proto");
+    Truth.assertThat(parallel.getSymbolTable().lookupType("test.dep.Inner").getMessageType()
+        .getFields().get(0).getType()).isEqualTo(TypeRef.of(Type.TYPE_STRING));
+  }
+
+  private FileDescriptorSet multiFileDescriptors() throws Exception {
+    TestDataLocator locator = TestDataLocator.create(getClass());
+    locator.injectVirtualTestData("dep.proto", DEPENDENCY_SOURCE);
+    locator.injectVirtualTestData("unused.proto", UNUSED_SOURCE);
+    locator.injectVirtualTestData("lazy_source.proto", LAZY_SOURCE);
+    return new TestConfig(
+            locator,
+            tempDir.getRoot().getPath(),
+            ImmutableList.of("dep.proto", "unused.proto", "lazy_source.proto"))
+        .getDescriptor();
+  }
+
+  private static List<String> diagStrings(Model model) {
+    List<String> result = Lists.newArrayList();
+    for (Diag diag : model.getDiagReporter().getDiagCollector().getDiags()) {
+      result.add(diag.toString());
+    }
+    return result;
+  }
+
+  private static List<String> typeNames(Model model) {
+    List<String> result = Lists.newArrayList();
+    for (TypeRef type : model.getSymbolTable().getDeclaredTypes()) {
+      result.add(type.toString());
+    }
+    return result;
+  }
+
+  private static ProtoFile file(Model model, String name) {
+    for (ProtoFile file : model.getFiles()) {
+      if (file.getSimpleName().equals(name)) {
+        return file;
+      }
+    }
+    throw new IllegalArgumentException(name);
+  }
 }
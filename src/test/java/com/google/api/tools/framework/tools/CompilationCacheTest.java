@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.model.Diag;
+import com.google.api.tools.framework.model.SimpleLocation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CompilationCache}. */
+@RunWith(JUnit4.class)
+public class CompilationCacheTest {
+
+  private static final ImmutableMap<String, String> NO_INCLUDES = ImmutableMap.of();
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private static ToolOptions options(String yaml) {
+    ToolOptions options = ToolOptions.create();
+    options.set(
+        ToolOptions.DESCRIPTOR_SET_CONTENTS,
+        FileWrapper.create("api.descriptor", ByteString.copyFromUtf8("descriptor")));
+    options.set(
+        ToolOptions.CONFIG_FILE_CONTENTS, ImmutableList.of(FileWrapper.create("api.yaml", yaml)));
+    return options;
+  }
+
+  private static Service service(String name) {
+    return Service.newBuilder().setName(name).build();
+  }
+
+  @Test
+  public void keyDependsOnAllInputs() {
+    String key = CompilationCache.computeKey(options("name: a"), "");
+    Assert.assertEquals(key, CompilationCache.computeKey(options("name: a"), ""));
+    Assert.assertNotEquals(key, CompilationCache.computeKey(options("name: b"), ""));
+    Assert.assertNotEquals(key, CompilationCache.computeKey(options("name: a"), "", true));
+    Assert.assertNotEquals(key, CompilationCache.computeKey(options("name: a"), "docs"));
+
+    ToolOptions withExperiments = options("name: a");
+    withExperiments.set(ToolOptions.EXPERIMENTS, ImmutableList.of("some-experiment"));
+    Assert.assertNotEquals(key, CompilationCache.computeKey(withExperiments, ""));
+  }
+
+  @Test
+  public void putAndGet() {
+    CompilationCache cache = new CompilationCache(tempDir.getRoot().toPath(), 1 << 20);
+    Assert.assertNull(cache.get("key", ""));
+
+    Diag warning = Diag.warning(new SimpleLocation("api.yaml:1"), "Something %s.", "odd");
+    cache.put("key", service("a.googleapis.com"), ImmutableList.of(warning), NO_INCLUDES);
+    CompilationCache.Entry entry = cache.get("key", "");
+    Assert.assertEquals(service("a.googleapis.com"), entry.getServiceConfig());
+    Assert.assertEquals(1, entry.getDiags().size());
+    Assert.assertEquals(warning.toString(), entry.getDiags().get(0).toString());
+
+    CompilationCache.Stats stats = cache.getStats();
+    Assert.assertEquals(1, stats.getHitCount());
+    Assert.assertEquals(1, stats.getMissCount());
+    Assert.assertEquals(1, stats.getWriteCount());
+    Assert.assertEquals(1, stats.getEntryCount());
+  }
+
+  @Test
+  public void missesIfIncludedFileChanged() throws Exception {
+    Path dir = tempDir.newFolder("cache").toPath();
+    Path docs = tempDir.newFolder("docs").toPath();
+    Files.write(docs.resolve("overview.md"), "Overview".getBytes(StandardCharsets.UTF_8));
+    CompilationCache cache = new CompilationCache(dir, 1 << 20);
+    cache.put(
+        "key",
+        service("a"),
+        ImmutableList.<Diag>of(),
+        ImmutableMap.of("overview.md", "Overview"));
+    Assert.assertNotNull(cache.get("key", docs.toString()));
+
+    Files.write(docs.resolve("overview.md"), "Changed".getBytes(StandardCharsets.UTF_8));
+    Assert.assertNull(cache.get("key", docs.toString()));
+    Files.delete(docs.resolve("overview.md"));
+    Assert.assertNull(cache.get("key", docs.toString()));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws Exception {
+    Path dir = tempDir.getRoot().toPath();
+    CompilationCache cache = new CompilationCache(dir, 1 << 20);
+    cache.put("a", service("a"), ImmutableList.<Diag>of(), NO_INCLUDES);
+    long entrySize = cache.getStats().getSizeBytes();
+    cache.put("b", service("b"), ImmutableList.<Diag>of(), NO_INCLUDES);
+    Files.setLastModifiedTime(dir.resolve("a.entry"), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(dir.resolve("b.entry"), FileTime.fromMillis(2000));
+
+    // Using "a" makes "b" the least recently used entry.
+    Assert.assertNotNull(cache.get("a", ""));
+    cache.setMaxBytes(2 * entrySize);
+    cache.put("c", service("c"), ImmutableList.<Diag>of(), NO_INCLUDES);
+
+    Assert.assertNotNull(cache.get("a", ""));
+    Assert.assertNull(cache.get("b", ""));
+    Assert.assertNotNull(cache.get("c", ""));
+    Assert.assertEquals(1, cache.getStats().getEvictionCount());
+  }
+}
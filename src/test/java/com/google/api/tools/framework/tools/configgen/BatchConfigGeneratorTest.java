@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.api.tools.framework.tools.ToolOptions.Option;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BatchConfigGenerator}. */
+@RunWith(JUnit4.class)
+public class BatchConfigGeneratorTest {
+
+  private static final ImmutableList<Option<?>> JOB_OPTIONS =
+      ImmutableList.<Option<?>>of(
+          ToolOptions.DESCRIPTOR_SET,
+          ToolOptions.CONFIG_FILES,
+          ConfigGeneratorDriver.BIN_OUT,
+          ConfigGeneratorDriver.JSON_OUT,
+          ConfigGeneratorFromProtoDescriptor.SUPPRESS_WARNINGS);
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void runsAllJobs() throws Exception {
+    TestConfig testConfig =
+        new TestConfig(
+            TestDataLocator.create(getClass()),
+            tempDir.getRoot().getPath(),
+            ImmutableList.of("library_config_version_1.proto"));
+    String descriptor = testConfig.getDescriptorFile().toString();
+    String yaml = testConfig.copyTestDataAndGetPath("library_config_version_1.yaml").toString();
+    File out1 = new File(tempDir.getRoot(), "out1.json");
+    File out2 = new File(tempDir.getRoot(), "out2.json");
+    String jobs =
+        Joiner.on('\n')
+            .join(
+                "# Two jobs which share the descriptor given to the batch.",
+                "--configs " + yaml + " --json_out " + out1,
+                "",
+                "--configs " + yaml + " --json_out " + out2);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BatchConfigGenerator generator =
+        new BatchConfigGenerator(
+            JOB_OPTIONS,
+            new String[] {"--descriptor", descriptor, "--suppress_warnings", "true"},
+            2,
+            new PrintStream(output, true, StandardCharsets.UTF_8.name()));
+    int exitCode = generator.run(new BufferedReader(new StringReader(jobs)));
+
+    String report = output.toString(StandardCharsets.UTF_8.name());
+    Assert.assertEquals(report, 0, exitCode);
+    Assert.assertTrue(out1.length() > 0);
+    Assert.assertTrue(out2.length() > 0);
+    Assert.assertTrue(report, report.contains("job 2: done"));
+    Assert.assertTrue(report, report.contains("job 4: done"));
+    Assert.assertTrue(report, report.contains("2 jobs, 0 failed"));
+  }
+
+  @Test
+  public void reportsFailedJobs() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BatchConfigGenerator generator =
+        new BatchConfigGenerator(
+            JOB_OPTIONS,
+            new String[0],
+            1,
+            new PrintStream(output, true, StandardCharsets.UTF_8.name()));
+    int exitCode =
+        generator.run(new BufferedReader(new StringReader("--descriptor does_not_exist.pb")));
+
+    String report = output.toString(StandardCharsets.UTF_8.name());
+    Assert.assertEquals(report, 1, exitCode);
+    Assert.assertTrue(report, report.contains("job 1: FAILED"));
+    Assert.assertTrue(report, report.contains("1 jobs, 1 failed"));
+  }
+}
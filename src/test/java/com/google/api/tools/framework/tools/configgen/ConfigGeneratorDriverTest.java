@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConfigGeneratorDriver}. */
+@RunWith(JUnit4.class)
+public class ConfigGeneratorDriverTest {
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void instrumentationContainsStagesOfGeneratorModelAndOutputs() throws Exception {
+    TestConfig testConfig =
+        new TestConfig(
+            TestDataLocator.create(getClass()),
+            tempDir.getRoot().getPath(),
+            ImmutableList.of("library_config_version_1.proto"));
+    File instrumentation = new File(tempDir.getRoot(), "instrumentation.json");
+    ToolOptions options = ToolOptions.create();
+    options.set(ToolOptions.DESCRIPTOR_SET, testConfig.getDescriptorFile().toString());
+    options.set(
+        ToolOptions.CONFIG_FILES,
+        ImmutableList.of(
+            testConfig.copyTestDataAndGetPath("library_config_version_1.yaml").toString()));
+    options.set(ToolOptions.INSTRUMENTATION_OUT, instrumentation.getPath());
+    options.set(
+        ConfigGeneratorDriver.BIN_OUT, new File(tempDir.getRoot(), "out.pb").getAbsolutePath());
+
+    Assert.assertEquals(0, new ConfigGeneratorDriver(options).run());
+
+    JsonNode json = new ObjectMapper().readTree(instrumentation);
+    Assert.assertTrue(json.get("stages").size() > 0);
+    Assert.assertNotNull(json.get("symbolTable"));
+    Assert.assertEquals(1, json.get("outputs").size());
+    Assert.assertEquals("binary", json.get("outputs").get(0).get("format").asText());
+  }
+}
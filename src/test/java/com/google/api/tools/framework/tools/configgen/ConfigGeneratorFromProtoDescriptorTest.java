@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.google.api.Service;
+import com.google.api.tools.framework.model.Model;
+import com.google.api.tools.framework.model.testing.TestConfig;
+import com.google.api.tools.framework.model.testing.TestDataLocator;
+import com.google.api.tools.framework.tools.CompilationCache;
+import com.google.api.tools.framework.tools.ToolOptions;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConfigGeneratorFromProtoDescriptor}. */
+@RunWith(JUnit4.class)
+public class ConfigGeneratorFromProtoDescriptorTest {
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void compilationCacheMissesAfterIncludedDocChanged() throws Exception {
+    ToolOptions options = cachedOptions();
+    Path overview = tempDir.getRoot().toPath().resolve("overview.md");
+    CompilationCache cache = CompilationCache.fromOptions(options);
+
+    ConfigGeneratorFromProtoDescriptor first = new ConfigGeneratorFromProtoDescriptor(options);
+    Service firstConfig = first.generateServiceConfig();
+    Assert.assertNotNull(first.getModel());
+    Assert.assertTrue(firstConfig.toString().contains("The first overview."));
+    Assert.assertEquals(0, cache.getStats().getHitCount());
+    Assert.assertEquals(1, cache.getStats().getWriteCount());
+
+    ConfigGeneratorFromProtoDescriptor second = new ConfigGeneratorFromProtoDescriptor(options);
+    Assert.assertEquals(firstConfig, second.generateServiceConfig());
+    Assert.assertNull(second.getModel());
+    Assert.assertEquals(firstConfig, second.getServiceConfig());
+    Assert.assertEquals(1, cache.getStats().getHitCount());
+
+    Files.write(overview, "The second overview.".getBytes(StandardCharsets.UTF_8));
+    ConfigGeneratorFromProtoDescriptor third = new ConfigGeneratorFromProtoDescriptor(options);
+    Service thirdConfig = third.generateServiceConfig();
+    Assert.assertNotNull(third.getModel());
+    Assert.assertTrue(thirdConfig.toString().contains("The second overview."));
+    Assert.assertEquals(1, cache.getStats().getHitCount());
+    Assert.assertEquals(2, cache.getStats().getWriteCount());
+  }
+
+  @Test
+  public void driverBuildsNoModelOnCompilationCacheHit() throws Exception {
+    ToolOptions options = cachedOptions();
+    options.set(
+        ConfigGeneratorDriver.BIN_OUT, new File(tempDir.getRoot(), "out.pb").getAbsolutePath());
+
+    ModelCountingDriver first = new ModelCountingDriver(options);
+    Assert.assertEquals(0, first.run());
+    Assert.assertNotNull(first.getModel());
+    Assert.assertEquals(0, first.modelsBuilt);
+
+    ModelCountingDriver second = new ModelCountingDriver(options);
+    Assert.assertEquals(0, second.run());
+    Assert.assertEquals(first.getServiceConfig(), second.getServiceConfig());
+    Assert.assertNull(second.getModel());
+    Assert.assertEquals(0, second.modelsBuilt);
+  }
+
+  /** Counts the models the driver itself builds, besides the one of its config generator. */
+  private static class ModelCountingDriver extends ConfigGeneratorDriver {
+
+    private int modelsBuilt;
+
+    private ModelCountingDriver(ToolOptions options) {
+      super(options);
+    }
+
+    @Override
+    public void registerProcessors(Model model) {
+      modelsBuilt++;
+      super.registerProcessors(model);
+    }
+  }
+
+  /**
+   * Returns options generating the library config with a compilation cache, where the
+   * documentation of the service includes the file overview.md of the data path.
+   */
+  private ToolOptions cachedOptions() throws Exception {
+    TestConfig testConfig =
+        new TestConfig(
+            TestDataLocator.create(getClass()),
+            tempDir.getRoot().getPath(),
+            ImmutableList.of("library_config_version_1.proto"));
+    String yaml =
+        testConfig
+            .readTestData("library_config_version_1.yaml")
+            .replace(
+                "    A simple Google Example Library API.\n",
+                "    A simple Google Example Library API.\n"
+                    + "  rules:\n"
+                    + "  - selector: google.example.library.v1.LibraryService\n"
+                    + "    description: (== include overview.md ==)\n");
+    Path yamlFile = tempDir.getRoot().toPath().resolve("library.yaml");
+    Files.write(yamlFile, yaml.getBytes(StandardCharsets.UTF_8));
+    Path overview = tempDir.getRoot().toPath().resolve("overview.md");
+    Files.write(overview, "The first overview.".getBytes(StandardCharsets.UTF_8));
+    File cacheDir = tempDir.newFolder("cache");
+
+    ToolOptions options = ToolOptions.create();
+    options.set(ToolOptions.DESCRIPTOR_SET, testConfig.getDescriptorFile().toString());
+    options.set(ToolOptions.CONFIG_FILES, ImmutableList.of(yamlFile.toString()));
+    options.set(ToolOptions.DATA_PATH, tempDir.getRoot().getPath());
+    options.set(ToolOptions.COMPILATION_CACHE_DIR, cacheDir.getPath());
+    return options;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.api.tools.framework.tools.configgen;
+
+import com.google.api.Documentation;
+import com.google.api.Service;
+import com.google.api.tools.framework.model.StageScheduler;
+import com.google.api.tools.framework.tools.configgen.ConfigOutputWriter.Format;
+import com.google.api.tools.framework.tools.configgen.ConfigOutputWriter.OutputStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.truth.Truth;
+import com.google.protobuf.Api;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.util.JsonFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConfigOutputWriter}. */
+@RunWith(JUnit4.class)
+public class ConfigOutputWriterTest {
+
+  private static final Service SERVICE =
+      Service.newBuilder()
+          .setName("blob.googleapis.com")
+          .addApis(Api.newBuilder().setName("protiary.test.Storage"))
+          .setDocumentation(Documentation.newBuilder().setSummary("A storage service."))
+          .build();
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void writesAllFormatsSerially() throws Exception {
+    checkWritesAllFormats(StageScheduler.serial(), "");
+  }
+
+  @Test
+  public void writesAllFormatsInParallel() throws Exception {
+    checkWritesAllFormats(StageScheduler.parallel(3), "");
+  }
+
+  @Test
+  public void writesGzipCompressedOutputs() throws Exception {
+    checkWritesAllFormats(StageScheduler.parallel(3), ConfigOutputWriter.GZIP_SUFFIX);
+  }
+
+  private void checkWritesAllFormats(StageScheduler scheduler, String suffix) throws Exception {
+    File bin = tempDir.newFile("service.pb" + suffix);
+    File txt = tempDir.newFile("service.txt" + suffix);
+    File json = tempDir.newFile("service.json" + suffix);
+    ImmutableList<OutputStats> stats =
+        new ConfigOutputWriter(scheduler, JsonFormat.printer())
+            .write(
+                SERVICE,
+                ImmutableMap.of(
+                    Format.BINARY, bin.getPath(),
+                    Format.TEXT, txt.getPath(),
+                    Format.JSON, json.getPath()));
+
+    Truth.assertThat(Service.parseFrom(read(bin))).isEqualTo(SERVICE);
+    Service.Builder fromText = Service.newBuilder();
+    TextFormat.merge(new String(read(txt), StandardCharsets.UTF_8), fromText);
+    Truth.assertThat(fromText.build()).isEqualTo(SERVICE);
+    Service.Builder fromJson = Service.newBuilder();
+    JsonFormat.parser().merge(new String(read(json), StandardCharsets.UTF_8), fromJson);
+    Truth.assertThat(fromJson.build()).isEqualTo(SERVICE);
+
+    Truth.assertThat(stats).hasSize(3);
+    Truth.assertThat(stats.get(0).getFormat()).isEqualTo(Format.BINARY);
+    Truth.assertThat(stats.get(0).getSerializedBytes())
+        .isEqualTo((long) SERVICE.getSerializedSize());
+    for (OutputStats output : stats) {
+      Truth.assertThat(output.getWrittenBytes())
+          .isEqualTo(Files.size(new File(output.getPath()).toPath()));
+    }
+  }
+
+  private static byte[] read(File file) throws Exception {
+    try (InputStream in =
+        file.getName().endsWith(ConfigOutputWriter.GZIP_SUFFIX)
+            ? new GZIPInputStream(new FileInputStream(file))
+            : new FileInputStream(file)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}